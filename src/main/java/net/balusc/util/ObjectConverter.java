@@ -17,12 +17,11 @@
 
 package net.balusc.util;
 
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+
+import org.ucmtwine.convert.Converters;
+import org.ucmtwine.parameter.DateFormats;
 
 /**
  * Generic object converter.
@@ -43,40 +42,16 @@ import java.util.Map;
  * System.out.println(s); // 123
  * </pre>
  * 
- * Not all possible conversions are implemented. You can extend the
- * <tt>ObjectConverter</tt> easily by just adding a new method to it, with the
- * appropriate logic. For example:
- * 
- * <pre>
- * public static ToObject fromObjectToObject(FromObject fromObject) {
- *   // Implement.
- * }
- * </pre>
- * 
- * The method name doesn't matter. It's all about the parameter type and the
- * return type.
+ * Not all possible conversions are implemented. Conversions are looked up in
+ * the {@link Converters} table; add new ones with
+ * {@link Converters#register(Class, Class, org.ucmtwine.convert.IConverter)}.
+ * The static methods below are kept for callers that use them directly.
  * 
  * @author BalusC
  * @link http://balusc.blogspot.com/2007/08/generic-object-converter.html
  */
 public final class ObjectConverter {
 
-  // Init
-  // ---------------------------------------------------------------------------------------
-
-  private static final Map<String, Method> CONVERTERS = new HashMap<String, Method>();
-
-  static {
-    // Preload converters.
-    Method[] methods = ObjectConverter.class.getDeclaredMethods();
-    for (Method method : methods) {
-      if (method.getParameterTypes().length == 1) {
-        // Converter should accept 1 argument. This skips the convert() method.
-        CONVERTERS.put(method.getParameterTypes()[0].getName() + "_" + method.getReturnType().getName(), method);
-      }
-    }
-  }
-
   private ObjectConverter() {
     // Utility class, hide the constructor.
   }
@@ -85,7 +60,9 @@ public final class ObjectConverter {
   // -------------------------------------------------------------------------------------
 
   /**
-   * Convert the given object value to the given class.
+   * Convert the given object value to the given class. The converters are
+   * looked up in the {@link Converters} table, which is where new conversions
+   * should be registered.
    * 
    * @param from
    *          The object value to be converted.
@@ -97,43 +74,10 @@ public final class ObjectConverter {
    * @throws UnsupportedOperationException
    *           If no suitable converter can be found.
    * @throws RuntimeException
-   *           If conversion failed somehow. This can be caused by at least an
-   *           ExceptionInInitializerError, IllegalAccessException or
-   *           InvocationTargetException.
+   *           If conversion failed somehow.
    */
-  @SuppressWarnings("unchecked")
   public static <T> T convert(Object from, Class<T> to) {
-
-    // Null is just null.
-    if (from == null) {
-      return null;
-    }
-
-    // Can we cast? Then just do it.
-    if (to.isAssignableFrom(from.getClass())) {
-      return to.cast(from);
-    }
-
-    // Lookup the suitable converter.
-    String converterId = from.getClass().getName() + "_" + to.getName();
-    Method converter = CONVERTERS.get(converterId);
-    if (converter == null) {
-      throw new UnsupportedOperationException("Cannot convert from " + from.getClass().getName() + " to "
-          + to.getName() + ". Requested converter does not exist.");
-    }
-
-    // Convert the value.
-    try {
-      // primitives don't appear to have a .cast() method, which causes a null
-      // pointer exception
-      if (to.isPrimitive()) {
-        return (T) converter.invoke(to, from);
-      }
-      return to.cast(converter.invoke(to, from));
-    } catch (Exception e) {
-      throw new RuntimeException("Cannot convert from " + from.getClass().getName() + " to " + to.getName()
-          + ". Conversion failed with " + e.getMessage(), e);
-    }
+    return Converters.convert(from, to);
   }
 
   // Converters
@@ -352,8 +296,7 @@ public final class ObjectConverter {
       return null;
     }
 
-    SimpleDateFormat sdf = new SimpleDateFormat();
-    return sdf.format(value);
+    return DateFormats.get(null).format(value);
   }
 
   /**
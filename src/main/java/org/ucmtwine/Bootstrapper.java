@@ -8,6 +8,7 @@ import intradoc.data.DataException;
 import intradoc.data.Workspace;
 import intradoc.io.zip.IdcZipFile;
 import intradoc.shared.FilterImplementor;
+import intradoc.shared.SharedObjects;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -20,20 +21,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.ucmtwine.proxy.injector.FilterInjector;
-import org.ucmtwine.proxy.injector.IClassInjector;
-import org.ucmtwine.proxy.injector.IdocScriptInjector;
+import org.ucmtwine.admin.TwineAdminServices;
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.async.ServiceFanout;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.proxy.injector.ComponentLoader;
 import org.ucmtwine.proxy.injector.ServiceInjector;
+import org.ucmtwine.proxy.invoker.Invokers;
+import org.ucmtwine.trace.Trace;
 
 public class Bootstrapper implements FilterImplementor {
 
   /**
    * Begins injection of filters, including the Service and IdocScript injectors
-   * required to load other ucm entities.
+   * required to load other ucm entities. The classes of every properties file
+   * are loaded together by the {@link ComponentLoader}.
    */
   public int doFilter(Workspace ws, DataBinder binder, ExecutionContext ctx) throws DataException, ServiceException {
     String configFileName = (String) ctx.getCachedObject("filterParameter");
 
+    configure();
+
+    injectAdminServices();
+
     try {
       ClassLoader cl = getClass().getClassLoader();
       Enumeration<URL> propFiles = cl.getResources(configFileName);
@@ -43,6 +54,8 @@ public class Bootstrapper implements FilterImplementor {
         propFiles = getResources11g(cl, configFileName);
       }
 
+      List<URL> configFiles = new ArrayList<URL>();
+
       while (propFiles.hasMoreElements()) {
         URL propFile = propFiles.nextElement();
 
@@ -50,16 +63,15 @@ public class Bootstrapper implements FilterImplementor {
           SystemUtils.trace("twine", "Loading config file: " + propFile.toString());
         }
 
-        IClassInjector filterInjector = new FilterInjector();
-        filterInjector.injectClasses(propFile);
+        configFiles.add(propFile);
+      }
 
-        IClassInjector serviceInjector = new ServiceInjector();
-        serviceInjector.injectClasses(propFile);
+      int threads = SharedObjects.getEnvironmentInt(ComponentLoader.THREADS_CONFIG, ComponentLoader.getDefaultThreads());
 
-        IClassInjector scriptInjector = new IdocScriptInjector();
-        scriptInjector.injectClasses(propFile);
+      boolean lazy = SharedObjects.getEnvValueAsBoolean(ComponentLoader.LAZY_CONFIG, false);
+
+      new ComponentLoader(threads, lazy).load(configFiles);
 
-      }
     } catch (IOException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
@@ -68,6 +80,48 @@ public class Bootstrapper implements FilterImplementor {
     return CONTINUE;
   }
 
+  /**
+   * Applies the Twine config entries which must be set before any classes are
+   * injected.
+   */
+  private void configure() {
+    Invokers.setUseReflection(SharedObjects.getEnvValueAsBoolean(Invokers.USE_REFLECTION_CONFIG, false));
+    Metrics.setEnabled(SharedObjects.getEnvValueAsBoolean(Metrics.ENABLED_CONFIG, true));
+
+    int traceEvents = SharedObjects.getEnvironmentInt(Trace.CAPACITY_CONFIG, Trace.DEFAULT_CAPACITY);
+
+    if (traceEvents != Trace.DEFAULT_CAPACITY) {
+      Trace.setCapacity(traceEvents);
+    }
+
+    AsyncServices.configure(
+        SharedObjects.getEnvironmentInt(AsyncServices.THREADS_CONFIG, AsyncServices.getDefaultThreads()),
+        SharedObjects.getEnvironmentInt(AsyncServices.QUEUE_CONFIG, AsyncServices.DEFAULT_QUEUE),
+        SharedObjects.getEnvironmentInt(AsyncServices.TIMEOUT_CONFIG, (int) AsyncServices.DEFAULT_TIMEOUT));
+
+    ServiceFanout.configure(
+        SharedObjects.getEnvironmentInt(ServiceFanout.CONCURRENCY_CONFIG, ServiceFanout.DEFAULT_CONCURRENCY),
+        SharedObjects.getEnvironmentInt(ServiceFanout.TIMEOUT_CONFIG, (int) ServiceFanout.DEFAULT_TIMEOUT),
+        SharedObjects.getEnvironmentInt(ServiceFanout.THREADS_CONFIG, ServiceFanout.DEFAULT_THREADS),
+        SharedObjects.getEnvValueAsBoolean(ServiceFanout.VIRTUAL_THREADS_CONFIG, true));
+
+    if (SharedObjects.getEnvValueAsBoolean(DispatchEvents.ENABLED_CONFIG, true) && DispatchEvents.installJfr()) {
+      SystemUtils.trace("twine", "Installed the JFR event recorder");
+    }
+  }
+
+  /**
+   * Injects Twine's own admin services.
+   */
+  private void injectAdminServices() {
+    try {
+      new ServiceInjector().inject(TwineAdminServices.class);
+
+    } catch (DataException e) {
+      SystemUtils.trace("twine", "Unable to inject admin services: " + e.getMessage());
+    }
+  }
+
   /**
    * Replacement for getResources which works on 11g.
    * 
@@ -0,0 +1,183 @@
+package org.ucmtwine.admin;
+
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.cache.SharedCaches;
+import org.ucmtwine.cache.SharedResultCache;
+import org.ucmtwine.metrics.LatencyHistogram;
+import org.ucmtwine.metrics.MethodMetrics;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.metrics.PrometheusWriter;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.trace.Trace;
+import org.ucmtwine.trace.TraceBuffer;
+import org.ucmtwine.trace.TraceEvent;
+
+/**
+ * Services for inspecting Twine itself. These are injected by the
+ * {@link org.ucmtwine.Bootstrapper} and require admin rights.
+ * 
+ * @author tim
+ */
+public class TwineAdminServices {
+
+  public static final String CACHE_STATS_RESULT_SET = "TwineCacheStats";
+
+  public static final String[] CACHE_STATS_FIELDS = { "name", "partition", "ttlSeconds", "maxEntries", "size", "hits",
+      "misses", "evictions", "expirations" };
+
+  public static final String METRICS_RESULT_SET = "TwineMetrics";
+
+  public static final String[] METRICS_FIELDS = { "id", "name", "kind", "invocations", "errors", "totalMillis",
+      "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros" };
+
+  public static final String TRACE_RESULT_SET = "TwineTrace";
+
+  public static final String[] TRACE_FIELDS = { "sequence", "time", "methodId", "method", "phase", "error", "detail",
+      "message" };
+
+  /**
+   * Local data key of the Prometheus text written by TWINE_GET_METRICS.
+   */
+  public static final String METRICS_TEXT = "TwineMetricsText";
+
+  /**
+   * Value of the format parameter which asks for Prometheus text.
+   */
+  public static final String PROMETHEUS_FORMAT = "prometheus";
+
+  /**
+   * Returns the stats of every shared Idoc result cache in the TwineCacheStats
+   * result set.
+   */
+  @ServiceMethod(name = "TWINE_GET_CACHE_STATS", accessLevel = ServiceMethod.ACCESS_ADMIN | ServiceMethod.ACCESS_GLOBAL)
+  public void getCacheStats(DataBinder binder) {
+    DataResultSet rs = new DataResultSet(CACHE_STATS_FIELDS);
+
+    for (SharedResultCache cache : SharedCaches.getAll()) {
+      List<String> row = new ArrayList<String>();
+
+      row.add(cache.getName());
+      row.add(cache.getPartition().name());
+      row.add(String.valueOf(cache.getTtlMillis() / 1000));
+      row.add(String.valueOf(cache.getMaxEntries()));
+      row.add(String.valueOf(cache.size()));
+      row.add(String.valueOf(cache.getHits()));
+      row.add(String.valueOf(cache.getMisses()));
+      row.add(String.valueOf(cache.getEvictions()));
+      row.add(String.valueOf(cache.getExpirations()));
+
+      rs.addRowWithList(row);
+    }
+
+    binder.addResultSet(CACHE_STATS_RESULT_SET, rs);
+  }
+
+  /**
+   * Returns the invocation metrics of every Twine method that has been called
+   * in the TwineMetrics result set. Each call is timed from the start of
+   * parameter binding until the method returns, on every dispatch path, and
+   * calls answered by a cache aren't counted. Latencies are upper estimates,
+   * see {@link org.ucmtwine.metrics.LatencyHistogram}. With format=prometheus,
+   * the metrics are also written to TwineMetricsText in the Prometheus text
+   * format.
+   */
+  @ServiceMethod(name = "TWINE_GET_METRICS", accessLevel = ServiceMethod.ACCESS_ADMIN | ServiceMethod.ACCESS_GLOBAL)
+  public void getMetrics(DataBinder binder, @Binder(name = "format", required = false) String format) {
+    List<MethodMetrics> all = Metrics.getAll();
+    DataResultSet rs = new DataResultSet(METRICS_FIELDS);
+
+    for (MethodMetrics metrics : all) {
+      LatencyHistogram latency = metrics.getLatency();
+      long invocations = latency.getCount();
+      long sumNanos = latency.getSumNanos();
+
+      List<String> row = new ArrayList<String>();
+
+      row.add(String.valueOf(metrics.getId()));
+      row.add(metrics.getName());
+      row.add(metrics.getKind());
+      row.add(String.valueOf(invocations));
+      row.add(String.valueOf(metrics.getErrors()));
+      row.add(String.valueOf(sumNanos / 1000000L));
+      row.add(String.valueOf((invocations == 0) ? 0 : sumNanos / invocations / 1000L));
+      row.add(String.valueOf(latency.getPercentileNanos(50) / 1000L));
+      row.add(String.valueOf(latency.getPercentileNanos(90) / 1000L));
+      row.add(String.valueOf(latency.getPercentileNanos(99) / 1000L));
+      row.add(String.valueOf(latency.getMaxNanos() / 1000L));
+
+      rs.addRowWithList(row);
+    }
+
+    binder.addResultSet(METRICS_RESULT_SET, rs);
+
+    if (PROMETHEUS_FORMAT.equals(format)) {
+      binder.putLocal(METRICS_TEXT, PrometheusWriter.write(all));
+    }
+  }
+
+  /**
+   * Zeroes the invocation metrics of every Twine method.
+   */
+  @ServiceMethod(name = "TWINE_RESET_METRICS", accessLevel = ServiceMethod.ACCESS_ADMIN | ServiceMethod.ACCESS_GLOBAL)
+  public void resetMetrics() {
+    Metrics.resetAll();
+  }
+
+  /**
+   * Returns the events in the trace buffer, oldest first, in the TwineTrace
+   * result set. TwineTraceRecorded and TwineTraceDropped hold the number of
+   * events recorded since startup and the number lost to a busy slot.
+   * TwineAsyncQueued, TwineAsyncActive, TwineAsyncRejected and
+   * TwineAsyncTimedOut describe the pool which runs asynchronous service
+   * methods.
+   */
+  @ServiceMethod(name = "TWINE_GET_TRACE", accessLevel = ServiceMethod.ACCESS_ADMIN | ServiceMethod.ACCESS_GLOBAL)
+  public void getTrace(DataBinder binder) {
+    DataResultSet rs = new DataResultSet(TRACE_FIELDS);
+
+    for (TraceEvent event : Trace.getEvents()) {
+      Method method = MethodRegistry.getMethod(event.getMethodId());
+      List<String> row = new ArrayList<String>();
+
+      row.add(String.valueOf(event.getSequence()));
+      row.add(String.valueOf(event.getTimeMillis()));
+      row.add(String.valueOf(event.getMethodId()));
+      row.add((method == null) ? "" : method.getDeclaringClass().getName() + "." + method.getName());
+      row.add(Trace.phaseName(event.getPhase()));
+      row.add((event.getCode() == Trace.OK) ? "" : Trace.codeName(event.getCode()));
+      row.add(String.valueOf(event.getDetail()));
+      row.add(event.format());
+
+      rs.addRowWithList(row);
+    }
+
+    binder.addResultSet(TRACE_RESULT_SET, rs);
+
+    TraceBuffer buffer = Trace.getBuffer();
+
+    binder.putLocal("TwineTraceRecorded", String.valueOf((buffer == null) ? 0 : buffer.getRecorded()));
+    binder.putLocal("TwineTraceDropped", String.valueOf((buffer == null) ? 0 : buffer.getDropped()));
+
+    binder.putLocal("TwineAsyncQueued", String.valueOf(AsyncServices.getQueueDepth()));
+    binder.putLocal("TwineAsyncActive", String.valueOf(AsyncServices.getActiveCount()));
+    binder.putLocal("TwineAsyncRejected", String.valueOf(AsyncServices.getRejected()));
+    binder.putLocal("TwineAsyncTimedOut", String.valueOf(AsyncServices.getTimedOut()));
+  }
+
+  /**
+   * Empties every shared Idoc result cache.
+   */
+  @ServiceMethod(name = "TWINE_CLEAR_CACHES", accessLevel = ServiceMethod.ACCESS_ADMIN | ServiceMethod.ACCESS_GLOBAL)
+  public void clearCaches() {
+    SharedCaches.clearAll();
+  }
+}
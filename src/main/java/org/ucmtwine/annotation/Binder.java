@@ -26,4 +26,17 @@ public @interface Binder {
 	 * supplied.
 	 */
 	boolean required() default true;
+
+	/**
+	 * For result sets: pass a read only view of the binder's result set
+	 * instead of a copy. The view has its own cursor but shares the rows, and
+	 * throws an UnsupportedOperationException if the method tries to change
+	 * it.
+	 */
+	boolean readOnly() default false;
+
+	/**
+	 * For result sets: only copy these columns. Ignored for read only views.
+	 */
+	String[] columns() default {};
 }
\ No newline at end of file
@@ -20,7 +20,8 @@ public @interface IdocFunction {
   String name() default "";
 
   /**
-   * Not Implemented: Can the output of the function be cached?
+   * Can the output of the function be cached for the rest of the request? The
+   * method is then called once per distinct set of arguments in a request.
    */
   boolean cacheable() default false;
 }
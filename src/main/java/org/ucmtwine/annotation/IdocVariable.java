@@ -17,4 +17,9 @@ public @interface IdocVariable {
    * Variable name, if not the same as the method name.
    */
   String name() default "";
+
+  /**
+   * Can the value of the variable be cached for the rest of the request?
+   */
+  boolean cacheable() default false;
 }
@@ -0,0 +1,45 @@
+package org.ucmtwine.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines how long an instance of an annotated class lives. Without this
+ * annotation a new instance is created for every service, filter or idoc
+ * call.
+ * 
+ * @author tim
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Scope {
+
+  /**
+   * The instance scope.
+   */
+  Type value() default Type.PROTOTYPE;
+
+  enum Type {
+    /**
+     * A new instance for every call.
+     */
+    PROTOTYPE,
+
+    /**
+     * One instance shared by every thread. The class must be thread safe.
+     */
+    SINGLETON,
+
+    /**
+     * One instance per request thread.
+     */
+    THREAD,
+
+    /**
+     * One instance per request, cached on the ExecutionContext.
+     */
+    REQUEST
+  }
+}
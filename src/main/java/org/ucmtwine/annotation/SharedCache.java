@@ -0,0 +1,57 @@
+package org.ucmtwine.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the results of an Idoc script function or variable across requests.
+ * Use it alongside {@link IdocFunction} or {@link IdocVariable} for values that
+ * stay the same for minutes at a time, such as configuration or taxonomy
+ * lookups.
+ * 
+ * @author tim
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SharedCache {
+
+  /**
+   * How cached results are separated between users.
+   */
+  enum Partition {
+    /**
+     * Every user shares the same results.
+     */
+    NONE,
+
+    /**
+     * Results are cached per user name.
+     */
+    USER,
+
+    /**
+     * Results are shared by users with the same roles and accounts.
+     */
+    SECURITY
+  }
+
+  /**
+   * Seconds a result is kept for. Zero or less keeps results until they are
+   * evicted.
+   */
+  int ttl() default 300;
+
+  /**
+   * The maximum number of results kept. The least recently used are evicted
+   * first.
+   */
+  int maxEntries() default 1000;
+
+  /**
+   * How results are separated between users. Use USER or SECURITY if the
+   * result depends on who is asking.
+   */
+  Partition partition() default Partition.NONE;
+}
@@ -0,0 +1,495 @@
+package org.ucmtwine.async;
+
+import intradoc.common.ExecutionContext;
+import intradoc.common.ServiceException;
+import intradoc.common.SystemUtils;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.ResultSet;
+import intradoc.data.Workspace;
+import intradoc.server.HttpImplementor;
+import intradoc.server.PageMerger;
+import intradoc.server.Service;
+import intradoc.server.ServiceRequestImplementor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.trace.Trace;
+
+/**
+ * Runs asynchronous service methods, those which return a Future, such as a
+ * CompletableFuture, on a bounded pool of Twine threads.
+ * 
+ * <p>
+ * The method is called on the pool with its parameters bound on the request
+ * thread, and a {@link BinderSnapshot} in place of the live binder. The
+ * request thread waits for the method's Future, up to the timeout, then
+ * merges its value into the live binder: a Map's entries become local values,
+ * or result sets if they are ResultSets, and a DataBinder's local values and
+ * result sets are copied.
+ * </p>
+ * 
+ * <p>
+ * The method's own stages can run on {@link #getExecutor()}, a second pool
+ * of the same size. Stages get their own threads so that a method which waits
+ * for its stages can't take every thread the stages need. A stage submitted
+ * from a stage thread, or while the stage queue is full, runs on the
+ * submitting thread instead. An asynchronous service called from a pool
+ * thread, e.g. through a nested service, also runs on that thread rather than
+ * queueing behind itself.
+ * </p>
+ * 
+ * <p>
+ * When the pool's queue is full the request fails at once rather than
+ * waiting. Rejected calls, and calls queued behind at least half of the
+ * queue, are recorded as <code>async</code> trace events with the queue
+ * depth.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class AsyncServices {
+
+  /**
+   * Config entry with the number of pool threads, the number of processors by
+   * default.
+   */
+  public static final String THREADS_CONFIG = "TwineAsyncThreads";
+
+  /**
+   * Config entry with the number of calls which can wait for a thread.
+   */
+  public static final String QUEUE_CONFIG = "TwineAsyncQueue";
+
+  /**
+   * Config entry with the number of milliseconds a request waits for an
+   * asynchronous method.
+   */
+  public static final String TIMEOUT_CONFIG = "TwineAsyncTimeout";
+
+  public static final int DEFAULT_QUEUE = 100;
+
+  public static final long DEFAULT_TIMEOUT = 30000L;
+
+  private static final Object LOCK = new Object();
+
+  /**
+   * Created on first use, under LOCK.
+   */
+  private static volatile ThreadPoolExecutor pool;
+
+  /**
+   * Runs the methods' own stages. Created on first use, under LOCK.
+   */
+  private static volatile ThreadPoolExecutor stages;
+
+  private static final Executor STAGE_EXECUTOR = new Executor() {
+    public void execute(Runnable task) {
+      // a stage waiting for a stage it queued could wait forever
+      if (isStageThread()) {
+        task.run();
+      } else {
+        getStages().execute(task);
+      }
+    }
+  };
+
+  private static volatile int threads = getDefaultThreads();
+
+  private static volatile int queueSize = DEFAULT_QUEUE;
+
+  private static volatile long timeoutMillis = DEFAULT_TIMEOUT;
+
+  private static final AtomicLong rejected = new AtomicLong();
+
+  private static final AtomicLong timedOut = new AtomicLong();
+
+  private AsyncServices() {
+    // Utility class, hide the constructor.
+  }
+
+  public static int getDefaultThreads() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Set the pool's size and the timeout. A pool already started is shut down
+   * once its calls finish, and a new one started when it is next needed.
+   * 
+   * @param threads
+   * @param queueSize
+   * @param timeoutMillis
+   */
+  public static void configure(int threads, int queueSize, long timeoutMillis) {
+    synchronized (LOCK) {
+      AsyncServices.threads = Math.max(1, threads);
+      AsyncServices.queueSize = Math.max(1, queueSize);
+      AsyncServices.timeoutMillis = Math.max(1, timeoutMillis);
+
+      if (pool != null) {
+        pool.shutdown();
+        pool = null;
+      }
+
+      if (stages != null) {
+        stages.shutdown();
+        stages = null;
+      }
+    }
+  }
+
+  /**
+   * The executor for an asynchronous method's own stages, e.g.
+   * <code>CompletableFuture.supplyAsync(task, AsyncServices.getExecutor())</code>
+   * . It has its own threads, so a method may wait for its stages. Stages
+   * submitted from a stage, or while its queue is full, run on the submitting
+   * thread.
+   * 
+   * @return
+   */
+  public static Executor getExecutor() {
+    return STAGE_EXECUTOR;
+  }
+
+  private static ThreadPoolExecutor getPool() {
+    ThreadPoolExecutor current = pool;
+
+    if (current != null) {
+      return current;
+    }
+
+    synchronized (LOCK) {
+      if (pool == null) {
+        pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new WorkerFactory("TwineAsync-", false));
+      }
+
+      return pool;
+    }
+  }
+
+  private static ThreadPoolExecutor getStages() {
+    ThreadPoolExecutor current = stages;
+
+    if (current != null) {
+      return current;
+    }
+
+    synchronized (LOCK) {
+      if (stages == null) {
+        stages = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new WorkerFactory("TwineAsyncStage-", true),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+      }
+
+      return stages;
+    }
+  }
+
+  private static boolean isPoolThread() {
+    return Thread.currentThread() instanceof Worker;
+  }
+
+  private static boolean isStageThread() {
+    Thread current = Thread.currentThread();
+
+    return (current instanceof Worker) && ((Worker) current).stage;
+  }
+
+  /**
+   * The number of calls waiting for a thread.
+   * 
+   * @return
+   */
+  public static int getQueueDepth() {
+    ThreadPoolExecutor current = pool;
+
+    return (current == null) ? 0 : current.getQueue().size();
+  }
+
+  /**
+   * The number of threads running a call.
+   * 
+   * @return
+   */
+  public static int getActiveCount() {
+    ThreadPoolExecutor current = pool;
+
+    return (current == null) ? 0 : current.getActiveCount();
+  }
+
+  public static int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * The number of calls rejected because the queue was full.
+   * 
+   * @return
+   */
+  public static long getRejected() {
+    return rejected.get();
+  }
+
+  /**
+   * The number of calls which didn't finish before the timeout.
+   * 
+   * @return
+   */
+  public static long getTimedOut() {
+    return timedOut.get();
+  }
+
+  /**
+   * Is this an asynchronous method?
+   * 
+   * @param m
+   * @return
+   */
+  public static boolean isAsync(Method m) {
+    return Future.class.isAssignableFrom(m.getReturnType());
+  }
+
+  /**
+   * Check that an asynchronous method only takes parameters which can be used
+   * off the request thread: binder values, the binder and the user.
+   * 
+   * @param m
+   * @throws DataException
+   *           If it takes the workspace, the service or anything else which
+   *           belongs to the request thread
+   */
+  public static void checkMethod(Method m) throws DataException {
+    if (!isAsync(m)) {
+      return;
+    }
+
+    for (Class<?> type : m.getParameterTypes()) {
+      if (type == Workspace.class || ExecutionContext.class.isAssignableFrom(type) || type == PageMerger.class
+          || type == HttpImplementor.class || type == ServiceRequestImplementor.class
+          || type == ServiceFanout.class) {
+        throw new DataException("Method [" + m.getName() + "] returns a Future, so it can't take a "
+            + type.getSimpleName() + ", which belongs to the request thread.");
+      }
+    }
+  }
+
+  /**
+   * Call an asynchronous service method on the pool and wait for its Future.
+   * On a pool thread the method is called on that thread.
+   * 
+   * @param service
+   * @param binding
+   * @return The Future's value
+   * @throws ServiceException
+   *           If the queue is full, the timeout passed or the thread was
+   *           interrupted
+   * @throws InvocationTargetException
+   *           If the method, or its Future, threw
+   */
+  public static Object call(Service service, final MethodBinding binding) throws ServiceException,
+      InvocationTargetException, IllegalAccessException, InstantiationException {
+    final Object[] params = binding.getMarshaller().getValueArray(service);
+    DataBinder binder = service.getBinder();
+    DataBinder snapshot = null;
+
+    for (int i = 0; i < params.length; i++) {
+      if (params[i] != null && params[i] == binder) {
+        if (snapshot == null) {
+          snapshot = new BinderSnapshot(binder);
+        }
+
+        params[i] = snapshot;
+      }
+    }
+
+    final Object target = binding.getInvoker().getTarget(service);
+    long timeout = timeoutMillis;
+
+    Callable<Object> invocation = new Callable<Object>() {
+      public Object call() throws Exception {
+        return (binding.getAdapter() != null) ? binding.getAdapter().invoke(target, params) : binding.getInvoker()
+            .invoke(target, params);
+      }
+    };
+
+    Future<Object> started;
+
+    if (isPoolThread()) {
+      // queueing behind this thread could wait forever on a busy pool
+      FutureTask<Object> inline = new FutureTask<Object>(invocation);
+      inline.run();
+      started = inline;
+
+    } else {
+      started = submit(invocation, binding);
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    Future<?> future = null;
+
+    try {
+      future = (Future<?>) started.get(timeout, TimeUnit.MILLISECONDS);
+
+      return (future == null) ? null : future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+    } catch (TimeoutException e) {
+      cancel(started, future);
+      timedOut.incrementAndGet();
+      Trace.record(Trace.ASYNC, binding.getId(), Trace.TIMEOUT, getQueueDepth());
+
+      throw new ServiceException("The asynchronous service method " + binding.getMethod().getName()
+          + "() did not finish in " + timeout + "ms");
+
+    } catch (InterruptedException e) {
+      cancel(started, future);
+      Thread.currentThread().interrupt();
+
+      throw new ServiceException("Interrupted waiting for " + binding.getMethod().getName() + "()");
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+
+      // the method threw, as opposed to its Future
+      if (future == null && cause instanceof InvocationTargetException) {
+        throw (InvocationTargetException) cause;
+      }
+
+      throw new InvocationTargetException(cause);
+    }
+  }
+
+  private static Future<Object> submit(Callable<Object> invocation, MethodBinding binding) throws ServiceException {
+    ThreadPoolExecutor executor = getPool();
+    int depth = executor.getQueue().size();
+    Future<Object> started;
+
+    try {
+      started = executor.submit(invocation);
+
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      Trace.record(Trace.ASYNC, binding.getId(), Trace.SATURATED, depth);
+
+      throw new ServiceException("Twine's async pool is saturated, " + depth + " calls are waiting for "
+          + executor.getMaximumPoolSize() + " threads");
+    }
+
+    if (depth >= queueSize / 2) {
+      Trace.record(Trace.ASYNC, binding.getId(), Trace.OK, depth);
+    }
+
+    if (Trace.isActive()) {
+      SystemUtils.trace(Trace.SECTION, "Queued " + binding.getMethod().getName() + "() behind " + depth + " calls, "
+          + executor.getActiveCount() + " of " + executor.getMaximumPoolSize() + " threads busy");
+    }
+
+    return started;
+  }
+
+  private static void cancel(Future<?> started, Future<?> future) {
+    started.cancel(true);
+
+    if (future != null) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Merge an asynchronous method's value into the live binder.
+   * 
+   * @param value
+   *          A Map of local values and result sets, a DataBinder, or null
+   * @param binder
+   * @throws ServiceException
+   *           If it is anything else
+   */
+  public static void merge(Object value, DataBinder binder) throws ServiceException {
+    if (value == null) {
+      return;
+    }
+
+    if (value instanceof Map<?, ?>) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        String name = String.valueOf(entry.getKey());
+        Object item = entry.getValue();
+
+        if (item instanceof ResultSet) {
+          binder.addResultSet(name, (ResultSet) item);
+        } else if (item != null) {
+          binder.putLocal(name, item.toString());
+        }
+      }
+
+      return;
+    }
+
+    if (value instanceof DataBinder) {
+      DataBinder result = (DataBinder) value;
+
+      for (Map.Entry<Object, Object> entry : result.getLocalData().entrySet()) {
+        binder.putLocal((String) entry.getKey(), (String) entry.getValue());
+      }
+
+      Enumeration<String> names = result.getResultSetList();
+
+      while (names.hasMoreElements()) {
+        String name = names.nextElement();
+        binder.addResultSet(name, result.getResultSet(name));
+      }
+
+      return;
+    }
+
+    throw new ServiceException("An asynchronous service method's Future must complete with a Map or DataBinder, not "
+        + value.getClass().getName());
+  }
+
+  /**
+   * A pool thread, so that a call made on one can be recognised.
+   */
+  private static class Worker extends Thread {
+    private final boolean stage;
+
+    private Worker(Runnable r, String name, boolean stage) {
+      super(r, name);
+      this.stage = stage;
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final String prefix;
+
+    private final boolean stage;
+
+    private WorkerFactory(String prefix, boolean stage) {
+      this.prefix = prefix;
+      this.stage = stage;
+    }
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Worker(r, prefix + count.incrementAndGet(), stage);
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
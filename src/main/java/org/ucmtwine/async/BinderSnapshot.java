@@ -0,0 +1,148 @@
+package org.ucmtwine.async;
+
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+import intradoc.data.ResultSet;
+
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+
+import org.ucmtwine.parameter.types.ReadOnlyResultSet;
+
+/**
+ * A read-only copy of a request's binder, given to asynchronous service
+ * methods in place of the live binder, which belongs to the request thread.
+ * 
+ * <p>
+ * The local values are copied. Result sets are read only views, so each has
+ * its own cursor but shares its rows with the original. Anything which would
+ * change the snapshot, or one of its result sets, throws an
+ * UnsupportedOperationException; results are returned from the method's
+ * Future instead.
+ * </p>
+ * 
+ * @author tim
+ */
+public class BinderSnapshot extends DataBinder {
+
+  /**
+   * Set once the copy is made.
+   */
+  private boolean sealed;
+
+  public BinderSnapshot(DataBinder binder) {
+    m_localData = new ReadOnlyProperties(binder.getLocalData());
+
+    Enumeration<String> names = binder.getResultSetList();
+
+    while (names.hasMoreElements()) {
+      String name = names.nextElement();
+      ResultSet rs = binder.getResultSet(name);
+
+      if (rs instanceof DataResultSet) {
+        rs = new ReadOnlyResultSet((DataResultSet) rs);
+
+      } else if (rs != null) {
+        DataResultSet copy = new DataResultSet();
+        copy.copy(rs);
+        rs = copy;
+      }
+
+      super.addResultSet(name, rs);
+    }
+
+    sealed = true;
+  }
+
+  @Override
+  public void putLocal(String key, String value) {
+    if (sealed) {
+      throw readOnly();
+    }
+
+    super.putLocal(key, value);
+  }
+
+  @Override
+  public String removeLocal(String key) {
+    if (sealed) {
+      throw readOnly();
+    }
+
+    return super.removeLocal(key);
+  }
+
+  @Override
+  public void setLocalData(Properties localData) {
+    if (sealed) {
+      throw readOnly();
+    }
+
+    super.setLocalData(localData);
+  }
+
+  @Override
+  public ResultSet addResultSet(String name, ResultSet rs) {
+    if (sealed) {
+      throw readOnly();
+    }
+
+    return super.addResultSet(name, rs);
+  }
+
+  @Override
+  public ResultSet removeResultSet(String name) {
+    if (sealed) {
+      throw readOnly();
+    }
+
+    return super.removeResultSet(name);
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("An asynchronous service method's binder is read-only, "
+        + "return its results from the Future instead");
+  }
+
+  /**
+   * Local values which can't be changed once copied.
+   */
+  private static class ReadOnlyProperties extends Properties {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean sealed;
+
+    private ReadOnlyProperties(Properties values) {
+      for (Map.Entry<Object, Object> entry : values.entrySet()) {
+        super.put(entry.getKey(), entry.getValue());
+      }
+
+      sealed = true;
+    }
+
+    @Override
+    public synchronized Object put(Object key, Object value) {
+      if (sealed) {
+        throw readOnly();
+      }
+
+      return super.put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+      throw readOnly();
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends Object, ? extends Object> values) {
+      throw readOnly();
+    }
+
+    @Override
+    public synchronized void clear() {
+      throw readOnly();
+    }
+  }
+}
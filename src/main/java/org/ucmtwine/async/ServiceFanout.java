@@ -0,0 +1,487 @@
+package org.ucmtwine.async;
+
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.DataResultSet;
+import intradoc.data.ResultSet;
+import intradoc.data.Workspace;
+import intradoc.server.Service;
+import intradoc.server.ServiceData;
+import intradoc.server.ServiceManager;
+import intradoc.shared.UserData;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs several sub-services of a request at the same time and gathers their
+ * binders. Declare one as a parameter of a service, filter or Idoc method and
+ * Twine injects a new one for each call.
+ * 
+ * <pre>
+ * Future&lt;DataBinder&gt; info = fanout.submit(&quot;DOC_INFO&quot;);
+ * Future&lt;DataBinder&gt; file = fanout.submit(&quot;GET_FILE&quot;, locals);
+ * List&lt;DataBinder&gt; results = fanout.gather();
+ * </pre>
+ * 
+ * <p>
+ * Each sub-service gets a copy of the request's binder, with its own local
+ * values, and runs as the request's user with the request's workspace, but
+ * outside its transaction. At most {@link #setConcurrency(int)} sub-services
+ * of one call run at once; the rest wait for one to finish. Sub-services run on
+ * virtual threads when the JVM has them, or else on a fixed pool of platform
+ * threads shared by every request.
+ * </p>
+ * 
+ * <p>
+ * The deadline starts with the first submitted sub-service. When it passes, or
+ * a sub-service fails, {@link #gather()} throws and the sub-services which
+ * haven't started are cancelled. Those already running finish on their own and
+ * their results are dropped.
+ * </p>
+ * 
+ * @author tim
+ */
+public class ServiceFanout {
+
+  /**
+   * Config entry with the number of sub-services one call can run at once.
+   */
+  public static final String CONCURRENCY_CONFIG = "TwineFanoutConcurrency";
+
+  /**
+   * Config entry with the number of milliseconds a call's sub-services may
+   * take.
+   */
+  public static final String TIMEOUT_CONFIG = "TwineFanoutTimeout";
+
+  /**
+   * Config entry with the size of the platform thread pool, used when virtual
+   * threads aren't available or are turned off.
+   */
+  public static final String THREADS_CONFIG = "TwineFanoutThreads";
+
+  /**
+   * Config entry which turns off virtual threads when set to false.
+   */
+  public static final String VIRTUAL_THREADS_CONFIG = "TwineFanoutVirtualThreads";
+
+  public static final int DEFAULT_CONCURRENCY = 4;
+
+  public static final long DEFAULT_TIMEOUT = 30000L;
+
+  public static final int DEFAULT_THREADS = 32;
+
+  private static final Object LOCK = new Object();
+
+  /**
+   * Created on first use. Guarded by LOCK.
+   */
+  private static ExecutorService executor;
+
+  /**
+   * Whether the executor runs virtual threads. Guarded by LOCK.
+   */
+  private static boolean virtual;
+
+  private static volatile int defaultConcurrency = DEFAULT_CONCURRENCY;
+
+  private static volatile long defaultTimeout = DEFAULT_TIMEOUT;
+
+  private static volatile int poolThreads = DEFAULT_THREADS;
+
+  private static volatile boolean useVirtualThreads = true;
+
+  private final Workspace workspace;
+
+  private final DataBinder binder;
+
+  private final UserData user;
+
+  private int concurrency = defaultConcurrency;
+
+  private long timeoutMillis = defaultTimeout;
+
+  /**
+   * Every submitted sub-service, in order.
+   */
+  private final List<Call> calls = new ArrayList<Call>();
+
+  /**
+   * Sub-services waiting for one of this call's workers. Guarded by this.
+   */
+  private final LinkedList<Call> pending = new LinkedList<Call>();
+
+  /**
+   * The number of workers running this call's sub-services. Guarded by this.
+   */
+  private int workers;
+
+  /**
+   * System.nanoTime() when the deadline passes, set by the first submit.
+   */
+  private long deadline;
+
+  /**
+   * @param service
+   *          The request which runs the sub-services
+   */
+  public ServiceFanout(Service service) {
+    this(service.getWorkspace(), service.getBinder(), service.getUserData());
+  }
+
+  /**
+   * @param ws
+   *          The workspace the sub-services use
+   * @param binder
+   *          The binder each sub-service gets a copy of
+   * @param user
+   *          The user the sub-services run as
+   */
+  public ServiceFanout(Workspace ws, DataBinder binder, UserData user) {
+    this.workspace = ws;
+    this.binder = binder;
+    this.user = user;
+  }
+
+  /**
+   * Set the defaults for new fanouts, and the platform thread pool. A pool
+   * already started is shut down once its sub-services finish, and a new one
+   * started when it is next needed.
+   * 
+   * @param concurrency
+   * @param timeoutMillis
+   * @param threads
+   *          The platform pool size
+   * @param useVirtualThreads
+   *          Whether to use virtual threads when the JVM has them
+   */
+  public static void configure(int concurrency, long timeoutMillis, int threads, boolean useVirtualThreads) {
+    synchronized (LOCK) {
+      ServiceFanout.defaultConcurrency = Math.max(1, concurrency);
+      ServiceFanout.defaultTimeout = Math.max(1, timeoutMillis);
+      ServiceFanout.poolThreads = Math.max(1, threads);
+      ServiceFanout.useVirtualThreads = useVirtualThreads;
+
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
+  }
+
+  /**
+   * Do sub-services run on virtual threads?
+   * 
+   * @return
+   */
+  public static boolean isVirtual() {
+    synchronized (LOCK) {
+      getExecutor();
+      return virtual;
+    }
+  }
+
+  private static ExecutorService getExecutor() {
+    synchronized (LOCK) {
+      if (executor == null) {
+        executor = useVirtualThreads ? createVirtualExecutor() : null;
+        virtual = (executor != null);
+
+        if (executor == null) {
+          executor = new ThreadPoolExecutor(poolThreads, poolThreads, 0L, TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+        }
+      }
+
+      return executor;
+    }
+  }
+
+  /**
+   * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(...).factory()),
+   * through reflection as Twine is built for older JVMs.
+   * 
+   * @return The executor, or null if the JVM doesn't have virtual threads
+   */
+  private static ExecutorService createVirtualExecutor() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "TwineFanout-", 1L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+      Method create = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+      return (ExecutorService) create.invoke(null, factory);
+
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Set the number of this call's sub-services which can run at once.
+   * 
+   * @param concurrency
+   * @return this
+   */
+  public ServiceFanout setConcurrency(int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+    return this;
+  }
+
+  /**
+   * Set the number of milliseconds, from the first submitted sub-service,
+   * which this call's sub-services may take.
+   * 
+   * @param timeoutMillis
+   * @return this
+   */
+  public ServiceFanout setTimeout(long timeoutMillis) {
+    this.timeoutMillis = Math.max(1, timeoutMillis);
+    return this;
+  }
+
+  /**
+   * Run a sub-service with a copy of the request's binder.
+   * 
+   * @param serviceName
+   * @return The sub-service's binder, once it has run
+   */
+  public Future<DataBinder> submit(String serviceName) {
+    return submit(serviceName, null);
+  }
+
+  /**
+   * Run a sub-service with a copy of the request's binder.
+   * 
+   * @param serviceName
+   * @param locals
+   *          Local values to set in the copy, may be null
+   * @return The sub-service's binder, once it has run
+   */
+  public Future<DataBinder> submit(String serviceName, Map<String, String> locals) {
+    DataBinder copy = copyBinder(binder);
+
+    if (locals != null) {
+      for (Map.Entry<String, String> entry : locals.entrySet()) {
+        copy.putLocal(entry.getKey(), entry.getValue());
+      }
+    }
+
+    copy.putLocal("IdcService", serviceName);
+
+    Call call = new Call(serviceName, task(serviceName, copy));
+    boolean startWorker;
+
+    if (calls.isEmpty()) {
+      deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    calls.add(call);
+
+    synchronized (this) {
+      pending.add(call);
+      startWorker = (workers < concurrency);
+
+      if (startWorker) {
+        workers++;
+      }
+    }
+
+    if (startWorker) {
+      getExecutor().execute(new Worker());
+    }
+
+    return call;
+  }
+
+  private Callable<DataBinder> task(final String serviceName, final DataBinder serviceBinder) {
+    return new Callable<DataBinder>() {
+      public DataBinder call() throws Exception {
+        execute(serviceName, serviceBinder);
+        return serviceBinder;
+      }
+    };
+  }
+
+  /**
+   * The number of submitted sub-services.
+   * 
+   * @return
+   */
+  public int size() {
+    return calls.size();
+  }
+
+  /**
+   * Wait for every submitted sub-service.
+   * 
+   * @return Their binders, in the order they were submitted
+   * @throws ServiceException
+   *           If one failed or the deadline passed, when the rest are
+   *           cancelled
+   */
+  public List<DataBinder> gather() throws ServiceException {
+    List<DataBinder> results = new ArrayList<DataBinder>(calls.size());
+
+    for (Call call : calls) {
+      try {
+        results.add(call.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+
+      } catch (TimeoutException e) {
+        cancel();
+        throw new ServiceException("Sub-service " + call.serviceName + " did not finish in " + timeoutMillis + "ms");
+
+      } catch (InterruptedException e) {
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new ServiceException("Interrupted waiting for sub-service " + call.serviceName);
+
+      } catch (ExecutionException e) {
+        cancel();
+        Throwable cause = e.getCause();
+        throw new ServiceException("Sub-service " + call.serviceName + " failed: " + cause.getMessage(), cause);
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * Cancel the sub-services which haven't started.
+   */
+  private void cancel() {
+    for (Call call : calls) {
+      call.cancel(false);
+    }
+  }
+
+  /**
+   * Run a sub-service on the current thread. The binder holds the service's
+   * parameters and receives its results.
+   * 
+   * @param serviceName
+   * @param serviceBinder
+   * @throws DataException
+   * @throws ServiceException
+   *           If the service failed
+   */
+  protected void execute(String serviceName, DataBinder serviceBinder) throws DataException, ServiceException {
+    ServiceData serviceData = ServiceManager.getFullService(serviceName);
+
+    if (serviceData == null) {
+      throw new DataException("Unknown service " + serviceName);
+    }
+
+    Service service = ServiceManager.createService(serviceData.m_classID, workspace, null, serviceBinder,
+        serviceData);
+
+    try {
+      service.setUserData(user);
+      service.initDelegatedObjects();
+      service.globalSecurityCheck();
+      service.preActions();
+      service.doActions();
+      service.postActions();
+
+    } finally {
+      service.clear();
+    }
+  }
+
+  /**
+   * Copy the local values and result sets of a binder.
+   */
+  private static DataBinder copyBinder(DataBinder binder) {
+    DataBinder copy = new DataBinder();
+
+    for (Map.Entry<Object, Object> entry : binder.getLocalData().entrySet()) {
+      copy.putLocal((String) entry.getKey(), (String) entry.getValue());
+    }
+
+    Enumeration<String> names = binder.getResultSetList();
+
+    while (names.hasMoreElements()) {
+      String name = names.nextElement();
+      ResultSet rs = binder.getResultSet(name);
+
+      if (rs != null) {
+        DataResultSet rsCopy = new DataResultSet();
+        rsCopy.copy(rs);
+        copy.addResultSet(name, rsCopy);
+      }
+    }
+
+    return copy;
+  }
+
+  /**
+   * Takes the next pending sub-service, or retires the worker if there are
+   * none.
+   */
+  private synchronized Call next() {
+    Call call = pending.poll();
+
+    if (call == null) {
+      workers--;
+    }
+
+    return call;
+  }
+
+  /**
+   * Runs this call's pending sub-services one after another, so no more than
+   * the concurrency run at once however many are submitted.
+   */
+  private class Worker implements Runnable {
+    public void run() {
+      Call call;
+
+      while ((call = next()) != null) {
+        call.run();
+      }
+    }
+  }
+
+  /**
+   * A submitted sub-service. Doesn't run if it is cancelled first.
+   */
+  private class Call extends FutureTask<DataBinder> {
+    private final String serviceName;
+
+    private Call(String serviceName, Callable<DataBinder> task) {
+      super(task);
+      this.serviceName = serviceName;
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "TwineFanout-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package org.ucmtwine.cache;
+
+import java.util.Arrays;
+
+/**
+ * Identifies one call of a cacheable method: the method ID from the
+ * {@link org.ucmtwine.proxy.injector.MethodRegistry} and the converted
+ * arguments it was called with. Injected parameters are not part of the key.
+ * 
+ * @author tim
+ */
+public final class CacheKey {
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  private final int methodId;
+
+  private final Object[] arguments;
+
+  private final int hash;
+
+  /**
+   * @param methodId
+   *          The registry ID of the method
+   * @param arguments
+   *          The converted arguments. The array is kept, not copied, so it must
+   *          not be modified afterwards.
+   */
+  public CacheKey(int methodId, Object[] arguments) {
+    this.methodId = methodId;
+    this.arguments = (arguments == null) ? NO_ARGUMENTS : arguments;
+    this.hash = 31 * methodId + Arrays.hashCode(this.arguments);
+  }
+
+  public int getMethodId() {
+    return methodId;
+  }
+
+  public int hashCode() {
+    return hash;
+  }
+
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+
+    if (!(obj instanceof CacheKey)) {
+      return false;
+    }
+
+    CacheKey other = (CacheKey) obj;
+
+    return methodId == other.methodId && hash == other.hash && Arrays.equals(arguments, other.arguments);
+  }
+
+  public String toString() {
+    return methodId + Arrays.toString(arguments);
+  }
+}
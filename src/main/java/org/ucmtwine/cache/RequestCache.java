@@ -0,0 +1,119 @@
+package org.ucmtwine.cache;
+
+import intradoc.common.ExecutionContext;
+import intradoc.common.SystemUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+/**
+ * Memoizes the results of cacheable Idoc functions and variables for the
+ * lifetime of one request. The cache is stored on the request's
+ * {@link ExecutionContext}, so it is only ever used by one thread and is thrown
+ * away with the context.
+ * 
+ * <p>
+ * Hits and misses are counted per request and written to the
+ * {@link #TRACE_SECTION} trace section when it is active.
+ * </p>
+ * 
+ * @author tim
+ */
+public class RequestCache {
+
+  /**
+   * The ExecutionContext cached object key the cache is stored under.
+   */
+  public static final String CACHED_OBJECT_KEY = "TwineRequestCache";
+
+  /**
+   * Trace section for cache hits and misses.
+   */
+  public static final String TRACE_SECTION = "twinecache";
+
+  /**
+   * Returned by {@link #get(CacheKey)} when there is no cached result, because
+   * null is a valid result.
+   */
+  public static final Object MISS = new Object();
+
+  private static final Object NULL_RESULT = new Object();
+
+  private final Map<CacheKey, Object> results = new HashMap<CacheKey, Object>();
+
+  private int hits = 0;
+
+  private int misses = 0;
+
+  /**
+   * Returns the cache for the request, creating it the first time.
+   * 
+   * @param ctx
+   * @return
+   */
+  public static RequestCache forContext(ExecutionContext ctx) {
+    RequestCache cache = (RequestCache) ctx.getCachedObject(CACHED_OBJECT_KEY);
+
+    if (cache == null) {
+      cache = new RequestCache();
+      ctx.setCachedObject(CACHED_OBJECT_KEY, cache);
+    }
+
+    return cache;
+  }
+
+  /**
+   * Returns the cached result for a call, or {@link #MISS}.
+   * 
+   * @param key
+   * @return
+   */
+  public Object get(CacheKey key) {
+    Object result = results.get(key);
+
+    if (result == null) {
+      misses++;
+      trace("miss", key);
+      return MISS;
+    }
+
+    hits++;
+    trace("hit", key);
+
+    return (result == NULL_RESULT) ? null : result;
+  }
+
+  /**
+   * Store the result of a call.
+   * 
+   * @param key
+   * @param result
+   */
+  public void put(CacheKey key, Object result) {
+    results.put(key, (result == null) ? NULL_RESULT : result);
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  public int size() {
+    return results.size();
+  }
+
+  private void trace(String event, CacheKey key) {
+    if (SystemUtils.isActiveTrace(TRACE_SECTION)) {
+      MethodBinding binding = MethodRegistry.getBinding(key.getMethodId());
+      String method = (binding == null) ? "" : binding.getMethod().getName() + " ";
+
+      SystemUtils.trace(TRACE_SECTION, event + " " + method + key + " (hits: " + hits + ", misses: " + misses + ")");
+    }
+  }
+}
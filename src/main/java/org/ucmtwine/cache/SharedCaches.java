@@ -0,0 +1,75 @@
+package org.ucmtwine.cache;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ucmtwine.annotation.SharedCache;
+import org.ucmtwine.proxy.MethodBinding;
+
+/**
+ * Holds the {@link SharedResultCache} of every method annotated with
+ * {@link SharedCache}, by method ID, so the admin services can report and clear
+ * them.
+ * 
+ * @author tim
+ */
+public final class SharedCaches {
+
+  private static final ConcurrentMap<Integer, SharedResultCache> CACHES = new ConcurrentHashMap<Integer, SharedResultCache>();
+
+  private SharedCaches() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Returns the shared cache for a bound method, creating it from the method's
+   * {@link SharedCache} annotation the first time, or null if the method isn't
+   * annotated.
+   * 
+   * @param binding
+   * @return
+   */
+  public static SharedResultCache forBinding(MethodBinding binding) {
+    Integer id = Integer.valueOf(binding.getId());
+    SharedResultCache cache = CACHES.get(id);
+
+    if (cache != null) {
+      return cache;
+    }
+
+    Method method = binding.getMethod();
+    SharedCache annotation = method.getAnnotation(SharedCache.class);
+
+    if (annotation == null) {
+      return null;
+    }
+
+    SharedResultCache newCache = new SharedResultCache(method.getDeclaringClass().getName() + "." + method.getName(),
+        annotation.ttl() * 1000L, annotation.maxEntries(), annotation.partition());
+
+    cache = CACHES.putIfAbsent(id, newCache);
+
+    return (cache == null) ? newCache : cache;
+  }
+
+  /**
+   * Returns every shared cache.
+   * 
+   * @return
+   */
+  public static List<SharedResultCache> getAll() {
+    return new ArrayList<SharedResultCache>(CACHES.values());
+  }
+
+  /**
+   * Remove every entry from every shared cache.
+   */
+  public static void clearAll() {
+    for (SharedResultCache cache : CACHES.values()) {
+      cache.clear();
+    }
+  }
+}
@@ -0,0 +1,352 @@
+package org.ucmtwine.cache;
+
+import intradoc.shared.UserAttribInfo;
+import intradoc.shared.UserData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ucmtwine.annotation.SharedCache;
+
+/**
+ * A bounded, expiring result cache for one method, shared by every request.
+ * 
+ * <p>
+ * Entries are spread over a number of segments by key hash, each an access
+ * ordered map with its own lock, so threads only contend when they hit the same
+ * segment. Each segment evicts its least recently used entry when full, which
+ * makes eviction approximately LRU over the whole cache.
+ * </p>
+ * 
+ * @author tim
+ */
+public class SharedResultCache {
+
+  /**
+   * Returned by {@link #get(CacheKey, UserData)} when there is no cached
+   * result.
+   */
+  public static final Object MISS = RequestCache.MISS;
+
+  private static final Object NULL_RESULT = new Object();
+
+  private static final int MAX_SEGMENTS = 16;
+
+  /**
+   * Segments are only added once each would hold at least this many entries.
+   */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  private final String name;
+
+  private final long ttlMillis;
+
+  private final int maxEntries;
+
+  private final SharedCache.Partition partition;
+
+  private final Segment[] segments;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final AtomicLong expirations = new AtomicLong();
+
+  /**
+   * @param name
+   *          Name reported in the cache stats
+   * @param ttlMillis
+   *          Milliseconds an entry is kept, zero or less to never expire
+   * @param maxEntries
+   * @param partition
+   */
+  public SharedResultCache(String name, long ttlMillis, int maxEntries, SharedCache.Partition partition) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("Cache " + name + " must allow at least one entry");
+    }
+
+    this.name = name;
+    this.ttlMillis = ttlMillis;
+    this.maxEntries = maxEntries;
+    this.partition = partition;
+
+    int segmentCount = 1;
+
+    while (segmentCount < MAX_SEGMENTS && maxEntries / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+      segmentCount *= 2;
+    }
+
+    int segmentSize = (maxEntries + segmentCount - 1) / segmentCount;
+
+    segments = new Segment[segmentCount];
+
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+  }
+
+  /**
+   * Returns the cached result for a call made by a user, or {@link #MISS}.
+   * 
+   * @param key
+   * @param user
+   *          The user making the call, only needed when partitioned
+   * @return
+   */
+  public Object get(CacheKey key, UserData user) {
+    Object partitionedKey = partitionKey(key, user);
+
+    if (partitionedKey == null) {
+      misses.incrementAndGet();
+      return MISS;
+    }
+
+    Segment segment = segmentFor(partitionedKey);
+    CachedResult entry;
+
+    synchronized (segment) {
+      entry = segment.get(partitionedKey);
+
+      if (entry != null && entry.isExpired(currentTimeMillis())) {
+        segment.remove(partitionedKey);
+        expirations.incrementAndGet();
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      return MISS;
+    }
+
+    hits.incrementAndGet();
+
+    return (entry.value == NULL_RESULT) ? null : entry.value;
+  }
+
+  /**
+   * Store the result of a call made by a user.
+   * 
+   * @param key
+   * @param user
+   * @param result
+   */
+  public void put(CacheKey key, UserData user, Object result) {
+    Object partitionedKey = partitionKey(key, user);
+
+    if (partitionedKey == null) {
+      return;
+    }
+
+    long expiresAt = (ttlMillis > 0) ? currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+    CachedResult entry = new CachedResult((result == null) ? NULL_RESULT : result, expiresAt);
+
+    Segment segment = segmentFor(partitionedKey);
+
+    synchronized (segment) {
+      segment.put(partitionedKey, entry);
+    }
+  }
+
+  /**
+   * Remove every entry. The stats are kept.
+   */
+  public void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getTtlMillis() {
+    return ttlMillis;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public SharedCache.Partition getPartition() {
+    return partition;
+  }
+
+  public int size() {
+    int size = 0;
+
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+
+    return size;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  /**
+   * The clock used for expiry.
+   * 
+   * @return
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private Segment segmentFor(Object key) {
+    int h = key.hashCode();
+
+    // spread the high bits down, as CacheKey hashes are mostly small ints
+    h ^= (h >>> 16);
+
+    return segments[h & (segments.length - 1)];
+  }
+
+  /**
+   * Returns the key an entry is stored under for the cache's partition, or
+   * null if the call can't be cached because the user is unknown.
+   * 
+   * @param key
+   * @param user
+   * @return
+   */
+  private Object partitionKey(CacheKey key, UserData user) {
+    switch (partition) {
+    case USER:
+      return (user == null) ? null : new PartitionedKey(user.m_name, key);
+
+    case SECURITY:
+      return (user == null) ? null : new PartitionedKey(getSecurityKey(user), key);
+
+    default:
+      return key;
+    }
+  }
+
+  /**
+   * Build a string of a user's roles and accounts with their privileges, which
+   * is the same for any two users with the same access.
+   * 
+   * @param user
+   * @return
+   */
+  static String getSecurityKey(UserData user) {
+    List<String> attributes = new ArrayList<String>();
+
+    addAttributes(attributes, user, "role");
+    addAttributes(attributes, user, "account");
+
+    Collections.sort(attributes);
+
+    StringBuilder sb = new StringBuilder();
+
+    for (String attribute : attributes) {
+      sb.append(attribute).append(',');
+    }
+
+    return sb.toString();
+  }
+
+  private static void addAttributes(List<String> attributes, UserData user, String type) {
+    List<?> infos = user.getAttributes(type);
+
+    if (infos == null) {
+      return;
+    }
+
+    for (Object info : infos) {
+      UserAttribInfo attrib = (UserAttribInfo) info;
+      attributes.add(type + ":" + attrib.m_attribName + ":" + attrib.m_attribPrivilege);
+    }
+  }
+
+  private static class CachedResult {
+    final Object value;
+
+    final long expiresAt;
+
+    CachedResult(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
+
+  /**
+   * An access ordered map which evicts its eldest entry when full. Guarded by
+   * its own monitor.
+   */
+  private class Segment extends LinkedHashMap<Object, CachedResult> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Object, CachedResult> eldest) {
+      if (size() > capacity) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class PartitionedKey {
+    private final String partition;
+
+    private final CacheKey key;
+
+    PartitionedKey(String partition, CacheKey key) {
+      this.partition = (partition == null) ? "" : partition;
+      this.key = key;
+    }
+
+    public int hashCode() {
+      return 31 * key.hashCode() + partition.hashCode();
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PartitionedKey)) {
+        return false;
+      }
+
+      PartitionedKey other = (PartitionedKey) obj;
+
+      return key.equals(other.key) && partition.equals(other.partition);
+    }
+  }
+}
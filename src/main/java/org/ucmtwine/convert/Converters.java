@@ -0,0 +1,314 @@
+package org.ucmtwine.convert;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.balusc.util.ObjectConverter;
+
+/**
+ * The table of type converters used for parameter and return value
+ * conversion, looked up by source class then target class.
+ * 
+ * <p>
+ * Lookups use the classes themselves as keys, so nothing is built per
+ * conversion. A converter registered for a class also handles its subclasses,
+ * e.g. the Number converters handle Long. Each resolved pair, including misses,
+ * is cached.
+ * </p>
+ * 
+ * <p>
+ * Components can add converters with {@link #register(Class, Class, IConverter)}
+ * once when they start, either directly or through an
+ * {@link IConverterProvider}.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class Converters {
+
+  /**
+   * Cached in place of a missing converter.
+   */
+  private static final IConverter<Object, Object> NO_CONVERTER = new IConverter<Object, Object>() {
+    public Object convert(Object value) {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  /**
+   * Converters as registered, by source then target class.
+   */
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?, ?>>> REGISTERED = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?, ?>>>();
+
+  /**
+   * Converters resolved for the concrete source classes seen so far.
+   */
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?, ?>>> RESOLVED = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?, ?>>>();
+
+  static {
+    BuiltInConverter.registerAll();
+  }
+
+  private Converters() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Register a converter, replacing any existing converter for the same
+   * types. Meant to be called while Twine starts, as it empties the resolved
+   * lookup cache.
+   * 
+   * @param from
+   * @param to
+   * @param converter
+   */
+  public static <F, T> void register(Class<F> from, Class<T> to, IConverter<? super F, ? extends T> converter) {
+    put(from, to, converter);
+    RESOLVED.clear();
+  }
+
+  private static void put(Class<?> from, Class<?> to, IConverter<?, ?> converter) {
+    ConcurrentMap<Class<?>, IConverter<?, ?>> byTarget = REGISTERED.get(from);
+
+    if (byTarget == null) {
+      ConcurrentMap<Class<?>, IConverter<?, ?>> newMap = new ConcurrentHashMap<Class<?>, IConverter<?, ?>>();
+      byTarget = REGISTERED.putIfAbsent(from, newMap);
+
+      if (byTarget == null) {
+        byTarget = newMap;
+      }
+    }
+
+    byTarget.put(to, converter);
+  }
+
+  /**
+   * Returns the converter for a source and target class, or null if there
+   * isn't one.
+   * 
+   * @param from
+   * @param to
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static IConverter<Object, Object> find(Class<?> from, Class<?> to) {
+    ConcurrentMap<Class<?>, IConverter<?, ?>> byTarget = RESOLVED.get(from);
+
+    if (byTarget == null) {
+      ConcurrentMap<Class<?>, IConverter<?, ?>> newMap = new ConcurrentHashMap<Class<?>, IConverter<?, ?>>();
+      byTarget = RESOLVED.putIfAbsent(from, newMap);
+
+      if (byTarget == null) {
+        byTarget = newMap;
+      }
+    }
+
+    IConverter<?, ?> converter = byTarget.get(to);
+
+    if (converter == null) {
+      converter = resolve(from, to);
+      byTarget.put(to, converter);
+    }
+
+    return (converter == NO_CONVERTER) ? null : (IConverter<Object, Object>) converter;
+  }
+
+  /**
+   * Can a value of one class be converted to another?
+   * 
+   * @param from
+   * @param to
+   * @return
+   */
+  public static boolean canConvert(Class<?> from, Class<?> to) {
+    return to.isAssignableFrom(from) || find(from, to) != null;
+  }
+
+  /**
+   * Convert the given object value to the given class.
+   * 
+   * @param from
+   *          The object value to be converted.
+   * @param to
+   *          The type class which the given object should be converted to.
+   * @return The converted object value.
+   * @throws UnsupportedOperationException
+   *           If no suitable converter can be found.
+   * @throws RuntimeException
+   *           If conversion failed.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T convert(Object from, Class<T> to) {
+    if (from == null) {
+      return null;
+    }
+
+    Class<?> fromClass = from.getClass();
+
+    if (to.isAssignableFrom(fromClass)) {
+      return to.cast(from);
+    }
+
+    IConverter<Object, Object> converter = find(fromClass, to);
+
+    if (converter == null) {
+      throw new UnsupportedOperationException("Cannot convert from " + fromClass.getName() + " to " + to.getName()
+          + ". Requested converter does not exist.");
+    }
+
+    try {
+      // primitive classes can't cast their wrappers
+      return (T) converter.convert(from);
+
+    } catch (RuntimeException e) {
+      throw new RuntimeException("Cannot convert from " + fromClass.getName() + " to " + to.getName()
+          + ". Conversion failed with " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Find the converter for the closest registered superclass or interface of
+   * the source class.
+   */
+  private static IConverter<?, ?> resolve(Class<?> from, Class<?> to) {
+    for (Class<?> c = from; c != null; c = c.getSuperclass()) {
+      IConverter<?, ?> converter = getRegistered(c, to);
+
+      if (converter != null) {
+        return converter;
+      }
+
+      for (Class<?> i : c.getInterfaces()) {
+        converter = getRegistered(i, to);
+
+        if (converter != null) {
+          return converter;
+        }
+      }
+    }
+
+    return NO_CONVERTER;
+  }
+
+  private static IConverter<?, ?> getRegistered(Class<?> from, Class<?> to) {
+    ConcurrentMap<Class<?>, IConverter<?, ?>> byTarget = REGISTERED.get(from);
+
+    return (byTarget == null) ? null : byTarget.get(to);
+  }
+
+  /**
+   * The converters Twine starts with. One class handles them all, switching
+   * on a code, so each conversion is a direct call.
+   */
+  private static final class BuiltInConverter implements IConverter<Object, Object> {
+    private static final int INTEGER_TO_BOOLEAN = 0;
+    private static final int BOOLEAN_TO_INTEGER = 1;
+    private static final int DOUBLE_TO_BIG_DECIMAL = 2;
+    private static final int BIG_DECIMAL_TO_DOUBLE = 3;
+    private static final int STRING_TO_INTEGER = 4;
+    private static final int STRING_TO_LONG = 5;
+    private static final int STRING_TO_BOOLEAN = 6;
+    private static final int STRING_TO_FLOAT = 7;
+    private static final int STRING_TO_DOUBLE = 8;
+    private static final int TO_STRING = 9;
+    private static final int DATE_TO_STRING = 10;
+    private static final int NUMBER_TO_INTEGER = 11;
+    private static final int NUMBER_TO_LONG = 12;
+    private static final int NUMBER_TO_FLOAT = 13;
+    private static final int NUMBER_TO_DOUBLE = 14;
+    private static final int NUMBER_TO_BOOLEAN = 15;
+    private static final int UNBOX = 16;
+
+    private final int code;
+
+    private BuiltInConverter(int code) {
+      this.code = code;
+    }
+
+    public Object convert(Object value) {
+      switch (code) {
+      case INTEGER_TO_BOOLEAN:
+        return ObjectConverter.integerToBoolean((Integer) value);
+      case BOOLEAN_TO_INTEGER:
+        return ObjectConverter.booleanToInteger((Boolean) value);
+      case DOUBLE_TO_BIG_DECIMAL:
+        return ObjectConverter.doubleToBigDecimal((Double) value);
+      case BIG_DECIMAL_TO_DOUBLE:
+        return ObjectConverter.bigDecimalToDouble((BigDecimal) value);
+      case STRING_TO_INTEGER:
+        return Integer.valueOf((String) value);
+      case STRING_TO_LONG:
+        return Long.valueOf((String) value);
+      case STRING_TO_BOOLEAN:
+        return Boolean.valueOf((String) value);
+      case STRING_TO_FLOAT:
+        return Float.valueOf((String) value);
+      case STRING_TO_DOUBLE:
+        return Double.valueOf((String) value);
+      case TO_STRING:
+        return value.toString();
+      case DATE_TO_STRING:
+        return ObjectConverter.longToString((Date) value);
+      case NUMBER_TO_INTEGER:
+        return Integer.valueOf(((Number) value).intValue());
+      case NUMBER_TO_LONG:
+        return Long.valueOf(((Number) value).longValue());
+      case NUMBER_TO_FLOAT:
+        return Float.valueOf(((Number) value).floatValue());
+      case NUMBER_TO_DOUBLE:
+        return Double.valueOf(((Number) value).doubleValue());
+      case NUMBER_TO_BOOLEAN:
+        return ((Number) value).longValue() == 0 ? Boolean.FALSE : Boolean.TRUE;
+      default:
+        // the wrapper is what a primitive converts to
+        return value;
+      }
+    }
+
+    private static void add(Class<?> from, Class<?> to, int code) {
+      put(from, to, new BuiltInConverter(code));
+    }
+
+    static void registerAll() {
+      add(Integer.class, Boolean.class, INTEGER_TO_BOOLEAN);
+      add(Boolean.class, Integer.class, BOOLEAN_TO_INTEGER);
+      add(Double.class, BigDecimal.class, DOUBLE_TO_BIG_DECIMAL);
+      add(BigDecimal.class, Double.class, BIG_DECIMAL_TO_DOUBLE);
+
+      add(String.class, Integer.class, STRING_TO_INTEGER);
+      add(String.class, int.class, STRING_TO_INTEGER);
+      add(String.class, Long.class, STRING_TO_LONG);
+      add(String.class, long.class, STRING_TO_LONG);
+      add(String.class, Boolean.class, STRING_TO_BOOLEAN);
+      add(String.class, boolean.class, STRING_TO_BOOLEAN);
+      add(String.class, Float.class, STRING_TO_FLOAT);
+      add(String.class, float.class, STRING_TO_FLOAT);
+      add(String.class, Double.class, STRING_TO_DOUBLE);
+      add(String.class, double.class, STRING_TO_DOUBLE);
+
+      add(Number.class, String.class, TO_STRING);
+      add(Boolean.class, String.class, TO_STRING);
+      add(Date.class, String.class, DATE_TO_STRING);
+
+      add(Number.class, Integer.class, NUMBER_TO_INTEGER);
+      add(Number.class, int.class, NUMBER_TO_INTEGER);
+      add(Number.class, Long.class, NUMBER_TO_LONG);
+      add(Number.class, long.class, NUMBER_TO_LONG);
+      add(Number.class, Float.class, NUMBER_TO_FLOAT);
+      add(Number.class, float.class, NUMBER_TO_FLOAT);
+      add(Number.class, Double.class, NUMBER_TO_DOUBLE);
+      add(Number.class, double.class, NUMBER_TO_DOUBLE);
+      add(Number.class, Boolean.class, NUMBER_TO_BOOLEAN);
+      add(Number.class, boolean.class, NUMBER_TO_BOOLEAN);
+
+      // a wrapper is already the boxed form of its primitive
+      add(Integer.class, int.class, UNBOX);
+      add(Long.class, long.class, UNBOX);
+      add(Float.class, float.class, UNBOX);
+      add(Double.class, double.class, UNBOX);
+      add(Boolean.class, boolean.class, UNBOX);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.ucmtwine.convert;
+
+/**
+ * Converts a value from one type to another. Register converters with
+ * {@link Converters#register(Class, Class, IConverter)}.
+ * 
+ * <p>
+ * Converters are shared by every request thread, so they must be thread safe.
+ * They are never called with null.
+ * </p>
+ * 
+ * @author tim
+ */
+public interface IConverter<F, T> {
+
+  /**
+   * Convert a value.
+   * 
+   * @param value
+   *          The value to convert, never null
+   * @return
+   * @throws RuntimeException
+   *           If the value can't be converted
+   */
+  T convert(F value);
+}
@@ -0,0 +1,16 @@
+package org.ucmtwine.convert;
+
+/**
+ * A class listed as <code>ucm.converter.key=fully.qualified.Name</code> in the
+ * twine properties file, which registers a component's own converters when
+ * Twine starts.
+ * 
+ * @author tim
+ */
+public interface IConverterProvider {
+
+  /**
+   * Register converters with {@link Converters#register(Class, Class, IConverter)}.
+   */
+  void registerConverters();
+}
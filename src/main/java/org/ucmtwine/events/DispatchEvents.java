@@ -0,0 +1,129 @@
+package org.ucmtwine.events;
+
+import intradoc.common.SystemUtils;
+
+/**
+ * Holds the {@link IEventRecorder}, if there is one, and whether it is
+ * recording. Callers read {@link #getRecorder()} once per event, so while
+ * nothing is recording an event costs one volatile read:
+ * 
+ * <pre>
+ * IEventRecorder events = DispatchEvents.getRecorder();
+ * Object event = (events == null) ? null : events.begin(DispatchEvents.SERVICE);
+ * ...
+ * if (event != null) {
+ *   events.endDispatch(event, binding, failed);
+ * }
+ * </pre>
+ * 
+ * <p>
+ * The ucm-twine-jfr module provides a recorder which emits JDK Flight Recorder
+ * events. It is installed at startup if it is on the class path, and makes
+ * itself active while a recording is running.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class DispatchEvents {
+
+  public static final int SERVICE = 0;
+  public static final int FILTER = 1;
+  public static final int FUNCTION = 2;
+  public static final int VARIABLE = 3;
+  public static final int BINDING = 4;
+  public static final int BOOTSTRAP = 5;
+
+  /**
+   * Parameter binding by a generated adapter, which binds the parameters as it
+   * calls the method, so the event covers the call as well.
+   */
+  public static final int ADAPTED_BINDING = 6;
+
+  /**
+   * Config entry which stops the JFR recorder from being installed when set to
+   * 0.
+   */
+  public static final String ENABLED_CONFIG = "TwineJfrEvents";
+
+  /**
+   * The recorder in the ucm-twine-jfr module.
+   */
+  public static final String JFR_RECORDER = "org.ucmtwine.jfr.JfrEventRecorder";
+
+  private static volatile IEventRecorder installed;
+
+  /**
+   * The installed recorder while it is recording, otherwise null.
+   */
+  private static volatile IEventRecorder active;
+
+  private DispatchEvents() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * The recorder to send events to, or null if nothing is recording.
+   * 
+   * @return
+   */
+  public static IEventRecorder getRecorder() {
+    return active;
+  }
+
+  /**
+   * Install a recorder, replacing any other. It receives nothing until it is
+   * made active with {@link #setRecording(boolean)}.
+   * 
+   * @param recorder
+   */
+  public static synchronized void install(IEventRecorder recorder) {
+    installed = recorder;
+    active = null;
+  }
+
+  public static IEventRecorder getInstalled() {
+    return installed;
+  }
+
+  /**
+   * Turn the installed recorder on or off.
+   * 
+   * @param recording
+   */
+  public static synchronized void setRecording(boolean recording) {
+    active = recording ? installed : null;
+  }
+
+  /**
+   * Install the JFR recorder if it is on the class path and the JVM supports
+   * it. The recorder registers its event types and starts listening for
+   * recordings when it is created.
+   * 
+   * @return Whether it was installed
+   */
+  public static boolean installJfr() {
+    if (installed != null) {
+      return true;
+    }
+
+    try {
+      Class<?> klass = Class.forName(JFR_RECORDER, true, DispatchEvents.class.getClassLoader());
+      klass.newInstance();
+
+      return installed != null;
+
+    } catch (ClassNotFoundException e) {
+      // the module isn't deployed
+      return false;
+
+    } catch (Exception e) {
+      SystemUtils.trace("twine", "Unable to install the JFR event recorder: " + e.getMessage());
+      return false;
+
+    } catch (LinkageError e) {
+      // jdk.jfr is missing, i.e. before Java 11
+      SystemUtils.trace("twine", "JFR events are not supported on this JVM: " + e.getMessage());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package org.ucmtwine.events;
+
+import org.ucmtwine.proxy.MethodBinding;
+
+/**
+ * Receives timed events from the Twine proxies and the component loader, e.g.
+ * to pass them on to a profiler. A recorder is only called while it is active,
+ * see {@link DispatchEvents}.
+ * 
+ * @author tim
+ */
+public interface IEventRecorder {
+
+  /**
+   * Start timing an event.
+   * 
+   * @param kind
+   *          One of the DispatchEvents kinds
+   * @return The started event, or null to skip it
+   */
+  Object begin(int kind);
+
+  /**
+   * Finish a service action, filter, Idoc function, Idoc variable or parameter
+   * binding event.
+   * 
+   * @param event
+   *          The event begin() returned
+   * @param binding
+   *          The method being called
+   * @param failed
+   *          Whether it threw
+   */
+  void endDispatch(Object event, MethodBinding binding, boolean failed);
+
+  /**
+   * Finish a bootstrap phase event.
+   * 
+   * @param event
+   *          The event begin() returned
+   * @param phase
+   *          The phase name
+   * @param count
+   *          The number of files, classes, parameters or script methods
+   *          handled
+   */
+  void endPhase(Object event, String phase, int count);
+}
@@ -0,0 +1,170 @@
+package org.ucmtwine.index;
+
+import intradoc.common.SystemUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds the annotated methods of a class through its annotation index, or by
+ * scanning the class if it has no index or the index is out of date.
+ * 
+ * @author tim
+ */
+public final class AnnotatedMethods {
+
+  private AnnotatedMethods() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * The methods Class.getMethods() would return which have the annotation.
+   * 
+   * @param klass
+   * @param annotation
+   * @return
+   */
+  public static List<Method> getPublicMethods(Class<?> klass, Class<? extends Annotation> annotation) {
+    return getPublicMethods(klass, list(annotation, null));
+  }
+
+  /**
+   * The methods Class.getMethods() would return which have either annotation.
+   * 
+   * @param klass
+   * @param first
+   * @param second
+   * @return
+   */
+  public static List<Method> getPublicMethods(Class<?> klass, Class<? extends Annotation> first,
+      Class<? extends Annotation> second) {
+    return getPublicMethods(klass, list(first, second));
+  }
+
+  /**
+   * The methods Class.getMethods() would return which have any of the
+   * annotations.
+   * 
+   * @param klass
+   * @param annotations
+   * @return
+   */
+  public static List<Method> getPublicMethods(Class<?> klass, Collection<Class<? extends Annotation>> annotations) {
+    List<Method> methods = fromIndex(klass, false, annotations);
+
+    return (methods != null) ? methods : filter(klass.getMethods(), annotations);
+  }
+
+  /**
+   * The methods Class.getDeclaredMethods() would return which have the
+   * annotation.
+   * 
+   * @param klass
+   * @param annotation
+   * @return
+   */
+  public static List<Method> getDeclaredMethods(Class<?> klass, Class<? extends Annotation> annotation) {
+    return getDeclaredMethods(klass, list(annotation, null));
+  }
+
+  /**
+   * The methods Class.getDeclaredMethods() would return which have either
+   * annotation.
+   * 
+   * @param klass
+   * @param first
+   * @param second
+   * @return
+   */
+  public static List<Method> getDeclaredMethods(Class<?> klass, Class<? extends Annotation> first,
+      Class<? extends Annotation> second) {
+    return getDeclaredMethods(klass, list(first, second));
+  }
+
+  /**
+   * The methods Class.getDeclaredMethods() would return which have any of the
+   * annotations.
+   * 
+   * @param klass
+   * @param annotations
+   * @return
+   */
+  public static List<Method> getDeclaredMethods(Class<?> klass, Collection<Class<? extends Annotation>> annotations) {
+    List<Method> methods = fromIndex(klass, true, annotations);
+
+    return (methods != null) ? methods : filter(klass.getDeclaredMethods(), annotations);
+  }
+
+  /**
+   * Built by hand, as a generic varargs call such as Arrays.asList() would
+   * warn.
+   */
+  private static List<Class<? extends Annotation>> list(Class<? extends Annotation> first,
+      Class<? extends Annotation> second) {
+    List<Class<? extends Annotation>> annotations = new ArrayList<Class<? extends Annotation>>(2);
+    annotations.add(first);
+
+    if (second != null) {
+      annotations.add(second);
+    }
+
+    return annotations;
+  }
+
+  /**
+   * @return null if the class has no usable index
+   */
+  private static List<Method> fromIndex(Class<?> klass, boolean declared,
+      Collection<Class<? extends Annotation>> annotations) {
+    List<IndexedMethod> indexed = AnnotationIndex.forClass(klass);
+
+    if (indexed == null) {
+      return null;
+    }
+
+    List<Method> methods = new ArrayList<Method>();
+
+    for (IndexedMethod m : indexed) {
+      if ((declared ? m.isDeclared() : m.isPublic()) && hasAny(m, annotations)) {
+        try {
+          methods.add(m.resolve(klass));
+
+        } catch (Exception e) {
+          SystemUtils.trace("twine", "Annotation index of " + klass.getName() + " is out of date, scanning instead: "
+              + e.getMessage());
+          return null;
+        }
+      }
+    }
+
+    return methods;
+  }
+
+  private static boolean hasAny(IndexedMethod m, Collection<Class<? extends Annotation>> annotations) {
+    for (Class<? extends Annotation> a : annotations) {
+      if (m.hasAnnotation(a)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static List<Method> filter(Method[] candidates, Collection<Class<? extends Annotation>> annotations) {
+    List<Method> methods = new ArrayList<Method>();
+
+    for (Method m : candidates) {
+      for (Class<? extends Annotation> a : annotations) {
+        if (m.isAnnotationPresent(a)) {
+          methods.add(m);
+          break;
+        }
+      }
+    }
+
+    return methods;
+  }
+}
@@ -0,0 +1,145 @@
+package org.ucmtwine.index;
+
+import intradoc.common.SystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads the annotation index written for each class by the ucm-twine-processor
+ * annotation processor, so the annotated methods of a class can be found
+ * without scanning it.
+ * 
+ * <p>
+ * The index of a class is the resource
+ * <code>META-INF/ucm-twine/index/&lt;class name&gt;.properties</code> next to
+ * the class. Classes compiled without the processor have no index and are
+ * scanned as before.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class AnnotationIndex {
+
+  public static final String INDEX_PATH = "META-INF/ucm-twine/index/";
+
+  public static final String INDEX_VERSION = "1";
+
+  /**
+   * Cached for classes without an index.
+   */
+  private static final List<IndexedMethod> NOT_INDEXED = Collections.unmodifiableList(new ArrayList<IndexedMethod>());
+
+  private static final ConcurrentMap<Class<?>, List<IndexedMethod>> INDEXES = new ConcurrentHashMap<Class<?>, List<IndexedMethod>>();
+
+  private AnnotationIndex() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * The indexed methods of a class, or null if the class has no index.
+   * 
+   * @param klass
+   * @return
+   */
+  public static List<IndexedMethod> forClass(Class<?> klass) {
+    List<IndexedMethod> methods = INDEXES.get(klass);
+
+    if (methods == null) {
+      methods = load(klass);
+      INDEXES.putIfAbsent(klass, methods);
+    }
+
+    return (methods == NOT_INDEXED) ? null : methods;
+  }
+
+  /**
+   * The index entry of a method, from the index of the class that declares
+   * it, or null if there isn't one.
+   * 
+   * @param method
+   * @return
+   */
+  public static IndexedMethod forMethod(Method method) {
+    List<IndexedMethod> methods = forClass(method.getDeclaringClass());
+
+    if (methods != null) {
+      for (IndexedMethod indexed : methods) {
+        if (indexed.isDeclared() && indexed.matches(method)) {
+          return indexed;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Forget the loaded indexes.
+   */
+  public static void clear() {
+    INDEXES.clear();
+  }
+
+  private static List<IndexedMethod> load(Class<?> klass) {
+    ClassLoader loader = klass.getClassLoader();
+
+    if (loader == null) {
+      // bootstrap classes are never indexed
+      return NOT_INDEXED;
+    }
+
+    InputStream is = loader.getResourceAsStream(INDEX_PATH + klass.getName() + ".properties");
+
+    if (is == null) {
+      return NOT_INDEXED;
+    }
+
+    Properties index = new Properties();
+
+    try {
+      index.load(is);
+
+    } catch (IOException e) {
+      SystemUtils.trace("twine", "Unable to read the annotation index of " + klass.getName() + ": " + e.getMessage());
+      return NOT_INDEXED;
+
+    } finally {
+      try {
+        is.close();
+      } catch (IOException ignore) {
+
+      }
+    }
+
+    if (!INDEX_VERSION.equals(index.getProperty("version"))) {
+      SystemUtils.trace("twine", "Ignoring the annotation index of " + klass.getName() + ", unknown version "
+          + index.getProperty("version"));
+      return NOT_INDEXED;
+    }
+
+    int count;
+
+    try {
+      count = Integer.parseInt(index.getProperty("methods"));
+
+    } catch (NumberFormatException e) {
+      return NOT_INDEXED;
+    }
+
+    List<IndexedMethod> methods = new ArrayList<IndexedMethod>(count);
+
+    for (int i = 0; i < count; i++) {
+      methods.add(new IndexedMethod(index, i));
+    }
+
+    return Collections.unmodifiableList(methods);
+  }
+}
@@ -0,0 +1,208 @@
+package org.ucmtwine.index;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+/**
+ * A method recorded in a class's annotation index.
+ * 
+ * @author tim
+ */
+public class IndexedMethod {
+
+  private final Properties index;
+
+  private final String prefix;
+
+  private final String name;
+
+  private final String[] annotations;
+
+  private final String[] parameterTypes;
+
+  private final boolean isPublic;
+
+  private final boolean declared;
+
+  private final String adapterClass;
+
+  IndexedMethod(Properties index, int number) {
+    this.index = index;
+    this.prefix = number + ".";
+    this.name = index.getProperty(prefix + "name");
+    this.annotations = split(index.getProperty(prefix + "annotations"));
+    this.parameterTypes = split(index.getProperty(prefix + "types"));
+    this.isPublic = Boolean.valueOf(index.getProperty(prefix + "public")).booleanValue();
+    this.declared = Boolean.valueOf(index.getProperty(prefix + "declared")).booleanValue();
+    this.adapterClass = index.getProperty(prefix + "adapter");
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * The Class.getName() names of the parameter types.
+   * 
+   * @return
+   */
+  public String[] getParameterTypes() {
+    return parameterTypes.clone();
+  }
+
+  public int getParameterCount() {
+    return parameterTypes.length;
+  }
+
+  /**
+   * Would Class.getMethods() return the method?
+   * 
+   * @return
+   */
+  public boolean isPublic() {
+    return isPublic;
+  }
+
+  /**
+   * Would Class.getDeclaredMethods() return the method?
+   * 
+   * @return
+   */
+  public boolean isDeclared() {
+    return declared;
+  }
+
+  /**
+   * The binary name of the method's generated adapter, or null if the
+   * processor didn't generate one.
+   * 
+   * @return
+   */
+  public String getAdapterClass() {
+    return adapterClass;
+  }
+
+  public boolean hasAnnotation(Class<? extends Annotation> annotation) {
+    for (String a : annotations) {
+      if (a.equals(annotation.getName())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * A value of one of the method's annotations, or null if the method doesn't
+   * have the annotation. Array values are joined with commas.
+   * 
+   * @param annotation
+   * @param element
+   *          The annotation element, e.g. "name"
+   * @return
+   */
+  public String getValue(Class<? extends Annotation> annotation, String element) {
+    return index.getProperty(prefix + annotation.getSimpleName() + "." + element);
+  }
+
+  /**
+   * The source name of a parameter.
+   * 
+   * @param parameter
+   * @return
+   */
+  public String getParameterName(int parameter) {
+    return index.getProperty(prefix + "param." + parameter + ".name");
+  }
+
+  /**
+   * A value of a parameter's annotation, or null if the parameter doesn't have
+   * the annotation.
+   * 
+   * @param parameter
+   * @param annotation
+   * @param element
+   * @return
+   */
+  public String getParameterValue(int parameter, Class<? extends Annotation> annotation, String element) {
+    return index.getProperty(prefix + "param." + parameter + "." + annotation.getSimpleName() + "." + element);
+  }
+
+  /**
+   * Does the indexed method have the name and parameter types of a method?
+   * 
+   * @param method
+   * @return
+   */
+  public boolean matches(Method method) {
+    if (!method.getName().equals(name)) {
+      return false;
+    }
+
+    Class<?>[] types = method.getParameterTypes();
+
+    if (types.length != parameterTypes.length) {
+      return false;
+    }
+
+    for (int i = 0; i < types.length; i++) {
+      if (!types[i].getName().equals(parameterTypes[i])) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Look up the method on a class.
+   * 
+   * @param klass
+   *          The indexed class
+   * @return
+   * @throws ClassNotFoundException
+   *           If a parameter type can't be loaded
+   * @throws NoSuchMethodException
+   *           If the class has changed since it was indexed
+   */
+  public Method resolve(Class<?> klass) throws ClassNotFoundException, NoSuchMethodException {
+    Class<?>[] types = new Class<?>[parameterTypes.length];
+
+    for (int i = 0; i < types.length; i++) {
+      types[i] = loadClass(parameterTypes[i], klass.getClassLoader());
+    }
+
+    return declared ? klass.getDeclaredMethod(name, types) : klass.getMethod(name, types);
+  }
+
+  private static Class<?> loadClass(String name, ClassLoader loader) throws ClassNotFoundException {
+    if (name.equals("boolean")) {
+      return boolean.class;
+    } else if (name.equals("byte")) {
+      return byte.class;
+    } else if (name.equals("char")) {
+      return char.class;
+    } else if (name.equals("short")) {
+      return short.class;
+    } else if (name.equals("int")) {
+      return int.class;
+    } else if (name.equals("long")) {
+      return long.class;
+    } else if (name.equals("float")) {
+      return float.class;
+    } else if (name.equals("double")) {
+      return double.class;
+    }
+
+    return Class.forName(name, false, loader);
+  }
+
+  private static String[] split(String value) {
+    if (value == null || value.length() == 0) {
+      return new String[0];
+    }
+
+    return value.split(",");
+  }
+}
@@ -0,0 +1,164 @@
+package org.ucmtwine.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in nanoseconds, with one bucket per power
+ * of two. Bucket i holds durations from 2^(i-1) up to 2^i nanoseconds, so a
+ * recorded value is never more than twice the value reported for its bucket.
+ * 
+ * <p>
+ * Like {@link StripedCounter}, every thread records into its own row of
+ * buckets, and reading sums the rows.
+ * </p>
+ * 
+ * @author tim
+ */
+public class LatencyHistogram {
+
+  /**
+   * The last bucket also holds everything over 2^38ns, about 4.5 minutes.
+   */
+  public static final int BUCKETS = 40;
+
+  private static final int SUM = BUCKETS;
+  private static final int MAX = BUCKETS + 1;
+
+  /**
+   * Longs per row: the buckets, the sum and the max, then a cache line of
+   * padding.
+   */
+  private static final int ROW = BUCKETS + 2 + 8;
+
+  private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.STRIPES * ROW);
+
+  /**
+   * Record a duration.
+   * 
+   * @param nanos
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+
+    int row = StripedCounter.stripe() * ROW;
+
+    cells.incrementAndGet(row + bucket(nanos));
+    cells.addAndGet(row + SUM, nanos);
+
+    long max = cells.get(row + MAX);
+
+    // only contended when two threads share a row
+    while (nanos > max && !cells.compareAndSet(row + MAX, max, nanos)) {
+      max = cells.get(row + MAX);
+    }
+  }
+
+  /**
+   * The bucket a duration is counted in.
+   * 
+   * @param nanos
+   * @return
+   */
+  public static int bucket(long nanos) {
+    return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+  }
+
+  /**
+   * The largest duration counted in a bucket, except for the last bucket.
+   * 
+   * @param bucket
+   * @return
+   */
+  public static long upperBound(int bucket) {
+    return (1L << bucket) - 1;
+  }
+
+  /**
+   * The number of durations in each bucket.
+   * 
+   * @return
+   */
+  public long[] getCounts() {
+    long[] counts = new long[BUCKETS];
+
+    for (int s = 0; s < StripedCounter.STRIPES; s++) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += cells.get(s * ROW + i);
+      }
+    }
+
+    return counts;
+  }
+
+  public long getCount() {
+    long count = 0;
+
+    for (long c : getCounts()) {
+      count += c;
+    }
+
+    return count;
+  }
+
+  public long getSumNanos() {
+    long sum = 0;
+
+    for (int s = 0; s < StripedCounter.STRIPES; s++) {
+      sum += cells.get(s * ROW + SUM);
+    }
+
+    return sum;
+  }
+
+  public long getMaxNanos() {
+    long max = 0;
+
+    for (int s = 0; s < StripedCounter.STRIPES; s++) {
+      max = Math.max(max, cells.get(s * ROW + MAX));
+    }
+
+    return max;
+  }
+
+  /**
+   * An upper estimate of a percentile: the upper bound of the bucket it falls
+   * in, or the largest duration if that is lower.
+   * 
+   * @param percentile
+   *          From 0 to 100
+   * @return
+   */
+  public long getPercentileNanos(double percentile) {
+    long[] counts = getCounts();
+    long total = 0;
+
+    for (long c : counts) {
+      total += c;
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+
+      if (seen >= rank && counts[i] > 0) {
+        return Math.min(upperBound(i), getMaxNanos());
+      }
+    }
+
+    return getMaxNanos();
+  }
+
+  public void reset() {
+    for (int i = 0; i < cells.length(); i++) {
+      cells.set(i, 0);
+    }
+  }
+}
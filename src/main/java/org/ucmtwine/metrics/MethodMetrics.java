@@ -0,0 +1,112 @@
+package org.ucmtwine.metrics;
+
+import java.lang.reflect.Method;
+
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.annotation.ServiceMethod;
+
+/**
+ * The invocation count, error count and latency of one injected method.
+ * 
+ * @author tim
+ */
+public class MethodMetrics {
+
+  private final int id;
+
+  private final String name;
+
+  private final String kind;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  private final StripedCounter errors = new StripedCounter();
+
+  /**
+   * @param id
+   *          The method ID
+   * @param method
+   */
+  public MethodMetrics(int id, Method method) {
+    this.id = id;
+    this.name = method.getDeclaringClass().getName() + "." + method.getName();
+    this.kind = getKind(method);
+  }
+
+  /**
+   * Record one invocation.
+   * 
+   * @param nanos
+   *          How long it took
+   * @param error
+   *          Whether it threw
+   */
+  public void record(long nanos, boolean error) {
+    latency.record(nanos);
+
+    if (error) {
+      errors.increment();
+    }
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * The class and method name.
+   * 
+   * @return
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * What the method is injected as: service, filter, function or variable,
+   * comma separated if it is more than one.
+   * 
+   * @return
+   */
+  public String getKind() {
+    return kind;
+  }
+
+  public long getInvocations() {
+    return latency.getCount();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public void reset() {
+    latency.reset();
+    errors.reset();
+  }
+
+  private static String getKind(Method method) {
+    StringBuilder kind = new StringBuilder();
+
+    if (method.isAnnotationPresent(ServiceMethod.class)) {
+      kind.append(",service");
+    }
+    if (method.isAnnotationPresent(Filter.class)) {
+      kind.append(",filter");
+    }
+    if (method.isAnnotationPresent(IdocFunction.class)) {
+      kind.append(",function");
+    }
+    if (method.isAnnotationPresent(IdocVariable.class)) {
+      kind.append(",variable");
+    }
+
+    return (kind.length() == 0) ? "" : kind.substring(1);
+  }
+}
@@ -0,0 +1,107 @@
+package org.ucmtwine.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ucmtwine.proxy.MethodBinding;
+
+/**
+ * Holds the {@link MethodMetrics} of every injected method that has been
+ * called, and the switch which turns recording off.
+ * 
+ * <p>
+ * The proxies record each invocation like this, so that with metrics off the
+ * only cost is reading the switch:
+ * </p>
+ * 
+ * <pre>
+ * MethodMetrics metrics = Metrics.forBinding(binding);
+ * long start = (metrics == null) ? 0 : System.nanoTime();
+ * ...
+ * if (metrics != null) {
+ *   metrics.record(System.nanoTime() - start, failed);
+ * }
+ * </pre>
+ * 
+ * @author tim
+ */
+public final class Metrics {
+
+  /**
+   * Config entry which turns recording off when set to 0.
+   */
+  public static final String ENABLED_CONFIG = "TwineMetrics";
+
+  private static volatile boolean enabled = true;
+
+  private static final ConcurrentMap<Integer, MethodMetrics> METRICS = new ConcurrentHashMap<Integer, MethodMetrics>();
+
+  private Metrics() {
+    // Utility class, hide the constructor.
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+
+  /**
+   * The metrics to record a call of a bound method into, or null if metrics
+   * are off.
+   * 
+   * @param binding
+   * @return
+   */
+  public static MethodMetrics forBinding(MethodBinding binding) {
+    return enabled ? binding.getMetrics() : null;
+  }
+
+  /**
+   * Create the metrics of a bound method. Called once per binding, by
+   * {@link MethodBinding#getMetrics()}.
+   * 
+   * @param binding
+   * @return
+   */
+  public static MethodMetrics create(MethodBinding binding) {
+    MethodMetrics metrics = new MethodMetrics(binding.getId(), binding.getMethod());
+    MethodMetrics existing = METRICS.putIfAbsent(Integer.valueOf(binding.getId()), metrics);
+
+    return (existing == null) ? metrics : existing;
+  }
+
+  /**
+   * The metrics of every method that has been called, by name.
+   * 
+   * @return
+   */
+  public static List<MethodMetrics> getAll() {
+    List<MethodMetrics> all = new ArrayList<MethodMetrics>(METRICS.values());
+
+    Collections.sort(all, new Comparator<MethodMetrics>() {
+      public int compare(MethodMetrics a, MethodMetrics b) {
+        int byName = a.getName().compareTo(b.getName());
+
+        return (byName != 0) ? byName : a.getId() - b.getId();
+      }
+    });
+
+    return all;
+  }
+
+  /**
+   * Zero every method's metrics.
+   */
+  public static void resetAll() {
+    for (MethodMetrics metrics : METRICS.values()) {
+      metrics.reset();
+    }
+  }
+}
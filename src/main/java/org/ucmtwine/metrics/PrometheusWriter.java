@@ -0,0 +1,120 @@
+package org.ucmtwine.metrics;
+
+import java.util.List;
+
+/**
+ * Writes method metrics in the Prometheus text exposition format, version
+ * 0.0.4.
+ * 
+ * <p>
+ * Each method is labelled with its name and kind. The latency histogram has a
+ * bucket for each power of two nanoseconds from about 1 microsecond to about
+ * 1 minute.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class PrometheusWriter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+  /**
+   * The first and last histogram buckets written. Smaller buckets are counted
+   * in the first one.
+   */
+  private static final int FIRST_BUCKET = 10;
+  private static final int LAST_BUCKET = 36;
+
+  private PrometheusWriter() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Write the metrics of some methods.
+   * 
+   * @param all
+   * @return
+   */
+  public static String write(List<MethodMetrics> all) {
+    StringBuilder out = new StringBuilder();
+
+    out.append("# HELP twine_invocations_total Calls of Twine methods.\n");
+    out.append("# TYPE twine_invocations_total counter\n");
+
+    for (MethodMetrics m : all) {
+      out.append("twine_invocations_total").append(labels(m)).append(' ').append(m.getInvocations()).append('\n');
+    }
+
+    out.append("# HELP twine_errors_total Calls of Twine methods which threw.\n");
+    out.append("# TYPE twine_errors_total counter\n");
+
+    for (MethodMetrics m : all) {
+      out.append("twine_errors_total").append(labels(m)).append(' ').append(m.getErrors()).append('\n');
+    }
+
+    out.append("# HELP twine_latency_seconds How long Twine method calls took, including parameter binding.\n");
+    out.append("# TYPE twine_latency_seconds histogram\n");
+
+    for (MethodMetrics m : all) {
+      writeHistogram(out, m);
+    }
+
+    return out.toString();
+  }
+
+  private static void writeHistogram(StringBuilder out, MethodMetrics m) {
+    String labels = labelValues(m);
+    long[] counts = m.getLatency().getCounts();
+    long cumulative = 0;
+
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+
+      if (i >= FIRST_BUCKET && i <= LAST_BUCKET) {
+        out.append("twine_latency_seconds_bucket{").append(labels).append(",le=\"")
+            .append(seconds(LatencyHistogram.upperBound(i))).append("\"} ").append(cumulative).append('\n');
+      }
+    }
+
+    out.append("twine_latency_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative)
+        .append('\n');
+    out.append("twine_latency_seconds_sum{").append(labels).append("} ")
+        .append(seconds(m.getLatency().getSumNanos())).append('\n');
+    out.append("twine_latency_seconds_count{").append(labels).append("} ").append(cumulative).append('\n');
+  }
+
+  private static String labels(MethodMetrics m) {
+    return "{" + labelValues(m) + "}";
+  }
+
+  private static String labelValues(MethodMetrics m) {
+    return "method=\"" + escape(m.getName()) + "\",kind=\"" + escape(m.getKind()) + "\"";
+  }
+
+  private static String seconds(long nanos) {
+    return String.valueOf(nanos / 1e9);
+  }
+
+  /**
+   * Escape a label value: backslash, double quote and new line.
+   */
+  static String escape(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      if (c == '\\') {
+        sb.append("\\\\");
+      } else if (c == '"') {
+        sb.append("\\\"");
+      } else if (c == '\n') {
+        sb.append("\\n");
+      } else {
+        sb.append(c);
+      }
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,81 @@
+package org.ucmtwine.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells, so that threads counting at the same
+ * time mostly update different cache lines. Reading it sums the cells.
+ * 
+ * <p>
+ * Each thread always uses the same cell, picked from its ID. This is the idea
+ * behind java.util.concurrent.atomic.LongAdder, which isn't available on the
+ * JVMs the content server runs on.
+ * </p>
+ * 
+ * @author tim
+ */
+public class StripedCounter {
+
+  /**
+   * The number of cells, a power of two.
+   */
+  static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Longs between two cells, so each cell has a 64 byte cache line to itself.
+   */
+  private static final int PAD = 8;
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+  public void increment() {
+    cells.incrementAndGet(stripe() * PAD);
+  }
+
+  public void add(long value) {
+    cells.addAndGet(stripe() * PAD, value);
+  }
+
+  /**
+   * The total. Updates made while summing may or may not be included.
+   * 
+   * @return
+   */
+  public long sum() {
+    long sum = 0;
+
+    for (int i = 0; i < STRIPES; i++) {
+      sum += cells.get(i * PAD);
+    }
+
+    return sum;
+  }
+
+  public void reset() {
+    for (int i = 0; i < STRIPES; i++) {
+      cells.set(i * PAD, 0);
+    }
+  }
+
+  /**
+   * The calling thread's cell.
+   * 
+   * @return
+   */
+  static int stripe() {
+    return (int) Thread.currentThread().getId() & (STRIPES - 1);
+  }
+
+  /**
+   * Two cells per processor, rounded up to a power of two, up to 64.
+   */
+  static int stripes(int processors) {
+    int stripes = 1;
+
+    while (stripes < processors * 2 && stripes < 64) {
+      stripes <<= 1;
+    }
+
+    return stripes;
+  }
+}
@@ -0,0 +1,89 @@
+package org.ucmtwine.parameter;
+
+/**
+ * Shared boxes for the small numbers Idoc functions pass and return most,
+ * e.g. counts, flags and indexes, so converting them doesn't allocate.
+ * 
+ * <p>
+ * Long.valueOf and Integer.valueOf only cache -128 to 127, and Double.valueOf
+ * caches nothing.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class Boxes {
+
+  public static final int CACHE_LOW = -128;
+
+  public static final int CACHE_HIGH = 1023;
+
+  private static final Long[] LONGS = new Long[CACHE_HIGH - CACHE_LOW + 1];
+
+  private static final Integer[] INTEGERS = new Integer[CACHE_HIGH - CACHE_LOW + 1];
+
+  private static final Double[] DOUBLES = new Double[CACHE_HIGH - CACHE_LOW + 1];
+
+  public static final Long LONG_ZERO;
+
+  public static final Long LONG_ONE;
+
+  static {
+    for (int i = 0; i < LONGS.length; i++) {
+      LONGS[i] = new Long(i + CACHE_LOW);
+      INTEGERS[i] = new Integer(i + CACHE_LOW);
+      DOUBLES[i] = new Double(i + CACHE_LOW);
+    }
+
+    LONG_ZERO = LONGS[-CACHE_LOW];
+    LONG_ONE = LONGS[1 - CACHE_LOW];
+  }
+
+  private Boxes() {
+    // Utility class, hide the constructor.
+  }
+
+  public static Long valueOf(long value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return LONGS[(int) value - CACHE_LOW];
+    }
+
+    return new Long(value);
+  }
+
+  public static Integer valueOf(int value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return INTEGERS[value - CACHE_LOW];
+    }
+
+    return new Integer(value);
+  }
+
+  /**
+   * Whole numbers in the cached range share a box. Negative zero doesn't, as
+   * it isn't equal to 0.0 as a Double.
+   * 
+   * @param value
+   * @return
+   */
+  public static Double valueOf(double value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      int whole = (int) value;
+
+      if (whole == value && (whole != 0 || 1 / value > 0)) {
+        return DOUBLES[whole - CACHE_LOW];
+      }
+    }
+
+    return new Double(value);
+  }
+
+  /**
+   * The Idoc form of a boolean, Long 1 or 0.
+   * 
+   * @param value
+   * @return
+   */
+  public static Long valueOf(boolean value) {
+    return value ? LONG_ONE : LONG_ZERO;
+  }
+}
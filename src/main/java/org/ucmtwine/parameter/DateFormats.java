@@ -0,0 +1,91 @@
+package org.ucmtwine.parameter;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches date formats by pattern and locale. SimpleDateFormat is expensive to
+ * build and not thread safe, so each thread keeps its own instance of each
+ * format it has used.
+ * 
+ * @author tim
+ */
+public final class DateFormats {
+
+  private static final ThreadLocal<Map<FormatKey, DateFormat>> FORMATS = new ThreadLocal<Map<FormatKey, DateFormat>>() {
+    @Override
+    protected Map<FormatKey, DateFormat> initialValue() {
+      return new HashMap<FormatKey, DateFormat>();
+    }
+  };
+
+  private DateFormats() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Returns the calling thread's format for a pattern and locale. The format
+   * must not be handed to another thread.
+   * 
+   * @param pattern
+   *          A SimpleDateFormat pattern, or null for the locale's default short
+   *          date and time format
+   * @param locale
+   * @return
+   */
+  public static DateFormat get(String pattern, Locale locale) {
+    Map<FormatKey, DateFormat> formats = FORMATS.get();
+    FormatKey key = new FormatKey(pattern, locale);
+
+    DateFormat format = formats.get(key);
+
+    if (format == null) {
+      if (pattern == null) {
+        format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale);
+      } else {
+        format = new SimpleDateFormat(pattern, locale);
+      }
+      formats.put(key, format);
+    }
+
+    return format;
+  }
+
+  /**
+   * Returns the calling thread's format for a pattern in the default locale.
+   * 
+   * @param pattern
+   * @return
+   */
+  public static DateFormat get(String pattern) {
+    return get(pattern, Locale.getDefault());
+  }
+
+  private static final class FormatKey {
+    private final String pattern;
+
+    private final Locale locale;
+
+    FormatKey(String pattern, Locale locale) {
+      this.pattern = pattern;
+      this.locale = locale;
+    }
+
+    public int hashCode() {
+      return 31 * ((pattern == null) ? 0 : pattern.hashCode()) + locale.hashCode();
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FormatKey)) {
+        return false;
+      }
+
+      FormatKey other = (FormatKey) obj;
+
+      return locale.equals(other.locale) && ((pattern == null) ? other.pattern == null : pattern.equals(other.pattern));
+    }
+  }
+}
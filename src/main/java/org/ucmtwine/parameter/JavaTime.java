@@ -0,0 +1,159 @@
+package org.ucmtwine.parameter;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+
+/**
+ * Converts between {@link Date} and the java.time types Instant, LocalDate and
+ * LocalDateTime, which can be used as Idoc and binder parameter and return
+ * types when Twine runs on Java 8 or later.
+ * 
+ * <p>
+ * Twine is built for older JVMs, so the java.time classes are resolved through
+ * reflection once, when this class is loaded. Local dates and times are in the
+ * server's default time zone.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class JavaTime {
+
+  private static final Class<?> INSTANT = findClass("java.time.Instant");
+  private static final Class<?> LOCAL_DATE = findClass("java.time.LocalDate");
+  private static final Class<?> LOCAL_DATE_TIME = findClass("java.time.LocalDateTime");
+  private static final Class<?> ZONE_ID = findClass("java.time.ZoneId");
+  private static final Class<?> ZONED_DATE_TIME = findClass("java.time.ZonedDateTime");
+
+  private static final Method INSTANT_OF_EPOCH_MILLI = findMethod(INSTANT, "ofEpochMilli", long.class);
+  private static final Method INSTANT_TO_EPOCH_MILLI = findMethod(INSTANT, "toEpochMilli");
+  private static final Method ZONE_ID_SYSTEM_DEFAULT = findMethod(ZONE_ID, "systemDefault");
+  private static final Method LOCAL_DATE_TIME_OF_INSTANT = findMethod(LOCAL_DATE_TIME, "ofInstant", INSTANT, ZONE_ID);
+  private static final Method LOCAL_DATE_TIME_TO_LOCAL_DATE = findMethod(LOCAL_DATE_TIME, "toLocalDate");
+  private static final Method LOCAL_DATE_TIME_AT_ZONE = findMethod(LOCAL_DATE_TIME, "atZone", ZONE_ID);
+  private static final Method LOCAL_DATE_AT_START_OF_DAY = findMethod(LOCAL_DATE, "atStartOfDay", ZONE_ID);
+  private static final Method ZONED_DATE_TIME_TO_INSTANT = findMethod(ZONED_DATE_TIME, "toInstant");
+
+  private JavaTime() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Is the type one of the supported java.time types?
+   * 
+   * @param type
+   * @return
+   */
+  public static boolean isSupportedType(Class<?> type) {
+    return type != null && (type == INSTANT || type == LOCAL_DATE || type == LOCAL_DATE_TIME);
+  }
+
+  /**
+   * Is the value an instance of one of the supported java.time types?
+   * 
+   * @param value
+   * @return
+   */
+  public static boolean isSupportedValue(Object value) {
+    return value != null && isSupportedType(value.getClass());
+  }
+
+  /**
+   * Convert a date to a java.time type.
+   * 
+   * @param date
+   * @param type
+   *          Instant, LocalDate or LocalDateTime
+   * @return
+   * @throws IllegalArgumentException
+   *           If the type isn't supported
+   */
+  public static Object fromDate(Date date, Class<?> type) throws IllegalArgumentException {
+    if (date == null) {
+      return null;
+    }
+
+    Object instant = invoke(INSTANT_OF_EPOCH_MILLI, null, Long.valueOf(date.getTime()));
+
+    if (type == INSTANT) {
+      return instant;
+    }
+
+    Object localDateTime = invoke(LOCAL_DATE_TIME_OF_INSTANT, null, instant, invoke(ZONE_ID_SYSTEM_DEFAULT, null));
+
+    if (type == LOCAL_DATE_TIME) {
+      return localDateTime;
+    }
+
+    if (type == LOCAL_DATE) {
+      return invoke(LOCAL_DATE_TIME_TO_LOCAL_DATE, localDateTime);
+    }
+
+    throw new IllegalArgumentException("Cannot convert a date to " + type.getName());
+  }
+
+  /**
+   * Convert a java.time value to a date.
+   * 
+   * @param value
+   *          An Instant, LocalDate or LocalDateTime
+   * @return
+   * @throws IllegalArgumentException
+   *           If the value isn't a supported type
+   */
+  public static Date toDate(Object value) throws IllegalArgumentException {
+    if (value == null) {
+      return null;
+    }
+
+    Class<?> type = value.getClass();
+    Object instant;
+
+    if (type == INSTANT) {
+      instant = value;
+
+    } else if (type == LOCAL_DATE_TIME) {
+      Object zoned = invoke(LOCAL_DATE_TIME_AT_ZONE, value, invoke(ZONE_ID_SYSTEM_DEFAULT, null));
+      instant = invoke(ZONED_DATE_TIME_TO_INSTANT, zoned);
+
+    } else if (type == LOCAL_DATE) {
+      Object zoned = invoke(LOCAL_DATE_AT_START_OF_DAY, value, invoke(ZONE_ID_SYSTEM_DEFAULT, null));
+      instant = invoke(ZONED_DATE_TIME_TO_INSTANT, zoned);
+
+    } else {
+      throw new IllegalArgumentException("Cannot convert " + type.getName() + " to a date");
+    }
+
+    return new Date(((Long) invoke(INSTANT_TO_EPOCH_MILLI, instant)).longValue());
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) {
+    try {
+      return method.invoke(target, args);
+
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unable to convert date: " + e.getMessage(), e);
+    }
+  }
+
+  private static Class<?> findClass(String name) {
+    try {
+      return Class.forName(name);
+
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Method findMethod(Class<?> klass, String name, Class<?>... parameterTypes) {
+    if (klass == null) {
+      return null;
+    }
+
+    try {
+      return klass.getMethod(name, parameterTypes);
+
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -6,11 +6,16 @@ import intradoc.data.ResultSet;
 import intradoc.provider.Provider;
 import intradoc.server.Service;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Date;
+import java.util.List;
 
 import net.balusc.util.ObjectConverter;
 
+import org.ucmtwine.convert.Converters;
 import org.ucmtwine.parameter.types.BooleanParameter;
+import org.ucmtwine.parameter.types.ConvertedParameter;
 import org.ucmtwine.parameter.types.DateParameter;
 import org.ucmtwine.parameter.types.DoubleParameter;
 import org.ucmtwine.parameter.types.FloatParameter;
@@ -19,6 +24,7 @@ import org.ucmtwine.parameter.types.IntegerParameter;
 import org.ucmtwine.parameter.types.LongParameter;
 import org.ucmtwine.parameter.types.ProviderParameter;
 import org.ucmtwine.parameter.types.ResultSetParameter;
+import org.ucmtwine.parameter.types.RowsParameter;
 import org.ucmtwine.parameter.types.StringParameter;
 
 /**
@@ -78,6 +84,47 @@ public abstract class Parameter implements IParameter {
     return create("", type, true);
   }
 
+  /**
+   * Factory method which also handles result sets bound as an Iterable or List
+   * of rows, whose row class is read from the generic type.
+   * 
+   * @param name
+   *          The name in the binder of the variable.
+   * @param type
+   * @param genericType
+   *          The generic parameter type, e.g. from
+   *          Method.getGenericParameterTypes()
+   * @param required
+   * @return
+   */
+  public static Parameter create(String name, Class<?> type, Type genericType, boolean required)
+      throws IllegalArgumentException {
+
+    if (type == Iterable.class || type == List.class) {
+      Class<?> rowClass = null;
+
+      if (genericType instanceof ParameterizedType) {
+        Type rowType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+
+        if (rowType instanceof Class<?>) {
+          rowClass = (Class<?>) rowType;
+        }
+      }
+
+      if (rowClass == null) {
+        throw new IllegalArgumentException("Parameter [" + name + "] must declare its row class, e.g. "
+            + type.getSimpleName() + "<MyRow>");
+      }
+
+      Parameter p = new RowsParameter(name, type, rowClass);
+      p.setRequired(required);
+
+      return p;
+    }
+
+    return create(name, type, required);
+  }
+
   /**
    * Factory method to create the concrete variable type.
    * 
@@ -113,7 +160,7 @@ public abstract class Parameter implements IParameter {
     } else if (type == Double.class || type == double.class) {
       p = new DoubleParameter(name, type);
 
-    } else if (type == Date.class) {
+    } else if (type == Date.class || JavaTime.isSupportedType(type)) {
       p = new DateParameter(name, type);
 
     } else if (type == ResultSet.class || type == DataResultSet.class) {
@@ -124,6 +171,10 @@ public abstract class Parameter implements IParameter {
 
     } else if (type == Provider.class) {
       p = new ProviderParameter(name);
+
+    } else if (Converters.find(String.class, type) != null) {
+      p = new ConvertedParameter(name, type);
+
     } else {
       throw new IllegalArgumentException("Parameter type " + type.getName() + " is not valid");
     }
@@ -1,24 +1,37 @@
 package org.ucmtwine.parameter;
 
 import intradoc.common.ExecutionContext;
-import intradoc.common.SystemUtils;
+import intradoc.common.GrammarElement;
 import intradoc.data.DataBinder;
 import intradoc.data.Workspace;
 import intradoc.server.Service;
+import intradoc.shared.UserData;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.ucmtwine.annotation.Binder;
 import org.ucmtwine.annotation.Environment;
+import org.ucmtwine.async.ServiceFanout;
+import org.ucmtwine.index.AnnotationIndex;
+import org.ucmtwine.index.IndexedMethod;
 import org.ucmtwine.parameter.types.InjectedParameter;
+import org.ucmtwine.parameter.types.ResultSetParameter;
+import org.ucmtwine.trace.Trace;
 
 /**
  * Handles the binder parameters and type coercion for service and idoc methods
  * including parameter injection of context and user data when needed.
  * 
+ * <p>
+ * A marshaller is immutable once its method is bound, so one instance is built
+ * per method at injection time and shared between all request threads.
+ * </p>
+ * 
  * @author tim
  */
 public class ParameterMarshaller {
@@ -29,22 +42,130 @@ public class ParameterMarshaller {
    */
   public static final int EXTRA_FUNC_DEF_VALUES = 3;
 
-  private List<IParameter> parameters;
+  private final List<IParameter> parameters;
+
+  /**
+   * Array copy of the parameter list, so the per-call loops don't go through
+   * the list interface.
+   */
+  private final IParameter[] parameterArray;
+
+  /**
+   * How each script argument is converted, by parameter index. One of the
+   * ADAPT_ constants.
+   */
+  private final int[] argumentAdapters;
+
+  /**
+   * The script argument index of each parameter, or -1 if it is injected.
+   */
+  private final int[] argumentIndexes;
+
+  private static final int ADAPT_GENERIC = 0;
+  private static final int ADAPT_LONG = 1;
+  private static final int ADAPT_INT = 2;
+  private static final int ADAPT_DOUBLE = 3;
+  private static final int ADAPT_BOOLEAN = 4;
+
+  private final int parameterCount;
+
+  private final int injectedParameterCount;
+
+  /**
+   * The registry ID of the method, for trace events. Set by its binding.
+   */
+  private int methodId = -1;
 
   public ParameterMarshaller() {
-    this.parameters = new ArrayList<IParameter>();
+    this(new ArrayList<IParameter>());
   }
 
   public ParameterMarshaller(Method method) throws IllegalArgumentException {
-    this.parameters = createList(method);
+    this(createList(method));
+  }
+
+  private ParameterMarshaller(List<IParameter> parameters) {
+    this.parameters = Collections.unmodifiableList(parameters);
+    this.parameterArray = parameters.toArray(new IParameter[parameters.size()]);
+
+    this.argumentAdapters = new int[parameterArray.length];
+    this.argumentIndexes = new int[parameterArray.length];
+
+    int injected = 0;
+
+    for (int i = 0; i < parameterArray.length; i++) {
+      if (parameterArray[i] instanceof InjectedParameter) {
+        argumentIndexes[i] = -1;
+        injected++;
+      } else {
+        argumentIndexes[i] = i - injected;
+        argumentAdapters[i] = getArgumentAdapter(parameterArray[i]);
+      }
+    }
+
+    this.parameterCount = parameterArray.length;
+    this.injectedParameterCount = injected;
+  }
+
+  /**
+   * Choose the argument conversion for a parameter from the grammar element
+   * type it declares in the function definition.
+   * 
+   * @param p
+   * @return
+   */
+  private static int getArgumentAdapter(IParameter p) {
+    Class<?> type = p.getType();
+
+    switch (p.getGrammarElementType()) {
+    case GrammarElement.INTEGER_VAL:
+      if (type == Long.class || type == long.class) {
+        return ADAPT_LONG;
+      }
+      if (type == Integer.class || type == int.class) {
+        return ADAPT_INT;
+      }
+      if (type == Boolean.class || type == boolean.class) {
+        return ADAPT_BOOLEAN;
+      }
+      break;
+
+    case GrammarElement.FLOAT_VAL:
+      if (type == Double.class || type == double.class) {
+        return ADAPT_DOUBLE;
+      }
+      break;
+    }
+
+    return ADAPT_GENERIC;
   }
 
+  /**
+   * Returns the parameters as a read only list.
+   * 
+   * @return
+   */
   public List<IParameter> getParameters() {
     return parameters;
   }
 
-  public void setParameters(List<IParameter> parameters) {
-    this.parameters = parameters;
+  /**
+   * Set the registry ID of the marshaller's method, which failures are traced
+   * against.
+   * 
+   * @param methodId
+   */
+  public void setMethodId(int methodId) {
+    this.methodId = methodId;
+  }
+
+  /**
+   * The registry ID of the marshaller's method, or -1 before it is registered.
+   * 
+   * @return
+   */
+  public int getMethodId() {
+    return methodId;
   }
 
   /**
@@ -61,34 +182,80 @@ public class ParameterMarshaller {
 
     Class<?> paramTypes[] = method.getParameterTypes();
 
-    Annotation[][] methodAnnotations = method.getParameterAnnotations();
+    Type genericParamTypes[] = method.getGenericParameterTypes();
+
+    // the @Binder values are in the annotation index, if the class has one
+    IndexedMethod indexed = AnnotationIndex.forMethod(method);
+
+    Annotation[][] methodAnnotations = (indexed == null) ? method.getParameterAnnotations() : null;
 
-    for (int i = 0; i < methodAnnotations.length; i++) {
+    for (int i = 0; i < paramTypes.length; i++) {
 
       // defaults
       boolean paramRequired = true;
       String paramName = "";
       Class<?> paramClass = paramTypes[i];
-      
-      for (Annotation a : methodAnnotations[i]) {
-        if (a instanceof Binder) {
-          paramName = ((Binder) a).name();
-          paramRequired = ((Binder) a).required();
-          break;
+      boolean hasBinder = false;
+      boolean readOnly = false;
+      String[] columns = null;
+
+      if (indexed != null) {
+        String name = indexed.getParameterValue(i, Binder.class, "name");
+
+        if (name != null) {
+          hasBinder = true;
+          paramName = name;
+          paramRequired = Boolean.valueOf(indexed.getParameterValue(i, Binder.class, "required")).booleanValue();
+          readOnly = Boolean.valueOf(indexed.getParameterValue(i, Binder.class, "readOnly")).booleanValue();
+          columns = splitColumns(indexed.getParameterValue(i, Binder.class, "columns"));
         }
-//        else if (a instanceof Environment) {
-//          paramName = ((Environment) a).name();
-//          paramRequired = ((Environment) a).required();
-//          break;
-//        }
+
+      } else {
+        for (Annotation a : methodAnnotations[i]) {
+          if (a instanceof Binder) {
+            Binder binder = (Binder) a;
+            hasBinder = true;
+            paramName = binder.name();
+            paramRequired = binder.required();
+            readOnly = binder.readOnly();
+            columns = binder.columns();
+            break;
+          }
+//          else if (a instanceof Environment) {
+//            paramName = ((Environment) a).name();
+//            paramRequired = ((Environment) a).required();
+//            break;
+//          }
+        }
+      }
+
+      Parameter parameter = Parameter.create(paramName, paramClass, genericParamTypes[i], paramRequired);
+
+      if (hasBinder && parameter instanceof ResultSetParameter) {
+        ((ResultSetParameter) parameter).setReadOnly(readOnly);
+        ((ResultSetParameter) parameter).setColumns(columns);
       }
 
-      parameters.add(Parameter.create(paramName, paramClass, paramRequired));
+      parameters.add(parameter);
     }
 
     return parameters;
   }
 
+  /**
+   * Split an indexed @Binder columns value, which is comma separated.
+   * 
+   * @param value
+   * @return
+   */
+  private static String[] splitColumns(String value) {
+    if (value == null || value.length() == 0) {
+      return new String[0];
+    }
+
+    return value.split(",");
+  }
+
   /**
    * Returns an array of types for use with reflection method.invoke().
    * 
@@ -96,10 +263,10 @@ public class ParameterMarshaller {
    */
   public Class<?>[] getTypeArray() {
 
-    Class<?>[] typeArray = new Class[this.parameters.size()];
+    Class<?>[] typeArray = new Class[parameterCount];
 
-    for (int i = 0; i < this.parameters.size(); i++) {
-      typeArray[i] = this.parameters.get(i).getType();
+    for (int i = 0; i < parameterCount; i++) {
+      typeArray[i] = parameterArray[i].getType();
     }
 
     return typeArray;
@@ -111,20 +278,11 @@ public class ParameterMarshaller {
    * @return
    */
   public int getParameterCount(boolean includeInjected) {
-    int count = 0;
-
-    for (int i = 0; i < this.parameters.size(); i++) {
-      if (this.parameters.get(i) instanceof InjectedParameter) {
-        if (includeInjected) {
-          count++;
-        }
-
-      } else {
-        count++;
-      }
+    if (includeInjected) {
+      return parameterCount;
     }
 
-    return count;
+    return parameterCount - injectedParameterCount;
   }
 
   /**
@@ -152,8 +310,8 @@ public class ParameterMarshaller {
 
     for (int i = 0; i < fullParamCount; i++) {
       // add grammar element if it is NOT an injected type
-      if ((this.parameters.get(i) instanceof InjectedParameter) == false) {
-        definition[j] = this.parameters.get(i).getGrammarElementType();
+      if ((parameterArray[i] instanceof InjectedParameter) == false) {
+        definition[j] = parameterArray[i].getGrammarElementType();
         j++;
       }
     }
@@ -177,31 +335,129 @@ public class ParameterMarshaller {
    * @throws IllegalAccessException
    */
   public Object[] getValueArray(Object[] arguments, Service service) {
-    Object[] paramArray = new Object[this.parameters.size()];
+    Object[] paramArray = new Object[parameterCount];
 
-    int argumentIndex = 0;
+    for (int i = 0; i < parameterCount; i++) {
+      paramArray[i] = getArgumentValue(i, arguments, service);
+    }
 
-    for (int i = 0; i < this.parameters.size(); i++) {
+    return paramArray;
+  }
 
-      // inject params if needed
-      IParameter p = this.parameters.get(i);
+  /**
+   * Returns the value of one parameter given an array of script arguments,
+   * injecting known service/user/context data.
+   * 
+   * @param parameter
+   *          The parameter index
+   * @param arguments
+   * @param service
+   * @return
+   */
+  public Object getArgumentValue(int parameter, Object[] arguments, Service service) {
+    IParameter p = parameterArray[parameter];
 
-      try {
+    try {
+      int argumentIndex = argumentIndexes[parameter];
 
-        if (p instanceof InjectedParameter) {
-          paramArray[i] = p.getArgumentValue(null, service);
-        } else {
-          paramArray[i] = p.getArgumentValue(arguments[argumentIndex], service);
-          argumentIndex++;
-        }
+      if (argumentIndex < 0) {
+        return p.getArgumentValue(null, service);
+      }
 
-      } catch (ClassCastException e) {
-        SystemUtils.trace("twine", "getArgumentValue failed on parameter " + (i + 1) + ": " + e.getMessage());
+      return adaptArgument(argumentAdapters[parameter], p, arguments[argumentIndex], service);
+
+    } catch (ClassCastException e) {
+      Trace.failed(Trace.ARGUMENT, methodId, parameter + 1, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the index of the script argument a parameter takes its value
+   * from.
+   * 
+   * @param parameter
+   *          The parameter index
+   * @return The argument index, or -1 if the parameter is injected
+   */
+  public int getArgumentIndex(int parameter) {
+    return argumentIndexes[parameter];
+  }
+
+  /**
+   * Convert a script argument. The numbers the script engine passes are used as
+   * they are or re-boxed from the shared boxes, and anything else goes through
+   * the parameter's own conversion.
+   * 
+   * @param adapter
+   * @param p
+   * @param argument
+   * @param service
+   * @return
+   */
+  private static Object adaptArgument(int adapter, IParameter p, Object argument, Service service) {
+    switch (adapter) {
+    case ADAPT_LONG:
+      if (argument instanceof Long) {
+        return argument;
+      }
+      if (argument instanceof Number) {
+        return Boxes.valueOf(((Number) argument).longValue());
       }
+      break;
 
+    case ADAPT_INT:
+      if (argument instanceof Integer) {
+        return argument;
+      }
+      if (argument instanceof Number) {
+        return Boxes.valueOf(((Number) argument).intValue());
+      }
+      break;
+
+    case ADAPT_DOUBLE:
+      if (argument instanceof Double) {
+        return argument;
+      }
+      if (argument instanceof Number) {
+        return Boxes.valueOf(((Number) argument).doubleValue());
+      }
+      break;
+
+    case ADAPT_BOOLEAN:
+      if (argument instanceof Boolean) {
+        return argument;
+      }
+      if (argument instanceof Long) {
+        return ((Long) argument).longValue() == 1L ? Boolean.TRUE : Boolean.FALSE;
+      }
+      break;
     }
 
-    return paramArray;
+    return p.getArgumentValue(argument, service);
+  }
+
+  /**
+   * Returns the values of the non-injected parameters from a value array built
+   * by one of the getValueArray methods, i.e. the converted arguments the
+   * method was called with.
+   * 
+   * @param valueArray
+   * @return
+   */
+  public Object[] getArgumentValues(Object[] valueArray) {
+    Object[] arguments = new Object[parameterCount - injectedParameterCount];
+
+    int argumentIndex = 0;
+
+    for (int i = 0; i < parameterCount; i++) {
+      if ((parameterArray[i] instanceof InjectedParameter) == false) {
+        arguments[argumentIndex] = valueArray[i];
+        argumentIndex++;
+      }
+    }
+
+    return arguments;
   }
 
   /**
@@ -216,12 +472,12 @@ public class ParameterMarshaller {
    * @return
    */
   public Object[] getValueArray(Workspace ws, DataBinder binder, ExecutionContext ctx) {
-    Object[] paramArray = new Object[this.parameters.size()];
+    Object[] paramArray = new Object[parameterCount];
 
-    for (int i = 0; i < this.parameters.size(); i++) {
+    for (int i = 0; i < parameterCount; i++) {
 
       // inject params if needed
-      IParameter p = this.parameters.get(i);
+      IParameter p = parameterArray[i];
 
       try {
 
@@ -234,12 +490,16 @@ public class ParameterMarshaller {
         } else if (p.getType().isAssignableFrom(ExecutionContext.class)) {
           paramArray[i] = ctx;
 
+        } else if (p.getType() == ServiceFanout.class) {
+          paramArray[i] = new ServiceFanout(ws, binder,
+              (ctx == null) ? null : (UserData) ctx.getCachedObject("UserData"));
+
         } else {
           paramArray[i] = null;
         }
 
       } catch (ClassCastException e) {
-        SystemUtils.trace("twine", "getArgumentValue failed on parameter " + (i + 1) + ": " + e.getMessage());
+        Trace.failed(Trace.BINDER_VALUE, methodId, i + 1, e);
       }
 
     }
@@ -255,21 +515,31 @@ public class ParameterMarshaller {
    * @throws IllegalAccessException
    */
   public Object[] getValueArray(Service service) {
-    Object[] paramArray = new Object[this.parameters.size()];
+    Object[] paramArray = new Object[parameterCount];
 
-    for (int i = 0; i < this.parameters.size(); i++) {
-
-      IParameter p = this.parameters.get(i);
+    for (int i = 0; i < parameterCount; i++) {
+      paramArray[i] = getBinderValue(i, service);
+    }
 
-      try {
-        paramArray[i] = p.getBinderValue(service);
+    return paramArray;
+  }
 
-      } catch (IllegalAccessException e) {
-        SystemUtils.trace("twine", "getValue failed on parameter " + (i + 1) + ": " + e.getMessage());
-      }
+  /**
+   * Returns the value of one parameter from the service's binder, injecting
+   * known service/user/context data.
+   * 
+   * @param parameter
+   *          The parameter index
+   * @param service
+   * @return
+   */
+  public Object getBinderValue(int parameter, Service service) {
+    try {
+      return parameterArray[parameter].getBinderValue(service);
 
+    } catch (IllegalAccessException e) {
+      Trace.failed(Trace.BINDER_VALUE, methodId, parameter + 1, e);
+      return null;
     }
-
-    return paramArray;
   }
 }
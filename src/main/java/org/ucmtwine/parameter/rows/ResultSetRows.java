@@ -0,0 +1,77 @@
+package org.ucmtwine.parameter.rows;
+
+import intradoc.data.ResultSet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The rows of a result set as typed objects. Rows are mapped one at a time as
+ * the iterator moves the result set's cursor, so nothing is copied up front.
+ * 
+ * <p>
+ * Each call to {@link #iterator()} starts again from the first row, which
+ * forward only result sets such as database cursors may not allow.
+ * </p>
+ * 
+ * @author tim
+ */
+public class ResultSetRows<T> implements Iterable<T> {
+
+  private final ResultSet rs;
+
+  private final RowMapper<T> mapper;
+
+  /**
+   * @param rs
+   * @param rowClass
+   * @throws IllegalArgumentException
+   *           If the class can't be used as a row
+   */
+  public ResultSetRows(ResultSet rs, Class<T> rowClass) throws IllegalArgumentException {
+    this.rs = rs;
+    this.mapper = RowMapper.forResultSet(rs, rowClass);
+  }
+
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private boolean hasRow = rs.first();
+
+      public boolean hasNext() {
+        return hasRow;
+      }
+
+      public T next() {
+        if (!hasRow) {
+          throw new NoSuchElementException();
+        }
+
+        T row = mapper.mapRow(rs);
+        hasRow = rs.next();
+
+        return row;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("Result set rows are read only");
+      }
+    };
+  }
+
+  /**
+   * Map every row into a list.
+   * 
+   * @return
+   */
+  public List<T> toList() {
+    List<T> list = new ArrayList<T>();
+
+    for (T row : this) {
+      list.add(row);
+    }
+
+    return list;
+  }
+}
@@ -0,0 +1,288 @@
+package org.ucmtwine.parameter.rows;
+
+import intradoc.data.ResultSet;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.balusc.util.ObjectConverter;
+
+import org.ucmtwine.parameter.JavaTime;
+
+/**
+ * Maps the current row of a result set to an instance of a row class. The
+ * column of each property and how its value is read are worked out once per
+ * combination of result set columns and row class, and cached.
+ * 
+ * @author tim
+ */
+public final class RowMapper<T> {
+
+  private static final ConcurrentMap<LayoutKey, RowMapper<?>> MAPPERS = new ConcurrentHashMap<LayoutKey, RowMapper<?>>();
+
+  private static final int READ_STRING = 0;
+  private static final int READ_DATE = 1;
+  private static final int READ_JAVA_TIME = 2;
+  private static final int READ_CONVERTED = 3;
+  private static final int READ_BOOLEAN = 4;
+
+  private final RowType rowType;
+
+  /**
+   * The column index of each property, or -1 if the result set doesn't have
+   * it.
+   */
+  private final int[] columns;
+
+  /**
+   * How each property is read, one of the READ_* constants.
+   */
+  private final int[] readers;
+
+  /**
+   * The type each property is converted to, primitives replaced by their
+   * wrappers.
+   */
+  private final Class<?>[] conversions;
+
+  private RowMapper(RowType rowType, String[] fieldNames) {
+    this.rowType = rowType;
+
+    int count = rowType.getPropertyCount();
+
+    columns = new int[count];
+    readers = new int[count];
+    conversions = new Class<?>[count];
+
+    for (int i = 0; i < count; i++) {
+      columns[i] = indexOf(fieldNames, rowType.getName(i));
+
+      Class<?> type = rowType.getType(i);
+
+      if (type == String.class) {
+        readers[i] = READ_STRING;
+      } else if (type == Date.class) {
+        readers[i] = READ_DATE;
+      } else if (JavaTime.isSupportedType(type)) {
+        readers[i] = READ_JAVA_TIME;
+      } else if (type == Boolean.class || type == boolean.class) {
+        readers[i] = READ_BOOLEAN;
+      } else {
+        readers[i] = READ_CONVERTED;
+      }
+
+      conversions[i] = wrap(type);
+    }
+  }
+
+  /**
+   * Returns the mapper for a result set's columns and a row class.
+   * 
+   * @param rs
+   * @param rowClass
+   * @return
+   * @throws IllegalArgumentException
+   *           If the class can't be used as a row
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> RowMapper<T> forResultSet(ResultSet rs, Class<T> rowClass) throws IllegalArgumentException {
+    String[] fieldNames = new String[rs.getNumFields()];
+
+    for (int i = 0; i < fieldNames.length; i++) {
+      fieldNames[i] = rs.getFieldName(i);
+    }
+
+    LayoutKey key = new LayoutKey(rowClass, fieldNames);
+    RowMapper<?> mapper = MAPPERS.get(key);
+
+    if (mapper == null) {
+      RowMapper<?> newMapper = new RowMapper<T>(RowType.forClass(rowClass), fieldNames);
+      mapper = MAPPERS.putIfAbsent(key, newMapper);
+
+      if (mapper == null) {
+        mapper = newMapper;
+      }
+    }
+
+    return (RowMapper<T>) mapper;
+  }
+
+  /**
+   * Map the current row of a result set.
+   * 
+   * @param rs
+   *          A result set with the columns this mapper was built for
+   * @return
+   * @throws IllegalArgumentException
+   *           If a value can't be converted or the row can't be created
+   */
+  @SuppressWarnings("unchecked")
+  public T mapRow(ResultSet rs) throws IllegalArgumentException {
+    int count = columns.length;
+
+    try {
+      if (rowType.isRecord()) {
+        Object[] values = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+          values[i] = read(rs, i);
+
+          if (values[i] == null && rowType.getType(i).isPrimitive()) {
+            values[i] = primitiveDefault(conversions[i]);
+          }
+        }
+
+        return (T) rowType.getConstructor().newInstance(values);
+      }
+
+      Object row = rowType.getConstructor().newInstance();
+
+      for (int i = 0; i < count; i++) {
+        Object value = read(rs, i);
+
+        // leave primitives at their default
+        if (value == null && rowType.getType(i).isPrimitive()) {
+          continue;
+        }
+
+        AccessibleObject writer = rowType.getWriter(i);
+
+        if (writer instanceof Method) {
+          ((Method) writer).invoke(row, value);
+        } else {
+          ((Field) writer).set(row, value);
+        }
+      }
+
+      return (T) row;
+
+    } catch (InvocationTargetException e) {
+      throw new IllegalArgumentException("Unable to create row " + rowType.getRowClass().getName() + ": "
+          + e.getTargetException().getMessage(), e.getTargetException());
+
+    } catch (InstantiationException e) {
+      throw new IllegalArgumentException("Unable to create row " + rowType.getRowClass().getName(), e);
+
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Unable to create row " + rowType.getRowClass().getName(), e);
+    }
+  }
+
+  private Object read(ResultSet rs, int property) {
+    int column = columns[property];
+
+    if (column < 0) {
+      return null;
+    }
+
+    switch (readers[property]) {
+    case READ_STRING:
+      return rs.getStringValue(column);
+
+    case READ_DATE:
+      return rs.getDateValue(column);
+
+    case READ_JAVA_TIME:
+      return JavaTime.fromDate(rs.getDateValue(column), rowType.getType(property));
+
+    case READ_BOOLEAN:
+      String flag = rs.getStringValue(column);
+
+      if (flag == null || flag.length() == 0) {
+        return null;
+      }
+
+      // as BooleanParameter, UCM flags are often "1"
+      return Boolean.valueOf(flag.equals("1") || Boolean.parseBoolean(flag));
+
+    default:
+      String value = rs.getStringValue(column);
+
+      if (value == null || value.length() == 0) {
+        return null;
+      }
+
+      try {
+        return ObjectConverter.convert(value, conversions[property]);
+
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Column " + rs.getFieldName(column) + " value '" + value
+            + "' cannot be converted to " + conversions[property].getName());
+      }
+    }
+  }
+
+  private static int indexOf(String[] fieldNames, String name) {
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (fieldNames[i].equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static Object primitiveDefault(Class<?> wrapper) {
+    if (wrapper == Integer.class) {
+      return Integer.valueOf(0);
+    } else if (wrapper == Long.class) {
+      return Long.valueOf(0L);
+    } else if (wrapper == Boolean.class) {
+      return Boolean.FALSE;
+    } else if (wrapper == Float.class) {
+      return Float.valueOf(0f);
+    }
+
+    return Double.valueOf(0d);
+  }
+
+  private static Class<?> wrap(Class<?> type) {
+    if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == double.class) {
+      return Double.class;
+    }
+
+    return type;
+  }
+
+  private static final class LayoutKey {
+    private final Class<?> rowClass;
+
+    private final String[] fieldNames;
+
+    private final int hash;
+
+    LayoutKey(Class<?> rowClass, String[] fieldNames) {
+      this.rowClass = rowClass;
+      this.fieldNames = fieldNames;
+      this.hash = 31 * rowClass.hashCode() + Arrays.hashCode(fieldNames);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof LayoutKey)) {
+        return false;
+      }
+
+      LayoutKey other = (LayoutKey) obj;
+
+      return rowClass == other.rowClass && Arrays.equals(fieldNames, other.fieldNames);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package org.ucmtwine.parameter.rows;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ucmtwine.parameter.JavaTime;
+
+/**
+ * The writable properties of a row class, found by reflection once per class.
+ * 
+ * <p>
+ * A row class is either a record, whose components are passed to its canonical
+ * constructor, or a class with a no-arg constructor whose setters and
+ * non-final fields are set. Setters and fields of types that can't be read from
+ * a result set are ignored. Property names are matched to result set columns
+ * ignoring case.
+ * </p>
+ * 
+ * @author tim
+ */
+class RowType {
+
+  private static final ConcurrentMap<Class<?>, RowType> TYPES = new ConcurrentHashMap<Class<?>, RowType>();
+
+  private static final Method IS_RECORD = findMethod(Class.class, "isRecord");
+
+  private static final Method GET_RECORD_COMPONENTS = findMethod(Class.class, "getRecordComponents");
+
+  private final Class<?> rowClass;
+
+  private final Constructor<?> constructor;
+
+  private final boolean record;
+
+  private final String[] names;
+
+  private final Class<?>[] types;
+
+  /**
+   * The setter Method or Field of each property, null for records.
+   */
+  private final AccessibleObject[] writers;
+
+  private RowType(Class<?> rowClass) throws IllegalArgumentException {
+    this.rowClass = rowClass;
+    this.record = isRecord(rowClass);
+
+    Map<String, Object[]> properties = record ? findComponents(rowClass) : findProperties(rowClass);
+
+    int count = properties.size();
+    names = new String[count];
+    types = new Class<?>[count];
+    writers = new AccessibleObject[count];
+
+    int i = 0;
+
+    for (Object[] property : properties.values()) {
+      names[i] = (String) property[0];
+      types[i] = (Class<?>) property[1];
+      writers[i] = (AccessibleObject) property[2];
+
+      // only records can reach here with an unsupported type
+      if (!isSupportedType(types[i])) {
+        throw new IllegalArgumentException("Record component " + rowClass.getName() + "." + names[i]
+            + " has unsupported type " + types[i].getName());
+      }
+
+      if (writers[i] != null) {
+        writers[i].setAccessible(true);
+      }
+
+      i++;
+    }
+
+    try {
+      constructor = record ? rowClass.getDeclaredConstructor(types) : rowClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("Row class " + rowClass.getName() + " needs a no-arg constructor");
+    }
+  }
+
+  /**
+   * Returns the row type of a class.
+   * 
+   * @param rowClass
+   * @return
+   * @throws IllegalArgumentException
+   *           If the class can't be used as a row
+   */
+  static RowType forClass(Class<?> rowClass) throws IllegalArgumentException {
+    RowType type = TYPES.get(rowClass);
+
+    if (type == null) {
+      RowType newType = new RowType(rowClass);
+      type = TYPES.putIfAbsent(rowClass, newType);
+
+      if (type == null) {
+        type = newType;
+      }
+    }
+
+    return type;
+  }
+
+  Class<?> getRowClass() {
+    return rowClass;
+  }
+
+  boolean isRecord() {
+    return record;
+  }
+
+  int getPropertyCount() {
+    return names.length;
+  }
+
+  String getName(int property) {
+    return names[property];
+  }
+
+  Class<?> getType(int property) {
+    return types[property];
+  }
+
+  AccessibleObject getWriter(int property) {
+    return writers[property];
+  }
+
+  Constructor<?> getConstructor() {
+    return constructor;
+  }
+
+  static boolean isSupportedType(Class<?> type) {
+    return type == String.class || type == Integer.class || type == int.class || type == Long.class
+        || type == long.class || type == Boolean.class || type == boolean.class || type == Float.class
+        || type == float.class || type == Double.class || type == double.class || type == Date.class
+        || JavaTime.isSupportedType(type);
+  }
+
+  /**
+   * Setters take precedence over fields with the same name.
+   */
+  private static Map<String, Object[]> findProperties(Class<?> rowClass) {
+    Map<String, Object[]> properties = new LinkedHashMap<String, Object[]>();
+
+    for (Class<?> c = rowClass; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field f : c.getDeclaredFields()) {
+        int modifiers = f.getModifiers();
+
+        if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || f.isSynthetic()
+            || !isSupportedType(f.getType())) {
+          continue;
+        }
+
+        String key = f.getName().toLowerCase();
+
+        if (!properties.containsKey(key)) {
+          properties.put(key, new Object[] { f.getName(), f.getType(), f });
+        }
+      }
+    }
+
+    for (Method m : rowClass.getMethods()) {
+      String name = m.getName();
+
+      if (name.length() > 3 && name.startsWith("set") && m.getParameterTypes().length == 1
+          && !Modifier.isStatic(m.getModifiers()) && isSupportedType(m.getParameterTypes()[0])) {
+        String propertyName = name.substring(3);
+        properties.put(propertyName.toLowerCase(), new Object[] { propertyName, m.getParameterTypes()[0], m });
+      }
+    }
+
+    return properties;
+  }
+
+  private static Map<String, Object[]> findComponents(Class<?> rowClass) {
+    Map<String, Object[]> properties = new LinkedHashMap<String, Object[]>();
+
+    try {
+      Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(rowClass);
+
+      for (Object component : components) {
+        Class<?> componentClass = component.getClass();
+        String name = (String) componentClass.getMethod("getName").invoke(component);
+        Class<?> type = (Class<?>) componentClass.getMethod("getType").invoke(component);
+
+        properties.put(name.toLowerCase(), new Object[] { name, type, null });
+      }
+
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unable to read the components of record " + rowClass.getName(), e);
+    }
+
+    return properties;
+  }
+
+  private static boolean isRecord(Class<?> rowClass) {
+    if (IS_RECORD == null) {
+      return false;
+    }
+
+    try {
+      return ((Boolean) IS_RECORD.invoke(rowClass)).booleanValue();
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static Method findMethod(Class<?> klass, String name) {
+    try {
+      return klass.getMethod(name);
+
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
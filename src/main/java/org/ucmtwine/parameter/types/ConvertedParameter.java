@@ -0,0 +1,43 @@
+package org.ucmtwine.parameter.types;
+
+import intradoc.common.GrammarElement;
+import intradoc.server.Service;
+
+import org.ucmtwine.convert.Converters;
+import org.ucmtwine.parameter.Parameter;
+
+/**
+ * A parameter of a type Twine doesn't know, which is converted from the binder
+ * string by a converter registered with {@link Converters}.
+ * 
+ * @author tim
+ */
+public class ConvertedParameter extends Parameter {
+
+  public ConvertedParameter(String name, Class<?> type) {
+    super(name, type);
+  }
+
+  @Override
+  public Object getBinderValue(Service service) {
+    String value = getStringValue(service.getBinder());
+
+    if (value == null) {
+      return null;
+    }
+
+    try {
+      return Converters.convert(value, type);
+
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Parameter " + name + " must be convertible to type " + type.getName());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getGrammarElementType() {
+    return GrammarElement.STRING_VAL;
+  }
+}
@@ -5,9 +5,10 @@ import intradoc.data.DataBinder;
 import intradoc.server.Service;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.ucmtwine.parameter.DateFormats;
+import org.ucmtwine.parameter.JavaTime;
 import org.ucmtwine.parameter.Parameter;
 
 public class DateParameter extends Parameter {
@@ -30,12 +31,12 @@ public class DateParameter extends Parameter {
       date = getFromString(service.getBinder(), dateString);
     }
 
-    return date;
+    return toType(date);
   }
 
   private Date getFromString(DataBinder binder, String dateString) {
     Date d = null;
-    DateFormat dateFormat = new SimpleDateFormat(binder.m_blDateFormat.toSimplePattern());
+    DateFormat dateFormat = DateFormats.get(binder.m_blDateFormat.toSimplePattern());
     try {
       d = (Date) dateFormat.parse(dateString);
 
@@ -48,9 +49,27 @@ public class DateParameter extends Parameter {
     return d;
   }
 
+  /**
+   * Convert a date to the parameter type if it is a java.time type.
+   * 
+   * @param date
+   * @return
+   */
+  private Object toType(Date date) {
+    if (date != null && JavaTime.isSupportedType(type)) {
+      return JavaTime.fromDate(date, type);
+    }
+
+    return date;
+  }
+
   public Object getArgumentValue(Object object, Service service) throws ClassCastException {
     if (object instanceof String) {
-      return getFromString(service.getBinder(), (String) object);
+      return toType(getFromString(service.getBinder(), (String) object));
+    }
+
+    if (object instanceof Date) {
+      return toType((Date) object);
     }
 
     return super.getArgumentValue(object, service);
@@ -9,6 +9,7 @@ import intradoc.server.Service;
 import intradoc.server.ServiceRequestImplementor;
 import intradoc.shared.UserData;
 
+import org.ucmtwine.async.ServiceFanout;
 import org.ucmtwine.parameter.Parameter;
 
 /**
@@ -69,6 +70,9 @@ public class InjectedParameter extends Parameter {
     } else if (type == Workspace.class) {
       return service.getWorkspace();
 
+    } else if (type == ServiceFanout.class) {
+      return new ServiceFanout(service);
+
     } else if (ExecutionContext.class.isAssignableFrom(type)) {
       return service;
     }
@@ -85,6 +89,7 @@ public class InjectedParameter extends Parameter {
 
   public static boolean isValidType(Class<?> type) {
     return (type == UserData.class || ExecutionContext.class.isAssignableFrom(type) || type == PageMerger.class
-        || type == DataBinder.class || type == HttpImplementor.class || type == ServiceRequestImplementor.class || type == Workspace.class);
+        || type == DataBinder.class || type == HttpImplementor.class || type == ServiceRequestImplementor.class || type == Workspace.class
+        || type == ServiceFanout.class);
   }
 }
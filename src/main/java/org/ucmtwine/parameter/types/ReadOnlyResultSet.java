@@ -0,0 +1,273 @@
+package org.ucmtwine.parameter.types;
+
+import intradoc.data.DataResultSet;
+import intradoc.data.FieldInfo;
+import intradoc.data.ResultSet;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+
+/**
+ * A read only view of a DataResultSet. It has its own cursor but reads the
+ * rows of the result set it was made from.
+ * 
+ * <p>
+ * Every read, and every cursor move, is passed to a shallow clone of the
+ * original, and the methods which would change it throw an
+ * UnsupportedOperationException. Field values are read in place. The methods
+ * which hand out a whole row hand out a copy of it, as the row itself belongs
+ * to the original.
+ * </p>
+ * 
+ * <p>
+ * The view's own rows are always empty, so a DataResultSet method which isn't
+ * overridden here can never reach the original's rows.
+ * </p>
+ * 
+ * @author tim
+ */
+@SuppressWarnings("rawtypes")
+public class ReadOnlyResultSet extends DataResultSet {
+
+  private final DataResultSet view;
+
+  /**
+   * @param rs
+   *          The result set to view, which must not be changed while the view
+   *          is in use
+   */
+  public ReadOnlyResultSet(DataResultSet rs) {
+    view = rs.shallowClone();
+  }
+
+  @Override
+  public boolean isMutable() {
+    return false;
+  }
+
+  @Override
+  public boolean hasRawObjects() {
+    return view.hasRawObjects();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return view.isEmpty();
+  }
+
+  @Override
+  public boolean isRowPresent() {
+    return view.isRowPresent();
+  }
+
+  @Override
+  public int getNumRows() {
+    return view.getNumRows();
+  }
+
+  @Override
+  public int getNumFields() {
+    return view.getNumFields();
+  }
+
+  @Override
+  public String getFieldName(int index) {
+    return view.getFieldName(index);
+  }
+
+  @Override
+  public boolean getFieldInfo(String name, FieldInfo fi) {
+    return view.getFieldInfo(name, fi);
+  }
+
+  @Override
+  public void getIndexFieldInfo(int index, FieldInfo fi) {
+    view.getIndexFieldInfo(index, fi);
+  }
+
+  @Override
+  public boolean first() {
+    return view.first();
+  }
+
+  @Override
+  public boolean next() {
+    return view.next();
+  }
+
+  @Override
+  public boolean last() {
+    return view.last();
+  }
+
+  @Override
+  public boolean skip(int rows) {
+    return view.skip(rows);
+  }
+
+  @Override
+  public int getCurrentRow() {
+    return view.getCurrentRow();
+  }
+
+  @Override
+  public void setCurrentRow(int index) {
+    view.setCurrentRow(index);
+  }
+
+  @Override
+  public String getStringValue(int index) {
+    return view.getStringValue(index);
+  }
+
+  @Override
+  public String getStringValueByName(String name) {
+    return view.getStringValueByName(name);
+  }
+
+  @Override
+  public Date getDateValue(int index) {
+    return view.getDateValue(index);
+  }
+
+  @Override
+  public Date getDateValueByName(String name) {
+    return view.getDateValueByName(name);
+  }
+
+  @Override
+  public Vector getCurrentRowValues() {
+    return copy(view.getCurrentRowValues());
+  }
+
+  @Override
+  public Vector getRowValues(int index) {
+    return copy(view.getRowValues(index));
+  }
+
+  @Override
+  public List getCurrentRowAsList() {
+    return copy(view.getCurrentRowAsList());
+  }
+
+  @Override
+  public List getRowAsList(int index) {
+    return copy(view.getRowAsList(index));
+  }
+
+  @Override
+  public Properties getCurrentRowProps() {
+    return view.getCurrentRowProps();
+  }
+
+  @Override
+  public Map getCurrentRowMap() {
+    return view.getCurrentRowMap();
+  }
+
+  /**
+   * Moves the view's cursor to the row found.
+   */
+  @Override
+  public Vector findRow(int index, String value) {
+    return copy(view.findRow(index, value));
+  }
+
+  /**
+   * Moves the view's cursor to the row found.
+   */
+  @Override
+  public Vector findRow(int index, String value, int startRow, int flags) {
+    return copy(view.findRow(index, value, startRow, flags));
+  }
+
+  /**
+   * Another read only view of the same rows, with its own cursor.
+   */
+  @Override
+  public DataResultSet shallowClone() {
+    return new ReadOnlyResultSet(view);
+  }
+
+  @Override
+  public void addRow(Vector row) {
+    throw readOnly();
+  }
+
+  @Override
+  public void addRowWithList(List row) {
+    throw readOnly();
+  }
+
+  @Override
+  public void insertRowAt(Vector row, int index) {
+    throw readOnly();
+  }
+
+  @Override
+  public void setRowValues(Vector row, int index) {
+    throw readOnly();
+  }
+
+  @Override
+  public void setRowWithList(List row, int index) {
+    throw readOnly();
+  }
+
+  @Override
+  public void setCurrentValue(int index, String value) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean deleteRow(int index) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean deleteCurrentRow() {
+    throw readOnly();
+  }
+
+  @Override
+  public void removeAll() {
+    throw readOnly();
+  }
+
+  @Override
+  public void appendFields(Vector fields) {
+    throw readOnly();
+  }
+
+  @Override
+  public void mergeFields(DataResultSet rs) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean merge(String key, ResultSet rs, boolean replace) {
+    throw readOnly();
+  }
+
+  @Override
+  public void copyFieldInfo(ResultSet rs) {
+    throw readOnly();
+  }
+
+  @Override
+  public void copy(ResultSet rs) {
+    throw readOnly();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Vector copy(List row) {
+    return (row == null) ? null : new Vector(row);
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("This result set is a read only view, copy it to make changes");
+  }
+}
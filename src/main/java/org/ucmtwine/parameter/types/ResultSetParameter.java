@@ -2,13 +2,29 @@ package org.ucmtwine.parameter.types;
 
 import intradoc.common.GrammarElement;
 import intradoc.data.DataResultSet;
+import intradoc.data.FieldInfo;
 import intradoc.data.ResultSet;
 import intradoc.server.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.ucmtwine.parameter.Parameter;
 
 public class ResultSetParameter extends Parameter {
 
+  private static final String[] ALL_COLUMNS = new String[0];
+
+  /**
+   * Pass a view of the binder's result set instead of a copy.
+   */
+  private boolean readOnly = false;
+
+  /**
+   * The columns to copy, or none for all of them.
+   */
+  private String[] columns = ALL_COLUMNS;
+
   public ResultSetParameter() {
     super("", DataResultSet.class);
   }
@@ -21,18 +37,45 @@ public class ResultSetParameter extends Parameter {
     super(name, type);
   }
 
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Whether to pass a read only view of the binder's result set instead of a
+   * copy. Changing the view throws an UnsupportedOperationException.
+   * 
+   * @param readOnly
+   */
+  public void setReadOnly(boolean readOnly) {
+    this.readOnly = readOnly;
+  }
+
+  public String[] getColumns() {
+    return columns.clone();
+  }
+
+  /**
+   * Only copy these columns. An empty array copies all of them.
+   * 
+   * @param columns
+   */
+  public void setColumns(String[] columns) {
+    this.columns = (columns == null) ? ALL_COLUMNS : columns.clone();
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Object getBinderValue(Service service) {
-    DataResultSet drs = getResultSet(this.name, service);
+    ResultSet rs = getResultSet(this.name, service);
 
-    if (this.required && drs == null) {
+    if (this.required && rs == null) {
       throw new IllegalArgumentException("ResultSet " + this.name + " is required.");
     }
 
-    return drs;
+    return rs;
   }
 
   /**
@@ -42,10 +85,10 @@ public class ResultSetParameter extends Parameter {
   public Object getArgumentValue(Object object, Service service) throws ClassCastException {
 
     if (object instanceof String) {
-      DataResultSet drs = getResultSet((String) object, service);
+      ResultSet rs = getResultSet((String) object, service);
 
-      if (drs != null) {
-        return drs;
+      if (rs != null) {
+        return rs;
       }
     }
     return null;
@@ -59,17 +102,80 @@ public class ResultSetParameter extends Parameter {
    * @param service
    * @return
    */
-  private DataResultSet getResultSet(String name, Service service) {
+  private ResultSet getResultSet(String name, Service service) {
     ResultSet rs = service.getBinder().getResultSet(name);
-    DataResultSet drs = new DataResultSet();
 
-    if (rs != null) {
-      drs.copy(rs);
+    if (rs == null) {
+      return null;
+    }
+
+    if (readOnly) {
+      return getView(name, rs);
+    }
+
+    return copy(name, rs);
+  }
 
+  /**
+   * A read only view of a result set with its own cursor, which reads the rows
+   * in place.
+   * 
+   * @param name
+   * @param rs
+   * @return
+   */
+  private ResultSet getView(String name, ResultSet rs) {
+    if (rs instanceof DataResultSet) {
+      return new ReadOnlyResultSet((DataResultSet) rs);
+    }
+
+    // other result sets (e.g. database cursors) have a single cursor, which
+    // the method would move for everyone else, so they are copied
+    return copy(name, rs);
+  }
+
+  /**
+   * Copy a result set, or the configured columns of it.
+   * 
+   * @param name
+   * @param rs
+   * @return
+   */
+  private DataResultSet copy(String name, ResultSet rs) {
+    // iterate a view so the binder's result set keeps its cursor
+    if (rs instanceof DataResultSet) {
+      rs = ((DataResultSet) rs).shallowClone();
+    }
+
+    if (columns.length == 0) {
+      DataResultSet drs = new DataResultSet();
+      drs.copy(rs);
       return drs;
     }
 
-    return null;
+    int[] indexes = new int[columns.length];
+    FieldInfo fi = new FieldInfo();
+
+    for (int i = 0; i < columns.length; i++) {
+      if (!rs.getFieldInfo(columns[i], fi)) {
+        throw new IllegalArgumentException("ResultSet " + name + " does not have a column " + columns[i]);
+      }
+      indexes[i] = fi.m_index;
+    }
+
+    DataResultSet drs = new DataResultSet(columns);
+
+    for (boolean hasRow = rs.first(); hasRow; hasRow = rs.next()) {
+      List<String> row = new ArrayList<String>(indexes.length);
+
+      for (int index : indexes) {
+        row.add(rs.getStringValue(index));
+      }
+
+      drs.addRowWithList(row);
+    }
+
+    return drs;
   }
 
   /**
@@ -0,0 +1,92 @@
+package org.ucmtwine.parameter.types;
+
+import intradoc.common.GrammarElement;
+import intradoc.data.DataResultSet;
+import intradoc.data.ResultSet;
+import intradoc.server.Service;
+
+import java.util.List;
+
+import org.ucmtwine.parameter.Parameter;
+import org.ucmtwine.parameter.rows.ResultSetRows;
+
+/**
+ * A result set bound as an Iterable or List of row objects, e.g.
+ * <code>@Binder(name = "SearchResults") Iterable&lt;SearchRow&gt; rows</code>.
+ * 
+ * <p>
+ * An Iterable maps rows lazily from a view of the binder's result set. A List
+ * maps every row up front.
+ * </p>
+ * 
+ * @author tim
+ */
+public class RowsParameter extends Parameter {
+
+  private final Class<?> rowClass;
+
+  public RowsParameter(String name, Class<?> type, Class<?> rowClass) {
+    super(name, type);
+    this.rowClass = rowClass;
+  }
+
+  public Class<?> getRowClass() {
+    return rowClass;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object getBinderValue(Service service) {
+    Object rows = getRows(this.name, service);
+
+    if (this.required && rows == null) {
+      throw new IllegalArgumentException("ResultSet " + this.name + " is required.");
+    }
+
+    return rows;
+  }
+
+  /**
+   * Returns the rows of a result set found by the passed in string value.
+   */
+  @Override
+  public Object getArgumentValue(Object object, Service service) throws ClassCastException {
+    if (object instanceof String) {
+      return getRows((String) object, service);
+    }
+
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object getRows(String name, Service service) {
+    ResultSet rs = service.getBinder().getResultSet(name);
+
+    if (rs == null) {
+      return null;
+    }
+
+    // iterate a view so the binder's result set keeps its cursor
+    if (rs instanceof DataResultSet) {
+      rs = ((DataResultSet) rs).shallowClone();
+    }
+
+    ResultSetRows<?> rows = new ResultSetRows<Object>(rs, (Class<Object>) rowClass);
+
+    if (List.class.isAssignableFrom(type)) {
+      return rows.toList();
+    }
+
+    return rows;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getGrammarElementType() {
+    // string val because the RS name is passed as a string
+    return GrammarElement.STRING_VAL;
+  }
+}
@@ -7,10 +7,15 @@ import intradoc.data.DataException;
 import intradoc.data.Workspace;
 import intradoc.shared.FilterImplementor;
 
-import java.lang.reflect.Method;
+import java.lang.reflect.InvocationTargetException;
 
-import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.metrics.MethodMetrics;
 import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.trace.Trace;
 
 public class FilterProxy implements FilterImplementor {
 
@@ -26,15 +31,55 @@ public class FilterProxy implements FilterImplementor {
 
       String methodID = (String) ctx.getCachedObject("filterParameter");
 
-      Method m = MethodRegistry.getMethod(methodID);
+      MethodBinding binding = MethodRegistry.getBinding(methodID);
 
-      ParameterMarshaller marshaller = new ParameterMarshaller(m);
+      if (binding == null) {
+        throw new ServiceException("Unknown Twine method ID " + methodID);
+      }
 
-      Object[] params = marshaller.getValueArray(ws, binder, ctx);
+      MethodMetrics metrics = Metrics.forBinding(binding);
+      long start = (metrics == null) ? 0L : System.nanoTime();
 
-      Object context = m.getDeclaringClass().newInstance();
+      IEventRecorder events = DispatchEvents.getRecorder();
+      Object event = (events == null) ? null : events.begin(DispatchEvents.FILTER);
 
-      returnVal = m.invoke(context, params);
+      boolean failed = true;
+
+      try {
+        IMethodInvoker invoker = binding.getInvoker();
+
+        if (binding.getAdapter() != null) {
+          returnVal = invokeAdapted(binding, invoker.getTarget(ctx), ws, binder, ctx, events);
+
+        } else {
+          Object bindEvent = (events == null) ? null : events.begin(DispatchEvents.BINDING);
+
+          Object[] params = binding.getMarshaller().getValueArray(ws, binder, ctx);
+
+          if (bindEvent != null) {
+            events.endDispatch(bindEvent, binding, false);
+          }
+
+          Object context = invoker.getTarget(ctx);
+
+          returnVal = invoker.invoke(context, params);
+        }
+
+        failed = false;
+
+      } catch (Exception e) {
+        Trace.failed(Trace.FILTER, binding.getId(), 0, e);
+        throw e;
+
+      } finally {
+        if (metrics != null) {
+          metrics.record(System.nanoTime() - start, failed);
+        }
+
+        if (event != null) {
+          events.endDispatch(event, binding, failed);
+        }
+      }
 
     } catch (IllegalArgumentException e) {
 
@@ -51,4 +96,25 @@ public class FilterProxy implements FilterImplementor {
 
     return CONTINUE;
   }
+
+  /**
+   * Call a filter method through its generated adapter. The adapter injects
+   * the parameters as it calls the method, so the binding event covers both.
+   */
+  private Object invokeAdapted(MethodBinding binding, Object target, Workspace ws, DataBinder binder,
+      ExecutionContext ctx, IEventRecorder events) throws InvocationTargetException {
+    Object event = (events == null) ? null : events.begin(DispatchEvents.ADAPTED_BINDING);
+    boolean failed = true;
+
+    try {
+      Object returnVal = binding.getAdapter().invokeFilter(target, ws, binder, ctx);
+      failed = false;
+      return returnVal;
+
+    } finally {
+      if (event != null) {
+        events.endDispatch(event, binding, failed);
+      }
+    }
+  }
 }
@@ -0,0 +1,144 @@
+package org.ucmtwine.proxy;
+
+import java.lang.reflect.Method;
+
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.metrics.MethodMetrics;
+import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.proxy.adapter.IMethodAdapter;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.proxy.invoker.Invokers;
+
+/**
+ * Everything a proxy needs to call an annotated method: the parameter
+ * marshaller, the invoker and the generated adapter, if the method has one.
+ * They are built once when the method is injected and shared by every
+ * request, so none of them may hold per-call state. The binding also holds the
+ * method's invocation metrics.
+ * 
+ * <p>
+ * Bindings are created by the {@link org.ucmtwine.proxy.injector.MethodRegistry}
+ * which assigns the method ID.
+ * </p>
+ * 
+ * @author tim
+ */
+public class MethodBinding {
+
+  private final int id;
+
+  private final IMethodInvoker invoker;
+
+  private final ParameterMarshaller marshaller;
+
+  private final IMethodAdapter adapter;
+
+  /**
+   * Whether the method returns a Future, and so runs on the async pool.
+   */
+  private final boolean async;
+
+  /**
+   * Created on first use, so methods that are never called while metrics are
+   * on don't have any.
+   */
+  private volatile MethodMetrics metrics;
+
+  /**
+   * @param id
+   *          The method ID assigned by the registry
+   * @param method
+   * @throws IllegalArgumentException
+   *           If a parameter of the method cannot be marshalled
+   */
+  public MethodBinding(int id, Method method) throws IllegalArgumentException {
+    this(id, new ParameterMarshaller(method), Invokers.create(method));
+  }
+
+  /**
+   * @param id
+   *          The method ID assigned by the registry
+   * @param marshaller
+   * @param invoker
+   */
+  public MethodBinding(int id, ParameterMarshaller marshaller, IMethodInvoker invoker) {
+    this(id, marshaller, invoker, null);
+  }
+
+  /**
+   * @param id
+   *          The method ID assigned by the registry
+   * @param marshaller
+   * @param invoker
+   * @param adapter
+   *          The method's generated adapter, or null
+   */
+  public MethodBinding(int id, ParameterMarshaller marshaller, IMethodInvoker invoker, IMethodAdapter adapter) {
+    this.id = id;
+    this.marshaller = marshaller;
+    this.marshaller.setMethodId(id);
+    this.invoker = invoker;
+    this.adapter = adapter;
+    this.async = AsyncServices.isAsync(invoker.getMethod());
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Method getMethod() {
+    return invoker.getMethod();
+  }
+
+  public IMethodInvoker getInvoker() {
+    return invoker;
+  }
+
+  public ParameterMarshaller getMarshaller() {
+    return marshaller;
+  }
+
+  /**
+   * The method's generated adapter, or null if it doesn't have one.
+   * 
+   * @return
+   */
+  public IMethodAdapter getAdapter() {
+    return adapter;
+  }
+
+  /**
+   * Does the method return a Future? If so the service proxy runs it through
+   * {@link AsyncServices}.
+   * 
+   * @return
+   */
+  public boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * The method's invocation metrics. Proxies should go through
+   * {@link Metrics#forBinding(MethodBinding)}, which checks that metrics are
+   * on.
+   * 
+   * @return
+   */
+  public MethodMetrics getMetrics() {
+    MethodMetrics result = metrics;
+
+    if (result == null) {
+      synchronized (this) {
+        result = metrics;
+
+        if (result == null) {
+          result = Metrics.create(this);
+          metrics = result;
+        }
+      }
+    }
+
+    return result;
+  }
+}
@@ -5,7 +5,6 @@ import intradoc.common.LocaleUtils;
 import intradoc.common.ScriptExtensionsAdaptor;
 import intradoc.common.ScriptInfo;
 import intradoc.common.ServiceException;
-import intradoc.common.SystemUtils;
 import intradoc.server.Service;
 import intradoc.server.script.ScriptExtensionUtils;
 import intradoc.shared.UserData;
@@ -21,20 +20,76 @@ import net.balusc.util.ObjectConverter;
 
 import org.ucmtwine.annotation.IdocFunction;
 import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.cache.CacheKey;
+import org.ucmtwine.cache.RequestCache;
+import org.ucmtwine.cache.SharedCaches;
+import org.ucmtwine.cache.SharedResultCache;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.index.AnnotatedMethods;
+import org.ucmtwine.metrics.MethodMetrics;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.parameter.Boxes;
+import org.ucmtwine.parameter.JavaTime;
 import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.trace.Trace;
 
 public class ScriptProxy extends ScriptExtensionsAdaptor {
-  private List<Class<?>[]> functionParameterTypes;
+  private Class<?> m_class;
 
-  private List<Class<?>[]> variableParameterTypes;
+  /**
+   * Dispatch table for functions, addressed by the function index in
+   * m_functionDefinitionTable.
+   */
+  private MethodBinding functionBindings[];
 
-  private List<String> functionMethodNames;
+  /**
+   * Dispatch table for variables, addressed by the variable index in
+   * m_variableDefinitionTable.
+   */
+  private MethodBinding variableBindings[];
 
-  private List<String> variableMethodNames;
+  /**
+   * Each function's RETURN_ type, by function index.
+   */
+  private int functionReturnTypes[];
 
-  private Class<?> m_class;
+  /**
+   * Each variable's RETURN_ type, by variable index.
+   */
+  private int variableReturnTypes[];
 
-  private Method functionMethods[];
+  /**
+   * Whether each function's results are cached for the request, by function
+   * index.
+   */
+  private boolean functionCacheable[];
+
+  /**
+   * Whether each variable's value is cached for the request, by variable
+   * index.
+   */
+  private boolean variableCacheable[];
+
+  /**
+   * Each function's cross-request cache, by function index, or null if it
+   * doesn't have one.
+   */
+  private SharedResultCache functionSharedCaches[];
+
+  /**
+   * Each variable's cross-request cache, by variable index, or null if it
+   * doesn't have one.
+   */
+  private SharedResultCache variableSharedCaches[];
+
+  /**
+   * Argument array handed to variable methods, which only take injected
+   * parameters. Never written to.
+   */
+  private static final Object[] VARIABLE_ARGUMENTS = { 0 };
 
   public static final int RETURN_VOID = -1;
   public static final int RETURN_STRING = 0;
@@ -46,7 +101,15 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
 
   public ScriptProxy(Class<?> klass) {
     m_class = klass;
+
+    IEventRecorder events = DispatchEvents.getRecorder();
+    Object event = (events == null) ? null : events.begin(DispatchEvents.BOOTSTRAP);
+
     generateDefinitions();
+
+    if (event != null) {
+      events.endPhase(event, "definitions", functionBindings.length + variableBindings.length);
+    }
   }
 
   /**
@@ -61,10 +124,10 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
    *          The annotated class
    */
   private void generateDefinitions() {
-    functionParameterTypes = new ArrayList<Class<?>[]>();
-    functionMethodNames = new ArrayList<String>();
-    variableParameterTypes = new ArrayList<Class<?>[]>();
-    variableMethodNames = new ArrayList<String>();
+    List<MethodBinding> functions = new ArrayList<MethodBinding>();
+    List<MethodBinding> variables = new ArrayList<MethodBinding>();
+    List<Boolean> functionsCacheable = new ArrayList<Boolean>();
+    List<Boolean> variablesCacheable = new ArrayList<Boolean>();
 
     List<String> functionNames = new ArrayList<String>();
     List<ParameterMarshaller> functionParams = new ArrayList<ParameterMarshaller>();
@@ -73,9 +136,7 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
     List<String> variableNames = new ArrayList<String>();
     List<Integer> variableReturnTypes = new ArrayList<Integer>();
 
-    Method ms[] = m_class.getDeclaredMethods();
-
-    functionMethods = new Method[ms.length];
+    List<Method> ms = AnnotatedMethods.getDeclaredMethods(m_class, IdocFunction.class, IdocVariable.class);
 
     Map<String, Method> methods = new TreeMap<String, Method>();
 
@@ -83,8 +144,6 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
       methods.put(m.getName(), m);
     }
 
-    int functionCounter = 0;
-
     for (String methodName : methods.keySet()) {
       Method m = methods.get(methodName);
       IdocFunction functionInfo = m.getAnnotation(IdocFunction.class);
@@ -95,12 +154,11 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
         } else {
           functionNames.add(functionInfo.name());
         }
-        functionMethodNames.add(m.getName());
-        functionMethods[functionCounter] = m;
-        functionParams.add(new ParameterMarshaller(m));
+        MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(m));
+        functions.add(binding);
+        functionsCacheable.add(functionInfo.cacheable());
+        functionParams.add(binding.getMarshaller());
         functionReturnTypes.add(getFunctionReturnType(m));
-        functionParameterTypes.add(m.getParameterTypes());
-        functionCounter++;
 
       } else {
         IdocVariable varInfo = m.getAnnotation(IdocVariable.class);
@@ -111,17 +169,56 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
           } else {
             variableNames.add(varInfo.name());
           }
-          variableMethodNames.add(m.getName());
           variableReturnTypes.add(getVariableReturnType(m));
-          variableParameterTypes.add(m.getParameterTypes());
+          variables.add(MethodRegistry.getBinding(MethodRegistry.register(m)));
+          variablesCacheable.add(varInfo.cacheable());
         }
       }
     }
 
+    functionBindings = functions.toArray(new MethodBinding[functions.size()]);
+    variableBindings = variables.toArray(new MethodBinding[variables.size()]);
+    this.functionReturnTypes = toIntArray(functionReturnTypes);
+    this.variableReturnTypes = toIntArray(variableReturnTypes);
+    functionCacheable = toArray(functionsCacheable);
+    variableCacheable = toArray(variablesCacheable);
+    functionSharedCaches = getSharedCaches(functionBindings);
+    variableSharedCaches = getSharedCaches(variableBindings);
+
     writeVariableTables(variableNames, variableReturnTypes);
     writeFunctionTables(functionNames, functionParams, functionReturnTypes);
   }
 
+  private static boolean[] toArray(List<Boolean> list) {
+    boolean[] array = new boolean[list.size()];
+
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i).booleanValue();
+    }
+
+    return array;
+  }
+
+  private static int[] toIntArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i).intValue();
+    }
+
+    return array;
+  }
+
+  private static SharedResultCache[] getSharedCaches(MethodBinding[] bindings) {
+    SharedResultCache[] caches = new SharedResultCache[bindings.length];
+
+    for (int i = 0; i < bindings.length; i++) {
+      caches[i] = SharedCaches.forBinding(bindings[i]);
+    }
+
+    return caches;
+  }
+
   /**
    * Build a static int[m][2] array of variable info where the int array is
    * <code>{ variable_index, return_type }</code>.
@@ -237,21 +334,15 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
       throw new ServiceException(msg);
     }
 
-    if (functionIndex > m_functionTable.length) {
-      SystemUtils.trace("twine", "Unknown function with index" + functionIndex);
+    if (functionIndex < 0 || functionIndex >= functionBindings.length) {
+      Trace.record(Trace.UNKNOWN_FUNCTION, -1, Trace.OK, functionIndex);
       return false;
     }
 
     try {
       args[nargs] = runFunctionMethod(functionIndex, args, context);
     } catch (Exception e) {
-      String msg = e.getMessage();
-      if (e instanceof InvocationTargetException) {
-        msg = ((InvocationTargetException) e).getTargetException().getMessage();
-      }
-      msg = "Unable to execute function '" + functionCalled + "()': " + msg;
-      SystemUtils.err(e, msg);
-      SystemUtils.trace("twine", msg);
+      Trace.failed(Trace.FUNCTION, functionBindings[functionIndex].getId(), 0, e);
 
       throw new ServiceException(e);
     }
@@ -264,18 +355,17 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
    * Enumerates the correct parameters for the delegated method. Injects any
    * autowired types if present in the method signature.
    * 
-   * @param method
+   * @param marshaller
+   *          The marshaller built for the method when it was injected
    * @param args
    * @param ctx
    * @return
    * @throws IllegalArgumentException
    * @throws ServiceException
    */
-  public Object[] getInjectedValueArray(Method method, Object[] args, ExecutionContext ctx)
+  public Object[] getInjectedValueArray(ParameterMarshaller marshaller, Object[] args, ExecutionContext ctx)
       throws IllegalArgumentException, ServiceException {
 
-    ParameterMarshaller marshaller = new ParameterMarshaller(method);
-
     if ((ctx instanceof Service) == false) {
       throw new ServiceException("Tried to create parameters with injection and not inside a service.");
     }
@@ -300,21 +390,270 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
   public Object runFunctionMethod(int functionIndex, Object[] args, ExecutionContext ctx) throws SecurityException,
       NoSuchMethodException, IllegalArgumentException, ServiceException, IllegalAccessException,
       InvocationTargetException {
-    Method method = functionMethods[functionIndex];
+    MethodBinding binding = functionBindings[functionIndex];
+
+    // timed from the start of binding, like services and filters
+    MethodMetrics metrics = Metrics.forBinding(binding);
+    long start = (metrics == null) ? 0L : System.nanoTime();
+
+    IEventRecorder events = DispatchEvents.getRecorder();
+    Object event = (events == null) ? null : events.begin(DispatchEvents.FUNCTION);
+    boolean failed = true;
+
+    try {
+      Object result;
+
+      if (binding.getAdapter() != null && !functionCacheable[functionIndex]
+          && functionSharedCaches[functionIndex] == null) {
+        result = runAdapted(binding, args, functionReturnTypes[functionIndex], ctx, metrics, start);
+
+      } else {
+        Object params[] = bindParameters(binding, args, ctx, metrics, start);
+
+        result = runCached(binding, params, functionReturnTypes[functionIndex], functionCacheable[functionIndex],
+            functionSharedCaches[functionIndex], ctx, metrics, start);
+      }
+
+      failed = false;
+      return result;
+
+    } finally {
+      if (event != null) {
+        events.endDispatch(event, binding, failed);
+      }
+    }
+  }
+
+  /**
+   * Build the value array of a bound method, recording a binding event if
+   * events are being recorded. A binding failure is recorded as a failed
+   * call.
+   * 
+   * @param binding
+   * @param args
+   * @param ctx
+   * @param metrics
+   *          The method's metrics or null
+   * @param start
+   *          When the call started
+   * @return
+   * @throws ServiceException
+   */
+  private Object[] bindParameters(MethodBinding binding, Object[] args, ExecutionContext ctx,
+      MethodMetrics metrics, long start) throws ServiceException {
+    IEventRecorder events = DispatchEvents.getRecorder();
+    Object event = (events == null) ? null : events.begin(DispatchEvents.BINDING);
+    boolean failed = true;
+
+    try {
+      Object params[] = getInjectedValueArray(binding.getMarshaller(), args, ctx);
+      failed = false;
+
+      return params;
+
+    } finally {
+      if (failed && metrics != null) {
+        metrics.record(System.nanoTime() - start, true);
+      }
+
+      if (event != null) {
+        events.endDispatch(event, binding, failed);
+      }
+    }
+  }
+
+  /**
+   * Invoke a bound method and convert its result, going through the request
+   * and shared caches first if the method has them.
+   * 
+   * @param binding
+   * @param params
+   * @param returnType
+   *          The RETURN_ type of the method
+   * @param requestCacheable
+   *          Whether results are cached for the request
+   * @param sharedCache
+   *          The cross-request cache or null
+   * @param ctx
+   * @param metrics
+   *          The method's metrics or null, a result from a cache isn't
+   *          recorded
+   * @param start
+   *          When the call started
+   * @return
+   * @throws ServiceException
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  private Object runCached(MethodBinding binding, Object[] params, int returnType, boolean requestCacheable,
+      SharedResultCache sharedCache, ExecutionContext ctx, MethodMetrics metrics, long start)
+      throws ServiceException, IllegalAccessException, InvocationTargetException {
+
+    if (!requestCacheable && sharedCache == null) {
+      return convertReturnValue(invoke(binding, params, ctx, metrics, start), returnType);
+    }
+
+    CacheKey key = new CacheKey(binding.getId(), binding.getMarshaller().getArgumentValues(params));
+
+    RequestCache requestCache = null;
+    Object result = RequestCache.MISS;
+
+    if (requestCacheable) {
+      requestCache = RequestCache.forContext(ctx);
+      result = requestCache.get(key);
+
+      if (result != RequestCache.MISS) {
+        return result;
+      }
+    }
+
+    UserData userData = null;
+
+    if (sharedCache != null) {
+      userData = (UserData) ctx.getCachedObject("UserData");
+      result = sharedCache.get(key, userData);
+    }
 
-    Object params[] = getInjectedValueArray(method, args, ctx);
+    if (result == SharedResultCache.MISS) {
+      result = convertReturnValue(invoke(binding, params, ctx, metrics, start), returnType);
 
+      if (sharedCache != null) {
+        sharedCache.put(key, userData, result);
+      }
+    }
+
+    if (requestCache != null) {
+      requestCache.put(key, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Call an uncached method through its generated adapter, which converts the
+   * arguments itself so no value array is built.
+   * 
+   * @param binding
+   * @param args
+   * @param returnType
+   *          The RETURN_ type of the method
+   * @param ctx
+   * @param metrics
+   *          The method's metrics or null
+   * @param start
+   *          When the call started
+   * @return
+   * @throws ServiceException
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  private Object runAdapted(MethodBinding binding, Object[] args, int returnType, ExecutionContext ctx,
+      MethodMetrics metrics, long start) throws ServiceException, IllegalAccessException,
+      InvocationTargetException {
     Object result;
+    boolean failed = true;
+
     try {
-      result = method.invoke(m_class.newInstance(), params);
+      if ((ctx instanceof Service) == false) {
+        throw new ServiceException("Tried to create parameters with injection and not inside a service.");
+      }
+
+      Object target = binding.getInvoker().getTarget(ctx);
+
+      // the adapter binds the parameters as it calls the method
+      IEventRecorder events = DispatchEvents.getRecorder();
+      Object event = (events == null) ? null : events.begin(DispatchEvents.ADAPTED_BINDING);
+
+      try {
+        result = binding.getAdapter().invokeScript(target, args, (Service) ctx);
+        failed = false;
+
+      } finally {
+        if (event != null) {
+          events.endDispatch(event, binding, failed);
+        }
+      }
 
     } catch (InstantiationException e) {
-      // TODO catch and re-throw ewwwww
       throw new ServiceException("Cannot delegate instantiate script context: " + e.getMessage());
+
+    } finally {
+      if (metrics != null) {
+        metrics.record(System.nanoTime() - start, failed);
+      }
     }
 
-    if (result == null) {
+    return convertReturnValue(result, returnType);
+  }
+
+  /**
+   * Invoke a bound method on the instance its scope provides.
+   * 
+   * @param binding
+   * @param params
+   * @param ctx
+   * @param metrics
+   *          The method's metrics or null
+   * @param start
+   *          When the call started, before its parameters were bound
+   * @return
+   * @throws ServiceException
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  private Object invoke(MethodBinding binding, Object[] params, ExecutionContext ctx, MethodMetrics metrics,
+      long start) throws ServiceException, IllegalAccessException, InvocationTargetException {
+    IMethodInvoker invoker = binding.getInvoker();
+    boolean failed = true;
+
+    try {
+      Object result = invoker.invoke(invoker.getTarget(ctx), params);
+      failed = false;
+
       return result;
+
+    } catch (InstantiationException e) {
+      // TODO catch and re-throw ewwwww
+      throw new ServiceException("Cannot delegate instantiate script context: " + e.getMessage());
+
+    } finally {
+      if (metrics != null) {
+        metrics.record(System.nanoTime() - start, failed);
+      }
+    }
+  }
+
+  /**
+   * Convert the method return value for its declared RETURN_ type. Longs and
+   * Doubles are returned as they are and booleans and small ints come from the
+   * shared boxes, so the common cases don't allocate.
+   * 
+   * @param result
+   * @param returnType
+   * @return
+   */
+  private Object convertReturnValue(Object result, int returnType) {
+    switch (returnType) {
+    case RETURN_BOOLEAN:
+      if (result instanceof Boolean) {
+        return Boxes.valueOf(((Boolean) result).booleanValue());
+      }
+      break;
+
+    case RETURN_INTEGER:
+      if (result instanceof Long) {
+        return result;
+      }
+      if (result instanceof Integer) {
+        return Boxes.valueOf(((Integer) result).longValue());
+      }
+      break;
+
+    case RETURN_FLOAT:
+      if (result instanceof Double) {
+        return result;
+      }
+      break;
     }
 
     return convertReturnValue(result);
@@ -322,12 +661,16 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
 
   /**
    * Convert the method return value into a PageMerger internal type of String,
-   * Long or Double
+   * Long, Double or Date
    * 
    * @param result
    * @return
    */
   private Object convertReturnValue(Object result) {
+    if (result == null) {
+      return result;
+    }
+
     if (boolean.class.isInstance(result) || result instanceof Boolean) {
       return ScriptExtensionUtils.computeReturnObject(1, ((Boolean) result).booleanValue(), 0, 0.0, null);
 
@@ -335,11 +678,13 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
       return (Long) result;
 
     } else if (int.class.isInstance(result) || result instanceof Integer) {
-      return new Long((Integer) result);
+      return Boxes.valueOf(((Integer) result).longValue());
 
     } else if (double.class.isInstance(result)) {
       return (Double) result;
 
+    } else if (JavaTime.isSupportedValue(result)) {
+      return JavaTime.toDate(result);
     }
 
     // String/Double/Long/Float
@@ -379,26 +724,26 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
     }
 
     int variableIndex = config[0];
-    String variableRequested = m_variableTable[variableIndex];
 
-    if (variableIndex > m_variableTable.length) {
+    if (variableIndex < 0 || variableIndex >= variableBindings.length) {
       return false; // unknown variable
     }
 
+    String variableRequested = m_variableTable[variableIndex];
+
     Object result = null;
 
     try {
       result = runVariableMethod(variableIndex, context);
 
     } catch (Exception e) {
-      String msg = "Unable to handle variable " + variableRequested + ": " + e.getMessage();
-      SystemUtils.err(e, msg);
-      SystemUtils.trace("twine", msg);
-      throw new ServiceException(msg);
+      Trace.failed(Trace.VARIABLE, variableBindings[variableIndex].getId(), 0, e);
+
+      throw new ServiceException("Unable to handle variable " + variableRequested + ": " + e.getMessage());
     }
 
     if (isConditional) {
-      returnBool[0] = ObjectConverter.convert(result, boolean.class);
+      returnBool[0] = isTrue(result);
     } else {
       returnString[0] = ObjectConverter.convert(result, String.class);
     }
@@ -409,35 +754,59 @@ public class ScriptProxy extends ScriptExtensionsAdaptor {
   public Object runVariableMethod(int variableIndex, ExecutionContext ctx) throws SecurityException,
       NoSuchMethodException, IllegalArgumentException, ServiceException, IllegalAccessException,
       InvocationTargetException {
-    Method method = m_class
-        .getMethod(variableMethodNames.get(variableIndex), variableParameterTypes.get(variableIndex));
+    MethodBinding binding = variableBindings[variableIndex];
 
-    // faked argument array for injection.
-    Object args[] = { 0 };
+    MethodMetrics metrics = Metrics.forBinding(binding);
+    long start = (metrics == null) ? 0L : System.nanoTime();
 
-    Object params[] = getInjectedValueArray(method, args, ctx);
+    IEventRecorder events = DispatchEvents.getRecorder();
+    Object event = (events == null) ? null : events.begin(DispatchEvents.VARIABLE);
+    boolean failed = true;
 
-    Object result;
     try {
-      result = method.invoke(m_class.newInstance(), params);
+      Object result;
 
-    } catch (InstantiationException e) {
-      // TODO catch and re-throw ewwwww
-      throw new ServiceException("Cannot delegate instantiate script context: " + e.getMessage());
-    }
+      if (binding.getAdapter() != null && !variableCacheable[variableIndex]
+          && variableSharedCaches[variableIndex] == null) {
+        result = runAdapted(binding, VARIABLE_ARGUMENTS, variableReturnTypes[variableIndex], ctx, metrics, start);
 
-    if (result.getClass() == boolean.class || result.getClass() == Boolean.class) {
-      return ScriptExtensionUtils.computeReturnObject(1, ((Boolean) result).booleanValue(), 0, 0.0, null);
+      } else {
+        Object params[] = bindParameters(binding, VARIABLE_ARGUMENTS, ctx, metrics, start);
 
-    } else if (result.getClass() == Integer.class || result.getClass() == int.class || result.getClass() == long.class) {
-      return (Long) result;
+        result = runCached(binding, params, variableReturnTypes[variableIndex], variableCacheable[variableIndex],
+            variableSharedCaches[variableIndex], ctx, metrics, start);
+      }
 
-    } else if (result.getClass() == double.class) {
-      return (Double) result;
+      failed = false;
+      return result;
+
+    } finally {
+      if (event != null) {
+        events.endDispatch(event, binding, failed);
+      }
     }
+  }
 
-    // String/Object
-    return result;
+  /**
+   * Evaluate a variable result as an Idoc conditional.
+   * 
+   * @param result
+   * @return
+   */
+  private static boolean isTrue(Object result) {
+    if (result == null) {
+      return false;
+    }
+
+    if (result instanceof Boolean) {
+      return ((Boolean) result).booleanValue();
+    }
+
+    // booleans are returned as Long 1 or 0 by computeReturnObject()
+    if (result instanceof Number) {
+      return ((Number) result).longValue() != 0;
+    }
 
+    return ObjectConverter.convert(result, Boolean.class).booleanValue();
   }
 }
@@ -4,11 +4,16 @@ import intradoc.common.ServiceException;
 import intradoc.data.DataException;
 import intradoc.server.Service;
 
-import java.lang.reflect.Method;
-import java.util.Vector;
+import java.lang.reflect.InvocationTargetException;
 
-import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.metrics.MethodMetrics;
 import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.trace.Trace;
 
 public class ServiceProxy extends Service {
 
@@ -16,21 +21,40 @@ public class ServiceProxy extends Service {
 
     try {
 
-      @SuppressWarnings("unchecked")
-      Vector<String> actionParams = (Vector<String>) this.m_currentAction.getParams().clone();
+      // first param is the registry ID of the Method to run
+      String methodID = (String) this.m_currentAction.getParams().get(0);
 
-      // first param is the unique identifier to get the Method to run
-      String methodID = actionParams.remove(0);
+      MethodBinding binding = MethodRegistry.getBinding(methodID);
 
-      Method m = MethodRegistry.getMethod(methodID);
+      if (binding == null) {
+        throw new ServiceException("Unknown Twine method ID " + methodID);
+      }
 
-      ParameterMarshaller marshaller = new ParameterMarshaller(m);
+      MethodMetrics metrics = Metrics.forBinding(binding);
+      long start = (metrics == null) ? 0L : System.nanoTime();
 
-      Object[] params = marshaller.getValueArray(this);
+      IEventRecorder events = DispatchEvents.getRecorder();
+      Object event = (events == null) ? null : events.begin(DispatchEvents.SERVICE);
 
-      Object context = m.getDeclaringClass().newInstance();
+      boolean failed = true;
 
-      m.invoke(context, params);
+      try {
+        invoke(binding);
+        failed = false;
+
+      } catch (Exception e) {
+        Trace.failed(Trace.SERVICE, binding.getId(), 0, e);
+        throw e;
+
+      } finally {
+        if (metrics != null) {
+          metrics.record(System.nanoTime() - start, failed);
+        }
+
+        if (event != null) {
+          events.endDispatch(event, binding, failed);
+        }
+      }
 
     } catch (IllegalArgumentException e) {
 
@@ -41,4 +65,54 @@ public class ServiceProxy extends Service {
       throw new ServiceException(e);
     }
   }
+
+  private void invoke(MethodBinding binding) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException, ServiceException {
+    IMethodInvoker invoker = binding.getInvoker();
+
+    if (binding.isAsync()) {
+      // runs on the async pool, its results are merged back on this thread
+      AsyncServices.merge(AsyncServices.call(this, binding), m_binder);
+      return;
+    }
+
+    IEventRecorder events = DispatchEvents.getRecorder();
+
+    if (binding.getAdapter() != null) {
+      invokeAdapted(binding, invoker.getTarget(this), events);
+      return;
+    }
+
+    Object event = (events == null) ? null : events.begin(DispatchEvents.BINDING);
+
+    Object[] params = binding.getMarshaller().getValueArray(this);
+
+    if (event != null) {
+      events.endDispatch(event, binding, false);
+    }
+
+    Object context = invoker.getTarget(this);
+
+    invoker.invoke(context, params);
+  }
+
+  /**
+   * Call a method through its generated adapter. The adapter binds the
+   * parameters as it calls the method, so the binding event covers both.
+   */
+  private void invokeAdapted(MethodBinding binding, Object target, IEventRecorder events)
+      throws InvocationTargetException {
+    Object event = (events == null) ? null : events.begin(DispatchEvents.ADAPTED_BINDING);
+    boolean failed = true;
+
+    try {
+      binding.getAdapter().invokeService(target, this);
+      failed = false;
+
+    } finally {
+      if (event != null) {
+        events.endDispatch(event, binding, failed);
+      }
+    }
+  }
 }
@@ -0,0 +1,193 @@
+package org.ucmtwine.proxy.adapter;
+
+import org.ucmtwine.parameter.Boxes;
+import org.ucmtwine.parameter.IParameter;
+
+/**
+ * Small static helpers called by generated adapters. They don't call any
+ * parameter methods, so they don't spoil the type profile of the adapter's own
+ * call sites.
+ * 
+ * <p>
+ * The parse methods convert a binder value the same way as the matching
+ * parameter type, for the binder parameters an adapter reads itself.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class AdapterSupport {
+
+  private AdapterSupport() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * As StringParameter.getBinderValue().
+   * 
+   * @param value
+   *          The binder value
+   * @param name
+   *          The parameter's binder name
+   * @param required
+   * @return
+   */
+  public static String parseString(String value, String name, boolean required) {
+    if (value == null && required) {
+      throw new IllegalArgumentException("Parameter " + name + " is required");
+    }
+
+    return value;
+  }
+
+  /**
+   * As IntegerParameter.getBinderValue().
+   */
+  public static Integer parseInteger(String value, String name, boolean required) {
+    if (parseString(value, name, required) == null) {
+      return null;
+    }
+
+    try {
+      return Boxes.valueOf(Integer.parseInt(value));
+
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Parameter " + name + " must be parseable as an integer");
+    }
+  }
+
+  /**
+   * As LongParameter.getBinderValue().
+   */
+  public static Long parseLong(String value, String name, boolean required) {
+    if (parseString(value, name, required) == null) {
+      return null;
+    }
+
+    try {
+      return Boxes.valueOf(Long.parseLong(value));
+
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Parameter " + name + " must be parseable as type Long");
+    }
+  }
+
+  /**
+   * As FloatParameter.getBinderValue().
+   */
+  public static Float parseFloat(String value, String name, boolean required) {
+    if (parseString(value, name, required) == null) {
+      return null;
+    }
+
+    try {
+      return Float.valueOf(value);
+
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Parameter " + name + " must be parseable as a float");
+    }
+  }
+
+  /**
+   * As DoubleParameter.getBinderValue().
+   */
+  public static Double parseDouble(String value, String name, boolean required) {
+    if (parseString(value, name, required) == null) {
+      return null;
+    }
+
+    try {
+      return Boxes.valueOf(Double.parseDouble(value));
+
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Parameter " + name + " must be parseable as a double");
+    }
+  }
+
+  /**
+   * As BooleanParameter.getBinderValue(), "1" is also true.
+   */
+  public static Boolean parseBoolean(String value, String name, boolean required) {
+    if (parseString(value, name, required) == null) {
+      return null;
+    }
+
+    return Boolean.valueOf(value.equals("1") || Boolean.parseBoolean(value));
+  }
+
+  public static boolean toBoolean(Object value, IParameter p) {
+    return ((Boolean) required(value, p)).booleanValue();
+  }
+
+  public static byte toByte(Object value, IParameter p) {
+    return ((Byte) required(value, p)).byteValue();
+  }
+
+  public static char toChar(Object value, IParameter p) {
+    return ((Character) required(value, p)).charValue();
+  }
+
+  public static short toShort(Object value, IParameter p) {
+    return ((Short) required(value, p)).shortValue();
+  }
+
+  public static int toInt(Object value, IParameter p) {
+    return ((Integer) required(value, p)).intValue();
+  }
+
+  public static long toLong(Object value, IParameter p) {
+    return ((Long) required(value, p)).longValue();
+  }
+
+  public static float toFloat(Object value, IParameter p) {
+    return ((Float) required(value, p)).floatValue();
+  }
+
+  public static double toDouble(Object value, IParameter p) {
+    return ((Double) required(value, p)).doubleValue();
+  }
+
+  public static Object box(boolean value) {
+    return Boolean.valueOf(value);
+  }
+
+  public static Object box(byte value) {
+    return Byte.valueOf(value);
+  }
+
+  public static Object box(char value) {
+    return Character.valueOf(value);
+  }
+
+  public static Object box(short value) {
+    return Short.valueOf(value);
+  }
+
+  public static Object box(int value) {
+    return Boxes.valueOf(value);
+  }
+
+  public static Object box(long value) {
+    return Boxes.valueOf(value);
+  }
+
+  public static Object box(float value) {
+    return Float.valueOf(value);
+  }
+
+  public static Object box(double value) {
+    return Boxes.valueOf(value);
+  }
+
+  /**
+   * A primitive parameter can't be null, Method.invoke() throws the same
+   * exception.
+   */
+  private static Object required(Object value, IParameter p) {
+    if (value == null) {
+      throw new IllegalArgumentException("Parameter " + p.getName() + " of type " + p.getType().getName()
+          + " is required");
+    }
+
+    return value;
+  }
+}
@@ -0,0 +1,79 @@
+package org.ucmtwine.proxy.adapter;
+
+import intradoc.common.ExecutionContext;
+import intradoc.data.DataBinder;
+import intradoc.data.Workspace;
+import intradoc.server.Service;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A binding adapter generated for one annotated method by the
+ * ucm-twine-processor annotation processor. It extracts and converts each
+ * parameter and calls the method directly, so every call site in it only ever
+ * sees one parameter type and the method is called without reflection.
+ * 
+ * <p>
+ * Adapters have a public constructor taking the method's
+ * {@link org.ucmtwine.parameter.ParameterMarshaller}. As with
+ * Method.invoke(), anything thrown by the method itself is wrapped in an
+ * InvocationTargetException, while conversion errors are not.
+ * </p>
+ * 
+ * @author tim
+ */
+public interface IMethodAdapter {
+
+  /**
+   * Call the method with values which have already been marshalled.
+   * 
+   * @param target
+   *          The instance to call the method on, ignored for static methods
+   * @param values
+   *          A value for every parameter
+   * @return The return value, boxed, or null if the method is void
+   * @throws InvocationTargetException
+   */
+  Object invoke(Object target, Object[] values) throws InvocationTargetException;
+
+  /**
+   * Call the method with its parameters read from the service's binder, or
+   * injected.
+   * 
+   * @param target
+   * @param service
+   * @return
+   * @throws InvocationTargetException
+   */
+  Object invokeService(Object target, Service service) throws InvocationTargetException;
+
+  /**
+   * Call the method with its parameters converted from Idoc script
+   * arguments, or injected.
+   * 
+   * @param target
+   * @param arguments
+   *          The script arguments
+   * @param service
+   * @return
+   * @throws InvocationTargetException
+   */
+  Object invokeScript(Object target, Object[] arguments, Service service) throws InvocationTargetException;
+
+  /**
+   * Call a filter method with its parameters injected from the filter's
+   * arguments. Parameters of any other type are null.
+   * 
+   * @param target
+   * @param ws
+   *          The system workspace
+   * @param binder
+   *          The current binder
+   * @param ctx
+   *          The current execution context
+   * @return
+   * @throws InvocationTargetException
+   */
+  Object invokeFilter(Object target, Workspace ws, DataBinder binder, ExecutionContext ctx)
+      throws InvocationTargetException;
+}
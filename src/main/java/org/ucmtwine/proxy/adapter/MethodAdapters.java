@@ -0,0 +1,61 @@
+package org.ucmtwine.proxy.adapter;
+
+import intradoc.common.SystemUtils;
+
+import java.lang.reflect.Method;
+
+import org.ucmtwine.index.AnnotationIndex;
+import org.ucmtwine.index.IndexedMethod;
+import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.proxy.invoker.Invokers;
+
+/**
+ * Finds the generated adapter of a method through the annotation index.
+ * 
+ * @author tim
+ */
+public final class MethodAdapters {
+
+  private MethodAdapters() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Create the generated adapter for a method, or return null if it doesn't
+   * have one or the invokers are set to use reflection.
+   * 
+   * @param method
+   * @param marshaller
+   *          The method's marshaller
+   * @return
+   */
+  public static IMethodAdapter create(Method method, ParameterMarshaller marshaller) {
+    if (Invokers.isUseReflection()) {
+      return null;
+    }
+
+    IndexedMethod indexed = AnnotationIndex.forMethod(method);
+
+    if (indexed == null || indexed.getAdapterClass() == null) {
+      return null;
+    }
+
+    try {
+      Class<?> adapterClass = Class.forName(indexed.getAdapterClass(), true, method.getDeclaringClass()
+          .getClassLoader());
+
+      return (IMethodAdapter) adapterClass.getConstructor(ParameterMarshaller.class).newInstance(marshaller);
+
+    } catch (Exception e) {
+      // e.g. the adapter is older than the class
+      SystemUtils.trace("twine", "Unable to create the adapter " + indexed.getAdapterClass() + ", using reflection: "
+          + e.getMessage());
+      return null;
+
+    } catch (LinkageError e) {
+      SystemUtils.trace("twine", "Unable to load the adapter " + indexed.getAdapterClass() + ", using reflection: "
+          + e.getMessage());
+      return null;
+    }
+  }
+}
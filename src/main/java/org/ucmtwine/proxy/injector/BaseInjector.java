@@ -18,6 +18,38 @@ public abstract class BaseInjector implements IClassInjector {
    * {@inheritDoc}
    */
   public List<Class<?>> enumerateClasses(URL propertiesFile, String prefix) {
+    Properties properties = loadProperties(propertiesFile);
+
+    List<Class<?>> classes = new ArrayList<Class<?>>();
+
+    if (properties.size() > 0) {
+      for (Object key : properties.keySet()) {
+        if (key.toString().startsWith(prefix)) {
+          try {
+            // does the class resolve?
+            Class<?> klass = Class.forName(properties.get(key).toString());
+
+            // if so, add it
+            classes.add(klass);
+
+          } catch (ClassNotFoundException e) {
+            Log.warn("Unable to find class [" + properties.get(key).toString() + "]");
+          }
+        }
+      }
+    }
+
+    return classes;
+  }
+
+  /**
+   * Read a twine properties file. A file which can't be read gives an empty
+   * set of properties.
+   * 
+   * @param propertiesFile
+   * @return
+   */
+  static Properties loadProperties(URL propertiesFile) {
     // find mapped service classes in service.properties
     Properties properties = new Properties();
 
@@ -42,26 +74,7 @@ public abstract class BaseInjector implements IClassInjector {
       }
     }
 
-    List<Class<?>> classes = new ArrayList<Class<?>>();
-
-    if (properties.size() > 0) {
-      for (Object key : properties.keySet()) {
-        if (key.toString().startsWith(prefix)) {
-          try {
-            // does the class resolve?
-            Class<?> klass = Class.forName(properties.get(key).toString());
-
-            // if so, add it
-            classes.add(klass);
-
-          } catch (ClassNotFoundException e) {
-            Log.warn("Unable to find class [" + properties.get(key).toString() + "]");
-          }
-        }
-      }
-    }
-
-    return classes;
+    return properties;
   }
 
   /**
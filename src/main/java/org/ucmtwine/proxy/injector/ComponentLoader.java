@@ -0,0 +1,543 @@
+package org.ucmtwine.proxy.injector;
+
+import intradoc.common.Log;
+import intradoc.common.SystemUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.index.AnnotatedMethods;
+import org.ucmtwine.proxy.ScriptProxy;
+
+/**
+ * Loads the classes of every twine properties file in a single pass. Each file
+ * is read once, each class is resolved once however many times it is listed
+ * and each class's methods are scanned once for every annotation it was listed
+ * for.
+ * 
+ * <p>
+ * Loading runs in phases:
+ * </p>
+ * <ol>
+ * <li>read the properties files</li>
+ * <li>resolve the listed classes</li>
+ * <li>run the converter providers, which parameters of custom types need</li>
+ * <li>scan the classes, building the method bindings and script proxies</li>
+ * <li>register the filters, services and script extensions with UCM</li>
+ * </ol>
+ * 
+ * <p>
+ * Reading, resolving and scanning run on a bounded pool of worker threads. The
+ * converter providers and the registration with PluginFilters, ServiceManager
+ * and the ScriptContext run on the calling thread, in the order the classes
+ * were listed.
+ * </p>
+ * 
+ * <p>
+ * In lazy mode the classes are loaded without being initialised and their
+ * filter and service methods are only reserved in the {@link MethodRegistry},
+ * so static initialisers, marshallers and invokers wait until each method is
+ * first called. Script extensions need their parameter types when they are
+ * registered, so their methods are still bound at startup.
+ * </p>
+ * 
+ * @author tim
+ */
+public class ComponentLoader {
+
+  /**
+   * Config entry for the number of worker threads. 1 loads everything on the
+   * calling thread.
+   */
+  public static final String THREADS_CONFIG = "TwineBootstrapThreads";
+
+  public static final int DEFAULT_MAX_THREADS = 4;
+
+  /**
+   * Config entry which turns on lazy mode.
+   */
+  public static final String LAZY_CONFIG = "TwineLazyInjection";
+
+  private static final String CONVERTER_PREFIX = "ucm.converter";
+  private static final String FILTER_PREFIX = "ucm.filter";
+  private static final String SERVICE_PREFIX = "ucm.service";
+  private static final String SCRIPT_PREFIX = "ucm.idocscript";
+
+  private final int threads;
+
+  private final boolean lazy;
+
+  /**
+   * @param threads
+   *          The number of worker threads, at least 1
+   */
+  public ComponentLoader(int threads) {
+    this(threads, false);
+  }
+
+  /**
+   * @param threads
+   *          The number of worker threads, at least 1
+   * @param lazy
+   *          Whether to defer class initialisation and binding until the
+   *          first call
+   */
+  public ComponentLoader(int threads, boolean lazy) {
+    this.threads = (threads < 1) ? 1 : threads;
+    this.lazy = lazy;
+  }
+
+  /**
+   * The default number of worker threads: one per processor, up to
+   * DEFAULT_MAX_THREADS.
+   * 
+   * @return
+   */
+  public static int getDefaultThreads() {
+    return Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_THREADS);
+  }
+
+  /**
+   * Load and inject the classes listed in the properties files.
+   * 
+   * @param configFiles
+   */
+  public void load(List<URL> configFiles) {
+    ExecutorService pool = (threads > 1) ? Executors.newFixedThreadPool(threads, new WorkerFactory()) : null;
+    long start = System.currentTimeMillis();
+
+    IEventRecorder events = DispatchEvents.getRecorder();
+
+    try {
+      Object event = beginPhase(events);
+      List<Properties> properties = readAll(configFiles, pool);
+      endPhase(events, event, "read", configFiles.size());
+
+      if (properties == null) {
+        return;
+      }
+
+      Collection<ComponentClass> classes = collect(properties);
+
+      event = beginPhase(events);
+      boolean resolved = resolveAll(classes, pool);
+      endPhase(events, event, "resolve", classes.size());
+
+      if (!resolved) {
+        return;
+      }
+
+      event = beginPhase(events);
+      registerConverters(classes);
+      endPhase(events, event, "converters", classes.size());
+
+      event = beginPhase(events);
+      boolean scanned = scanAll(classes, pool);
+      endPhase(events, event, "scan", classes.size());
+
+      if (!scanned) {
+        return;
+      }
+
+      event = beginPhase(events);
+      registerAll(classes);
+      endPhase(events, event, "register", classes.size());
+
+      trace(classes, System.currentTimeMillis() - start);
+
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  private List<Properties> readAll(List<URL> configFiles, ExecutorService pool) {
+    final Properties[] properties = new Properties[configFiles.size()];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+    for (int i = 0; i < properties.length; i++) {
+      final int index = i;
+      final URL configFile = configFiles.get(i);
+
+      tasks.add(new Callable<Void>() {
+        public Void call() {
+          properties[index] = BaseInjector.loadProperties(configFile);
+          return null;
+        }
+      });
+    }
+
+    if (!runAll(tasks, pool)) {
+      return null;
+    }
+
+    List<Properties> result = new ArrayList<Properties>();
+
+    for (Properties p : properties) {
+      result.add(p);
+    }
+
+    return result;
+  }
+
+  /**
+   * Merge the entries of all the files into one entry per class name, in the
+   * order the files were found.
+   */
+  private static Collection<ComponentClass> collect(List<Properties> properties) {
+    Map<String, ComponentClass> classes = new LinkedHashMap<String, ComponentClass>();
+
+    for (Properties p : properties) {
+      for (Object key : p.keySet()) {
+        String className = p.get(key).toString().trim();
+        ComponentClass c = classes.get(className);
+
+        if (c == null) {
+          c = new ComponentClass(className);
+          classes.put(className, c);
+        }
+
+        String prefix = key.toString();
+
+        if (prefix.startsWith(CONVERTER_PREFIX)) {
+          c.converter = true;
+
+        } else if (prefix.startsWith(FILTER_PREFIX)) {
+          c.filter = true;
+
+        } else if (prefix.startsWith(SERVICE_PREFIX)) {
+          c.service = true;
+
+        } else if (prefix.startsWith(SCRIPT_PREFIX)) {
+          c.script = true;
+        }
+      }
+    }
+
+    return classes.values();
+  }
+
+  private boolean resolveAll(Collection<ComponentClass> classes, ExecutorService pool) {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+    for (final ComponentClass c : classes) {
+      if (c.isListed()) {
+        tasks.add(new Callable<Void>() {
+          public Void call() {
+            try {
+              c.klass = Class.forName(c.name, !lazy, ComponentLoader.class.getClassLoader());
+
+            } catch (ClassNotFoundException e) {
+              // reported when registering
+            } catch (LinkageError e) {
+              c.error = e;
+            }
+            return null;
+          }
+        });
+      }
+    }
+
+    return runAll(tasks, pool);
+  }
+
+  private static void registerConverters(Collection<ComponentClass> classes) {
+    ConverterInjector converterInjector = new ConverterInjector();
+
+    for (ComponentClass c : classes) {
+      if (c.converter && c.klass != null && c.error == null) {
+        try {
+          converterInjector.inject(c.klass);
+
+        } catch (Exception e) {
+          warn("Failed to inject: " + c.name + " - " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private boolean scanAll(Collection<ComponentClass> classes, ExecutorService pool) {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+    for (final ComponentClass c : classes) {
+      if (c.klass != null && c.error == null && (c.filter || c.service || c.script)) {
+        tasks.add(new Callable<Void>() {
+          public Void call() {
+            c.scan(lazy);
+            return null;
+          }
+        });
+      }
+    }
+
+    return runAll(tasks, pool);
+  }
+
+  private static void registerAll(Collection<ComponentClass> classes) {
+    for (ComponentClass c : classes) {
+      if (!c.isListed()) {
+        continue;
+      }
+
+      if (c.klass == null) {
+        Log.warn("Unable to find class [" + c.name + "]");
+        continue;
+      }
+
+      if (c.error != null) {
+        warn("Failed to inject: " + c.name + " - " + c.error.getMessage());
+        continue;
+      }
+
+      // each aspect is registered on its own, so one failing doesn't lose the
+      // others
+      if (c.filterError != null) {
+        warn("Failed to inject filters: " + c.name + " - " + c.filterError.getMessage());
+
+      } else {
+        try {
+          for (Method method : c.filterMethods) {
+            FilterInjector.injectFilterMethod(method, method.getAnnotation(Filter.class));
+          }
+
+        } catch (Exception e) {
+          warn("Failed to inject filters: " + c.name + " - " + e.getMessage());
+        }
+      }
+
+      if (c.serviceError != null) {
+        warn("Failed to inject services: " + c.name + " - " + c.serviceError.getMessage());
+
+      } else {
+        try {
+          for (Method method : c.serviceMethods) {
+            ServiceInjector.injectServiceMethod(method, method.getAnnotation(ServiceMethod.class));
+          }
+
+        } catch (Exception e) {
+          warn("Failed to inject services: " + c.name + " - " + e.getMessage());
+        }
+      }
+
+      if (c.scriptError != null) {
+        warn("Failed to inject Idoc script: " + c.name + " - " + c.scriptError.getMessage());
+
+      } else if (c.scriptProxy != null) {
+        try {
+          IdocScriptInjector.register(c.scriptProxy);
+
+        } catch (Exception e) {
+          warn("Failed to inject Idoc script: " + c.name + " - " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Run the tasks on the pool, or on this thread if there isn't one.
+   * 
+   * @return false if this thread was interrupted while waiting
+   */
+  private static boolean runAll(List<Callable<Void>> tasks, ExecutorService pool) {
+    if (pool == null || tasks.size() < 2) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (Exception e) {
+          // tasks record their own failures
+        }
+      }
+      return true;
+    }
+
+    try {
+      pool.invokeAll(tasks);
+      return true;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      warn("Interrupted while loading Twine classes, the remaining classes were not injected");
+      return false;
+    }
+  }
+
+  private static Object beginPhase(IEventRecorder events) {
+    return (events == null) ? null : events.begin(DispatchEvents.BOOTSTRAP);
+  }
+
+  private static void endPhase(IEventRecorder events, Object event, String phase, int count) {
+    if (event != null) {
+      events.endPhase(event, phase, count);
+    }
+  }
+
+  /**
+   * Report the time taken and, in lazy mode, how many methods were left to be
+   * bound on first use.
+   */
+  private void trace(Collection<ComponentClass> classes, long elapsed) {
+    int methods = 0;
+
+    for (ComponentClass c : classes) {
+      methods += c.filterMethods.size() + c.serviceMethods.size();
+    }
+
+    String msg = "Loaded " + classes.size() + " Twine classes in " + elapsed + "ms";
+
+    if (lazy) {
+      msg += ", " + methods + " filter and service methods deferred until first use";
+    }
+
+    SystemUtils.trace("twine", msg);
+  }
+
+  private static void warn(String msg) {
+    Log.warn(msg);
+    SystemUtils.trace("twine", msg);
+  }
+
+  /**
+   * A class listed in one or more properties files, and what was found when
+   * it was scanned. Each field is written by one phase and read by later ones,
+   * which the pool's task completion orders.
+   */
+  private static class ComponentClass {
+    private final String name;
+
+    private boolean converter;
+    private boolean filter;
+    private boolean service;
+    private boolean script;
+
+    private Class<?> klass;
+
+    /**
+     * Why the class couldn't be loaded.
+     */
+    private Throwable error;
+
+    /**
+     * Why each aspect of the class couldn't be scanned.
+     */
+    private Throwable filterError;
+    private Throwable serviceError;
+    private Throwable scriptError;
+
+    private final List<Method> filterMethods = new ArrayList<Method>();
+    private final List<Method> serviceMethods = new ArrayList<Method>();
+    private ScriptProxy scriptProxy;
+
+    private ComponentClass(String name) {
+      this.name = name;
+    }
+
+    private boolean isListed() {
+      return converter || filter || service || script;
+    }
+
+    /**
+     * Find the annotated methods in one pass over the class, or from its
+     * annotation index, and bind them so that registration doesn't have to.
+     * Lazily loaded methods are only reserved. A failure is recorded against
+     * the filters, services or Idoc script it affects, so the rest of the
+     * class can still be registered.
+     */
+    private void scan(boolean lazy) {
+      List<Method> methods = null;
+
+      if (filter || service) {
+        try {
+          methods = AnnotatedMethods.getPublicMethods(klass, Filter.class, ServiceMethod.class);
+
+        } catch (Exception e) {
+          filterError = e;
+          serviceError = e;
+        } catch (LinkageError e) {
+          filterError = e;
+          serviceError = e;
+        }
+      }
+
+      if (filter && methods != null) {
+        try {
+          addAll(methods, Filter.class, filterMethods, lazy);
+
+        } catch (Exception e) {
+          filterError = e;
+        } catch (LinkageError e) {
+          filterError = e;
+        }
+      }
+
+      if (service && methods != null) {
+        try {
+          addAll(methods, ServiceMethod.class, serviceMethods, lazy);
+
+        } catch (Exception e) {
+          serviceError = e;
+        } catch (LinkageError e) {
+          serviceError = e;
+        }
+      }
+
+      if (script) {
+        try {
+          scriptProxy = new ScriptProxy(klass);
+
+        } catch (Exception e) {
+          scriptError = e;
+        } catch (LinkageError e) {
+          scriptError = e;
+        }
+      }
+    }
+
+    private static void addAll(List<Method> methods, Class<? extends Annotation> annotation, List<Method> found,
+        boolean lazy) {
+      for (Method method : methods) {
+        if (method.isAnnotationPresent(annotation)) {
+          add(method, lazy);
+          found.add(method);
+        }
+      }
+    }
+
+    private static void add(Method method, boolean lazy) {
+      if (lazy) {
+        MethodRegistry.reserve(method);
+      } else {
+        MethodRegistry.register(method);
+      }
+    }
+  }
+
+  /**
+   * Daemon worker threads, so an unfinished load never holds up shutdown.
+   */
+  private static class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "TwineLoader-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
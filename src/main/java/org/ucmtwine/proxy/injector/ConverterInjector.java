@@ -0,0 +1,46 @@
+package org.ucmtwine.proxy.injector;
+
+import intradoc.data.DataException;
+
+import java.net.URL;
+
+import org.ucmtwine.convert.IConverterProvider;
+
+/**
+ * Registers the type converters of each {@link IConverterProvider} listed in
+ * the properties file. Converters are injected before anything else so that
+ * parameters of custom types can be resolved.
+ * 
+ * @author tim
+ */
+public class ConverterInjector extends BaseInjector implements IClassInjector {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void injectClasses(URL propertiesFile) {
+    injectClasses(propertiesFile, "ucm.converter");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void inject(Class<?> klass) throws DataException {
+    if (!IConverterProvider.class.isAssignableFrom(klass)) {
+      throw new DataException("Converter class " + klass.getName() + " must implement "
+          + IConverterProvider.class.getName());
+    }
+
+    try {
+      ((IConverterProvider) klass.newInstance()).registerConverters();
+
+    } catch (InstantiationException e) {
+      throw new DataException("Cannot create converter provider " + klass.getName() + " - " + e.getMessage());
+
+    } catch (IllegalAccessException e) {
+      throw new DataException("Cannot create converter provider " + klass.getName() + " - " + e.getMessage());
+    }
+  }
+}
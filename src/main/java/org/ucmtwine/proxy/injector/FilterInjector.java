@@ -9,6 +9,7 @@ import java.net.URL;
 import java.util.Vector;
 
 import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.index.AnnotatedMethods;
 import org.ucmtwine.proxy.FilterProxy;
 
 /**
@@ -33,24 +34,19 @@ public class FilterInjector extends BaseInjector implements IClassInjector {
   @Override
   public void inject(Class<?> klass) throws DataException {
 
-    Method[] classMethods = klass.getMethods();
-
-    for (Method method : classMethods) {
-      Filter annotation = (Filter) method.getAnnotation(Filter.class);
-
-      if (annotation != null) {
-        injectFilterMethod(method, annotation);
-      }
+    for (Method method : AnnotatedMethods.getPublicMethods(klass, Filter.class)) {
+      injectFilterMethod(method, method.getAnnotation(Filter.class));
     }
   }
 
   /**
+   * Registers a filter method with PluginFilters.
    * 
    * @param method
    * @param annotation
    * @throws DataException
    */
-  private void injectFilterMethod(Method method, Filter annotation) throws DataException {
+  static void injectFilterMethod(Method method, Filter annotation) throws DataException {
 
     if (annotation == null) {
       throw new DataException("Method [" + method.getName() + "] is not an injectable filter.");
@@ -27,8 +27,16 @@ public class IdocScriptInjector extends BaseInjector implements IClassInjector {
   public void inject(Class<?> klass) throws DataException, ServiceException {
 
     // loads function def table from annotated class
-    ScriptExtensions extensions = new ScriptProxy(klass);
+    register(new ScriptProxy(klass));
+  }
 
+  /**
+   * Registers script extensions with the default script context.
+   * 
+   * @param extensions
+   * @throws ServiceException
+   */
+  static void register(ScriptExtensions extensions) throws ServiceException {
     // load func def table and set parent to the default script context
     ScriptContext defaultScriptContext = (ScriptContext) AppObjectRepository.getObject("DefaultScriptContext");
     extensions.load(defaultScriptContext);
@@ -1,36 +1,325 @@
 package org.ucmtwine.proxy.injector;
 
+import intradoc.common.SystemUtils;
+
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.adapter.IMethodAdapter;
+import org.ucmtwine.proxy.adapter.MethodAdapters;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.proxy.invoker.Invokers;
+import org.ucmtwine.trace.Trace;
 
+/**
+ * Registry of every injected method. Each method is given a dense integer ID,
+ * which is passed to the proxies as the service action parameter or filter
+ * parameter, so that a lookup is a single array index.
+ * 
+ * <p>
+ * Writers are serialised on a lock and publish a new copy of the table, so
+ * readers never lock and always see a fully built table. The marshaller,
+ * adapter and invoker are built before the lock is taken, so methods can be
+ * registered from several threads while Twine starts.
+ * </p>
+ * 
+ * <p>
+ * A method can also be reserved, which gives it an ID without building
+ * anything or initialising its class. Its binding is built the first time it
+ * is looked up; threads looking it up at the same time wait for the first one
+ * to finish.
+ * </p>
+ * 
+ * @author tim
+ */
 public class MethodRegistry {
 
-  private static HashMap<String, Method> methods;
+  private static final Object LOCK = new Object();
+
+  /**
+   * Slots indexed by method ID. The array is replaced, never modified, once
+   * published.
+   */
+  private static volatile Slot[] slots = new Slot[0];
+
+  /**
+   * Guarded by LOCK.
+   */
+  private static final Map<Method, Integer> ids = new HashMap<Method, Integer>();
 
   /**
-   * Adds a method to the registry and returns the UUID.
+   * Time spent binding reserved methods on first use, i.e. taken out of
+   * startup.
+   */
+  private static final AtomicLong deferredNanos = new AtomicLong();
+
+  /**
+   * Adds a method to the registry and returns its ID. Adding a method twice
+   * returns the ID it was first given.
    * 
    * @return
+   * @throws IllegalArgumentException
+   *           If a parameter of the method cannot be marshalled
    */
-  public static String addMethod(Method m) {
-    if (methods == null) {
-      methods = new HashMap<String, Method>();
+  public static int register(Method m) throws IllegalArgumentException {
+    synchronized (LOCK) {
+      Integer id = ids.get(m);
+
+      if (id != null) {
+        return id.intValue();
+      }
     }
 
-    String hashCode = String.valueOf(m.hashCode());
+    ParameterMarshaller marshaller = buildMarshaller(m);
+    IMethodAdapter adapter = MethodAdapters.create(m, marshaller);
+    IMethodInvoker invoker = Invokers.create(m, adapter);
+
+    synchronized (LOCK) {
+      // another thread may have registered it in the meantime
+      Integer id = ids.get(m);
+
+      if (id != null) {
+        return id.intValue();
+      }
+
+      // the binding must be set before the slot is published, or a reader
+      // could find it unbound and bind it again
+      MethodBinding binding = new MethodBinding(slots.length, marshaller, invoker, adapter);
+
+      return add(m, binding).id;
+    }
+  }
+
+  /**
+   * Adds a method to the registry without binding it, and returns its ID. The
+   * binding is built, and the method's class initialised, the first time the
+   * ID is looked up. Reserving a registered method returns its ID.
+   * 
+   * @param m
+   * @return
+   */
+  public static int reserve(Method m) {
+    synchronized (LOCK) {
+      Integer id = ids.get(m);
+
+      if (id != null) {
+        return id.intValue();
+      }
+
+      return add(m, null).id;
+    }
+  }
+
+  /**
+   * Build a method's marshaller, as a "marshaller" bootstrap phase event.
+   */
+  private static ParameterMarshaller buildMarshaller(Method m) throws IllegalArgumentException {
+    IEventRecorder events = DispatchEvents.getRecorder();
+    Object event = (events == null) ? null : events.begin(DispatchEvents.BOOTSTRAP);
+
+    ParameterMarshaller marshaller = new ParameterMarshaller(m);
 
-    if (!methods.containsKey(hashCode)) {
-      methods.put(hashCode, m);
+    if (event != null) {
+      events.endPhase(event, "marshaller", marshaller.getParameterCount(true));
     }
 
-    return String.valueOf(m.hashCode());
+    return marshaller;
+  }
+
+  /**
+   * Publish a new slot. Must be called holding LOCK.
+   * 
+   * @param binding
+   *          The method's binding, built with the next ID, or null to reserve
+   *          it
+   */
+  private static Slot add(Method m, MethodBinding binding) {
+    Slot[] current = slots;
+    int newId = current.length;
+
+    Slot[] updated = new Slot[newId + 1];
+    System.arraycopy(current, 0, updated, 0, newId);
+    updated[newId] = new Slot(newId, m, binding);
+
+    ids.put(m, Integer.valueOf(newId));
+    slots = updated;
+
+    return updated[newId];
+  }
+
+  /**
+   * Adds a method to the registry and returns its ID as a string, for use as
+   * an action or filter parameter.
+   * 
+   * @return
+   * @throws IllegalArgumentException
+   *           If a parameter of the method cannot be marshalled
+   */
+  public static String addMethod(Method m) throws IllegalArgumentException {
+    return String.valueOf(register(m));
+  }
+
+  /**
+   * Returns the method with this ID, or null if there isn't one. Doesn't bind
+   * a reserved method.
+   * 
+   * @param methodID
+   * @return
+   */
+  public static Method getMethod(int methodID) {
+    Slot[] current = slots;
+
+    return (methodID < 0 || methodID >= current.length) ? null : current[methodID].method;
   }
 
   public static Method getMethod(String methodID) {
+    Slot slot = getSlot(methodID);
+
+    if (slot == null)
+      return null;
+
+    return slot.method;
+  }
+
+  /**
+   * Returns the binding for a method ID, or null if there isn't one. A
+   * reserved method is bound first.
+   * 
+   * @param methodID
+   * @return
+   * @throws IllegalArgumentException
+   *           If a parameter of a reserved method cannot be marshalled
+   */
+  public static MethodBinding getBinding(int methodID) throws IllegalArgumentException {
+    Slot[] current = slots;
 
-    if (methods == null)
+    if (methodID < 0 || methodID >= current.length) {
       return null;
+    }
+
+    Slot slot = current[methodID];
+    MethodBinding binding = slot.binding;
+
+    return (binding != null) ? binding : slot.bind();
+  }
+
+  /**
+   * Returns the binding for a method ID string, or null if there isn't one.
+   * 
+   * @param methodID
+   * @return
+   * @throws IllegalArgumentException
+   *           If a parameter of a reserved method cannot be marshalled
+   */
+  public static MethodBinding getBinding(String methodID) throws IllegalArgumentException {
+    Slot slot = getSlot(methodID);
+
+    return (slot == null) ? null : getBinding(slot.id);
+  }
+
+  private static Slot getSlot(String methodID) {
+    if (methodID == null) {
+      return null;
+    }
+
+    try {
+      int id = Integer.parseInt(methodID);
+      Slot[] current = slots;
+
+      return (id < 0 || id >= current.length) ? null : current[id];
+
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Has the method with this ID been bound yet?
+   * 
+   * @param methodID
+   * @return false if it is reserved and hasn't been used, or doesn't exist
+   */
+  public static boolean isBound(int methodID) {
+    Slot[] current = slots;
+
+    return methodID >= 0 && methodID < current.length && current[methodID].binding != null;
+  }
 
-    return methods.get(methodID);
+  /**
+   * The number of registered methods.
+   * 
+   * @return
+   */
+  public static int size() {
+    return slots.length;
+  }
+
+  /**
+   * The total time, in milliseconds, spent binding reserved methods when they
+   * were first used.
+   * 
+   * @return
+   */
+  public static long getDeferredMillis() {
+    return deferredNanos.get() / 1000000L;
+  }
+
+  /**
+   * A method ID and its binding, which is null until a reserved method is
+   * first used.
+   */
+  private static class Slot {
+    private final int id;
+
+    private final Method method;
+
+    private volatile MethodBinding binding;
+
+    private Slot(int id, Method method, MethodBinding binding) {
+      this.id = id;
+      this.method = method;
+      this.binding = binding;
+    }
+
+    private synchronized MethodBinding bind() {
+      if (binding != null) {
+        return binding;
+      }
+
+      long start = System.nanoTime();
+      Class<?> klass = method.getDeclaringClass();
+
+      try {
+        // the static initialisers were skipped when the class was loaded
+        Class.forName(klass.getName(), true, klass.getClassLoader());
+
+      } catch (ClassNotFoundException e) {
+        // can't happen, the class is loaded
+      }
+
+      ParameterMarshaller marshaller = buildMarshaller(method);
+      IMethodAdapter adapter = MethodAdapters.create(method, marshaller);
+      IMethodInvoker invoker = Invokers.create(method, adapter);
+
+      binding = new MethodBinding(id, marshaller, invoker, adapter);
+
+      long elapsed = System.nanoTime() - start;
+      long total = deferredNanos.addAndGet(elapsed);
+
+      Trace.record(Trace.BIND, id, Trace.OK, elapsed / 1000L);
+
+      if (Trace.isActive()) {
+        SystemUtils.trace(Trace.SECTION, "Bound " + klass.getName() + "." + method.getName() + "() on first use in "
+            + (elapsed / 1000000L) + "ms, " + (total / 1000000L) + "ms deferred from startup so far");
+      }
+
+      return binding;
+    }
   }
 }
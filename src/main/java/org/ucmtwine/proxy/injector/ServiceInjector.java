@@ -9,6 +9,8 @@ import java.lang.reflect.Method;
 import java.net.URL;
 
 import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.index.AnnotatedMethods;
 import org.ucmtwine.proxy.ServiceProxy;
 
 public class ServiceInjector extends BaseInjector {
@@ -33,14 +35,8 @@ public class ServiceInjector extends BaseInjector {
   @Override
   public void inject(Class<?> klass) throws DataException {
 
-    Method[] classMethods = klass.getMethods();
-
-    for (Method method : classMethods) {
-      ServiceMethod annotation = (ServiceMethod) method.getAnnotation(ServiceMethod.class);
-
-      if (annotation != null) {
-        injectServiceMethod(method, annotation);
-      }
+    for (Method method : AnnotatedMethods.getPublicMethods(klass, ServiceMethod.class)) {
+      injectServiceMethod(method, method.getAnnotation(ServiceMethod.class));
     }
   }
 
@@ -53,7 +49,10 @@ public class ServiceInjector extends BaseInjector {
    *          A reference to a UCMService annotation
    * @throws DataException
    */
-  private static void injectServiceMethod(Method method, ServiceMethod annotation) throws DataException {
+  static void injectServiceMethod(Method method, ServiceMethod annotation) throws DataException {
+    // an async method can't be given anything tied to the request thread
+    AsyncServices.checkMethod(method);
+
     ServiceData serviceData = new ServiceData();
 
     String template = annotation.template();
@@ -73,14 +72,10 @@ public class ServiceInjector extends BaseInjector {
     // action parameters, none by default
     String controlFlags = "";
 
-    String methodHashCode = MethodRegistry.addMethod(method);
-
-    if (methodHashCode == null) {
-      throw new DataException("Cannot register method " + method.toString() + " because it has a null hashCode");
-    }
+    String methodID = MethodRegistry.addMethod(method);
 
     try {
-      serviceData.addAction(Action.CODE_TYPE, "delegateWithParameters", methodHashCode, controlFlags, "");
+      serviceData.addAction(Action.CODE_TYPE, "delegateWithParameters", methodID, controlFlags, "");
 
     } catch (DataException e) {
       throw new DataException("Cannot add defaut action to service" + serviceName + " - " + e.getMessage());
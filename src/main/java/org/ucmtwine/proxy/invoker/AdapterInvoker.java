@@ -0,0 +1,54 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.ucmtwine.proxy.adapter.IMethodAdapter;
+
+/**
+ * Calls the method through its generated adapter instead of reflection.
+ * 
+ * @author tim
+ */
+public class AdapterInvoker implements IMethodInvoker {
+
+  private final Method method;
+
+  private final IMethodAdapter adapter;
+
+  private final IInstanceProvider instanceProvider;
+
+  public AdapterInvoker(Method method, IMethodAdapter adapter) {
+    this.method = method;
+    this.adapter = adapter;
+    this.instanceProvider = InstanceProviders.forClass(method.getDeclaringClass());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Method getMethod() {
+    return method;
+  }
+
+  public IMethodAdapter getAdapter() {
+    return adapter;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object getTarget(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException {
+    return instanceProvider.getInstance(ctx);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object invoke(Object target, Object[] params) throws IllegalAccessException, InvocationTargetException {
+    return adapter.invoke(target, params);
+  }
+}
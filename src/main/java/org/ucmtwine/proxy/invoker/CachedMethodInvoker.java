@@ -0,0 +1,72 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Resolves the method and the instance provider of its declaring class once
+ * and suppresses the per-call access checks on the method.
+ * 
+ * <p>
+ * MethodHandles and LambdaMetafactory are not available on the JVMs that the
+ * 10g and 11g content servers run on, so this is the closest we can get: the
+ * JVM inflates frequently used accessible methods and constructors into
+ * generated bytecode accessors, leaving only the argument array on the hot
+ * path. Instances are created through a cached constructor, see
+ * {@link InstanceFactory}.
+ * </p>
+ * 
+ * @author tim
+ */
+public class CachedMethodInvoker implements IMethodInvoker {
+
+  private final Method method;
+
+  private final IInstanceProvider instanceProvider;
+
+  public CachedMethodInvoker(Method method) {
+    this.method = method;
+    this.instanceProvider = InstanceProviders.forClass(method.getDeclaringClass());
+
+    makeAccessible(method);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Method getMethod() {
+    return method;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object getTarget(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException {
+    return instanceProvider.getInstance(ctx);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object invoke(Object target, Object[] params) throws IllegalAccessException, InvocationTargetException {
+    return method.invoke(target, params);
+  }
+
+  /**
+   * Skip access checks if the security manager allows it, otherwise leave the
+   * checks in place.
+   * 
+   * @param member
+   */
+  static void makeAccessible(AccessibleObject member) {
+    try {
+      member.setAccessible(true);
+    } catch (SecurityException ignore) {
+
+    }
+  }
+}
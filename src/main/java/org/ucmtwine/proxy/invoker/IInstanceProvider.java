@@ -0,0 +1,27 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Supplies the instance of an annotated class that a method is invoked on,
+ * according to the class's {@link org.ucmtwine.annotation.Scope}.
+ * 
+ * @author tim
+ */
+public interface IInstanceProvider {
+
+  /**
+   * Returns an instance, creating one if the scope requires it.
+   * 
+   * @param ctx
+   *          The current execution context
+   * @return
+   * @throws InstantiationException
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  Object getInstance(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException;
+}
@@ -0,0 +1,49 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls an annotated method on behalf of one of the proxies. Invokers are
+ * created once, when the method is injected, and reused for every call.
+ * 
+ * @author tim
+ */
+public interface IMethodInvoker {
+
+  /**
+   * The method this invoker delegates to.
+   * 
+   * @return
+   */
+  Method getMethod();
+
+  /**
+   * Returns the instance of the method's declaring class to invoke the method
+   * on, honouring the class's {@link org.ucmtwine.annotation.Scope}.
+   * 
+   * @param ctx
+   *          The current execution context
+   * @return The instance to invoke the method on
+   * @throws InstantiationException
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  Object getTarget(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException;
+
+  /**
+   * Invoke the method.
+   * 
+   * @param target
+   *          The instance to invoke the method on
+   * @param params
+   *          The marshalled parameter values
+   * @return The method's return value, or null if it is void
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   */
+  Object invoke(Object target, Object[] params) throws IllegalAccessException, InvocationTargetException;
+}
@@ -0,0 +1,61 @@
+package org.ucmtwine.proxy.invoker;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates instances of an annotated class through its no-arg constructor,
+ * which is resolved and made accessible once.
+ * 
+ * @author tim
+ */
+public class InstanceFactory {
+
+  private final Class<?> klass;
+
+  private final Constructor<?> constructor;
+
+  public InstanceFactory(Class<?> klass) {
+    this.klass = klass;
+    this.constructor = findConstructor(klass);
+  }
+
+  public Class<?> getInstanceClass() {
+    return klass;
+  }
+
+  /**
+   * Create a new instance.
+   * 
+   * @return
+   * @throws InstantiationException
+   *           If the class has no no-arg constructor or is abstract
+   * @throws IllegalAccessException
+   * @throws InvocationTargetException
+   *           If the constructor threw an exception
+   */
+  public Object newInstance() throws InstantiationException, IllegalAccessException, InvocationTargetException {
+    if (constructor == null) {
+      throw new InstantiationException("Class " + klass.getName() + " does not have a no-arg constructor");
+    }
+
+    return constructor.newInstance();
+  }
+
+  /**
+   * Find the no-arg constructor of a class, or null if there isn't one.
+   * 
+   * @param klass
+   * @return
+   */
+  private static Constructor<?> findConstructor(Class<?> klass) {
+    try {
+      Constructor<?> c = klass.getDeclaredConstructor();
+      CachedMethodInvoker.makeAccessible(c);
+      return c;
+
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ucmtwine.annotation.Scope;
+
+/**
+ * Holds one {@link IInstanceProvider} per annotated class, so that every method
+ * of a class shares the same singleton, thread or request instance.
+ * 
+ * @author tim
+ */
+public final class InstanceProviders {
+
+  /**
+   * Prefix of the ExecutionContext cached object key for request scoped
+   * instances.
+   */
+  public static final String REQUEST_INSTANCE_PREFIX = "TwineInstance:";
+
+  private static final ConcurrentMap<Class<?>, IInstanceProvider> PROVIDERS = new ConcurrentHashMap<Class<?>, IInstanceProvider>();
+
+  private InstanceProviders() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Returns the provider for a class, creating it from the class's
+   * {@link Scope} annotation the first time.
+   * 
+   * @param klass
+   * @return
+   */
+  public static IInstanceProvider forClass(Class<?> klass) {
+    IInstanceProvider provider = PROVIDERS.get(klass);
+
+    if (provider == null) {
+      IInstanceProvider newProvider = create(new InstanceFactory(klass));
+      provider = PROVIDERS.putIfAbsent(klass, newProvider);
+
+      if (provider == null) {
+        provider = newProvider;
+      }
+    }
+
+    return provider;
+  }
+
+  /**
+   * Returns the scope of a class.
+   * 
+   * @param klass
+   * @return
+   */
+  public static Scope.Type getScope(Class<?> klass) {
+    Scope scope = klass.getAnnotation(Scope.class);
+
+    return (scope == null) ? Scope.Type.PROTOTYPE : scope.value();
+  }
+
+  private static IInstanceProvider create(InstanceFactory factory) {
+    switch (getScope(factory.getInstanceClass())) {
+    case SINGLETON:
+      return new SingletonProvider(factory);
+
+    case THREAD:
+      return new ThreadProvider(factory);
+
+    case REQUEST:
+      return new RequestProvider(factory);
+
+    default:
+      return new PrototypeProvider(factory);
+    }
+  }
+
+  private static class PrototypeProvider implements IInstanceProvider {
+    private final InstanceFactory factory;
+
+    PrototypeProvider(InstanceFactory factory) {
+      this.factory = factory;
+    }
+
+    public Object getInstance(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+        InvocationTargetException {
+      return factory.newInstance();
+    }
+  }
+
+  private static class SingletonProvider implements IInstanceProvider {
+    private final InstanceFactory factory;
+
+    private volatile Object instance;
+
+    SingletonProvider(InstanceFactory factory) {
+      this.factory = factory;
+    }
+
+    public Object getInstance(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+        InvocationTargetException {
+      Object result = instance;
+
+      if (result == null) {
+        synchronized (this) {
+          result = instance;
+
+          if (result == null) {
+            result = factory.newInstance();
+            instance = result;
+          }
+        }
+      }
+
+      return result;
+    }
+  }
+
+  private static class ThreadProvider implements IInstanceProvider {
+    private final InstanceFactory factory;
+
+    private final ThreadLocal<Object> instance = new ThreadLocal<Object>();
+
+    ThreadProvider(InstanceFactory factory) {
+      this.factory = factory;
+    }
+
+    public Object getInstance(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+        InvocationTargetException {
+      Object result = instance.get();
+
+      if (result == null) {
+        result = factory.newInstance();
+        instance.set(result);
+      }
+
+      return result;
+    }
+  }
+
+  private static class RequestProvider implements IInstanceProvider {
+    private final InstanceFactory factory;
+
+    private final String key;
+
+    RequestProvider(InstanceFactory factory) {
+      this.factory = factory;
+      this.key = REQUEST_INSTANCE_PREFIX + factory.getInstanceClass().getName();
+    }
+
+    public Object getInstance(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+        InvocationTargetException {
+      if (ctx == null) {
+        return factory.newInstance();
+      }
+
+      Object result = ctx.getCachedObject(key);
+
+      if (result == null) {
+        result = factory.newInstance();
+        ctx.setCachedObject(key, result);
+      }
+
+      return result;
+    }
+  }
+}
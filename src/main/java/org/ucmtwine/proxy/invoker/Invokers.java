@@ -0,0 +1,62 @@
+package org.ucmtwine.proxy.invoker;
+
+import java.lang.reflect.Method;
+
+import org.ucmtwine.proxy.adapter.IMethodAdapter;
+
+/**
+ * Creates the invoker used by the proxies for an injected method.
+ * 
+ * @author tim
+ */
+public final class Invokers {
+
+  /**
+   * Config entry which switches new invokers back to plain reflection.
+   */
+  public static final String USE_REFLECTION_CONFIG = "TwineUseReflectionInvokers";
+
+  private static volatile boolean useReflection = false;
+
+  private Invokers() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Create an invoker for a method. Only methods injected after a call to
+   * {@link #setUseReflection(boolean)} are affected by it.
+   * 
+   * @param method
+   * @return
+   */
+  public static IMethodInvoker create(Method method) {
+    if (useReflection) {
+      return new ReflectionInvoker(method);
+    }
+    return new CachedMethodInvoker(method);
+  }
+
+  /**
+   * Create an invoker for a method which calls it through its generated
+   * adapter, if it has one.
+   * 
+   * @param method
+   * @param adapter
+   *          The method's adapter, or null
+   * @return
+   */
+  public static IMethodInvoker create(Method method, IMethodAdapter adapter) {
+    if (adapter != null && !useReflection) {
+      return new AdapterInvoker(method, adapter);
+    }
+    return create(method);
+  }
+
+  public static boolean isUseReflection() {
+    return useReflection;
+  }
+
+  public static void setUseReflection(boolean useReflection) {
+    Invokers.useReflection = useReflection;
+  }
+}
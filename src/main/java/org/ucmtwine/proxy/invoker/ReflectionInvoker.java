@@ -0,0 +1,53 @@
+package org.ucmtwine.proxy.invoker;
+
+import intradoc.common.ExecutionContext;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.ucmtwine.annotation.Scope;
+
+/**
+ * Plain reflection, exactly as the proxies did it before invokers were cached.
+ * Kept so the two approaches can be compared on a live server.
+ * 
+ * @author tim
+ */
+public class ReflectionInvoker implements IMethodInvoker {
+
+  private final Method method;
+
+  private final boolean prototype;
+
+  public ReflectionInvoker(Method method) {
+    this.method = method;
+    this.prototype = InstanceProviders.getScope(method.getDeclaringClass()) == Scope.Type.PROTOTYPE;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Method getMethod() {
+    return method;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object getTarget(ExecutionContext ctx) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException {
+    if (prototype) {
+      return method.getDeclaringClass().newInstance();
+    }
+
+    // scopes change behaviour, so they apply whichever invoker is in use
+    return InstanceProviders.forClass(method.getDeclaringClass()).getInstance(ctx);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object invoke(Object target, Object[] params) throws IllegalAccessException, InvocationTargetException {
+    return method.invoke(target, params);
+  }
+}
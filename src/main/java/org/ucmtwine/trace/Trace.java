@@ -0,0 +1,214 @@
+package org.ucmtwine.trace;
+
+import intradoc.common.ServiceException;
+import intradoc.common.SystemUtils;
+import intradoc.data.DataException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Twine's trace events. Failures on the request path are recorded as fixed
+ * size events, a method ID, phase, error code and detail number, in a
+ * {@link TraceBuffer}, which the <code>TWINE_GET_TRACE</code> admin service
+ * reads. Text is only built when the <code>twine</code> trace section is
+ * active.
+ * 
+ * <pre>
+ * } catch (ClassCastException e) {
+ *   Trace.failed(Trace.ARGUMENT, methodId, parameter + 1, e);
+ * }
+ * </pre>
+ * 
+ * @author tim
+ */
+public final class Trace {
+
+  /**
+   * The trace section declared in twinelib_tables.htm.
+   */
+  public static final String SECTION = "twine";
+
+  /**
+   * Config entry with the number of events to keep. 0 stops recording them.
+   */
+  public static final String CAPACITY_CONFIG = "TwineTraceEvents";
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  // phases
+  public static final int SERVICE = 1;
+  public static final int FILTER = 2;
+  public static final int FUNCTION = 3;
+  public static final int VARIABLE = 4;
+
+  /**
+   * Converting a script argument; the detail is the parameter number.
+   */
+  public static final int ARGUMENT = 5;
+
+  /**
+   * Reading a parameter from the binder; the detail is the parameter number.
+   */
+  public static final int BINDER_VALUE = 6;
+
+  /**
+   * A script function index with no method; the detail is the index.
+   */
+  public static final int UNKNOWN_FUNCTION = 7;
+
+  /**
+   * A reserved method bound on first use; the detail is the time taken in
+   * microseconds.
+   */
+  public static final int BIND = 8;
+
+  /**
+   * An asynchronous service method queued behind a backlog, or which failed
+   * to run; the detail is the async queue depth.
+   */
+  public static final int ASYNC = 9;
+
+  private static final String[] PHASE_NAMES = { "unknown", "service", "filter", "function", "variable", "argument",
+      "binder value", "unknown function", "bind", "async" };
+
+  // error codes
+  public static final int OK = 0;
+  public static final int CLASS_CAST = 1;
+  public static final int ILLEGAL_ACCESS = 2;
+  public static final int ILLEGAL_ARGUMENT = 3;
+
+  /**
+   * The method itself threw.
+   */
+  public static final int THROWN = 4;
+  public static final int SERVICE_EXCEPTION = 5;
+  public static final int DATA_EXCEPTION = 6;
+  public static final int OTHER = 7;
+
+  /**
+   * The async queue was full.
+   */
+  public static final int SATURATED = 8;
+
+  /**
+   * An asynchronous method didn't finish in time.
+   */
+  public static final int TIMEOUT = 9;
+
+  private static final String[] CODE_NAMES = { "OK", "ClassCastException", "IllegalAccessException",
+      "IllegalArgumentException", "exception thrown by the method", "ServiceException", "DataException",
+      "unexpected exception", "async queue full", "timed out" };
+
+  private static volatile TraceBuffer buffer = new TraceBuffer(DEFAULT_CAPACITY);
+
+  private Trace() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Replace the buffer with an empty one.
+   * 
+   * @param capacity
+   *          The number of events to keep, or 0 to stop recording them
+   */
+  public static void setCapacity(int capacity) {
+    buffer = (capacity > 0) ? new TraceBuffer(capacity) : null;
+  }
+
+  /**
+   * The current buffer, or null if events aren't recorded.
+   * 
+   * @return
+   */
+  public static TraceBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * The recorded events, oldest first.
+   * 
+   * @return
+   */
+  public static List<TraceEvent> getEvents() {
+    TraceBuffer current = buffer;
+
+    return (current == null) ? Collections.<TraceEvent> emptyList() : current.getEvents();
+  }
+
+  /**
+   * Is the twine trace section active? Check before building trace text.
+   * 
+   * @return
+   */
+  public static boolean isActive() {
+    return SystemUtils.isActiveTrace(SECTION);
+  }
+
+  public static void record(int phase, int methodId, int code, long detail) {
+    TraceBuffer current = buffer;
+
+    if (current != null) {
+      current.record(methodId, phase, code, detail);
+    }
+  }
+
+  /**
+   * Record a failure, and trace it with the exception's message if the
+   * section is active.
+   * 
+   * @param phase
+   * @param methodId
+   *          The method's registry ID, or -1
+   * @param detail
+   * @param e
+   */
+  public static void failed(int phase, int methodId, long detail, Throwable e) {
+    int code = errorCode(e);
+
+    record(phase, methodId, code, detail);
+
+    if (isActive()) {
+      SystemUtils.trace(SECTION, TraceEvent.format(phase, methodId, code, detail) + ": " + message(e));
+    }
+  }
+
+  static int errorCode(Throwable e) {
+    if (e instanceof ClassCastException) {
+      return CLASS_CAST;
+    }
+    if (e instanceof IllegalAccessException) {
+      return ILLEGAL_ACCESS;
+    }
+    if (e instanceof IllegalArgumentException) {
+      return ILLEGAL_ARGUMENT;
+    }
+    if (e instanceof InvocationTargetException) {
+      return THROWN;
+    }
+    if (e instanceof ServiceException) {
+      return SERVICE_EXCEPTION;
+    }
+    if (e instanceof DataException) {
+      return DATA_EXCEPTION;
+    }
+    return (e == null) ? OK : OTHER;
+  }
+
+  private static String message(Throwable e) {
+    if (e instanceof InvocationTargetException && ((InvocationTargetException) e).getTargetException() != null) {
+      return String.valueOf(((InvocationTargetException) e).getTargetException().getMessage());
+    }
+
+    return String.valueOf(e.getMessage());
+  }
+
+  public static String phaseName(int phase) {
+    return (phase > 0 && phase < PHASE_NAMES.length) ? PHASE_NAMES[phase] : PHASE_NAMES[0];
+  }
+
+  public static String codeName(int code) {
+    return (code >= 0 && code < CODE_NAMES.length) ? CODE_NAMES[code] : CODE_NAMES[OTHER];
+  }
+}
@@ -0,0 +1,149 @@
+package org.ucmtwine.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size ring of trace events, allocated up front. Recording an event
+ * claims the next slot and writes four longs into it, so it doesn't lock or
+ * allocate. Once the ring is full each event overwrites the oldest.
+ * 
+ * <p>
+ * Each slot starts with the sequence number of the event in it, plus one, so
+ * that readers can tell a slot they have read is still the event they wanted.
+ * A writer marks the slot busy while it writes; if another writer has the slot,
+ * because the ring has wrapped around a paused thread, the event is dropped
+ * rather than mixed with the other one.
+ * </p>
+ * 
+ * @author tim
+ */
+public class TraceBuffer {
+
+  /**
+   * Longs per slot: sequence, time, method ID/phase/code, detail.
+   */
+  private static final int SLOT_WIDTH = 4;
+
+  private static final long BUSY = -1L;
+
+  private final int capacity;
+
+  private final int mask;
+
+  private final AtomicLongArray slots;
+
+  private final AtomicLong next = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Converts System.nanoTime() to wall clock time when the events are read.
+   */
+  private final long baseMillis = System.currentTimeMillis();
+
+  private final long baseNanos = System.nanoTime();
+
+  /**
+   * @param capacity
+   *          The number of events to keep, rounded up to a power of two
+   */
+  public TraceBuffer(int capacity) {
+    int size = 2;
+
+    while (size < capacity && size < (1 << 24)) {
+      size <<= 1;
+    }
+
+    this.capacity = size;
+    this.mask = size - 1;
+    this.slots = new AtomicLongArray(size * SLOT_WIDTH);
+  }
+
+  public void record(int methodId, int phase, int code, long detail) {
+    long sequence = next.getAndIncrement();
+    int base = (int) (sequence & mask) * SLOT_WIDTH;
+
+    long current = slots.get(base);
+
+    if (current == BUSY || !slots.compareAndSet(base, current, BUSY)) {
+      dropped.incrementAndGet();
+      return;
+    }
+
+    slots.set(base + 1, System.nanoTime());
+    slots.set(base + 2, pack(methodId, phase, code));
+    slots.set(base + 3, detail);
+    slots.set(base, sequence + 1);
+  }
+
+  /**
+   * The events still in the ring, oldest first. Events being written while it
+   * is read are left out.
+   * 
+   * @return
+   */
+  public List<TraceEvent> getEvents() {
+    long end = next.get();
+    long start = Math.max(0, end - capacity);
+
+    List<TraceEvent> events = new ArrayList<TraceEvent>((int) (end - start));
+
+    for (long sequence = start; sequence < end; sequence++) {
+      int base = (int) (sequence & mask) * SLOT_WIDTH;
+
+      if (slots.get(base) != sequence + 1) {
+        continue;
+      }
+
+      long nanos = slots.get(base + 1);
+      long packed = slots.get(base + 2);
+      long detail = slots.get(base + 3);
+
+      // overwritten while reading
+      if (slots.get(base) != sequence + 1) {
+        continue;
+      }
+
+      long millis = baseMillis + (nanos - baseNanos) / 1000000L;
+
+      events.add(new TraceEvent(sequence, millis, (int) (packed >> 32), (int) ((packed >>> 16) & 0xFFFF),
+          (int) (packed & 0xFFFF), detail));
+    }
+
+    return events;
+  }
+
+  /**
+   * The number of events the ring holds.
+   * 
+   * @return
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * The number of events recorded, including those since overwritten.
+   * 
+   * @return
+   */
+  public long getRecorded() {
+    return next.get() - dropped.get();
+  }
+
+  /**
+   * The number of events dropped because their slot was being written.
+   * 
+   * @return
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private static long pack(int methodId, int phase, int code) {
+    return ((long) methodId << 32) | ((phase & 0xFFFFL) << 16) | (code & 0xFFFFL);
+  }
+}
@@ -0,0 +1,129 @@
+package org.ucmtwine.trace;
+
+import java.lang.reflect.Method;
+
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+/**
+ * A trace event read from a {@link TraceBuffer}.
+ * 
+ * @author tim
+ */
+public class TraceEvent {
+
+  private final long sequence;
+
+  private final long timeMillis;
+
+  private final int methodId;
+
+  private final int phase;
+
+  private final int code;
+
+  private final long detail;
+
+  public TraceEvent(long sequence, long timeMillis, int methodId, int phase, int code, long detail) {
+    this.sequence = sequence;
+    this.timeMillis = timeMillis;
+    this.methodId = methodId;
+    this.phase = phase;
+    this.code = code;
+    this.detail = detail;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public long getTimeMillis() {
+    return timeMillis;
+  }
+
+  /**
+   * @return The registry ID of the method, or -1 if it isn't known
+   */
+  public int getMethodId() {
+    return methodId;
+  }
+
+  /**
+   * @return One of the Trace phase constants
+   */
+  public int getPhase() {
+    return phase;
+  }
+
+  /**
+   * @return One of the Trace error code constants
+   */
+  public int getCode() {
+    return code;
+  }
+
+  /**
+   * @return The parameter number, function index or time, depending on the
+   *         phase
+   */
+  public long getDetail() {
+    return detail;
+  }
+
+  /**
+   * Describe the event, e.g.
+   * <code>argument failed: ClassCastException in com.example.Foo.bar() parameter 2</code>
+   * 
+   * @return
+   */
+  public String format() {
+    return format(phase, methodId, code, detail);
+  }
+
+  @Override
+  public String toString() {
+    return format();
+  }
+
+  static String format(int phase, int methodId, int code, long detail) {
+    StringBuilder sb = new StringBuilder(Trace.phaseName(phase));
+
+    if (code != Trace.OK) {
+      sb.append(" failed: ").append(Trace.codeName(code));
+    }
+
+    if (methodId >= 0) {
+      sb.append(" in ").append(methodName(methodId));
+    }
+
+    switch (phase) {
+    case Trace.ARGUMENT:
+    case Trace.BINDER_VALUE:
+      sb.append(" parameter ").append(detail);
+      break;
+
+    case Trace.UNKNOWN_FUNCTION:
+      sb.append(" index ").append(detail);
+      break;
+
+    case Trace.BIND:
+      sb.append(" took ").append(detail / 1000L).append("ms");
+      break;
+
+    case Trace.ASYNC:
+      sb.append(" queue depth ").append(detail);
+      break;
+    }
+
+    return sb.toString();
+  }
+
+  private static String methodName(int methodId) {
+    Method method = MethodRegistry.getMethod(methodId);
+
+    if (method == null) {
+      return "method " + methodId;
+    }
+
+    return method.getDeclaringClass().getName() + "." + method.getName() + "()";
+  }
+}
@@ -21,6 +21,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.ucmtwine.annotation.Binder;
 import org.ucmtwine.parameter.IParameter;
 import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.parameter.types.ResultSetParameter;
 import org.ucmtwine.proxy.ScriptProxy;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -66,6 +67,9 @@ public class TestParameterMarshaller {
   public void methodWithAnonymousType(@Binder(name = "a") int a, boolean b, @Binder(name = "c") int c) {
   }
 
+  public void methodWithResultSetOptions(@Binder(name = "rs", readOnly = true, columns = { "dID" }) DataResultSet rs) {
+  }
+
   @Before
   public void setUp() throws SecurityException, DataException, NoSuchMethodException, ClassNotFoundException,
       ServiceException {
@@ -138,6 +142,20 @@ public class TestParameterMarshaller {
     assertEquals(DataResultSet.class, types[4]);
   }
 
+  @Test(expected = UnsupportedOperationException.class)
+  public void testParameterListIsReadOnly() {
+    pbUsingMethodWithParams.getParameters().clear();
+  }
+
+  @Test
+  public void testParameterCountsExcludeInjectedTypesWhenAsked() throws SecurityException, NoSuchMethodException {
+    ParameterMarshaller m = new ParameterMarshaller(this.getClass().getMethod("methodWithInjectableTypesInMiddle",
+        methodParams[4]));
+
+    assertEquals(3, m.getParameterCount(true));
+    assertEquals(2, m.getParameterCount(false));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testOptionalParameterWithNonNullableTypeThrowsAnException() throws SecurityException, DataException,
       NoSuchMethodException, IllegalArgumentException, ClassNotFoundException {
@@ -230,6 +248,27 @@ public class TestParameterMarshaller {
 
   }
 
+  @Test
+  public void testResultSetBinderOptionsArePassedToTheParameter() throws Exception {
+    ParameterMarshaller marshaller = new ParameterMarshaller(this.getClass().getMethod("methodWithResultSetOptions",
+        DataResultSet.class));
+
+    ResultSetParameter p = (ResultSetParameter) marshaller.getParameters().get(0);
+
+    assertEquals(true, p.isReadOnly());
+    assertArrayEquals(new String[] { "dID" }, p.getColumns());
+  }
+
+  @Test
+  public void testScriptArgumentsAreConvertedFromIdocNumbers() throws SecurityException, NoSuchMethodException {
+    ParameterMarshaller m = new ParameterMarshaller(this.getClass().getMethod("methodWithAnonymousType",
+        methodParams[5]));
+
+    Object[] values = m.getValueArray(new Object[] { 5L, 1L, 7.0d, null }, testService);
+
+    assertArrayEquals(new Object[] { 5, true, 7 }, values);
+  }
+
   @Test
   public void testServiceParameterInjectionWhenNotInsideValidServiceContextThrowsException() {
 
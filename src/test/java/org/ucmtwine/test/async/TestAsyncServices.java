@@ -0,0 +1,393 @@
+package org.ucmtwine.test.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.DataResultSet;
+import intradoc.data.Workspace;
+import intradoc.server.Action;
+import intradoc.shared.UserData;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.async.AsyncServices;
+import org.ucmtwine.async.BinderSnapshot;
+import org.ucmtwine.proxy.ServiceProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.trace.Trace;
+import org.ucmtwine.trace.TraceEvent;
+
+public class TestAsyncServices {
+
+  /**
+   * Holds up waitForRelease(), replaced for each test.
+   */
+  private static volatile CountDownLatch release;
+
+  public static class AsyncPackage {
+    @ServiceMethod(name = "ASYNC_LOOKUP")
+    public Future<Map<String, Object>> lookup(@Binder(name = "dID") Long id, DataBinder binder) {
+      Map<String, Object> results = new HashMap<String, Object>();
+
+      results.put("dDocName", "DOC" + id);
+      results.put("onPoolThread", String.valueOf(Thread.currentThread().getName().startsWith("TwineAsync-")));
+      results.put("snapshot", String.valueOf(binder instanceof BinderSnapshot));
+
+      try {
+        binder.putLocal("written", "1");
+        results.put("readOnly", "false");
+
+      } catch (UnsupportedOperationException e) {
+        results.put("readOnly", "true");
+      }
+
+      DataResultSet rs = new DataResultSet(new String[] { "dID" });
+      rs.addRowWithList(Arrays.asList(String.valueOf(id)));
+      results.put("Docs", rs);
+
+      return done(results);
+    }
+
+    @ServiceMethod(name = "ASYNC_BINDER")
+    public Future<DataBinder> copy() {
+      DataBinder binder = new DataBinder();
+      binder.putLocal("copied", "yes");
+      return done(binder);
+    }
+
+    @ServiceMethod(name = "ASYNC_WAIT")
+    public Future<Map<String, Object>> waitForRelease() throws InterruptedException {
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }
+
+    @ServiceMethod(name = "ASYNC_STAGES")
+    public Future<Map<String, Object>> waitForStage() throws Exception {
+      FutureTask<String> stage = new FutureTask<String>(new Callable<String>() {
+        public String call() {
+          return Thread.currentThread().getName();
+        }
+      });
+
+      AsyncServices.getExecutor().execute(stage);
+
+      Map<String, Object> results = new HashMap<String, Object>();
+      results.put("stageThread", stage.get(5, TimeUnit.SECONDS));
+
+      return done(results);
+    }
+
+    @ServiceMethod(name = "ASYNC_THROW")
+    public Future<Map<String, Object>> fail() {
+      throw new IllegalStateException("async failure");
+    }
+
+    @ServiceMethod(name = "ASYNC_FAILED_FUTURE")
+    public Future<Map<String, Object>> failedFuture() {
+      FutureTask<Map<String, Object>> task = new FutureTask<Map<String, Object>>(
+          new Callable<Map<String, Object>>() {
+            public Map<String, Object> call() throws Exception {
+              throw new IllegalStateException("future failure");
+            }
+          });
+      task.run();
+      return task;
+    }
+
+    @ServiceMethod(name = "ASYNC_WORKSPACE")
+    public Future<Map<String, Object>> usesWorkspace(Workspace ws) {
+      return null;
+    }
+  }
+
+  private static <T> Future<T> done(final T value) {
+    FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+      public T call() {
+        return value;
+      }
+    });
+    task.run();
+    return task;
+  }
+
+  /**
+   * A service request for one method.
+   */
+  private static class Request extends ServiceProxy {
+    private Request(String method, Class<?>... types) throws Exception {
+      m_binder = new DataBinder();
+      m_userData = new UserData();
+
+      Action action = new Action();
+      action.m_params.add(String.valueOf(MethodRegistry.register(AsyncPackage.class.getMethod(method, types))));
+      m_currentAction = action;
+
+      setCachedObject("UserData", m_userData);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    release = new CountDownLatch(1);
+    AsyncServices.configure(2, 4, 2000L);
+    Trace.setCapacity(16);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    AsyncServices.configure(AsyncServices.getDefaultThreads(), AsyncServices.DEFAULT_QUEUE,
+        AsyncServices.DEFAULT_TIMEOUT);
+    Trace.setCapacity(Trace.DEFAULT_CAPACITY);
+  }
+
+  @Test
+  public void testService_ShouldMergeMapIntoLiveBinder() throws Exception {
+    Request request = new Request("lookup", Long.class, DataBinder.class);
+    request.getBinder().putLocal("dID", "42");
+
+    request.delegateWithParameters();
+
+    DataBinder binder = request.getBinder();
+
+    assertEquals("DOC42", binder.getLocal("dDocName"));
+    assertEquals("true", binder.getLocal("onPoolThread"));
+    assertEquals("true", binder.getLocal("snapshot"));
+    assertEquals("true", binder.getLocal("readOnly"));
+    assertEquals(null, binder.getLocal("written"));
+
+    DataResultSet rs = (DataResultSet) binder.getResultSet("Docs");
+    assertNotNull(rs);
+    assertEquals("42", rs.getStringValueByName("dID"));
+  }
+
+  @Test
+  public void testService_ShouldMergeDataBinder() throws Exception {
+    Request request = new Request("copy");
+
+    request.delegateWithParameters();
+
+    assertEquals("yes", request.getBinder().getLocal("copied"));
+  }
+
+  @Test
+  public void testSnapshot_ShouldCopyAndRejectChanges() {
+    DataBinder live = new DataBinder();
+    live.putLocal("a", "1");
+    live.addResultSet("Rows", new DataResultSet(new String[] { "x" }));
+
+    BinderSnapshot snapshot = new BinderSnapshot(live);
+
+    assertEquals("1", snapshot.getLocal("a"));
+    assertNotNull(snapshot.getResultSet("Rows"));
+
+    try {
+      snapshot.putLocal("b", "2");
+      fail("Expected the snapshot to be read-only");
+    } catch (UnsupportedOperationException e) {
+      // read-only
+    }
+
+    try {
+      snapshot.getLocalData().put("b", "2");
+      fail("Expected the snapshot's local data to be read-only");
+    } catch (UnsupportedOperationException e) {
+      // read-only
+    }
+
+    try {
+      snapshot.addResultSet("More", new DataResultSet());
+      fail("Expected the snapshot's result sets to be read-only");
+    } catch (UnsupportedOperationException e) {
+      // read-only
+    }
+
+    // later changes to the live binder don't reach the snapshot
+    live.putLocal("a", "2");
+    assertEquals("1", snapshot.getLocal("a"));
+  }
+
+  @Test
+  public void testService_ShouldPropagateExceptions() throws Exception {
+    try {
+      new Request("fail").delegateWithParameters();
+      fail("Expected the method's exception");
+    } catch (ServiceException e) {
+      assertTrue(causes(e).contains("async failure"));
+    }
+
+    try {
+      new Request("failedFuture").delegateWithParameters();
+      fail("Expected the Future's exception");
+    } catch (ServiceException e) {
+      assertTrue(causes(e).contains("future failure"));
+    }
+  }
+
+  @Test
+  public void testService_ShouldTimeOut() throws Exception {
+    AsyncServices.configure(1, 1, 50L);
+    long timedOut = AsyncServices.getTimedOut();
+
+    try {
+      new Request("waitForRelease").delegateWithParameters();
+      fail("Expected a timeout");
+    } catch (ServiceException e) {
+      assertTrue(causes(e).contains("did not finish in 50ms"));
+    }
+
+    assertEquals(timedOut + 1, AsyncServices.getTimedOut());
+    assertTrue(hasEvent(Trace.TIMEOUT));
+  }
+
+  @Test
+  public void testService_ShouldRejectWhenSaturated() throws Exception {
+    AsyncServices.configure(1, 1, 2000L);
+    long rejected = AsyncServices.getRejected();
+
+    // one call holds the thread and another the queue slot
+    Thread running = callInBackground("waitForRelease");
+    waitFor(1, 0);
+    Thread queued = callInBackground("waitForRelease");
+    waitFor(1, 1);
+
+    try {
+      new Request("copy").delegateWithParameters();
+      fail("Expected the call to be rejected");
+    } catch (ServiceException e) {
+      assertTrue(causes(e).contains("saturated"));
+    } finally {
+      release.countDown();
+      running.join(5000);
+      queued.join(5000);
+    }
+
+    assertEquals(rejected + 1, AsyncServices.getRejected());
+    assertTrue(hasEvent(Trace.SATURATED));
+  }
+
+  @Test
+  public void testService_ShouldRunStagesOnTheirOwnThreads() throws Exception {
+    // a method waiting for its stage would deadlock a shared single thread
+    AsyncServices.configure(1, 1, 2000L);
+
+    Request request = new Request("waitForStage");
+    request.delegateWithParameters();
+
+    assertTrue(request.getBinder().getLocal("stageThread").startsWith("TwineAsyncStage-"));
+  }
+
+  @Test
+  public void testExecutor_ShouldRunNestedStagesInline() throws Exception {
+    final FutureTask<String> inner = new FutureTask<String>(new Callable<String>() {
+      public String call() {
+        return Thread.currentThread().getName();
+      }
+    });
+
+    FutureTask<String> outer = new FutureTask<String>(new Callable<String>() {
+      public String call() throws Exception {
+        AsyncServices.getExecutor().execute(inner);
+        return Thread.currentThread().getName();
+      }
+    });
+
+    AsyncServices.getExecutor().execute(outer);
+
+    assertEquals(outer.get(5, TimeUnit.SECONDS), inner.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCheckMethod_ShouldRejectRequestThreadParameters() throws Exception {
+    try {
+      AsyncServices.checkMethod(AsyncPackage.class.getMethod("usesWorkspace", Workspace.class));
+      fail("Expected a DataException");
+    } catch (DataException e) {
+      assertTrue(e.getMessage().contains("Workspace"));
+    }
+
+    // fine
+    AsyncServices.checkMethod(AsyncPackage.class.getMethod("lookup", Long.class, DataBinder.class));
+  }
+
+  @Test
+  public void testMerge_ShouldRejectOtherValues() {
+    try {
+      AsyncServices.merge("value", new DataBinder());
+      fail("Expected a ServiceException");
+    } catch (ServiceException e) {
+      assertTrue(e.getMessage().contains("java.lang.String"));
+    }
+  }
+
+  private static Thread callInBackground(final String method) {
+    Thread t = new Thread() {
+      public void run() {
+        try {
+          new Request(method).delegateWithParameters();
+        } catch (Exception e) {
+          // only used to occupy the pool
+        }
+      }
+    };
+
+    t.setDaemon(true);
+    t.start();
+
+    return t;
+  }
+
+  /**
+   * Wait until the pool has this many running and queued calls.
+   */
+  private static void waitFor(int active, int queued) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+
+    while (AsyncServices.getActiveCount() != active || AsyncServices.getQueueDepth() != queued) {
+      if (System.currentTimeMillis() > end) {
+        fail("The pool never had " + active + " running and " + queued + " queued calls");
+      }
+
+      Thread.sleep(5);
+    }
+  }
+
+  private static boolean hasEvent(int code) {
+    List<TraceEvent> events = Trace.getEvents();
+
+    for (TraceEvent event : events) {
+      if (event.getPhase() == Trace.ASYNC && event.getCode() == code) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static String causes(Throwable e) {
+    StringBuilder sb = new StringBuilder();
+
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      sb.append(t.getMessage()).append('\n');
+    }
+
+    return sb.toString();
+  }
+}
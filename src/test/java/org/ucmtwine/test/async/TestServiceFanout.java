@@ -0,0 +1,190 @@
+package org.ucmtwine.test.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ucmtwine.async.ServiceFanout;
+import org.ucmtwine.parameter.Parameter;
+import org.ucmtwine.parameter.types.InjectedParameter;
+
+public class TestServiceFanout {
+
+  /**
+   * Runs "services" which copy dDocName to the result, sleep for SleepMillis
+   * and fail when Fail is set, instead of calling the content server.
+   */
+  private static class FakeFanout extends ServiceFanout {
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private FakeFanout(DataBinder binder) {
+      super(null, binder, new UserData());
+    }
+
+    @Override
+    protected void execute(String serviceName, DataBinder binder) throws DataException, ServiceException {
+      int now = running.incrementAndGet();
+
+      synchronized (maxRunning) {
+        if (now > maxRunning.get()) {
+          maxRunning.set(now);
+        }
+      }
+
+      try {
+        Thread.sleep(Long.parseLong(binder.getLocal("SleepMillis")));
+
+      } catch (InterruptedException e) {
+        throw new ServiceException("interrupted");
+
+      } finally {
+        running.decrementAndGet();
+      }
+
+      if (binder.getLocal("Fail") != null) {
+        throw new ServiceException("failed " + serviceName);
+      }
+
+      binder.putLocal("result", serviceName + ":" + binder.getLocal("dDocName"));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    ServiceFanout.configure(ServiceFanout.DEFAULT_CONCURRENCY, ServiceFanout.DEFAULT_TIMEOUT,
+        ServiceFanout.DEFAULT_THREADS, true);
+  }
+
+  private static DataBinder request() {
+    DataBinder binder = new DataBinder();
+    binder.putLocal("dDocName", "REQUEST");
+    binder.putLocal("SleepMillis", "20");
+    return binder;
+  }
+
+  private static Map<String, String> locals(String name, String value) {
+    Map<String, String> locals = new HashMap<String, String>();
+    locals.put(name, value);
+    return locals;
+  }
+
+  @Test
+  public void testGather_ShouldReturnCopiedBindersInOrder() throws Exception {
+    DataBinder binder = request();
+    FakeFanout fanout = new FakeFanout(binder);
+
+    fanout.submit("DOC_INFO");
+    Future<DataBinder> file = fanout.submit("GET_FILE", locals("dDocName", "OTHER"));
+
+    List<DataBinder> results = fanout.gather();
+
+    assertEquals(2, results.size());
+    assertEquals("DOC_INFO:REQUEST", results.get(0).getLocal("result"));
+    assertEquals("GET_FILE:OTHER", results.get(1).getLocal("result"));
+    assertEquals("GET_FILE", results.get(1).getLocal("IdcService"));
+    assertTrue(file.get() == results.get(1));
+
+    // the request's binder is untouched
+    assertNull(binder.getLocal("result"));
+    assertEquals("REQUEST", binder.getLocal("dDocName"));
+  }
+
+  @Test
+  public void testSubmit_ShouldRunConcurrentlyUpToTheCap() throws Exception {
+    FakeFanout fanout = new FakeFanout(request());
+    fanout.setConcurrency(2);
+
+    for (int i = 0; i < 6; i++) {
+      fanout.submit("SERVICE_" + i, locals("SleepMillis", "50"));
+    }
+
+    assertEquals(6, fanout.gather().size());
+    assertTrue(fanout.maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testGather_ShouldFailAtTheDeadline() throws Exception {
+    FakeFanout fanout = new FakeFanout(request());
+    fanout.setConcurrency(1).setTimeout(100L);
+
+    fanout.submit("SLOW", locals("SleepMillis", "500"));
+    Future<DataBinder> queued = fanout.submit("QUEUED");
+
+    long start = System.currentTimeMillis();
+
+    try {
+      fanout.gather();
+      fail("Expected the deadline to pass");
+    } catch (ServiceException e) {
+      assertTrue(e.getMessage().contains("SLOW did not finish in 100ms"));
+    }
+
+    assertTrue(System.currentTimeMillis() - start < 400);
+    assertTrue(queued.isCancelled());
+  }
+
+  @Test
+  public void testGather_ShouldPropagateFailures() throws Exception {
+    FakeFanout fanout = new FakeFanout(request());
+
+    fanout.submit("GOOD");
+    fanout.submit("BAD", locals("Fail", "1"));
+
+    try {
+      fanout.gather();
+      fail("Expected the sub-service to fail");
+    } catch (ServiceException e) {
+      assertEquals("Sub-service BAD failed: failed BAD", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testVirtualThreads_ShouldFallBackToPlatformPool() throws Exception {
+    boolean available;
+
+    try {
+      Thread.class.getMethod("ofVirtual");
+      available = true;
+    } catch (NoSuchMethodException e) {
+      available = false;
+    }
+
+    assertEquals(available, ServiceFanout.isVirtual());
+
+    ServiceFanout.configure(2, 1000L, 2, false);
+    assertFalse(ServiceFanout.isVirtual());
+
+    FakeFanout fanout = new FakeFanout(request());
+    fanout.submit("DOC_INFO");
+    assertEquals("DOC_INFO:REQUEST", fanout.gather().get(0).getLocal("result"));
+  }
+
+  @Test
+  public void testParameter_ShouldInjectFanout() throws Exception {
+    Parameter p = Parameter.create("fanout", ServiceFanout.class, true);
+
+    assertTrue(p instanceof InjectedParameter);
+
+    Service service = new Service();
+    service.m_binder = request();
+
+    assertTrue(p.getBinderValue(service) instanceof ServiceFanout);
+  }
+}
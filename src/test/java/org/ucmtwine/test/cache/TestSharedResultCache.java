@@ -0,0 +1,147 @@
+package org.ucmtwine.test.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import intradoc.shared.UserData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.SharedCache.Partition;
+import org.ucmtwine.cache.CacheKey;
+import org.ucmtwine.cache.SharedResultCache;
+
+public class TestSharedResultCache {
+
+  private static class ManualClockCache extends SharedResultCache {
+    long now = 1000L;
+
+    ManualClockCache(long ttlMillis, int maxEntries, Partition partition) {
+      super("test", ttlMillis, maxEntries, partition);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  private UserData alice;
+  private UserData bob;
+
+  @Before
+  public void setUp() {
+    alice = new UserData();
+    alice.m_name = "alice";
+    alice.addAttribute("role", "contributor", "15");
+
+    bob = new UserData();
+    bob.m_name = "bob";
+    bob.addAttribute("role", "contributor", "15");
+  }
+
+  private static CacheKey key(Object arg) {
+    return new CacheKey(1, new Object[] { arg });
+  }
+
+  @Test
+  public void testGet_ShouldReturnStoredResults() {
+    SharedResultCache cache = new ManualClockCache(0, 10, Partition.NONE);
+
+    assertSame(SharedResultCache.MISS, cache.get(key("a"), null));
+
+    cache.put(key("a"), null, "result");
+    cache.put(key("b"), null, null);
+
+    assertEquals("result", cache.get(key("a"), null));
+    assertNull(cache.get(key("b"), null));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testGet_ShouldExpireEntriesAfterTheTtl() {
+    ManualClockCache cache = new ManualClockCache(500, 10, Partition.NONE);
+
+    cache.put(key("a"), null, "result");
+
+    cache.now += 499;
+    assertEquals("result", cache.get(key("a"), null));
+
+    cache.now += 1;
+    assertSame(SharedResultCache.MISS, cache.get(key("a"), null));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testPut_ShouldEvictTheLeastRecentlyUsedEntry() {
+    SharedResultCache cache = new ManualClockCache(0, 2, Partition.NONE);
+
+    cache.put(key("a"), null, "a");
+    cache.put(key("b"), null, "b");
+    cache.get(key("a"), null);
+    cache.put(key("c"), null, "c");
+
+    assertEquals("a", cache.get(key("a"), null));
+    assertSame(SharedResultCache.MISS, cache.get(key("b"), null));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testPut_ShouldStayWithinTheSizeBoundWhenStriped() {
+    SharedResultCache cache = new ManualClockCache(0, 1000, Partition.NONE);
+
+    for (int i = 0; i < 5000; i++) {
+      cache.put(key(i), null, "value");
+    }
+
+    // each segment rounds its share of the bound up
+    assertTrue(cache.size() <= 1000 + 16);
+  }
+
+  @Test
+  public void testUserPartition_ShouldSeparateUsers() {
+    SharedResultCache cache = new ManualClockCache(0, 10, Partition.USER);
+
+    cache.put(key("a"), alice, "alice's");
+
+    assertEquals("alice's", cache.get(key("a"), alice));
+    assertSame(SharedResultCache.MISS, cache.get(key("a"), bob));
+  }
+
+  @Test
+  public void testSecurityPartition_ShouldShareBetweenUsersWithTheSameAccess() {
+    SharedResultCache cache = new ManualClockCache(0, 10, Partition.SECURITY);
+
+    cache.put(key("a"), alice, "contributors'");
+
+    assertEquals("contributors'", cache.get(key("a"), bob));
+
+    bob.addAttribute("role", "admin", "15");
+
+    assertSame(SharedResultCache.MISS, cache.get(key("a"), bob));
+  }
+
+  @Test
+  public void testPartitionedCache_ShouldNotCacheWithoutAUser() {
+    SharedResultCache cache = new ManualClockCache(0, 10, Partition.USER);
+
+    cache.put(key("a"), null, "result");
+
+    assertSame(SharedResultCache.MISS, cache.get(key("a"), null));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testClear_ShouldRemoveAllEntries() {
+    SharedResultCache cache = new ManualClockCache(0, 10, Partition.NONE);
+
+    cache.put(key("a"), null, "a");
+    cache.clear();
+
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,91 @@
+package org.ucmtwine.test.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import intradoc.data.DataBinder;
+import intradoc.server.Service;
+
+import org.junit.Test;
+import org.ucmtwine.convert.Converters;
+import org.ucmtwine.convert.IConverter;
+import org.ucmtwine.parameter.Parameter;
+import org.ucmtwine.parameter.types.ConvertedParameter;
+
+public class TestConverters {
+
+  public static class Colour {
+    private final String name;
+
+    public Colour(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  public static class Unconvertible {
+  }
+
+  private static void registerColour() {
+    Converters.register(String.class, Colour.class, new IConverter<String, Colour>() {
+      public Colour convert(String value) {
+        return new Colour(value);
+      }
+    });
+  }
+
+  @Test
+  public void testConvert_ShouldUseARegisteredConverter() {
+    registerColour();
+
+    assertEquals("red", Converters.convert("red", Colour.class).getName());
+  }
+
+  @Test
+  public void testConvert_ShouldUseTheConverterOfASuperclass() {
+    // Long has no converter of its own, the Number one is used
+    assertEquals(Integer.valueOf(5), Converters.convert(Long.valueOf(5), int.class));
+    assertEquals("5", Converters.convert(Long.valueOf(5), String.class));
+  }
+
+  @Test
+  public void testConvert_ShouldReturnNullForNull() {
+    assertNull(Converters.convert(null, Integer.class));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testConvert_ShouldThrowWithoutAConverter() {
+    Converters.convert("x", Unconvertible.class);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testConvert_ShouldThrowWhenConversionFails() {
+    Converters.convert("abc", Integer.class);
+  }
+
+  @Test
+  public void testParameterCreate_ShouldAcceptARegisteredType() throws Exception {
+    registerColour();
+
+    Parameter p = Parameter.create("colour", Colour.class, true);
+    assertTrue(p instanceof ConvertedParameter);
+
+    DataBinder binder = new DataBinder();
+    binder.putLocal("colour", "blue");
+
+    Service service = mock(Service.class);
+    when(service.getBinder()).thenReturn(binder);
+
+    assertEquals("blue", ((Colour) p.getBinderValue(service)).getName());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParameterCreate_ShouldRejectAnUnregisteredType() {
+    Parameter.create("thing", Unconvertible.class, true);
+  }
+}
@@ -0,0 +1,120 @@
+package org.ucmtwine.test.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.ScriptProxy;
+
+public class TestDispatchEvents {
+
+  public static class EventPackage {
+    @IdocFunction
+    public String echo(String value) {
+      return value;
+    }
+  }
+
+  /**
+   * Records the kind of each finished event.
+   */
+  private static class ListRecorder implements IEventRecorder {
+    private final List<String> ended = new ArrayList<String>();
+
+    public Object begin(int kind) {
+      return Integer.valueOf(kind);
+    }
+
+    public void endDispatch(Object event, MethodBinding binding, boolean failed) {
+      ended.add(event + ":" + binding.getMethod().getName() + ":" + failed);
+    }
+
+    public void endPhase(Object event, String phase, int count) {
+      ended.add(event + ":" + phase + ":" + count);
+    }
+  }
+
+  private ListRecorder recorder;
+
+  private ScriptProxy proxy;
+
+  private ExecutionContext ctx;
+
+  @SuppressWarnings("deprecation")
+  @Before
+  public void setUp() {
+    recorder = new ListRecorder();
+    DispatchEvents.install(recorder);
+
+    proxy = new ScriptProxy(EventPackage.class);
+
+    ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+  }
+
+  @After
+  public void tearDown() {
+    DispatchEvents.install(null);
+  }
+
+  @Test
+  public void testRecorder_ShouldOnlyReceiveEventsWhileRecording() throws Exception {
+    assertNull(DispatchEvents.getRecorder());
+
+    call("a");
+    assertEquals(0, recorder.ended.size());
+
+    DispatchEvents.setRecording(true);
+    assertSame(recorder, DispatchEvents.getRecorder());
+
+    call("b");
+
+    DispatchEvents.setRecording(false);
+    call("c");
+
+    List<String> expected = new ArrayList<String>();
+    expected.add(DispatchEvents.BINDING + ":echo:false");
+    expected.add(DispatchEvents.FUNCTION + ":echo:false");
+
+    assertEquals(expected, recorder.ended);
+  }
+
+  @Test
+  public void testInstallJfr_ShouldReturnFalseWithoutTheModule() {
+    DispatchEvents.install(null);
+
+    assertFalse(DispatchEvents.installJfr());
+  }
+
+  private Object call(String argument) throws Exception {
+    String functionTable[] = proxy.getFunctionTable();
+
+    for (int i = 0; i < functionTable.length; i++) {
+      if (functionTable[i].equals("echo")) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = "echo";
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        Object args[] = { argument, null };
+        proxy.evaluateFunction(info, args, ctx);
+        return args[1];
+      }
+    }
+    throw new Exception("Unknown function");
+  }
+}
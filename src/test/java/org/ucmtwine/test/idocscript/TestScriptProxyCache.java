@@ -0,0 +1,132 @@
+package org.ucmtwine.test.idocscript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.cache.RequestCache;
+import org.ucmtwine.cache.SharedCaches;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.test.idocscript.classes.CacheableTestPackage;
+
+public class TestScriptProxyCache {
+  private ScriptProxy proxy;
+  private ExecutionContext ctx;
+
+  @SuppressWarnings("deprecation")
+  @Before
+  public void setUp() {
+    CacheableTestPackage.reset();
+    SharedCaches.clearAll();
+    proxy = new ScriptProxy(CacheableTestPackage.class);
+    ctx = newContext();
+  }
+
+  @Test
+  public void testCacheableFunction_ShouldRunOncePerDistinctArguments() throws Exception {
+    assertEquals("title 1", call("cachedTitle", 1L, ctx));
+    assertEquals("title 1", call("cachedTitle", 1L, ctx));
+    assertEquals("title 2", call("cachedTitle", 2L, ctx));
+    assertEquals("title 1", call("cachedTitle", 1L, ctx));
+
+    assertEquals(2, CacheableTestPackage.cachedCalls);
+
+    RequestCache cache = RequestCache.forContext(ctx);
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testCacheableFunction_ShouldNotShareResultsBetweenRequests() throws Exception {
+    call("cachedTitle", 1L, ctx);
+    call("cachedTitle", 1L, newContext());
+
+    assertEquals(2, CacheableTestPackage.cachedCalls);
+  }
+
+  @Test
+  public void testCacheableFunction_ShouldCacheNullResults() throws Exception {
+    assertNull(call("cachedNull", 1L, ctx));
+    assertNull(call("cachedNull", 1L, ctx));
+
+    assertEquals(1, CacheableTestPackage.cachedCalls);
+  }
+
+  @Test
+  public void testFunction_ShouldNotBeCachedByDefault() throws Exception {
+    call("uncachedTitle", 1L, ctx);
+    call("uncachedTitle", 1L, ctx);
+
+    assertEquals(2, CacheableTestPackage.uncachedCalls);
+    assertNull(ctx.getCachedObject(RequestCache.CACHED_OBJECT_KEY));
+  }
+
+  @Test
+  public void testSharedCacheFunction_ShouldShareResultsBetweenRequests() throws Exception {
+    assertEquals("label x", call("sharedLabel", "x", ctx));
+    assertEquals("label x", call("sharedLabel", "x", newContext()));
+
+    assertEquals(1, CacheableTestPackage.sharedCalls);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testSharedCacheFunction_ShouldPartitionByUser() throws Exception {
+    call("sharedLabel", "x", ctx);
+
+    UserData other = new UserData();
+    other.m_name = "other";
+
+    ExecutionContext otherCtx = new Service();
+    otherCtx.setCachedObject("UserData", other);
+
+    call("sharedLabel", "x", otherCtx);
+
+    assertEquals(2, CacheableTestPackage.sharedCalls);
+  }
+
+  @Test
+  public void testCacheableVariable_ShouldRunOncePerRequest() throws Exception {
+    boolean[] returnBool = new boolean[1];
+    String[] returnString = new String[1];
+
+    ScriptInfo info = new ScriptInfo();
+    info.m_key = "cachedVariable";
+    info.m_entry = proxy.getVariableDefinitionTable()[0];
+
+    proxy.evaluateValue(info, returnBool, returnString, ctx, false);
+    proxy.evaluateValue(info, returnBool, returnString, ctx, false);
+
+    assertEquals("42", returnString[0]);
+    assertEquals(1, CacheableTestPackage.variableCalls);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static ExecutionContext newContext() {
+    ExecutionContext context = new Service();
+    context.setCachedObject("UserData", new UserData());
+    return context;
+  }
+
+  private Object call(String functionName, Object argument, ExecutionContext context) throws Exception {
+    String functionTable[] = proxy.getFunctionTable();
+
+    for (int i = 0; i < functionTable.length; i++) {
+      if (functionTable[i].equals(functionName)) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = functionName;
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        Object args[] = { argument, null };
+        proxy.evaluateFunction(info, args, context);
+        return args[1];
+      }
+    }
+    throw new Exception("Unknown function");
+  }
+}
@@ -2,6 +2,7 @@ package org.ucmtwine.test.idocscript;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import intradoc.common.ExecutionContext;
 import intradoc.common.ScriptInfo;
 import intradoc.server.Service;
@@ -111,6 +112,19 @@ public class TestScriptProxyReturnTypes {
     assertEquals(new Long(20L), (Long) args[0]);
   }
 
+  @Test
+  public void testSmallIntegerResults_ShouldShareABox() throws Exception {
+    ScriptInfo info = getScriptInfo("returnInteger");
+
+    Object first[] = new Object[1];
+    proxy.evaluateFunction(info, first, ctx);
+
+    Object second[] = new Object[1];
+    proxy.evaluateFunction(info, second, ctx);
+
+    assertSame(first[0], second[0]);
+  }
+
   @Test
   public void testFloatPrimitiveReturnType_ShouldYieldAFloatResult() throws Exception {
     ScriptInfo info = getScriptInfo("returnFloatPrimitive");
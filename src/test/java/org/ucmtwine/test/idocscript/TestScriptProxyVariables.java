@@ -0,0 +1,90 @@
+package org.ucmtwine.test.idocscript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.test.idocscript.classes.VariablesTestPackage;
+
+public class TestScriptProxyVariables {
+  private ScriptProxy proxy;
+  private ExecutionContext ctx;
+
+  private boolean[] returnBool;
+  private String[] returnString;
+
+  @SuppressWarnings("deprecation")
+  @Before
+  public void setUp() {
+    proxy = new ScriptProxy(VariablesTestPackage.class);
+    ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    returnBool = new boolean[1];
+    returnString = new String[1];
+  }
+
+  @Test
+  public void testBooleanVariable_ShouldEvaluateAsConditional() throws Exception {
+    assertTrue(proxy.evaluateValue(getScriptInfo("alwaysTrue"), returnBool, returnString, ctx, true));
+    assertTrue(returnBool[0]);
+  }
+
+  @Test
+  public void testIntegerVariable_ShouldEvaluateAsString() throws Exception {
+    assertTrue(proxy.evaluateValue(getScriptInfo("answer"), returnBool, returnString, ctx, false));
+    assertEquals("42", returnString[0]);
+  }
+
+  @Test
+  public void testIntegerVariable_ShouldEvaluateAsConditional() throws Exception {
+    assertTrue(proxy.evaluateValue(getScriptInfo("answer"), returnBool, returnString, ctx, true));
+    assertTrue(returnBool[0]);
+  }
+
+  @Test
+  public void testNullVariable_ShouldEvaluateAsFalseOrNull() throws Exception {
+    assertTrue(proxy.evaluateValue(getScriptInfo("nothing"), returnBool, returnString, ctx, true));
+    assertFalse(returnBool[0]);
+
+    assertTrue(proxy.evaluateValue(getScriptInfo("nothing"), returnBool, returnString, ctx, false));
+    assertNull(returnString[0]);
+  }
+
+  @Test
+  public void testNonPublicVariable_ShouldBeCallable() throws Exception {
+    assertTrue(proxy.evaluateValue(getScriptInfo("packagePrivate"), returnBool, returnString, ctx, false));
+    assertEquals("visible", returnString[0]);
+  }
+
+  @Test
+  public void testUnknownVariableIndex_ShouldNotBeHandled() throws Exception {
+    ScriptInfo info = new ScriptInfo();
+    info.m_key = "unknown";
+    info.m_entry = new int[] { proxy.getVariableTable().length, ScriptProxy.RETURN_STRING };
+
+    assertFalse(proxy.evaluateValue(info, returnBool, returnString, ctx, false));
+  }
+
+  private ScriptInfo getScriptInfo(String variableName) throws Exception {
+    String variableTable[] = proxy.getVariableTable();
+
+    for (int i = 0; i < variableTable.length; i++) {
+      if (variableTable[i].equals(variableName)) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = variableName;
+        info.m_entry = proxy.getVariableDefinitionTable()[i];
+        return info;
+      }
+    }
+    throw new Exception("Unknown variable");
+  }
+}
@@ -0,0 +1,56 @@
+package org.ucmtwine.test.idocscript.classes;
+
+import intradoc.shared.UserData;
+
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.annotation.SharedCache;
+
+public class CacheableTestPackage {
+
+  public static int cachedCalls = 0;
+
+  public static int uncachedCalls = 0;
+
+  public static int variableCalls = 0;
+
+  public static int sharedCalls = 0;
+
+  public static void reset() {
+    cachedCalls = 0;
+    uncachedCalls = 0;
+    variableCalls = 0;
+    sharedCalls = 0;
+  }
+
+  @IdocFunction(cacheable = true)
+  public String cachedTitle(Long dID, UserData u) {
+    cachedCalls++;
+    return "title " + dID;
+  }
+
+  @IdocFunction
+  public String uncachedTitle(Long dID) {
+    uncachedCalls++;
+    return "title " + dID;
+  }
+
+  @IdocFunction(cacheable = true)
+  public String cachedNull(Long dID) {
+    cachedCalls++;
+    return null;
+  }
+
+  @IdocFunction
+  @SharedCache(partition = SharedCache.Partition.USER)
+  public String sharedLabel(String code) {
+    sharedCalls++;
+    return "label " + code;
+  }
+
+  @IdocVariable(cacheable = true)
+  public int cachedVariable() {
+    variableCalls++;
+    return 42;
+  }
+}
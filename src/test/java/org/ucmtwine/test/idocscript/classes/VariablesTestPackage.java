@@ -0,0 +1,26 @@
+package org.ucmtwine.test.idocscript.classes;
+
+import org.ucmtwine.annotation.IdocVariable;
+
+public class VariablesTestPackage {
+
+  @IdocVariable
+  public boolean alwaysTrue() {
+    return true;
+  }
+
+  @IdocVariable
+  public int answer() {
+    return 42;
+  }
+
+  @IdocVariable
+  public String nothing() {
+    return null;
+  }
+
+  @IdocVariable
+  String packagePrivate() {
+    return "visible";
+  }
+}
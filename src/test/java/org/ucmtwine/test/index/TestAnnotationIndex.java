@@ -0,0 +1,136 @@
+package org.ucmtwine.test.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import intradoc.data.DataResultSet;
+import intradoc.shared.UserData;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.junit.Test;
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.index.AnnotatedMethods;
+import org.ucmtwine.index.AnnotationIndex;
+import org.ucmtwine.index.IndexedMethod;
+import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.parameter.types.ResultSetParameter;
+
+/**
+ * The index resources for these classes are in src/test/resources.
+ */
+public class TestAnnotationIndex {
+
+  public static class IndexedPackage {
+    @ServiceMethod(name = "TEST_INDEXED_SERVICE")
+    public void indexedService(@Binder(name = "fromAnnotation") Long id, UserData user) {
+    }
+
+    @Filter(event = "testIndexedEvent", loadOrder = 5)
+    public void indexedFilter() {
+    }
+
+    @IdocFunction
+    public String indexedFunction(@Binder(name = "rs") DataResultSet rs) {
+      return null;
+    }
+  }
+
+  /**
+   * Its index names a method which doesn't exist.
+   */
+  public static class StaleIndexPackage {
+    @Filter(event = "testStaleEvent")
+    public void currentFilter() {
+    }
+  }
+
+  public static class UnindexedPackage {
+    @Filter(event = "testUnindexedEvent")
+    public void unindexedFilter() {
+    }
+  }
+
+  @Test
+  public void testForClass_ShouldReadTheIndex() {
+    List<IndexedMethod> methods = AnnotationIndex.forClass(IndexedPackage.class);
+
+    assertEquals(3, methods.size());
+    assertEquals("indexedService", methods.get(0).getName());
+    assertTrue(methods.get(0).hasAnnotation(ServiceMethod.class));
+    assertFalse(methods.get(0).hasAnnotation(Filter.class));
+    assertEquals("TEST_INDEXED_SERVICE", methods.get(0).getValue(ServiceMethod.class, "name"));
+    assertEquals("id", methods.get(0).getParameterName(0));
+    assertEquals("5", methods.get(1).getValue(Filter.class, "loadOrder"));
+  }
+
+  @Test
+  public void testForClass_ShouldReturnNullWithoutAnIndex() {
+    assertNull(AnnotationIndex.forClass(UnindexedPackage.class));
+    assertNull(AnnotationIndex.forClass(String.class));
+  }
+
+  @Test
+  public void testForMethod_ShouldMatchTheParameterTypes() throws Exception {
+    Method m = IndexedPackage.class.getMethod("indexedService", Long.class, UserData.class);
+
+    assertEquals("indexedService", AnnotationIndex.forMethod(m).getName());
+    assertNull(AnnotationIndex.forMethod(UnindexedPackage.class.getMethod("unindexedFilter")));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetPublicMethods_ShouldUseTheIndex() throws Exception {
+    List<Method> methods = AnnotatedMethods.getPublicMethods(IndexedPackage.class, Filter.class, ServiceMethod.class);
+
+    assertEquals(2, methods.size());
+    assertEquals(IndexedPackage.class.getMethod("indexedService", Long.class, UserData.class), methods.get(0));
+    assertEquals(IndexedPackage.class.getMethod("indexedFilter"), methods.get(1));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetDeclaredMethods_ShouldUseTheIndex() throws Exception {
+    List<Method> methods = AnnotatedMethods.getDeclaredMethods(IndexedPackage.class, IdocFunction.class);
+
+    assertEquals(1, methods.size());
+    assertEquals("indexedFunction", methods.get(0).getName());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetPublicMethods_ShouldScanWhenTheIndexIsStale() throws Exception {
+    List<Method> methods = AnnotatedMethods.getPublicMethods(StaleIndexPackage.class, Filter.class);
+
+    assertEquals(1, methods.size());
+    assertEquals("currentFilter", methods.get(0).getName());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetPublicMethods_ShouldScanWithoutAnIndex() throws Exception {
+    List<Method> methods = AnnotatedMethods.getPublicMethods(UnindexedPackage.class, Filter.class);
+
+    assertEquals(1, methods.size());
+  }
+
+  @Test
+  public void testParameterMarshaller_ShouldTakeBinderValuesFromTheIndex() throws Exception {
+    ParameterMarshaller m = new ParameterMarshaller(IndexedPackage.class.getMethod("indexedService", Long.class,
+        UserData.class));
+
+    assertEquals("fromIndex", m.getParameters().get(0).getName());
+    assertFalse(m.getParameters().get(0).isRequired());
+
+    ParameterMarshaller rs = new ParameterMarshaller(IndexedPackage.class.getMethod("indexedFunction",
+        DataResultSet.class));
+
+    ResultSetParameter p = (ResultSetParameter) rs.getParameters().get(0);
+    assertTrue(p.isReadOnly());
+  }
+}
@@ -0,0 +1,85 @@
+package org.ucmtwine.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ucmtwine.metrics.LatencyHistogram;
+import org.ucmtwine.metrics.StripedCounter;
+
+public class TestLatencyHistogram {
+
+  @Test
+  public void testBucket_ShouldUsePowersOfTwo() {
+    assertEquals(0, LatencyHistogram.bucket(0));
+    assertEquals(1, LatencyHistogram.bucket(1));
+    assertEquals(2, LatencyHistogram.bucket(3));
+    assertEquals(11, LatencyHistogram.bucket(1024));
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+
+    assertTrue(LatencyHistogram.upperBound(LatencyHistogram.bucket(1000)) >= 1000);
+  }
+
+  @Test
+  public void testRecord_ShouldTrackCountSumAndMax() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(1000);
+    histogram.record(3000);
+    histogram.record(-5);
+
+    assertEquals(3, histogram.getCount());
+    assertEquals(4000, histogram.getSumNanos());
+    assertEquals(3000, histogram.getMaxNanos());
+
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMaxNanos());
+  }
+
+  @Test
+  public void testPercentile_ShouldBeAnUpperEstimateWithinTwoTimes() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    long p50 = histogram.getPercentileNanos(50);
+    long p99 = histogram.getPercentileNanos(99);
+
+    assertTrue(p50 >= 50000 && p50 < 100000);
+    assertTrue(p99 >= 99000 && p99 <= 100000);
+    assertEquals(100000, histogram.getPercentileNanos(100));
+    assertEquals(0, new LatencyHistogram().getPercentileNanos(50));
+  }
+
+  @Test
+  public void testRecord_ShouldNotLoseCountsAcrossThreads() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final StripedCounter counter = new StripedCounter();
+
+    Thread[] threads = new Thread[8];
+
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            histogram.record(i);
+            counter.increment();
+          }
+        }
+      };
+      threads[t].start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(80000, histogram.getCount());
+    assertEquals(80000, counter.sum());
+    assertEquals(9999, histogram.getMaxNanos());
+  }
+}
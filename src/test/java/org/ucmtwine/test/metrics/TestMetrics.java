@@ -0,0 +1,176 @@
+package org.ucmtwine.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ucmtwine.admin.TwineAdminServices;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.metrics.MethodMetrics;
+import org.ucmtwine.metrics.Metrics;
+import org.ucmtwine.metrics.PrometheusWriter;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+public class TestMetrics {
+
+  public static class MeteredPackage {
+    @IdocFunction
+    public String metered(String value) {
+      if ("fail".equals(value)) {
+        throw new IllegalStateException("failed");
+      }
+      return value;
+    }
+
+    @IdocFunction
+    public Long number(Long value) {
+      return value;
+    }
+
+    public void plain() {
+    }
+  }
+
+  @After
+  public void tearDown() {
+    Metrics.setEnabled(true);
+  }
+
+  @Test
+  public void testForBinding_ShouldReturnNullWhenSwitchedOff() throws Exception {
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(MeteredPackage.class
+        .getMethod("plain")));
+
+    Metrics.setEnabled(false);
+    assertNull(Metrics.forBinding(binding));
+
+    Metrics.setEnabled(true);
+    assertNotNull(Metrics.forBinding(binding));
+    assertSame(Metrics.forBinding(binding), binding.getMetrics());
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testScriptProxy_ShouldRecordInvocationsAndErrors() throws Exception {
+    ScriptProxy proxy = new ScriptProxy(MeteredPackage.class);
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(MeteredPackage.class.getMethod(
+        "metered", String.class)));
+
+    binding.getMetrics().reset();
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    call(proxy, "ok", ctx);
+
+    try {
+      call(proxy, "fail", ctx);
+      fail("Expected the function to throw");
+    } catch (Exception e) {
+      // counted as an error
+    }
+
+    Metrics.setEnabled(false);
+    call(proxy, "not counted", ctx);
+
+    MethodMetrics metrics = binding.getMetrics();
+
+    assertEquals(2, metrics.getInvocations());
+    assertEquals(1, metrics.getErrors());
+    assertEquals(MeteredPackage.class.getName() + ".metered", metrics.getName());
+    assertEquals("function", metrics.getKind());
+    assertTrue(Metrics.getAll().contains(metrics));
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testScriptProxy_ShouldCountBindingFailuresAsFailedCalls() throws Exception {
+    ScriptProxy proxy = new ScriptProxy(MeteredPackage.class);
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(MeteredPackage.class.getMethod(
+        "number", Long.class)));
+
+    binding.getMetrics().reset();
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    try {
+      call(proxy, "number", "not a number", ctx);
+      fail("Expected the argument to be rejected");
+    } catch (Exception e) {
+      // counted as an error
+    }
+
+    assertEquals(1, binding.getMetrics().getInvocations());
+    assertEquals(1, binding.getMetrics().getErrors());
+  }
+
+  @Test
+  public void testPrometheusWriter_ShouldWriteCountersAndHistogram() throws Exception {
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(MeteredPackage.class.getMethod(
+        "metered", String.class)));
+    MethodMetrics metrics = binding.getMetrics();
+
+    metrics.reset();
+    metrics.record(2000, false);
+    metrics.record(5000000, true);
+
+    String text = PrometheusWriter.write(Arrays.asList(metrics));
+    String labels = "method=\"" + MeteredPackage.class.getName() + ".metered\",kind=\"function\"";
+
+    assertTrue(text.contains("# TYPE twine_invocations_total counter\n"));
+    assertTrue(text.contains("twine_invocations_total{" + labels + "} 2\n"));
+    assertTrue(text.contains("twine_errors_total{" + labels + "} 1\n"));
+    assertTrue(text.contains("twine_latency_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+    assertTrue(text.contains("twine_latency_seconds_count{" + labels + "} 2\n"));
+
+    // 2000ns is in the 2^11 bucket
+    assertTrue(text.contains("twine_latency_seconds_bucket{" + labels + ",le=\"2.047E-6\"} 1\n"));
+  }
+
+  @Test
+  public void testGetMetrics_ShouldWritePrometheusTextWhenAsked() throws Exception {
+    DataBinder binder = new DataBinder();
+
+    new TwineAdminServices().getMetrics(binder, "prometheus");
+
+    assertNotNull(binder.getResultSet("TwineMetrics"));
+    assertTrue(binder.getLocal("TwineMetricsText").startsWith("# HELP twine_invocations_total"));
+  }
+
+  private static Object call(ScriptProxy proxy, String argument, ExecutionContext ctx) throws Exception {
+    return call(proxy, "metered", argument, ctx);
+  }
+
+  private static Object call(ScriptProxy proxy, String function, String argument, ExecutionContext ctx)
+      throws Exception {
+    String functionTable[] = proxy.getFunctionTable();
+
+    for (int i = 0; i < functionTable.length; i++) {
+      if (functionTable[i].equals(function)) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = function;
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        Object args[] = { argument, null };
+        proxy.evaluateFunction(info, args, ctx);
+        return args[1];
+      }
+    }
+    throw new Exception("Unknown function");
+  }
+}
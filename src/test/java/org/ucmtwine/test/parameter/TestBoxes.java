@@ -0,0 +1,45 @@
+package org.ucmtwine.test.parameter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.ucmtwine.parameter.Boxes;
+
+public class TestBoxes {
+
+  @Test
+  public void testSmallLongs_ShouldShareABox() {
+    assertSame(Boxes.valueOf(500L), Boxes.valueOf(500L));
+    assertSame(Boxes.valueOf(-128L), Boxes.valueOf(-128L));
+    assertEquals(Long.valueOf(1023L), Boxes.valueOf(1023L));
+  }
+
+  @Test
+  public void testLargeLongs_ShouldBeBoxedAsUsual() {
+    assertNotSame(Boxes.valueOf(1024L), Boxes.valueOf(1024L));
+    assertEquals(Long.valueOf(Long.MAX_VALUE), Boxes.valueOf(Long.MAX_VALUE));
+    assertEquals(Long.valueOf(Long.MIN_VALUE), Boxes.valueOf(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void testSmallIntegers_ShouldShareABox() {
+    assertSame(Boxes.valueOf(700), Boxes.valueOf(700));
+    assertEquals(Integer.valueOf(-5), Boxes.valueOf(-5));
+  }
+
+  @Test
+  public void testWholeDoubles_ShouldShareABox() {
+    assertSame(Boxes.valueOf(3.0d), Boxes.valueOf(3.0d));
+    assertEquals(Double.valueOf(0.5d), Boxes.valueOf(0.5d));
+    assertEquals(Double.valueOf(-0.0d), Boxes.valueOf(-0.0d));
+    assertEquals(Double.valueOf(Double.NaN), Boxes.valueOf(Double.NaN));
+  }
+
+  @Test
+  public void testBooleans_ShouldBeLongOneOrZero() {
+    assertEquals(Long.valueOf(1L), Boxes.valueOf(true));
+    assertEquals(Long.valueOf(0L), Boxes.valueOf(false));
+  }
+}
@@ -0,0 +1,52 @@
+package org.ucmtwine.test.parameter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.Test;
+import org.ucmtwine.parameter.DateFormats;
+
+public class TestDateFormats {
+
+  private static final String PATTERN = "dd/MM/yyyy HH:mm:ss";
+
+  @Test
+  public void testGet_ShouldReuseTheFormatOnTheSameThread() {
+    assertSame(DateFormats.get(PATTERN), DateFormats.get(PATTERN));
+  }
+
+  @Test
+  public void testGet_ShouldSeparatePatternsAndLocales() {
+    assertNotSame(DateFormats.get(PATTERN), DateFormats.get("yyyy-MM-dd"));
+    assertNotSame(DateFormats.get(PATTERN, Locale.ENGLISH), DateFormats.get(PATTERN, Locale.FRENCH));
+  }
+
+  @Test
+  public void testGet_ShouldGiveEachThreadItsOwnFormat() throws Exception {
+    final DateFormat[] other = new DateFormat[1];
+
+    Thread t = new Thread() {
+      public void run() {
+        other[0] = DateFormats.get(PATTERN);
+      }
+    };
+    t.start();
+    t.join();
+
+    assertNotSame(DateFormats.get(PATTERN), other[0]);
+  }
+
+  @Test
+  public void testGet_ShouldFormatLikeSimpleDateFormat() {
+    Date now = new Date();
+
+    assertEquals(new SimpleDateFormat(PATTERN).format(now), DateFormats.get(PATTERN).format(now));
+    assertEquals(new SimpleDateFormat().format(now), DateFormats.get(null).format(now));
+  }
+}
@@ -1,6 +1,7 @@
 package org.ucmtwine.test.parameter.types;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
 import static org.mockito.Mockito.when;
 import intradoc.common.ServiceException;
 import intradoc.data.DataBinder;
@@ -16,6 +17,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.ucmtwine.parameter.JavaTime;
 import org.ucmtwine.parameter.types.DateParameter;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -85,4 +87,49 @@ public class TestDateParameter {
   public void testBinderIntegerParameterFails() {
     new DateParameter("timestamp").getBinderValue(testService);
   }
+
+  @Test
+  public void testParsesLocalDateFromString() {
+    Class<?> localDate = javaTimeClass("LocalDate");
+
+    Object d = new DateParameter("enAU", localDate).getBinderValue(testService);
+
+    assertEquals(localDate, d.getClass());
+    assertEquals(new SimpleDateFormat("yyyy-MM-dd").format(nowWithoutMillis), d.toString());
+  }
+
+  @Test
+  public void testArgumentInstantParameter() {
+    Class<?> instant = javaTimeClass("Instant");
+
+    Object i = new DateParameter("empty", instant).getArgumentValue(now, testService);
+
+    assertEquals(instant, i.getClass());
+    assertEquals(0, JavaTime.toDate(i).compareTo(now));
+  }
+
+  @Test
+  public void testLocalDateTimeRoundTrip() {
+    Object ldt = JavaTime.fromDate(now, javaTimeClass("LocalDateTime"));
+
+    assertEquals(0, JavaTime.toDate(ldt).compareTo(now));
+  }
+
+  /**
+   * java.time is looked up by name so the tests still compile for older JVMs,
+   * where they are skipped.
+   */
+  private static Class<?> javaTimeClass(String name) {
+    Class<?> klass = null;
+
+    try {
+      klass = Class.forName("java.time." + name);
+    } catch (ClassNotFoundException e) {
+      // skipped below
+    }
+
+    assumeNotNull(klass);
+
+    return klass;
+  }
 }
@@ -1,6 +1,11 @@
 package org.ucmtwine.test.parameter.types;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import intradoc.common.ServiceException;
 import intradoc.data.DataBinder;
@@ -24,6 +29,8 @@ public class TestResultSetParameter {
 
   private DataBinder testBinder;
 
+  private DataResultSet binderResultSet;
+
   @Mock
   private Service testService;
 
@@ -33,6 +40,7 @@ public class TestResultSetParameter {
     testBinder = new DataBinder();
 
     DataResultSet rs = new DataResultSet(new String[] { "field1", "field2", "field3" });
+    binderResultSet = rs;
 
     List<String> row = new ArrayList<String>(3);
 
@@ -62,4 +70,136 @@ public class TestResultSetParameter {
     assertTrue(ResultSet.class.isAssignableFrom(rs.getClass()));
   }
 
+  @Test
+  public void testReadOnlyView_ShouldShareRowsWithItsOwnCursor() {
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setReadOnly(true);
+
+    DataResultSet view = (DataResultSet) p.getBinderValue(testService);
+
+    assertNotSame(binderResultSet, view);
+    assertEquals(binderResultSet.getCurrentRowValues(), view.getCurrentRowValues());
+
+    view.next();
+
+    assertTrue(binderResultSet.isRowPresent());
+  }
+
+  @Test
+  public void testReadOnlyView_ShouldRejectChanges() {
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setReadOnly(true);
+
+    DataResultSet view = (DataResultSet) p.getBinderValue(testService);
+
+    assertFalse(view.isMutable());
+
+    try {
+      view.setCurrentValue(0, "changed");
+      fail("Expected the view to be read only");
+    } catch (UnsupportedOperationException e) {
+      // read only
+    }
+
+    try {
+      view.addRowWithList(new ArrayList<String>());
+      fail("Expected the view to be read only");
+    } catch (UnsupportedOperationException e) {
+      // read only
+    }
+
+    // changing a row it handed out doesn't reach the binder
+    view.getCurrentRowValues().set(0, "changed");
+
+    assertEquals(1, binderResultSet.getNumRows());
+    assertEquals("value1", binderResultSet.getStringValue(0));
+  }
+
+  @Test
+  public void testReadOnlyView_ShouldReadRowsThroughEveryAccessor() {
+    List<String> row = new ArrayList<String>(3);
+    row.add("second1");
+    row.add("second2");
+    row.add("second3");
+    binderResultSet.addRowWithList(row);
+
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setReadOnly(true);
+
+    DataResultSet view = (DataResultSet) p.getBinderValue(testService);
+
+    assertEquals("second2", view.getRowValues(1).get(1));
+    assertEquals("value3", view.getRowAsList(0).get(2));
+
+    assertTrue(view.last());
+    assertEquals(1, view.getCurrentRow());
+    assertEquals("second1", view.getCurrentRowAsList().get(0));
+    assertEquals("second3", view.getCurrentRowProps().get("field3"));
+
+    view.setCurrentRow(0);
+    assertEquals("value1", view.getStringValue(0));
+
+    assertEquals("second1", view.findRow(1, "second2").get(0));
+    assertEquals(1, view.getCurrentRow());
+
+    // the binder's cursor hasn't moved
+    assertEquals(0, binderResultSet.getCurrentRow());
+
+    try {
+      view.deleteRow(0);
+      fail("Expected the view to be read only");
+    } catch (UnsupportedOperationException e) {
+      // read only
+    }
+
+    assertEquals(2, binderResultSet.getNumRows());
+  }
+
+  @Test
+  public void testReadOnlyView_ShouldCopyOtherResultSets() {
+    ResultSet cursor = mock(ResultSet.class);
+    testBinder.addResultSet("cursor", cursor);
+
+    ResultSetParameter p = new ResultSetParameter("cursor");
+    p.setReadOnly(true);
+
+    Object value = p.getBinderValue(testService);
+
+    assertNotSame(cursor, value);
+    assertTrue(value instanceof DataResultSet);
+  }
+
+  @Test
+  public void testColumnProjection_ShouldOnlyCopyNamedColumns() {
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setColumns(new String[] { "field3", "field1" });
+
+    DataResultSet rs = (DataResultSet) p.getBinderValue(testService);
+
+    assertEquals(2, rs.getNumFields());
+    assertEquals("field3", rs.getFieldName(0));
+    assertTrue(rs.first());
+    assertEquals("value3", rs.getStringValue(0));
+    assertEquals("value1", rs.getStringValueByName("field1"));
+  }
+
+  @Test
+  public void testColumnProjection_ShouldKeepTheBinderCursor() {
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setColumns(new String[] { "field1" });
+
+    binderResultSet.first();
+    p.getBinderValue(testService);
+
+    assertTrue(binderResultSet.isRowPresent());
+    assertEquals(0, binderResultSet.getCurrentRow());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testColumnProjection_ShouldFailOnAMissingColumn() {
+    ResultSetParameter p = new ResultSetParameter("testResultSet");
+    p.setColumns(new String[] { "nope" });
+
+    p.getBinderValue(testService);
+  }
 }
@@ -0,0 +1,173 @@
+package org.ucmtwine.test.parameter.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+import intradoc.server.Service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.parameter.Parameter;
+import org.ucmtwine.parameter.rows.RowMapper;
+import org.ucmtwine.parameter.types.RowsParameter;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestRowsParameter {
+
+  public static class SearchRow {
+    private Long dID;
+    private String title;
+    public int dRevisionID;
+    public boolean checkedOut;
+    public String missing;
+
+    public Long getDID() {
+      return dID;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public void setDDocTitle(String title) {
+      this.title = title;
+    }
+  }
+
+  public static class FlagRow {
+    public boolean primitive;
+    public Boolean wrapper;
+  }
+
+  public void iterableMethod(@Binder(name = "SearchResults") Iterable<SearchRow> rows) {
+  }
+
+  public void listMethod(@Binder(name = "SearchResults") List<SearchRow> rows) {
+  }
+
+  @SuppressWarnings("rawtypes")
+  public void rawMethod(@Binder(name = "SearchResults") List rows) {
+  }
+
+  private DataBinder testBinder;
+
+  private DataResultSet searchResults;
+
+  @Mock
+  private Service testService;
+
+  @Before
+  public void setUp() {
+    testBinder = new DataBinder();
+
+    searchResults = new DataResultSet(new String[] { "dID", "dDocTitle", "dRevisionID", "checkedOut" });
+    searchResults.addRowWithList(row("1", "First", "3", "true"));
+    searchResults.addRowWithList(row("2", "Second", "", "false"));
+
+    testBinder.addResultSet("SearchResults", searchResults);
+
+    when(testService.getBinder()).thenReturn(testBinder);
+  }
+
+  private static List<String> row(String... values) {
+    List<String> row = new ArrayList<String>();
+
+    for (String value : values) {
+      row.add(value);
+    }
+
+    return row;
+  }
+
+  private Parameter create(String methodName, Class<?> type) throws Exception {
+    Method m = getClass().getMethod(methodName, type);
+
+    return Parameter.create("SearchResults", type, m.getGenericParameterTypes()[0], true);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testIterable_ShouldMapRowsLazily() throws Exception {
+    Parameter p = create("iterableMethod", Iterable.class);
+
+    assertEquals(SearchRow.class, ((RowsParameter) p).getRowClass());
+
+    Iterator<SearchRow> rows = ((Iterable<SearchRow>) p.getBinderValue(testService)).iterator();
+
+    SearchRow first = rows.next();
+    assertEquals(Long.valueOf(1), first.getDID());
+    assertEquals("First", first.getTitle());
+    assertEquals(3, first.dRevisionID);
+    assertTrue(first.checkedOut);
+    assertNull(first.missing);
+
+    SearchRow second = rows.next();
+    assertEquals(0, second.dRevisionID);
+    assertFalse(second.checkedOut);
+
+    assertFalse(rows.hasNext());
+
+    // the binder's result set keeps its cursor
+    assertEquals("1", searchResults.getStringValue(0));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testList_ShouldMapEveryRow() throws Exception {
+    List<SearchRow> rows = (List<SearchRow>) create("listMethod", List.class).getBinderValue(testService);
+
+    assertEquals(2, rows.size());
+    assertEquals("Second", rows.get(1).getTitle());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRawList_ShouldBeRejected() throws Exception {
+    create("rawMethod", List.class);
+  }
+
+  @Test
+  public void testRowMapper_ShouldBeCachedPerLayout() {
+    assertSame(RowMapper.forResultSet(searchResults, SearchRow.class),
+        RowMapper.forResultSet(searchResults.shallowClone(), SearchRow.class));
+  }
+
+  @Test
+  public void testBooleanColumns_ShouldReadOneAsTrue() {
+    DataResultSet flags = new DataResultSet(new String[] { "primitive", "wrapper" });
+    flags.addRowWithList(row("1", "TRUE"));
+    flags.addRowWithList(row("0", ""));
+
+    RowMapper<FlagRow> mapper = RowMapper.forResultSet(flags, FlagRow.class);
+
+    flags.first();
+    FlagRow first = mapper.mapRow(flags);
+    assertTrue(first.primitive);
+    assertEquals(Boolean.TRUE, first.wrapper);
+
+    flags.next();
+    FlagRow second = mapper.mapRow(flags);
+    assertFalse(second.primitive);
+    assertNull(second.wrapper);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRequiredMissingResultSet_ShouldThrow() throws Exception {
+    testBinder.removeResultSet("SearchResults");
+
+    create("listMethod", List.class).getBinderValue(testService);
+  }
+}
@@ -0,0 +1,180 @@
+package org.ucmtwine.test.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import intradoc.server.ServiceManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.convert.IConverterProvider;
+import org.ucmtwine.proxy.injector.ComponentLoader;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+public class TestComponentLoader {
+
+  public static class LoaderServicePackage {
+    @ServiceMethod(name = "TEST_LOADER_SERVICE")
+    public void loaderService() {
+    }
+
+    @Filter(event = "testLoaderEvent")
+    public void loaderFilter() {
+    }
+  }
+
+  public static class PartlyBrokenPackage {
+    @ServiceMethod(name = "TEST_PARTLY_BROKEN_SERVICE")
+    public void workingService() {
+    }
+
+    // a Thread can't be read from the binder
+    @Filter(event = "testPartlyBrokenEvent")
+    public void brokenFilter(Thread thread) {
+    }
+  }
+
+  public static class LazyLoaderPackage {
+    static {
+      lazyInitialised = true;
+    }
+
+    @ServiceMethod(name = "TEST_LAZY_LOADER_SERVICE")
+    public void lazyService() {
+    }
+  }
+
+  /**
+   * Set by LazyLoaderPackage's static initialiser, here so that reading it
+   * doesn't initialise the class.
+   */
+  private static volatile boolean lazyInitialised = false;
+
+  public static class LoaderConverters implements IConverterProvider {
+    private static int calls = 0;
+
+    public void registerConverters() {
+      calls++;
+    }
+  }
+
+  private List<File> files = new ArrayList<File>();
+
+  @Before
+  public void setUp() {
+    LoaderConverters.calls = 0;
+  }
+
+  @After
+  public void tearDown() {
+    for (File f : files) {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void testLoad_ShouldBindTheListedMethodsOnce() throws Exception {
+    List<URL> configFiles = new ArrayList<URL>();
+
+    // the class is listed twice, under different keys
+    configFiles.add(writeConfig("ucm.service.a", LoaderServicePackage.class.getName(), "ucm.filter.a",
+        LoaderServicePackage.class.getName()));
+    configFiles.add(writeConfig("ucm.converter.a", LoaderConverters.class.getName(), "ucm.service.b",
+        "org.ucmtwine.DoesNotExist"));
+
+    new ComponentLoader(2).load(configFiles);
+
+    int size = MethodRegistry.size();
+
+    MethodRegistry.register(LoaderServicePackage.class.getMethod("loaderService"));
+    MethodRegistry.register(LoaderServicePackage.class.getMethod("loaderFilter"));
+
+    // already registered by the loader
+    assertEquals(size, MethodRegistry.size());
+    assertEquals(1, LoaderConverters.calls);
+  }
+
+  @Test
+  public void testLoad_ShouldRegisterTheOtherAspectsWhenOneFails() throws Exception {
+    List<URL> configFiles = new ArrayList<URL>();
+    configFiles.add(writeConfig("ucm.service.a", PartlyBrokenPackage.class.getName(), "ucm.filter.a",
+        PartlyBrokenPackage.class.getName()));
+
+    new ComponentLoader(1).load(configFiles);
+
+    // the service was registered though the filter failed
+    assertNotNull(ServiceManager.getFullService("TEST_PARTLY_BROKEN_SERVICE"));
+  }
+
+  @Test
+  public void testLoad_ShouldWorkOnASingleThread() throws Exception {
+    List<URL> configFiles = new ArrayList<URL>();
+    configFiles.add(writeConfig("ucm.converter.a", LoaderConverters.class.getName()));
+
+    new ComponentLoader(1).load(configFiles);
+
+    assertEquals(1, LoaderConverters.calls);
+  }
+
+  @Test
+  public void testLoad_ShouldDeferInitialisationInLazyMode() throws Exception {
+    List<URL> configFiles = new ArrayList<URL>();
+    configFiles.add(writeConfig("ucm.service.lazy", LazyLoaderPackage.class.getName()));
+
+    new ComponentLoader(1, true).load(configFiles);
+
+    assertFalse(lazyInitialised);
+
+    // the loader has already reserved it
+    int size = MethodRegistry.size();
+    int id = MethodRegistry.reserve(LazyLoaderPackage.class.getMethod("lazyService"));
+
+    assertEquals(size, MethodRegistry.size());
+    assertFalse(MethodRegistry.isBound(id));
+
+    MethodRegistry.getBinding(id);
+
+    assertTrue(lazyInitialised);
+    assertTrue(MethodRegistry.isBound(id));
+  }
+
+  @Test
+  public void testDefaultThreads_ShouldBeBounded() {
+    int threads = ComponentLoader.getDefaultThreads();
+
+    assertTrue(threads >= 1 && threads <= ComponentLoader.DEFAULT_MAX_THREADS);
+  }
+
+  private URL writeConfig(String... entries) throws IOException {
+    Properties properties = new Properties();
+
+    for (int i = 0; i < entries.length; i += 2) {
+      properties.setProperty(entries[i], entries[i + 1]);
+    }
+
+    File f = File.createTempFile("twine", ".properties");
+    files.add(f);
+
+    FileOutputStream out = new FileOutputStream(f);
+
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+
+    return f.toURI().toURL();
+  }
+}
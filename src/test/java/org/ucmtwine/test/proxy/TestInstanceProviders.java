@@ -0,0 +1,89 @@
+package org.ucmtwine.test.proxy;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import intradoc.common.ExecutionContext;
+import intradoc.server.Service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.Scope;
+import org.ucmtwine.proxy.invoker.IInstanceProvider;
+import org.ucmtwine.proxy.invoker.InstanceProviders;
+
+public class TestInstanceProviders {
+
+  public static class PrototypePackage {
+  }
+
+  @Scope(Scope.Type.SINGLETON)
+  public static class SingletonPackage {
+  }
+
+  @Scope(Scope.Type.THREAD)
+  public static class ThreadPackage {
+  }
+
+  @Scope(Scope.Type.REQUEST)
+  public static class RequestPackage {
+  }
+
+  private ExecutionContext ctx;
+
+  @SuppressWarnings("deprecation")
+  @Before
+  public void setUp() {
+    ctx = new Service();
+  }
+
+  @Test
+  public void testForClass_ShouldReturnTheSameProviderForAClass() {
+    assertSame(InstanceProviders.forClass(SingletonPackage.class), InstanceProviders.forClass(SingletonPackage.class));
+  }
+
+  @Test
+  public void testPrototypeScope_ShouldCreateAnInstancePerCall() throws Exception {
+    IInstanceProvider provider = InstanceProviders.forClass(PrototypePackage.class);
+
+    assertNotSame(provider.getInstance(ctx), provider.getInstance(ctx));
+  }
+
+  @Test
+  public void testSingletonScope_ShouldShareOneInstance() throws Exception {
+    IInstanceProvider provider = InstanceProviders.forClass(SingletonPackage.class);
+
+    assertSame(provider.getInstance(ctx), provider.getInstance(null));
+  }
+
+  @Test
+  public void testThreadScope_ShouldShareAnInstancePerThread() throws Exception {
+    final IInstanceProvider provider = InstanceProviders.forClass(ThreadPackage.class);
+    final Object[] otherThreadInstance = new Object[1];
+
+    Thread other = new Thread() {
+      public void run() {
+        try {
+          otherThreadInstance[0] = provider.getInstance(null);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    other.start();
+    other.join();
+
+    assertSame(provider.getInstance(ctx), provider.getInstance(ctx));
+    assertNotSame(provider.getInstance(ctx), otherThreadInstance[0]);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testRequestScope_ShouldShareAnInstancePerExecutionContext() throws Exception {
+    IInstanceProvider provider = InstanceProviders.forClass(RequestPackage.class);
+
+    ExecutionContext otherCtx = new Service();
+
+    assertSame(provider.getInstance(ctx), provider.getInstance(ctx));
+    assertNotSame(provider.getInstance(ctx), provider.getInstance(otherCtx));
+  }
+}
@@ -0,0 +1,88 @@
+package org.ucmtwine.test.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ucmtwine.proxy.invoker.CachedMethodInvoker;
+import org.ucmtwine.proxy.invoker.IMethodInvoker;
+import org.ucmtwine.proxy.invoker.Invokers;
+import org.ucmtwine.proxy.invoker.ReflectionInvoker;
+
+public class TestInvokers {
+
+  public static class PublicPackage {
+    public String concat(String a, Long b) {
+      return a + b;
+    }
+  }
+
+  static class PackagePrivatePackage {
+    String hidden() {
+      return "hidden";
+    }
+  }
+
+  public static class NoDefaultConstructorPackage {
+    public NoDefaultConstructorPackage(String unused) {
+    }
+
+    public void method() {
+    }
+  }
+
+  @After
+  public void tearDown() {
+    Invokers.setUseReflection(false);
+  }
+
+  @Test
+  public void testCreate_ShouldReturnCachedInvokerByDefault() throws Exception {
+    Method m = PublicPackage.class.getMethod("concat", String.class, Long.class);
+
+    assertTrue(Invokers.create(m) instanceof CachedMethodInvoker);
+  }
+
+  @Test
+  public void testCreate_ShouldReturnReflectionInvokerWhenSwitchedOn() throws Exception {
+    Invokers.setUseReflection(true);
+    Method m = PublicPackage.class.getMethod("concat", String.class, Long.class);
+
+    assertTrue(Invokers.create(m) instanceof ReflectionInvoker);
+  }
+
+  @Test
+  public void testCachedInvoker_ShouldInvokeMethodOnNewInstance() throws Exception {
+    IMethodInvoker invoker = new CachedMethodInvoker(PublicPackage.class.getMethod("concat", String.class,
+        Long.class));
+
+    Object target = invoker.getTarget(null);
+
+    assertEquals(PublicPackage.class, target.getClass());
+    assertEquals("a1", invoker.invoke(target, new Object[] { "a", 1L }));
+  }
+
+  @Test
+  public void testCachedInvoker_ShouldInvokeNonPublicMethods() throws Exception {
+    IMethodInvoker invoker = new CachedMethodInvoker(PackagePrivatePackage.class.getDeclaredMethod("hidden"));
+
+    assertEquals("hidden", invoker.invoke(invoker.getTarget(null), new Object[0]));
+  }
+
+  @Test(expected = InstantiationException.class)
+  public void testCachedInvoker_ShouldThrowWhenClassHasNoDefaultConstructor() throws Exception {
+    IMethodInvoker invoker = new CachedMethodInvoker(NoDefaultConstructorPackage.class.getMethod("method"));
+
+    invoker.getTarget(null);
+  }
+
+  @Test
+  public void testReflectionInvoker_ShouldInvokeMethodOnNewInstance() throws Exception {
+    IMethodInvoker invoker = new ReflectionInvoker(PublicPackage.class.getMethod("concat", String.class, Long.class));
+
+    assertEquals("b2", invoker.invoke(invoker.getTarget(null), new Object[] { "b", 2L }));
+  }
+}
@@ -0,0 +1,348 @@
+package org.ucmtwine.test.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.data.Workspace;
+import intradoc.server.Service;
+import intradoc.shared.FilterImplementor;
+import intradoc.shared.UserData;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.parameter.IParameter;
+import org.ucmtwine.parameter.ParameterMarshaller;
+import org.ucmtwine.proxy.FilterProxy;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.adapter.AdapterSupport;
+import org.ucmtwine.proxy.adapter.IMethodAdapter;
+import org.ucmtwine.proxy.adapter.MethodAdapters;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.proxy.invoker.AdapterInvoker;
+import org.ucmtwine.proxy.invoker.Invokers;
+import org.ucmtwine.trace.Trace;
+
+/**
+ * The index resource for AdaptedPackage is in src/test/resources.
+ */
+public class TestMethodAdapters {
+
+  public static class AdaptedPackage {
+    @IdocFunction
+    public long twice(long value) {
+      return value * 2;
+    }
+
+    @IdocFunction
+    public long broken(long value) {
+      return value;
+    }
+
+    @Filter(event = "testAdaptedEvent")
+    public int finish(DataBinder binder) {
+      binder.putLocal("finished", "1");
+      return FilterImplementor.FINISHED;
+    }
+  }
+
+  /**
+   * Written the way the processor generates adapters.
+   */
+  public static final class TwiceAdapter implements IMethodAdapter {
+    static int calls;
+
+    private final ParameterMarshaller marshaller;
+    private final IParameter p0;
+
+    public TwiceAdapter(ParameterMarshaller marshaller) {
+      this.marshaller = marshaller;
+      this.p0 = marshaller.getParameters().get(0);
+    }
+
+    public Object invoke(Object target, Object[] values) throws InvocationTargetException {
+      return call((AdaptedPackage) target, AdapterSupport.toLong(values[0], p0));
+    }
+
+    public Object invokeService(Object target, Service service) throws InvocationTargetException {
+      return call((AdaptedPackage) target, AdapterSupport.toLong(binder0(service), p0));
+    }
+
+    public Object invokeScript(Object target, Object[] arguments, Service service)
+        throws InvocationTargetException {
+      return call((AdaptedPackage) target, arguments[0] instanceof Number ? ((Number) arguments[0]).longValue()
+          : AdapterSupport.toLong(argument0(arguments[0], service), p0));
+    }
+
+    public Object invokeFilter(Object target, Workspace ws, DataBinder binder, ExecutionContext ctx)
+        throws InvocationTargetException {
+      return call((AdaptedPackage) target, AdapterSupport.toLong(null, p0));
+    }
+
+    private Object binder0(Service service) {
+      try {
+        return p0.getBinderValue(service);
+      } catch (IllegalAccessException e) {
+        Trace.failed(Trace.BINDER_VALUE, marshaller.getMethodId(), 1, e);
+        return null;
+      }
+    }
+
+    private Object argument0(Object argument, Service service) {
+      try {
+        return p0.getArgumentValue(argument, service);
+      } catch (ClassCastException e) {
+        Trace.failed(Trace.ARGUMENT, marshaller.getMethodId(), 1, e);
+        return null;
+      }
+    }
+
+    private static Object call(AdaptedPackage target, long a0) throws InvocationTargetException {
+      calls++;
+      try {
+        return AdapterSupport.box(target.twice(a0));
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+  }
+
+  /**
+   * Written the way the processor generates adapters.
+   */
+  public static final class FinishAdapter implements IMethodAdapter {
+    static int calls;
+
+    public FinishAdapter(ParameterMarshaller marshaller) {
+    }
+
+    public Object invoke(Object target, Object[] values) throws InvocationTargetException {
+      return call((AdaptedPackage) target, (DataBinder) values[0]);
+    }
+
+    public Object invokeService(Object target, Service service) throws InvocationTargetException {
+      return call((AdaptedPackage) target, (DataBinder) service.getBinder());
+    }
+
+    public Object invokeScript(Object target, Object[] arguments, Service service)
+        throws InvocationTargetException {
+      return call((AdaptedPackage) target, (DataBinder) service.getBinder());
+    }
+
+    public Object invokeFilter(Object target, Workspace ws, DataBinder binder, ExecutionContext ctx)
+        throws InvocationTargetException {
+      return call((AdaptedPackage) target, (DataBinder) binder);
+    }
+
+    private static Object call(AdaptedPackage target, DataBinder a0) throws InvocationTargetException {
+      calls++;
+      try {
+        return AdapterSupport.box(target.finish(a0));
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+  }
+
+  @Before
+  public void setUp() {
+    TwiceAdapter.calls = 0;
+    FinishAdapter.calls = 0;
+  }
+
+  @After
+  public void tearDown() {
+    Invokers.setUseReflection(false);
+    DispatchEvents.install(null);
+  }
+
+  @Test
+  public void testRegister_ShouldBindTheIndexedAdapter() throws Exception {
+    Method m = AdaptedPackage.class.getMethod("twice", long.class);
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(m));
+
+    assertTrue(binding.getAdapter() instanceof TwiceAdapter);
+    assertTrue(binding.getInvoker() instanceof AdapterInvoker);
+
+    Object target = binding.getInvoker().getTarget(null);
+    assertEquals(Long.valueOf(6), binding.getInvoker().invoke(target, new Object[] { 3L }));
+    assertEquals(1, TwiceAdapter.calls);
+  }
+
+  @Test
+  public void testCreate_ShouldReturnNullWhenTheAdapterCannotBeLoaded() throws Exception {
+    Method m = AdaptedPackage.class.getMethod("broken", long.class);
+
+    assertNull(MethodAdapters.create(m, new ParameterMarshaller(m)));
+  }
+
+  @Test
+  public void testCreate_ShouldReturnNullWhenUsingReflection() throws Exception {
+    Invokers.setUseReflection(true);
+    Method m = AdaptedPackage.class.getMethod("twice", long.class);
+
+    assertNull(MethodAdapters.create(m, new ParameterMarshaller(m)));
+  }
+
+  @Test
+  public void testAdapter_ShouldRejectNullForPrimitiveParameters() throws Exception {
+    Method m = AdaptedPackage.class.getMethod("twice", long.class);
+    IMethodAdapter adapter = MethodAdapters.create(m, new ParameterMarshaller(m));
+
+    try {
+      adapter.invoke(new AdaptedPackage(), new Object[] { null });
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertEquals(0, TwiceAdapter.calls);
+    }
+  }
+
+  @Test
+  public void testParse_ShouldConvertBinderValuesLikeTheParameterTypes() {
+    assertEquals(Long.valueOf(42), AdapterSupport.parseLong("42", "dID", true));
+    assertEquals(Integer.valueOf(-7), AdapterSupport.parseInteger("-7", "count", true));
+    assertEquals(Double.valueOf(2.5), AdapterSupport.parseDouble("2.5", "ratio", true));
+    assertEquals(Float.valueOf(0.5f), AdapterSupport.parseFloat("0.5", "ratio", true));
+    assertEquals(Boolean.TRUE, AdapterSupport.parseBoolean("1", "flag", true));
+    assertEquals(Boolean.TRUE, AdapterSupport.parseBoolean("TRUE", "flag", true));
+    assertEquals(Boolean.FALSE, AdapterSupport.parseBoolean("0", "flag", true));
+    assertNull(AdapterSupport.parseLong(null, "dID", false));
+    assertNull(AdapterSupport.parseString(null, "dDocName", false));
+  }
+
+  @Test
+  public void testParse_ShouldRejectMissingRequiredValues() {
+    try {
+      AdapterSupport.parseLong(null, "dID", true);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Parameter dID is required", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testParse_ShouldRejectUnparseableValues() {
+    try {
+      AdapterSupport.parseInteger("seven", "count", false);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Parameter count must be parseable as an integer", e.getMessage());
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testScriptProxy_ShouldCallFunctionsThroughTheAdapter() throws Exception {
+    ScriptProxy proxy = new ScriptProxy(AdaptedPackage.class);
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    String functionTable[] = proxy.getFunctionTable();
+
+    for (int i = 0; i < functionTable.length; i++) {
+      if (functionTable[i].equals("twice")) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = "twice";
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        Object args[] = { 21L, null };
+        proxy.evaluateFunction(info, args, ctx);
+
+        assertEquals(Long.valueOf(42), args[1]);
+        assertEquals(1, TwiceAdapter.calls);
+        return;
+      }
+    }
+
+    fail("Function twice was not registered");
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testScriptProxy_ShouldRecordTheAdaptedBindingEvent() throws Exception {
+    final List<Integer> kinds = new ArrayList<Integer>();
+
+    DispatchEvents.install(new IEventRecorder() {
+      public Object begin(int kind) {
+        return Integer.valueOf(kind);
+      }
+
+      public void endDispatch(Object event, MethodBinding binding, boolean failed) {
+        kinds.add((Integer) event);
+      }
+
+      public void endPhase(Object event, String phase, int count) {
+      }
+    });
+
+    ScriptProxy proxy = new ScriptProxy(AdaptedPackage.class);
+    DispatchEvents.setRecording(true);
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    String functionTable[] = proxy.getFunctionTable();
+
+    for (int i = 0; i < functionTable.length; i++) {
+      if (functionTable[i].equals("twice")) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = "twice";
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        proxy.evaluateFunction(info, new Object[] { 21L, null }, ctx);
+
+        assertEquals(Arrays.asList(DispatchEvents.ADAPTED_BINDING, DispatchEvents.FUNCTION), kinds);
+        return;
+      }
+    }
+
+    fail("Function twice was not registered");
+  }
+
+  @Test
+  public void testFilterProxy_ShouldInjectFilterParametersThroughTheAdapter() throws Exception {
+    final List<Integer> kinds = new ArrayList<Integer>();
+
+    DispatchEvents.install(new IEventRecorder() {
+      public Object begin(int kind) {
+        return Integer.valueOf(kind);
+      }
+
+      public void endDispatch(Object event, MethodBinding binding, boolean failed) {
+        kinds.add((Integer) event);
+      }
+
+      public void endPhase(Object event, String phase, int count) {
+      }
+    });
+
+    Method m = AdaptedPackage.class.getMethod("finish", DataBinder.class);
+    int id = MethodRegistry.register(m);
+    DispatchEvents.setRecording(true);
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("filterParameter", String.valueOf(id));
+    DataBinder binder = new DataBinder();
+
+    assertEquals(FilterImplementor.FINISHED, new FilterProxy().doFilter(null, binder, ctx));
+    assertEquals("1", binder.getLocal("finished"));
+    assertEquals(1, FinishAdapter.calls);
+    assertEquals(Arrays.asList(DispatchEvents.ADAPTED_BINDING, DispatchEvents.FILTER), kinds);
+  }
+}
@@ -0,0 +1,202 @@
+package org.ucmtwine.test.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+public class TestMethodRegistry {
+
+  public static class RegistryPackage {
+    public void first() {
+    }
+
+    public void second() {
+    }
+
+    public void sequenceA() {
+    }
+
+    public void sequenceB() {
+    }
+
+    public void overloaded(String s) {
+    }
+
+    public void overloaded(Integer i) {
+    }
+  }
+
+  public static class LazyPackage {
+    static {
+      lazyInitialised = true;
+    }
+
+    public void lazy() {
+    }
+  }
+
+  public static class ConcurrentPackage {
+    public void concurrent() {
+    }
+  }
+
+  /**
+   * Set by LazyPackage's static initialiser, here so that reading it doesn't
+   * initialise the class.
+   */
+  private static volatile boolean lazyInitialised = false;
+
+  private static Method method(String name, Class<?>... params) throws Exception {
+    return RegistryPackage.class.getMethod(name, params);
+  }
+
+  @Test
+  public void testRegister_ShouldAssignSequentialIds() throws Exception {
+    int first = MethodRegistry.register(method("sequenceA"));
+    int second = MethodRegistry.register(method("sequenceB"));
+
+    assertEquals(first + 1, second);
+    assertEquals(second, MethodRegistry.getBinding(second).getId());
+  }
+
+  @Test
+  public void testRegister_ShouldReturnTheSameIdForTheSameMethod() throws Exception {
+    int id = MethodRegistry.register(method("first"));
+
+    assertEquals(id, MethodRegistry.register(method("first")));
+    assertEquals(String.valueOf(id), MethodRegistry.addMethod(method("first")));
+  }
+
+  @Test
+  public void testRegister_ShouldSeparateOverloads() throws Exception {
+    int stringId = MethodRegistry.register(method("overloaded", String.class));
+    int integerId = MethodRegistry.register(method("overloaded", Integer.class));
+
+    assertFalse(stringId == integerId);
+    assertEquals(method("overloaded", Integer.class), MethodRegistry.getMethod(String.valueOf(integerId)));
+  }
+
+  @Test
+  public void testGetBinding_ShouldFindByIdString() throws Exception {
+    String id = MethodRegistry.addMethod(method("second"));
+
+    MethodBinding binding = MethodRegistry.getBinding(id);
+
+    assertNotNull(binding);
+    assertSame(binding, MethodRegistry.getBinding(Integer.parseInt(id)));
+    assertEquals(method("second"), binding.getMethod());
+  }
+
+  @Test
+  public void testGetBinding_ShouldReturnNullForUnknownIds() {
+    assertNull(MethodRegistry.getBinding(-1));
+    assertNull(MethodRegistry.getBinding(MethodRegistry.size()));
+    assertNull(MethodRegistry.getBinding((String) null));
+    assertNull(MethodRegistry.getBinding("not-an-id"));
+    assertNull(MethodRegistry.getMethod("not-an-id"));
+  }
+
+  @Test
+  public void testReserve_ShouldBindOnFirstUse() throws Exception {
+    Class<?> klass = Class.forName(LazyPackage.class.getName(), false, getClass().getClassLoader());
+    int id = MethodRegistry.reserve(klass.getMethod("lazy"));
+
+    assertFalse(lazyInitialised);
+    assertFalse(MethodRegistry.isBound(id));
+    assertEquals(klass.getMethod("lazy"), MethodRegistry.getMethod(String.valueOf(id)));
+
+    MethodBinding binding = MethodRegistry.getBinding(id);
+
+    assertTrue(lazyInitialised);
+    assertTrue(MethodRegistry.isBound(id));
+    assertEquals(id, binding.getId());
+    assertEquals(id, MethodRegistry.register(klass.getMethod("lazy")));
+  }
+
+  @Test
+  public void testGetBinding_ShouldBindAReservedMethodOnceAcrossThreads() throws Exception {
+    final int id = MethodRegistry.reserve(ConcurrentPackage.class.getMethod("concurrent"));
+    final MethodBinding[] results = new MethodBinding[8];
+    final CountDownLatch start = new CountDownLatch(1);
+
+    Thread[] threads = new Thread[results.length];
+
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            results[index] = MethodRegistry.getBinding(id);
+
+          } catch (InterruptedException e) {
+            // leaves the result null
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    start.countDown();
+
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    for (MethodBinding result : results) {
+      assertNotNull(result);
+      assertSame(results[0], result);
+    }
+  }
+
+  @Test
+  public void testGetBinding_ShouldSeeCompleteBindingsWhileRegistering() throws Exception {
+    final Method[] methods = String.class.getMethods();
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicBoolean failed = new AtomicBoolean(false);
+
+    Thread reader = new Thread() {
+      public void run() {
+        while (!done.get()) {
+          int size = MethodRegistry.size();
+
+          for (int i = 0; i < size; i++) {
+            MethodBinding binding = MethodRegistry.getBinding(i);
+
+            if (binding == null || binding.getId() != i || binding.getMethod() == null) {
+              failed.set(true);
+            }
+          }
+        }
+      }
+    };
+    reader.start();
+
+    int registered = 0;
+
+    for (Method m : methods) {
+      if (m.getParameterTypes().length == 0) {
+        MethodRegistry.register(m);
+        registered++;
+      }
+    }
+
+    done.set(true);
+    reader.join();
+
+    assertFalse(failed.get());
+    assertTrue(MethodRegistry.size() >= registered);
+  }
+}
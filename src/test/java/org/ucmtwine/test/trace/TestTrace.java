@@ -0,0 +1,129 @@
+package org.ucmtwine.test.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.admin.TwineAdminServices;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.trace.Trace;
+import org.ucmtwine.trace.TraceEvent;
+
+public class TestTrace {
+
+  public static class TracedPackage {
+    @IdocFunction
+    public String traced(String value) {
+      throw new IllegalStateException("failed " + value);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Trace.setCapacity(16);
+  }
+
+  @After
+  public void tearDown() {
+    Trace.setCapacity(Trace.DEFAULT_CAPACITY);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testScriptProxy_ShouldRecordFailedFunction() throws Exception {
+    ScriptProxy proxy = new ScriptProxy(TracedPackage.class);
+    int methodId = MethodRegistry.register(TracedPackage.class.getMethod("traced", String.class));
+
+    ExecutionContext ctx = new Service();
+    ctx.setCachedObject("UserData", new UserData());
+
+    try {
+      call(proxy, "x", ctx);
+      fail("Expected the function to throw");
+    } catch (Exception e) {
+      // traced
+    }
+
+    List<TraceEvent> events = Trace.getEvents();
+
+    assertEquals(1, events.size());
+    assertEquals(Trace.FUNCTION, events.get(0).getPhase());
+    assertEquals(Trace.THROWN, events.get(0).getCode());
+    assertEquals(methodId, events.get(0).getMethodId());
+    assertEquals("function failed: exception thrown by the method in " + TracedPackage.class.getName()
+        + ".traced()", events.get(0).format());
+  }
+
+  @Test
+  public void testFailed_ShouldMapExceptionsToCodes() {
+    Trace.failed(Trace.ARGUMENT, -1, 2, new ClassCastException());
+    Trace.failed(Trace.BINDER_VALUE, -1, 1, new IllegalAccessException());
+    Trace.failed(Trace.SERVICE, -1, 0, new RuntimeException());
+
+    List<TraceEvent> events = Trace.getEvents();
+
+    assertEquals(Trace.CLASS_CAST, events.get(0).getCode());
+    assertEquals(Trace.ILLEGAL_ACCESS, events.get(1).getCode());
+    assertEquals(Trace.OTHER, events.get(2).getCode());
+    assertEquals("argument failed: ClassCastException parameter 2", events.get(0).format());
+  }
+
+  @Test
+  public void testSetCapacity_ShouldStopRecordingWhenZero() {
+    Trace.setCapacity(0);
+    Trace.record(Trace.SERVICE, 1, Trace.OK, 0);
+
+    assertTrue(Trace.getEvents().isEmpty());
+  }
+
+  @Test
+  public void testGetTrace_ShouldReturnEventsOldestFirst() throws Exception {
+    Trace.record(Trace.UNKNOWN_FUNCTION, -1, Trace.OK, 7);
+    Trace.failed(Trace.VARIABLE, -1, 0, new IllegalArgumentException());
+
+    DataBinder binder = new DataBinder();
+    new TwineAdminServices().getTrace(binder);
+
+    DataResultSet rs = (DataResultSet) binder.getResultSet(TwineAdminServices.TRACE_RESULT_SET);
+
+    assertEquals(2, rs.getNumRows());
+
+    assertTrue(rs.first());
+    assertEquals("unknown function", rs.getStringValueByName("phase"));
+    assertEquals("7", rs.getStringValueByName("detail"));
+
+    assertTrue(rs.next());
+    assertEquals("IllegalArgumentException", rs.getStringValueByName("error"));
+    assertEquals("2", binder.getLocal("TwineTraceRecorded"));
+  }
+
+  private static Object call(ScriptProxy proxy, String value, ExecutionContext ctx) throws Exception {
+    String[] functions = proxy.getFunctionTable();
+
+    for (int i = 0; i < functions.length; i++) {
+      if (functions[i].equals("traced")) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = "traced";
+        info.m_entry = proxy.getFunctionDefinitionTable()[i];
+
+        Object[] args = { value, null };
+        proxy.evaluateFunction(info, args, ctx);
+        return args[1];
+      }
+    }
+    throw new Exception("Unknown function");
+  }
+}
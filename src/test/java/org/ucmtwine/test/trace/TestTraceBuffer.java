@@ -0,0 +1,129 @@
+package org.ucmtwine.test.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.ucmtwine.trace.Trace;
+import org.ucmtwine.trace.TraceBuffer;
+import org.ucmtwine.trace.TraceEvent;
+
+public class TestTraceBuffer {
+
+  @Test
+  public void testConstructor_ShouldRoundCapacityUpToPowerOfTwo() {
+    assertEquals(8, new TraceBuffer(5).getCapacity());
+    assertEquals(1024, new TraceBuffer(1024).getCapacity());
+    assertEquals(2, new TraceBuffer(1).getCapacity());
+  }
+
+  @Test
+  public void testRecord_ShouldKeepEventFields() {
+    TraceBuffer buffer = new TraceBuffer(4);
+    long before = System.currentTimeMillis();
+
+    buffer.record(-1, Trace.UNKNOWN_FUNCTION, Trace.OK, 12);
+    buffer.record(Integer.MAX_VALUE, Trace.ARGUMENT, Trace.CLASS_CAST, 3);
+
+    List<TraceEvent> events = buffer.getEvents();
+
+    assertEquals(2, events.size());
+
+    TraceEvent first = events.get(0);
+    assertEquals(0, first.getSequence());
+    assertEquals(-1, first.getMethodId());
+    assertEquals(Trace.UNKNOWN_FUNCTION, first.getPhase());
+    assertEquals(Trace.OK, first.getCode());
+    assertEquals(12, first.getDetail());
+    assertTrue(first.getTimeMillis() >= before - 1);
+
+    TraceEvent second = events.get(1);
+    assertEquals(Integer.MAX_VALUE, second.getMethodId());
+    assertEquals(Trace.ARGUMENT, second.getPhase());
+    assertEquals(Trace.CLASS_CAST, second.getCode());
+    assertEquals(3, second.getDetail());
+  }
+
+  @Test
+  public void testRecord_ShouldOverwriteOldestWhenFull() {
+    TraceBuffer buffer = new TraceBuffer(4);
+
+    for (int i = 0; i < 10; i++) {
+      buffer.record(i, Trace.SERVICE, Trace.THROWN, i);
+    }
+
+    List<TraceEvent> events = buffer.getEvents();
+
+    assertEquals(4, events.size());
+    assertEquals(10, buffer.getRecorded());
+
+    for (int i = 0; i < 4; i++) {
+      assertEquals(6 + i, events.get(i).getSequence());
+      assertEquals(6 + i, events.get(i).getMethodId());
+    }
+  }
+
+  @Test
+  public void testRecord_ShouldNotMixEventsFromConcurrentThreads() throws Exception {
+    final TraceBuffer buffer = new TraceBuffer(64);
+    final int perThread = 20000;
+    final CountDownLatch start = new CountDownLatch(1);
+
+    Thread[] threads = new Thread[4];
+
+    for (int t = 0; t < threads.length; t++) {
+      final int id = t;
+
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+
+          // every field of a thread's events carries its ID
+          for (int i = 0; i < perThread; i++) {
+            buffer.record(id, id + 1, id + 1, id);
+          }
+        }
+      };
+      threads[t].start();
+    }
+
+    start.countDown();
+
+    // read while writing
+    for (int i = 0; i < 100; i++) {
+      assertConsistent(buffer.getEvents());
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    List<TraceEvent> events = buffer.getEvents();
+
+    assertConsistent(events);
+    assertEquals(threads.length * perThread, buffer.getRecorded() + buffer.getDropped());
+    assertTrue(events.size() <= 64);
+  }
+
+  private static void assertConsistent(List<TraceEvent> events) {
+    long last = -1;
+
+    for (TraceEvent event : events) {
+      int id = event.getMethodId();
+
+      assertEquals(id + 1, event.getPhase());
+      assertEquals(id + 1, event.getCode());
+      assertEquals(id, event.getDetail());
+      assertTrue(event.getSequence() > last);
+
+      last = event.getSequence();
+    }
+  }
+}
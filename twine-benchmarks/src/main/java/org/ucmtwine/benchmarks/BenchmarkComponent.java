@@ -0,0 +1,42 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.data.DataBinder;
+import intradoc.shared.FilterImplementor;
+
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.annotation.ServiceMethod;
+
+/**
+ * The Twine methods the dispatch benchmarks call. Each does the same work as
+ * its hand-written counterpart, so the difference between the two is what
+ * Twine costs per call.
+ * 
+ * @author tim
+ */
+public class BenchmarkComponent {
+
+  @ServiceMethod(name = "TWINE_BENCHMARK_ECHO")
+  public void echo(@Binder(name = "dID") Long dID, @Binder(name = "dDocTitle") String title, DataBinder binder) {
+    binder.putLocal("echo", title);
+  }
+
+  @Filter(event = "validateStandard")
+  public int validate(DataBinder binder) {
+    long dID = Long.parseLong(binder.getLocal("dID"));
+
+    return (dID > 0) ? FilterImplementor.CONTINUE : FilterImplementor.ABORT;
+  }
+
+  @IdocFunction
+  public long twineAdd(long a, long b) {
+    return a + b;
+  }
+
+  @IdocVariable
+  public String twineName() {
+    return "twine";
+  }
+}
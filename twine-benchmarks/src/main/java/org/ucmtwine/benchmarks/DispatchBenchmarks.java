@@ -0,0 +1,156 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.server.Service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ucmtwine.proxy.FilterProxy;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.ServiceProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+import org.ucmtwine.proxy.invoker.Invokers;
+
+/**
+ * One call through each Twine proxy, next to the same work written by hand
+ * against the UCM API. The <code>twine*</code> and <code>handWritten*</code>
+ * pairs differ only by what Twine does per call: looking up the method,
+ * binding its parameters, calling it and recording metrics.
+ * 
+ * <p>
+ * <code>reflection=true</code> runs with TwineUseReflectionInvokers, i.e.
+ * without the generated adapters and invokers.
+ * </p>
+ * 
+ * @author tim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmarks {
+
+  @Param({ "false", "true" })
+  public boolean reflection;
+
+  private ServiceProxy serviceProxy;
+
+  private HandWrittenService handWrittenService;
+
+  private FilterProxy filterProxy;
+
+  private HandWrittenFilter handWrittenFilter;
+
+  private Service filterContext;
+
+  private ScriptProxy scriptProxy;
+
+  private HandWrittenScriptExtensions handWrittenScript;
+
+  private Service scriptContext;
+
+  private ScriptInfo twineFunction;
+
+  private ScriptInfo handWrittenFunction;
+
+  private ScriptInfo twineVariable;
+
+  private ScriptInfo handWrittenVariable;
+
+  private final Object[] functionArgs = { Long.valueOf(40), Long.valueOf(2), null };
+
+  private final boolean[] returnBool = new boolean[1];
+
+  private final String[] returnString = new String[1];
+
+  @Setup
+  public void setUp() throws Exception {
+    // before anything is registered, as each fork is a new JVM
+    Invokers.setUseReflection(reflection);
+
+    String echoId = MethodRegistry.addMethod(BenchmarkComponent.class.getMethod("echo", Long.class, String.class,
+        DataBinder.class));
+
+    serviceProxy = StandIns.service(new ServiceProxy(), echoId);
+    StandIns.putDocument(serviceProxy.getBinder());
+
+    handWrittenService = StandIns.service(new HandWrittenService(), "echo");
+    StandIns.putDocument(handWrittenService.getBinder());
+
+    String validateId = MethodRegistry.addMethod(BenchmarkComponent.class.getMethod("validate", DataBinder.class));
+
+    filterProxy = new FilterProxy();
+    handWrittenFilter = new HandWrittenFilter();
+
+    filterContext = StandIns.service(new Service(), null);
+    filterContext.setCachedObject("filterParameter", validateId);
+    StandIns.putDocument(filterContext.getBinder());
+
+    scriptProxy = new ScriptProxy(BenchmarkComponent.class);
+    handWrittenScript = new HandWrittenScriptExtensions();
+    scriptContext = StandIns.service(new Service(), null);
+
+    twineFunction = StandIns.function(scriptProxy, "twineAdd");
+    handWrittenFunction = StandIns.function(handWrittenScript, "handAdd");
+    twineVariable = StandIns.variable(scriptProxy, "twineName");
+    handWrittenVariable = StandIns.variable(handWrittenScript, "handName");
+  }
+
+  @Benchmark
+  public void twineService() throws Exception {
+    serviceProxy.delegateWithParameters();
+  }
+
+  @Benchmark
+  public void handWrittenService() throws Exception {
+    handWrittenService.echo();
+  }
+
+  @Benchmark
+  public int twineFilter() throws Exception {
+    return filterProxy.doFilter(null, filterContext.getBinder(), filterContext);
+  }
+
+  @Benchmark
+  public int handWrittenFilter() throws Exception {
+    return handWrittenFilter.doFilter(null, filterContext.getBinder(), filterContext);
+  }
+
+  @Benchmark
+  public Object twineFunction() throws Exception {
+    scriptProxy.evaluateFunction(twineFunction, functionArgs, scriptContext);
+    return functionArgs[2];
+  }
+
+  @Benchmark
+  public Object handWrittenFunction() throws Exception {
+    handWrittenScript.evaluateFunction(handWrittenFunction, functionArgs, scriptContext);
+    return functionArgs[2];
+  }
+
+  @Benchmark
+  public String twineVariable() throws Exception {
+    scriptProxy.evaluateValue(twineVariable, returnBool, returnString, scriptContext, false);
+    return returnString[0];
+  }
+
+  @Benchmark
+  public String handWrittenVariable() throws Exception {
+    handWrittenScript.evaluateValue(handWrittenVariable, returnBool, returnString, scriptContext, false);
+    return returnString[0];
+  }
+}
@@ -0,0 +1,20 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.common.ExecutionContext;
+import intradoc.data.DataBinder;
+import intradoc.data.Workspace;
+import intradoc.shared.FilterImplementor;
+
+/**
+ * The baseline for FilterProxy: a filter written against the UCM API.
+ * 
+ * @author tim
+ */
+public class HandWrittenFilter implements FilterImplementor {
+
+  public int doFilter(Workspace ws, DataBinder binder, ExecutionContext ctx) {
+    long dID = Long.parseLong(binder.getLocal("dID"));
+
+    return (dID > 0) ? CONTINUE : ABORT;
+  }
+}
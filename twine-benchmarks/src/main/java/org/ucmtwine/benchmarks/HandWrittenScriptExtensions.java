@@ -0,0 +1,57 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.common.ExecutionContext;
+import intradoc.common.GrammarElement;
+import intradoc.common.ScriptExtensionsAdaptor;
+import intradoc.common.ScriptInfo;
+import intradoc.common.ScriptUtils;
+
+/**
+ * The baseline for ScriptProxy: the same Idoc function and variable written
+ * as a ScriptExtensionsAdaptor, with the usual switch on the table index.
+ * 
+ * @author tim
+ */
+public class HandWrittenScriptExtensions extends ScriptExtensionsAdaptor {
+
+  public HandWrittenScriptExtensions() {
+    m_functionTable = new String[] { "handAdd" };
+
+    // index, argument count, argument types, return type (2 = integer)
+    m_functionDefinitionTable = new int[][] { { 0, 2, GrammarElement.INTEGER_VAL, GrammarElement.INTEGER_VAL, 2 } };
+
+    // index, return type (0 = string)
+    m_variableTable = new String[] { "handName" };
+    m_variableDefinitionTable = new int[][] { { 0, 0 } };
+  }
+
+  public boolean evaluateFunction(ScriptInfo info, Object[] args, ExecutionContext context) {
+    int config[] = (int[]) info.m_entry;
+    int nargs = args.length - 1;
+
+    switch (config[0]) {
+    case 0:
+      args[nargs] = Long.valueOf(ScriptUtils.getLongVal(args[0], context) + ScriptUtils.getLongVal(args[1], context));
+      return true;
+    }
+
+    return false;
+  }
+
+  public boolean evaluateValue(ScriptInfo info, boolean[] returnBool, String[] returnString, ExecutionContext context,
+      boolean isConditional) {
+    int config[] = (int[]) info.m_entry;
+
+    switch (config[0]) {
+    case 0:
+      if (isConditional) {
+        returnBool[0] = true;
+      } else {
+        returnString[0] = "twine";
+      }
+      return true;
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,21 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.server.Service;
+
+/**
+ * The baseline for ServiceProxy: a service action written against the UCM
+ * API, reading its parameters from the binder itself.
+ * 
+ * @author tim
+ */
+public class HandWrittenService extends Service {
+
+  public void echo() {
+    long dID = Long.parseLong(m_binder.getLocal("dID"));
+    String title = m_binder.getLocal("dDocTitle");
+
+    if (dID > 0) {
+      m_binder.putLocal("echo", title);
+    }
+  }
+}
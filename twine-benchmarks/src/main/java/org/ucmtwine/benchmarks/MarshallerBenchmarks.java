@@ -0,0 +1,76 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.server.Service;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ucmtwine.convert.Converters;
+import org.ucmtwine.convert.IConverter;
+import org.ucmtwine.parameter.ParameterMarshaller;
+
+/**
+ * ParameterMarshaller.getValueArray() for a method with a single parameter of
+ * each Parameter type. Provider parameters aren't covered, as they need the
+ * server's provider table.
+ * 
+ * @author tim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallerBenchmarks {
+
+  @Param({ "String", "Integer", "Long", "Float", "Double", "Boolean", "Date", "ResultSet", "Rows", "Converted",
+      "Injected" })
+  public String type;
+
+  private ParameterMarshaller marshaller;
+
+  private Service service;
+
+  @Setup
+  public void setUp() throws Exception {
+    Converters.register(String.class, UUID.class, new IConverter<String, UUID>() {
+      public UUID convert(String value) {
+        return UUID.fromString(value);
+      }
+    });
+
+    marshaller = new ParameterMarshaller(findMethod(Character.toLowerCase(type.charAt(0)) + type.substring(1)
+        + "Parameter"));
+
+    service = StandIns.service(new Service(), null);
+    StandIns.putValue(service.getBinder(), type);
+  }
+
+  private static Method findMethod(String name) {
+    for (Method method : ParameterMethods.class.getMethods()) {
+      if (method.getName().equals(name)) {
+        return method;
+      }
+    }
+
+    throw new IllegalArgumentException("No ParameterMethods method " + name);
+  }
+
+  @Benchmark
+  public Object[] getValueArray() {
+    return marshaller.getValueArray(service);
+  }
+}
@@ -0,0 +1,69 @@
+package org.ucmtwine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import net.balusc.util.ObjectConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ObjectConverter.convert() for the conversions Twine makes when binding
+ * script arguments and converting return values.
+ * 
+ * @author tim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectConverterBenchmarks {
+
+  /**
+   * Source and target type, e.g. String-Long.
+   */
+  @Param({ "String-Long", "String-Integer", "String-Boolean", "Long-Integer", "Long-String", "Integer-Boolean",
+      "Double-Float", "Long-Long" })
+  public String conversion;
+
+  private Object from;
+
+  private Class<?> to;
+
+  @Setup
+  public void setUp() throws Exception {
+    String[] types = conversion.split("-");
+
+    from = sample(types[0]);
+    to = Class.forName("java.lang." + types[1]);
+  }
+
+  private static Object sample(String type) {
+    if (type.equals("Long")) {
+      return Long.valueOf(1234);
+    }
+    if (type.equals("Integer")) {
+      return Integer.valueOf(1);
+    }
+    if (type.equals("Double")) {
+      return Double.valueOf(12.5);
+    }
+    return "1234";
+  }
+
+  @Benchmark
+  public Object convert() {
+    return ObjectConverter.convert(from, to);
+  }
+}
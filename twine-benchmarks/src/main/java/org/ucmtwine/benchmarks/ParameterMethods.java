@@ -0,0 +1,65 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.ucmtwine.annotation.Binder;
+
+/**
+ * One method per Parameter type, for the marshaller benchmarks. Each binds
+ * the binder value <code>value</code>, or the result set <code>rows</code>.
+ * 
+ * @author tim
+ */
+public class ParameterMethods {
+
+  /**
+   * A row of the <code>rows</code> result set.
+   */
+  public static class Row {
+    public Long dID;
+    public String dDocTitle;
+  }
+
+  public void stringParameter(@Binder(name = "value") String value) {
+  }
+
+  public void integerParameter(@Binder(name = "value") Integer value) {
+  }
+
+  public void longParameter(@Binder(name = "value") Long value) {
+  }
+
+  public void floatParameter(@Binder(name = "value") Float value) {
+  }
+
+  public void doubleParameter(@Binder(name = "value") Double value) {
+  }
+
+  public void booleanParameter(@Binder(name = "value") Boolean value) {
+  }
+
+  public void dateParameter(@Binder(name = "value") Date value) {
+  }
+
+  public void resultSetParameter(@Binder(name = "rows") DataResultSet rows) {
+  }
+
+  public void rowsParameter(@Binder(name = "rows") Iterable<Row> rows) {
+  }
+
+  /**
+   * Bound through a converter registered by
+   * {@link MarshallerBenchmarks#setUp()}.
+   */
+  public void convertedParameter(@Binder(name = "value") UUID value) {
+  }
+
+  public void injectedParameter(DataBinder binder, UserData userData, Service service) {
+  }
+}
@@ -0,0 +1,140 @@
+package org.ucmtwine.benchmarks;
+
+import intradoc.common.ScriptExtensionsAdaptor;
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+import intradoc.server.Action;
+import intradoc.server.Service;
+import intradoc.shared.UserData;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * In-memory stand-ins for the request objects the content server would pass
+ * in. A Service is also the request's ExecutionContext, so one object covers
+ * services, filters and Idoc script.
+ * 
+ * @author tim
+ */
+public final class StandIns {
+
+  public static final int ROWS = 20;
+
+  private StandIns() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * Set up a service with an empty binder, user data and an action, as the
+   * server does before it runs the action.
+   * 
+   * @param service
+   * @param actionParameter
+   *          The action's first parameter, e.g. the Twine method ID
+   * @return
+   */
+  public static <T extends Service> T service(T service, String actionParameter) {
+    service.m_binder = new DataBinder();
+    service.setUserData(new UserData());
+    service.setCachedObject("UserData", service.getUserData());
+
+    Action action = new Action();
+    action.m_params.add(actionParameter);
+    service.m_currentAction = action;
+
+    return service;
+  }
+
+  /**
+   * The binder values of a checked in document.
+   * 
+   * @param binder
+   */
+  public static void putDocument(DataBinder binder) {
+    binder.putLocal("dID", "1234");
+    binder.putLocal("dDocTitle", "Quarterly report");
+  }
+
+  /**
+   * Put the <code>value</code> a {@link ParameterMethods} method binds, and
+   * the <code>rows</code> result set.
+   * 
+   * @param binder
+   * @param type
+   *          The parameter type name, e.g. Long
+   */
+  public static void putValue(DataBinder binder, String type) {
+    String value;
+
+    if (type.equals("Float") || type.equals("Double")) {
+      value = "12.5";
+    } else if (type.equals("Boolean")) {
+      value = "1";
+    } else if (type.equals("Date")) {
+      value = new SimpleDateFormat(binder.m_blDateFormat.toSimplePattern()).format(new Date());
+    } else if (type.equals("Converted")) {
+      value = "3f2504e0-4f89-11d3-9a0c-0305e82c3301";
+    } else if (type.equals("String")) {
+      value = "Quarterly report";
+    } else {
+      value = "1234";
+    }
+
+    binder.putLocal("value", value);
+    binder.addResultSet("rows", rows());
+  }
+
+  private static DataResultSet rows() {
+    DataResultSet rs = new DataResultSet(new String[] { "dID", "dDocTitle" });
+
+    for (int i = 0; i < ROWS; i++) {
+      List<String> row = new ArrayList<String>();
+      row.add(String.valueOf(i + 1));
+      row.add("Document " + (i + 1));
+
+      rs.addRowWithList(row);
+    }
+
+    return rs;
+  }
+
+  /**
+   * The ScriptInfo the server would pass for a function.
+   * 
+   * @param extensions
+   * @param name
+   * @return
+   */
+  public static ScriptInfo function(ScriptExtensionsAdaptor extensions, String name) {
+    return scriptInfo(name, extensions.getFunctionTable(), extensions.getFunctionDefinitionTable());
+  }
+
+  /**
+   * The ScriptInfo the server would pass for a variable.
+   * 
+   * @param extensions
+   * @param name
+   * @return
+   */
+  public static ScriptInfo variable(ScriptExtensionsAdaptor extensions, String name) {
+    return scriptInfo(name, extensions.getVariableTable(), extensions.getVariableDefinitionTable());
+  }
+
+  private static ScriptInfo scriptInfo(String name, String[] table, int[][] definitions) {
+    for (int i = 0; i < table.length; i++) {
+      if (table[i].equals(name)) {
+        ScriptInfo info = new ScriptInfo();
+        info.m_key = name;
+        info.m_entry = definitions[i];
+
+        return info;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown Idoc name " + name);
+  }
+}
@@ -0,0 +1,34 @@
+package org.ucmtwine.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so each result comes with the
+ * bytes allocated per call (<code>gc.alloc.rate.norm</code>). Takes the usual
+ * JMH options, e.g. <code>java -jar benchmarks.jar Dispatch -p reflection=false</code>.
+ * 
+ * @author tim
+ */
+public final class TwineBenchmarks {
+
+  private TwineBenchmarks() {
+    // Utility class, hide the constructor.
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+
+    Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+
+    new Runner(options).run();
+  }
+}
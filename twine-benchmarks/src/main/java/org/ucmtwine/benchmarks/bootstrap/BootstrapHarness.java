@@ -0,0 +1,193 @@
+package org.ucmtwine.benchmarks.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures Twine's startup against generated components. For every
+ * combination of files, classes and methods it writes the component jars,
+ * runs the Bootstrapper in a new JVM a number of times, and prints the median
+ * wall time, allocation and classes loaded of each phase.
+ * 
+ * <pre>
+ * java -cp benchmarks.jar org.ucmtwine.benchmarks.bootstrap.BootstrapHarness \
+ *   --files 1,10 --classes 10,100 --methods 1,10 --runs 5 [--threads 4] [--lazy] [--indexed]
+ * </pre>
+ * 
+ * <p>
+ * A new JVM for each run means every run loads the classes and reads the jars
+ * cold, as a server does at startup.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class BootstrapHarness {
+
+  private BootstrapHarness() {
+    // Utility class, hide the constructor.
+  }
+
+  public static void main(String[] args) throws Exception {
+    int[] files = { 1, 10 };
+    int[] classes = { 10, 100 };
+    int[] methods = { 1, 10 };
+    int runs = 5;
+    int threads = 1;
+    boolean lazy = false;
+    boolean indexed = false;
+    File dir = null;
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+
+      if (arg.equals("--files")) {
+        files = parseList(args[++i]);
+      } else if (arg.equals("--classes")) {
+        classes = parseList(args[++i]);
+      } else if (arg.equals("--methods")) {
+        methods = parseList(args[++i]);
+      } else if (arg.equals("--runs")) {
+        runs = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--lazy")) {
+        lazy = true;
+      } else if (arg.equals("--indexed")) {
+        indexed = true;
+      } else if (arg.equals("--dir")) {
+        dir = new File(args[++i]);
+      } else {
+        System.err.println("Unknown option " + arg);
+        System.err.println("Options: --files n,.. --classes n,.. --methods n,.. --runs n --threads n --lazy"
+            + " --indexed --dir path");
+        System.exit(1);
+      }
+    }
+
+    if (dir == null) {
+      dir = new File(System.getProperty("java.io.tmpdir"), "twine-bootstrap-" + System.currentTimeMillis());
+    }
+
+    System.out.println("# threads=" + threads + " lazy=" + lazy + " indexed=" + indexed + " runs=" + runs
+        + ", medians");
+
+    for (int f : files) {
+      for (int c : classes) {
+        for (int m : methods) {
+          File caseDir = new File(dir, f + "x" + c + "x" + m);
+          List<File> jars = new ComponentGenerator(caseDir, indexed).generate(f, c, m);
+
+          List<Map<String, long[]>> results = new ArrayList<Map<String, long[]>>();
+
+          for (int r = 0; r < runs; r++) {
+            results.add(run(jars, threads, lazy));
+          }
+
+          report(f, c, m, results);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the Bootstrapper once in a new JVM.
+   * 
+   * @return Count, nanos, bytes, classes and nested (1 or 0) by phase
+   */
+  private static Map<String, long[]> run(List<File> jars, int threads, boolean lazy) throws IOException,
+      InterruptedException {
+    StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path"));
+
+    for (File jar : jars) {
+      classPath.append(File.pathSeparatorChar).append(jar.getPath());
+    }
+
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath.toString(), BootstrapRun.class.getName(),
+        String.valueOf(threads), String.valueOf(lazy));
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+    Process process = builder.start();
+    Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+
+    try {
+      String line;
+
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+
+        if (fields.length != 6) {
+          // output from a component or the Bootstrapper
+          continue;
+        }
+
+        phases.put(fields[0], new long[] { Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+            Long.parseLong(fields[4]), Long.parseLong(fields[5]), Boolean.parseBoolean(fields[1]) ? 1 : 0 });
+      }
+    } finally {
+      in.close();
+    }
+
+    if (process.waitFor() != 0 || !phases.containsKey(BootstrapRun.TOTAL)) {
+      throw new IOException("The bootstrap run failed with exit code " + process.exitValue());
+    }
+
+    return phases;
+  }
+
+  private static void report(int files, int classes, int methods, List<Map<String, long[]>> results) {
+    System.out.println();
+    System.out.println(files + " files x " + classes + " classes x " + methods + " methods");
+    System.out.println(String.format("  %-24s %8s %10s %12s %8s", "phase", "count", "ms", "alloc KB", "classes"));
+
+    for (Map.Entry<String, long[]> entry : results.get(0).entrySet()) {
+      String phase = entry.getKey();
+      boolean nested = entry.getValue()[4] == 1;
+
+      System.out.println(String.format("  %-24s %8d %10.2f %12d %8d", (nested ? "  " + phase : phase),
+          median(results, phase, 0), median(results, phase, 1) / 1e6, median(results, phase, 2) / 1024,
+          median(results, phase, 3)));
+    }
+  }
+
+  private static long median(List<Map<String, long[]>> results, String phase, int field) {
+    long[] values = new long[results.size()];
+    int n = 0;
+
+    for (Map<String, long[]> result : results) {
+      long[] phaseValues = result.get(phase);
+
+      if (phaseValues != null) {
+        values[n++] = phaseValues[field];
+      }
+    }
+
+    if (n == 0) {
+      return 0;
+    }
+
+    Arrays.sort(values, 0, n);
+
+    return values[n / 2];
+  }
+
+  private static int[] parseList(String list) {
+    String[] items = list.split(",");
+    int[] values = new int[items.length];
+
+    for (int i = 0; i < items.length; i++) {
+      values[i] = Integer.parseInt(items[i].trim());
+    }
+
+    return values;
+  }
+}
@@ -0,0 +1,80 @@
+package org.ucmtwine.benchmarks.bootstrap;
+
+import intradoc.common.AppObjectRepository;
+import intradoc.common.ScriptContext;
+import intradoc.data.DataBinder;
+import intradoc.server.Service;
+import intradoc.shared.SharedObjects;
+
+import org.ucmtwine.Bootstrapper;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.proxy.injector.ComponentLoader;
+
+/**
+ * Runs the Bootstrapper once, in a new JVM started by {@link BootstrapHarness}
+ * with the generated component jars on its class path, and prints the phase
+ * totals, one tab separated line each:
+ * 
+ * <pre>
+ * phase nested count nanos bytes classes
+ * </pre>
+ * 
+ * <p>
+ * ServiceManager and PluginFilters keep their tables in static maps, so the
+ * services and filters register without a server. The default ScriptContext
+ * is a new one put in the AppObjectRepository.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class BootstrapRun {
+
+  public static final String TOTAL = "total";
+
+  private BootstrapRun() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * @param args
+   *          The number of loader threads, and true for lazy injection
+   */
+  public static void main(String[] args) throws Exception {
+    SharedObjects.putEnvironmentValue(ComponentLoader.THREADS_CONFIG, args[0]);
+    SharedObjects.putEnvironmentValue(ComponentLoader.LAZY_CONFIG, args[1]);
+    SharedObjects.putEnvironmentValue(DispatchEvents.ENABLED_CONFIG, "0");
+
+    AppObjectRepository.putObject("DefaultScriptContext", new ScriptContext());
+
+    PhaseRecorder recorder = new PhaseRecorder(Thread.currentThread());
+    DispatchEvents.install(recorder);
+    DispatchEvents.setRecording(true);
+
+    Service ctx = new Service();
+    ctx.setCachedObject("filterParameter", "twine.properties");
+
+    long classes = PhaseRecorder.loadedClasses();
+    long bytes = PhaseRecorder.allocatedBytes(true);
+    long start = System.nanoTime();
+
+    new Bootstrapper().doFilter(null, new DataBinder(), ctx);
+
+    long nanos = System.nanoTime() - start;
+    bytes = PhaseRecorder.allocatedBytes(true) - bytes;
+    classes = PhaseRecorder.loadedClasses() - classes;
+
+    DispatchEvents.setRecording(false);
+
+    for (PhaseRecorder.Phase phase : recorder.getPhases()) {
+      String name = phase.isNested() ? phase.getName() + " (nested)" : phase.getName();
+
+      print(name, phase.isNested(), phase.getCount(), phase.getNanos(), phase.getBytes(), phase.getClasses());
+    }
+
+    print(TOTAL, false, 0, nanos, bytes, classes);
+  }
+
+  private static void print(String phase, boolean nested, int count, long nanos, long bytes, long classes) {
+    System.out.println(phase + "\t" + nested + "\t" + count + "\t" + nanos + "\t" + bytes + "\t" + classes);
+  }
+}
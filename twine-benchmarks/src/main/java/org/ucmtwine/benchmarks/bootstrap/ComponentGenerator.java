@@ -0,0 +1,209 @@
+package org.ucmtwine.benchmarks.bootstrap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Writes component jars for the startup benchmark. Each jar has a
+ * twine.properties file listing its classes, and each class has the same
+ * number of annotated methods. Classes take turns at being a service, filter
+ * and Idoc script class.
+ * 
+ * @author tim
+ */
+public class ComponentGenerator {
+
+  private final File dir;
+
+  private final boolean indexed;
+
+  /**
+   * @param dir
+   *          Where to write the sources, classes and jars
+   * @param indexed
+   *          Whether to run the annotation processor, which writes the
+   *          annotation index and adapters
+   */
+  public ComponentGenerator(File dir, boolean indexed) {
+    this.dir = dir;
+    this.indexed = indexed;
+  }
+
+  /**
+   * @param files
+   *          The number of jars, each with its own twine.properties
+   * @param classes
+   *          The number of classes in each jar
+   * @param methods
+   *          The number of annotated methods in each class
+   * @return The jars
+   * @throws IOException
+   */
+  public List<File> generate(int files, int classes, int methods) throws IOException {
+    List<File> jars = new ArrayList<File>();
+
+    for (int f = 0; f < files; f++) {
+      jars.add(generateJar(f, classes, methods));
+    }
+
+    return jars;
+  }
+
+  private File generateJar(int f, int classes, int methods) throws IOException {
+    File sourceDir = new File(dir, "src" + f);
+    File classDir = new File(dir, "classes" + f);
+    File packageDir = new File(sourceDir, "gen/c" + f);
+
+    if (!packageDir.mkdirs() && !packageDir.isDirectory() || !classDir.mkdirs() && !classDir.isDirectory()) {
+      throw new IOException("Unable to create " + packageDir + " and " + classDir);
+    }
+
+    List<String> sources = new ArrayList<String>();
+    StringBuilder properties = new StringBuilder();
+
+    for (int c = 0; c < classes; c++) {
+      File source = new File(packageDir, "Component" + c + ".java");
+
+      write(source, classSource(f, c, methods));
+      sources.add(source.getPath());
+
+      properties.append(PREFIXES[c % 3]).append("Gen").append(f).append('_').append(c).append("=gen.c").append(f)
+          .append(".Component").append(c).append('\n');
+    }
+
+    write(new File(classDir, "twine.properties"), properties.toString());
+
+    compile(sources, classDir);
+
+    File jar = new File(dir, "component" + f + ".jar");
+    writeJar(classDir, jar);
+
+    return jar;
+  }
+
+  private static final String[] PREFIXES = { "ucm.service.", "ucm.filter.", "ucm.idocscript." };
+
+  private static String classSource(int f, int c, int methods) {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("package gen.c").append(f).append(";\n\n");
+    sb.append("import intradoc.data.DataBinder;\n");
+    sb.append("import org.ucmtwine.annotation.*;\n\n");
+    sb.append("public class Component").append(c).append(" {\n");
+
+    for (int m = 0; m < methods; m++) {
+      String name = "gen_" + f + "_" + c + "_" + m;
+
+      switch (c % 3) {
+      case 0:
+        sb.append("  @ServiceMethod(name = \"").append(name.toUpperCase()).append("\")\n");
+        sb.append("  public void method").append(m).append("(@Binder(name = \"dID\") Long dID, ");
+        sb.append("@Binder(name = \"dDocName\") String dDocName, DataBinder binder) {\n  }\n\n");
+        break;
+
+      case 1:
+        sb.append("  @Filter(event = \"").append(name).append("\")\n");
+        sb.append("  public int method").append(m).append("(DataBinder binder) {\n    return 0;\n  }\n\n");
+        break;
+
+      default:
+        sb.append("  @IdocFunction(name = \"").append(name).append("\")\n");
+        sb.append("  public long method").append(m).append("(long value, String label) {\n    return value;\n  }\n\n");
+      }
+    }
+
+    sb.append("}\n");
+
+    return sb.toString();
+  }
+
+  private void compile(List<String> sources, File classDir) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    if (compiler == null) {
+      throw new IOException("The startup benchmark must run on a JDK, to compile the generated components");
+    }
+
+    List<String> args = new ArrayList<String>();
+    args.add("-nowarn");
+    args.add("-d");
+    args.add(classDir.getPath());
+    args.add("-cp");
+    args.add(System.getProperty("java.class.path"));
+
+    if (!indexed) {
+      args.add("-proc:none");
+    }
+
+    args.addAll(sources);
+
+    if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0) {
+      throw new IOException("Unable to compile the generated components in " + dir);
+    }
+  }
+
+  private static void writeJar(File classDir, File jar) throws IOException {
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+
+    try {
+      addToJar(out, classDir, "");
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void addToJar(JarOutputStream out, File dir, String path) throws IOException {
+    File[] files = dir.listFiles();
+
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        addToJar(out, file, path + file.getName() + "/");
+        continue;
+      }
+
+      out.putNextEntry(new JarEntry(path + file.getName()));
+      InputStream in = new FileInputStream(file);
+
+      try {
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) > 0) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+
+      out.closeEntry();
+    }
+  }
+
+  private static void write(File file, String content) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+}
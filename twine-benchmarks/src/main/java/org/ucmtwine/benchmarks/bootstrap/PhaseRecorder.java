@@ -0,0 +1,206 @@
+package org.ucmtwine.benchmarks.bootstrap;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.proxy.MethodBinding;
+
+/**
+ * Totals the wall time, allocated bytes and classes loaded of each bootstrap
+ * phase event.
+ * 
+ * <p>
+ * The loader's phases, which start on the startup thread, count the bytes
+ * allocated by every thread, so work done on the loader's pool is included.
+ * Phases within them, such as <code>marshaller</code>, count the bytes of the
+ * thread they ran on and are summed over every time they ran. Classes loaded
+ * are counted across the JVM, so they are only exact for nested phases when
+ * the loader runs on one thread.
+ * </p>
+ * 
+ * @author tim
+ */
+public class PhaseRecorder implements IEventRecorder {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static final ClassLoadingMXBean CLASSES = ManagementFactory.getClassLoadingMXBean();
+
+  private final Thread startupThread;
+
+  private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  /**
+   * Guarded by itself.
+   */
+  private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+  /**
+   * @param startupThread
+   *          The thread which runs the Bootstrapper
+   */
+  public PhaseRecorder(Thread startupThread) {
+    this.startupThread = startupThread;
+  }
+
+  public Object begin(int kind) {
+    if (kind != DispatchEvents.BOOTSTRAP) {
+      return null;
+    }
+
+    boolean allThreads = Thread.currentThread() == startupThread && depth.get()[0] == 0;
+    depth.get()[0]++;
+
+    return new Sample(allThreads);
+  }
+
+  public void endDispatch(Object event, MethodBinding binding, boolean failed) {
+    // only bootstrap phases are started
+  }
+
+  public void endPhase(Object event, String phase, int count) {
+    Sample start = (Sample) event;
+    Sample end = new Sample(start.allThreads);
+
+    depth.get()[0]--;
+
+    // a phase run both on its own and inside another is totalled separately
+    String key = start.allThreads ? phase : phase + " (nested)";
+
+    synchronized (phases) {
+      Phase total = phases.get(key);
+
+      if (total == null) {
+        total = new Phase(phase, !start.allThreads);
+        phases.put(key, total);
+      }
+
+      total.add(count, end.nanos - start.nanos, end.bytes - start.bytes, end.classes - start.classes);
+    }
+  }
+
+  /**
+   * The totals of each phase, in the order they first ran.
+   * 
+   * @return
+   */
+  public List<Phase> getPhases() {
+    synchronized (phases) {
+      return new ArrayList<Phase>(phases.values());
+    }
+  }
+
+  /**
+   * Bytes allocated so far by this thread, or by every live thread.
+   * 
+   * @param allThreads
+   * @return -1 if the JVM can't measure it
+   */
+  public static long allocatedBytes(boolean allThreads) {
+    if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+
+    if (!allThreads) {
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    long total = 0;
+
+    for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (bytes > 0) {
+        total += bytes;
+      }
+    }
+
+    return total;
+  }
+
+  public static long loadedClasses() {
+    return CLASSES.getTotalLoadedClassCount();
+  }
+
+  private static class Sample {
+    private final boolean allThreads;
+    private final long nanos = System.nanoTime();
+    private final long bytes;
+    private final long classes = loadedClasses();
+
+    private Sample(boolean allThreads) {
+      this.allThreads = allThreads;
+      this.bytes = allocatedBytes(allThreads);
+    }
+  }
+
+  /**
+   * The totals of one phase.
+   */
+  public static class Phase {
+    private final String name;
+    private final boolean nested;
+    private int count;
+    private long nanos;
+    private long bytes;
+    private long classes;
+
+    public Phase(String name, boolean nested) {
+      this.name = name;
+      this.nested = nested;
+    }
+
+    public void add(int count, long nanos, long bytes, long classes) {
+      this.count += count;
+      this.nanos += nanos;
+      this.bytes += bytes;
+      this.classes += classes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Did it run within another phase, e.g. marshaller within scan?
+     * 
+     * @return
+     */
+    public boolean isNested() {
+      return nested;
+    }
+
+    /**
+     * The number of files, classes, parameters or script methods handled.
+     * 
+     * @return
+     */
+    public int getCount() {
+      return count;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getClasses() {
+      return classes;
+    }
+  }
+}
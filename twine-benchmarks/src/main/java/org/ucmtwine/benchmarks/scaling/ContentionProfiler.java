@@ -0,0 +1,262 @@
+package org.ucmtwine.benchmarks.scaling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.results.TextResult;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Reports how often the benchmark threads wait on each other. Each iteration
+ * gives:
+ * 
+ * <ul>
+ * <li><code>contention.blocked</code>: the times a benchmark thread blocked
+ * entering a monitor, per second</li>
+ * <li><code>contention.blocked.ms</code>: the time they spent blocked, per
+ * second</li>
+ * <li><code>contention.waiting.pct</code>: the percentage of thread samples
+ * which were blocked or parked on a lock</li>
+ * </ul>
+ * 
+ * <p>
+ * After the last measurement iteration, <code>contention.sites</code> lists
+ * where the sampled threads were waiting, by the first Twine frame and the
+ * lock's class, most frequent first. Lock-free contention, such as a CAS
+ * retried on a shared counter, doesn't block, so shows up only as poor
+ * scaling.
+ * </p>
+ * 
+ * @author tim
+ */
+public class ContentionProfiler implements InternalProfiler {
+
+  public static final String BLOCKED = "contention.blocked";
+
+  public static final String BLOCKED_MS = "contention.blocked.ms";
+
+  public static final String WAITING_PCT = "contention.waiting.pct";
+
+  public static final String SITES = "contention.sites";
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static final long SAMPLE_MILLIS = 10;
+
+  private static final int STACK_DEPTH = 24;
+
+  private static final int TOP_SITES = 8;
+
+  /**
+   * Samples by waiting site, for every measurement iteration so far. Only
+   * touched by the sampler, and read after it has stopped.
+   */
+  private final Map<String, int[]> sites = new HashMap<String, int[]>();
+
+  private Sampler sampler;
+
+  private int measurements;
+
+  public String getDescription() {
+    return "Monitor contention and lock waits of the benchmark threads";
+  }
+
+  public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    if (THREADS.isThreadContentionMonitoringSupported()) {
+      THREADS.setThreadContentionMonitoringEnabled(true);
+    }
+
+    sampler = new Sampler();
+    sampler.start();
+  }
+
+  public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+      IterationParams iterationParams, IterationResult result) {
+    Sampler finished = sampler;
+    sampler = null;
+    finished.finish();
+
+    double seconds = Math.max(1, System.nanoTime() - finished.startNanos) / 1e9;
+    List<Result> results = new ArrayList<Result>();
+
+    results.add(new ScalarResult(BLOCKED, finished.blockedCount / seconds, "blocks/s", AggregationPolicy.AVG));
+    results.add(new ScalarResult(BLOCKED_MS, finished.blockedMillis / seconds, "ms/s", AggregationPolicy.AVG));
+    results.add(new ScalarResult(WAITING_PCT, (finished.samples == 0) ? 0 : 100.0 * finished.waiting
+        / finished.samples, "%", AggregationPolicy.AVG));
+
+    if (iterationParams.getType() == IterationType.MEASUREMENT) {
+      for (Map.Entry<String, int[]> site : finished.sites.entrySet()) {
+        int[] total = sites.get(site.getKey());
+
+        if (total == null) {
+          sites.put(site.getKey(), site.getValue());
+        } else {
+          total[0] += site.getValue()[0];
+        }
+      }
+
+      if (++measurements == iterationParams.getCount()) {
+        results.add(new TextResult(formatSites(), SITES));
+      }
+    }
+
+    return results;
+  }
+
+  private String formatSites() {
+    List<Map.Entry<String, int[]>> sorted = new ArrayList<Map.Entry<String, int[]>>(sites.entrySet());
+
+    Collections.sort(sorted, new Comparator<Map.Entry<String, int[]>>() {
+      public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+        return b.getValue()[0] - a.getValue()[0];
+      }
+    });
+
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < sorted.size() && i < TOP_SITES; i++) {
+      sb.append(String.format("%8d  %s%n", sorted.get(i).getValue()[0], sorted.get(i).getKey()));
+    }
+
+    return (sb.length() == 0) ? "no waits sampled\n" : sb.toString();
+  }
+
+  /**
+   * Is this thread one of JMH's benchmark threads?
+   */
+  private static boolean isWorker(ThreadInfo info) {
+    return info != null && info.getThreadName().contains("jmh-worker");
+  }
+
+  /**
+   * Where a waiting thread is waiting: the innermost Twine frame, or else the
+   * innermost frame, and the lock's class.
+   */
+  private static String site(ThreadInfo info) {
+    StackTraceElement[] stack = info.getStackTrace();
+    StackTraceElement frame = (stack.length > 0) ? stack[0] : null;
+
+    for (StackTraceElement element : stack) {
+      if (element.getClassName().startsWith("org.ucmtwine.")
+          && !element.getClassName().startsWith("org.ucmtwine.benchmarks.")) {
+        frame = element;
+        break;
+      }
+    }
+
+    String lock = info.getLockName();
+    int hash = (lock == null) ? -1 : lock.indexOf('@');
+
+    return frame + " on " + ((hash > 0) ? lock.substring(0, hash) : lock);
+  }
+
+  /**
+   * Samples the benchmark threads' states during one iteration, and totals
+   * their contention counters over it.
+   */
+  private static class Sampler extends Thread {
+
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Long, long[]> before = counters();
+
+    private final Map<String, int[]> sites = new HashMap<String, int[]>();
+
+    private volatile boolean running = true;
+
+    private long samples;
+
+    private long waiting;
+
+    private long blockedCount;
+
+    private long blockedMillis;
+
+    private Sampler() {
+      super("twine-contention-sampler");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        for (ThreadInfo info : THREADS.getThreadInfo(THREADS.getAllThreadIds(), STACK_DEPTH)) {
+          if (!isWorker(info)) {
+            continue;
+          }
+
+          samples++;
+
+          if (info.getLockName() != null && info.getThreadState() != Thread.State.RUNNABLE) {
+            waiting++;
+
+            String site = site(info);
+            int[] count = sites.get(site);
+
+            if (count == null) {
+              sites.put(site, new int[] { 1 });
+            } else {
+              count[0]++;
+            }
+          }
+        }
+
+        try {
+          Thread.sleep(SAMPLE_MILLIS);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+
+    private void finish() {
+      running = false;
+      interrupt();
+
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      for (Map.Entry<Long, long[]> entry : counters().entrySet()) {
+        long[] start = before.get(entry.getKey());
+        long[] end = entry.getValue();
+
+        blockedCount += end[0] - ((start == null) ? 0 : start[0]);
+        blockedMillis += end[1] - ((start == null) ? 0 : start[1]);
+      }
+    }
+
+    /**
+     * Blocked count and time, by benchmark thread ID.
+     */
+    private static Map<Long, long[]> counters() {
+      Map<Long, long[]> counters = new HashMap<Long, long[]>();
+
+      for (ThreadInfo info : THREADS.getThreadInfo(THREADS.getAllThreadIds())) {
+        if (isWorker(info)) {
+          // the time is -1 if contention monitoring isn't supported
+          counters.put(info.getThreadId(), new long[] { info.getBlockedCount(), Math.max(0, info.getBlockedTime()) });
+        }
+      }
+
+      return counters;
+    }
+  }
+}
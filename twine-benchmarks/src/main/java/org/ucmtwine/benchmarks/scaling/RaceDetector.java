@@ -0,0 +1,511 @@
+package org.ucmtwine.benchmarks.scaling;
+
+import intradoc.common.ScriptInfo;
+import intradoc.server.Service;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ucmtwine.benchmarks.StandIns;
+import org.ucmtwine.benchmarks.bootstrap.ComponentGenerator;
+import org.ucmtwine.convert.Converters;
+import org.ucmtwine.convert.IConverter;
+import org.ucmtwine.proxy.FilterProxy;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.ServiceProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+/**
+ * Injects generated component classes from several threads while other
+ * threads look up and call what has been injected so far, and checks that
+ * every lookup sees a consistent registry. The order of the injections, and
+ * of the lookups, is random from a seed, so a failing run can be repeated.
+ * 
+ * <pre>
+ * java -cp benchmarks.jar org.ucmtwine.benchmarks.scaling.RaceDetector \
+ *   [--classes 300] [--methods 4] [--writers 4] [--readers 16] [--seconds 10] [--seed n]
+ * </pre>
+ * 
+ * <p>
+ * Writers register or reserve service and filter methods, build Idoc script
+ * proxies and register converters to the generated classes. Readers check
+ * that:
+ * </p>
+ * 
+ * <ul>
+ * <li>every ID below the registry size has a binding with that ID and
+ * method, and a reserved method is only bound once</li>
+ * <li>registering an injected method again returns the ID it was given</li>
+ * <li>services, filters and Idoc functions injected so far can be called,
+ * and are counted against their own binding</li>
+ * <li>a converter is found as soon as its registration returns</li>
+ * </ul>
+ * 
+ * <p>
+ * Exits with status 1 if any check failed.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class RaceDetector {
+
+  private static final int MAX_REPORTED = 20;
+
+  private static final int RECENT = 4;
+
+  private RaceDetector() {
+    // Utility class, hide the constructor.
+  }
+
+  public static void main(String[] args) throws Exception {
+    int classes = 300;
+    int methods = 4;
+    int writers = 4;
+    int readers = 16;
+    int seconds = 10;
+    long seed = System.nanoTime();
+    File dir = null;
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+
+      if (arg.equals("--classes")) {
+        classes = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--methods")) {
+        methods = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--writers")) {
+        writers = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--readers")) {
+        readers = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--seconds")) {
+        seconds = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else if (arg.equals("--dir")) {
+        dir = new File(args[++i]);
+      } else {
+        System.err.println("Unknown option " + arg);
+        System.err.println("Options: --classes n --methods n --writers n --readers n --seconds n --seed n --dir path");
+        System.exit(1);
+      }
+    }
+
+    if (dir == null) {
+      dir = new File(System.getProperty("java.io.tmpdir"), "twine-races-" + System.currentTimeMillis());
+    }
+
+    System.out.println("# seed " + seed);
+
+    File jar = new ComponentGenerator(dir, false).generate(1, classes, methods).get(0);
+    ClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, RaceDetector.class.getClassLoader());
+
+    List<Class<?>> components = new ArrayList<Class<?>>();
+
+    for (int c = 0; c < classes; c++) {
+      // not initialised, as the component loader leaves it to the injectors
+      components.add(Class.forName("gen.c0.Component" + c, false, loader));
+    }
+
+    Collections.shuffle(components, new Random(seed));
+
+    // spread the injections over the run, so lookups overlap them throughout
+    long pauseNanos = seconds * 1000000000L * writers / Math.max(1, classes);
+
+    Run run = new Run(components, seed, pauseNanos);
+    long deadline = System.currentTimeMillis() + seconds * 1000L;
+
+    List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < writers; i++) {
+      threads.add(run.writer(i));
+    }
+
+    for (int i = 0; i < readers; i++) {
+      threads.add(run.reader(i, deadline));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    System.out.println("# " + run.injected.get() + " classes injected, " + run.checks.get() + " checks, "
+        + run.failures.size() + " failed");
+
+    int reported = 0;
+
+    for (String failure : run.failures) {
+      if (reported++ == MAX_REPORTED) {
+        System.out.println("...");
+        break;
+      }
+
+      System.out.println(failure);
+    }
+
+    System.exit(run.failures.isEmpty() ? 0 : 1);
+  }
+
+  /**
+   * The state shared by one run's writers and readers.
+   */
+  private static class Run {
+
+    private final List<Class<?>> components;
+
+    private final long seed;
+
+    /**
+     * The average pause between a writer's injections.
+     */
+    private final long pauseNanos;
+
+    /**
+     * The next component to inject.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicInteger injected = new AtomicInteger();
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final Queue<String> failures = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * The ID each method was given, once its registration has returned.
+     */
+    private final Map<Method, Integer> ids = new ConcurrentHashMap<Method, Integer>();
+
+    private final List<Method> services = new CopyOnWriteArrayList<Method>();
+
+    private final List<Method> filters = new CopyOnWriteArrayList<Method>();
+
+    private final List<ScriptProxy> scripts = new CopyOnWriteArrayList<ScriptProxy>();
+
+    private final List<Class<?>> converted = new CopyOnWriteArrayList<Class<?>>();
+
+    private Run(List<Class<?>> components, long seed, long pauseNanos) {
+      this.components = components;
+      this.seed = seed;
+      this.pauseNanos = pauseNanos;
+    }
+
+    private Thread writer(final int n) {
+      return new Thread("twine-race-writer-" + n) {
+        @Override
+        public void run() {
+          Random random = new Random(seed + n);
+          int c;
+
+          while ((c = next.getAndIncrement()) < components.size()) {
+            try {
+              inject(components.get(c), random);
+              injected.incrementAndGet();
+
+            } catch (Throwable t) {
+              fail("injecting " + components.get(c).getName(), t);
+            }
+
+            LockSupport.parkNanos((long) (random.nextDouble() * 2 * pauseNanos));
+          }
+        }
+      };
+    }
+
+    private Thread reader(final int n, final long deadline) {
+      return new Thread("twine-race-reader-" + n) {
+        @Override
+        public void run() {
+          Random random = new Random(seed - n - 1);
+
+          // keep going until everything is injected, so the last ones are
+          // checked too
+          while (System.currentTimeMillis() < deadline || next.get() < components.size()) {
+            try {
+              check(random);
+              checks.incrementAndGet();
+
+            } catch (Throwable t) {
+              fail("checking", t);
+            }
+          }
+        }
+      };
+    }
+
+    private void inject(Class<?> component, Random random) throws Exception {
+      int kind = Integer.parseInt(component.getSimpleName().substring("Component".length())) % 3;
+
+      if (kind == 2) {
+        ScriptProxy proxy = new ScriptProxy(component);
+
+        for (Method m : component.getDeclaredMethods()) {
+          published(m, MethodRegistry.register(m));
+        }
+
+        scripts.add(proxy);
+
+      } else {
+        for (Method m : component.getDeclaredMethods()) {
+          // as with TwineLazyInjection, some are only bound on first use
+          int id = random.nextBoolean() ? MethodRegistry.register(m) : MethodRegistry.reserve(m);
+          published(m, id);
+
+          (kind == 0 ? services : filters).add(m);
+        }
+      }
+
+      registerConverter(component);
+      converted.add(component);
+    }
+
+    private static <T> void registerConverter(Class<T> component) {
+      Converters.register(String.class, component, new InstanceConverter<T>(component));
+    }
+
+    private void published(Method m, int id) {
+      Integer previous = ids.put(m, Integer.valueOf(id));
+
+      if (previous != null && previous.intValue() != id) {
+        fail(m.getName() + " was registered as " + previous + " then " + id, null);
+      }
+    }
+
+    private void check(Random random) throws Exception {
+      switch (random.nextInt(6)) {
+      case 0:
+        checkBinding(random);
+        break;
+
+      case 1:
+        checkRegistered(random);
+        break;
+
+      case 2:
+        checkService(random);
+        break;
+
+      case 3:
+        checkFilter(random);
+        break;
+
+      case 4:
+        checkFunction(random);
+        break;
+
+      default:
+        checkConverter(random);
+      }
+    }
+
+    private void checkBinding(Random random) {
+      int size = MethodRegistry.size();
+
+      if (size == 0) {
+        return;
+      }
+
+      int id = random.nextBoolean() ? size - 1 - random.nextInt(Math.min(size, RECENT)) : random.nextInt(size);
+      MethodBinding binding = MethodRegistry.getBinding(id);
+
+      if (binding == null) {
+        fail("no binding for " + id + " of " + size, null);
+        return;
+      }
+
+      if (binding.getId() != id) {
+        fail("binding for " + id + " has ID " + binding.getId(), null);
+      }
+
+      if (binding.getMethod() != MethodRegistry.getMethod(id)) {
+        fail("binding for " + id + " is for " + binding.getMethod() + ", not " + MethodRegistry.getMethod(id), null);
+      }
+
+      if (MethodRegistry.getBinding(id) != binding) {
+        fail("method " + id + " was bound twice", null);
+      }
+    }
+
+    private void checkRegistered(Random random) {
+      Method m = pick(services.isEmpty() || random.nextBoolean() ? filters : services, random);
+
+      if (m == null) {
+        return;
+      }
+
+      int expected = ids.get(m).intValue();
+      int id = MethodRegistry.register(m);
+
+      if (id != expected) {
+        fail(m + " was given " + expected + " but registering it again returned " + id, null);
+      }
+
+      if (MethodRegistry.getMethod(id) != m) {
+        fail(id + " is " + MethodRegistry.getMethod(id) + ", not " + m, null);
+      }
+    }
+
+    private void checkService(Random random) throws Exception {
+      Method m = pick(services, random);
+
+      if (m == null) {
+        return;
+      }
+
+      String id = ids.get(m).toString();
+      ServiceProxy service = StandIns.service(new ServiceProxy(), id);
+      service.getBinder().putLocal("dID", String.valueOf(random.nextInt(100000) + 1));
+      service.getBinder().putLocal("dDocName", "RACE");
+
+      long before = invocations(id);
+      service.delegateWithParameters();
+      checkCounted(m, id, before);
+    }
+
+    private void checkFilter(Random random) throws Exception {
+      Method m = pick(filters, random);
+
+      if (m == null) {
+        return;
+      }
+
+      String id = ids.get(m).toString();
+      Service ctx = StandIns.service(new Service(), null);
+      ctx.setCachedObject("filterParameter", id);
+
+      long before = invocations(id);
+      int result = new FilterProxy().doFilter(null, ctx.getBinder(), ctx);
+
+      if (result != 0) {
+        fail(m + " returned " + result + " through the filter proxy", null);
+      }
+
+      checkCounted(m, id, before);
+    }
+
+    private void checkFunction(Random random) throws Exception {
+      ScriptProxy proxy = pick(scripts, random);
+
+      if (proxy == null) {
+        return;
+      }
+
+      String name = proxy.getFunctionTable()[random.nextInt(proxy.getFunctionTable().length)];
+      ScriptInfo info = StandIns.function(proxy, name);
+      Long value = Long.valueOf(random.nextLong());
+      Object[] args = { value, "race", null };
+
+      proxy.evaluateFunction(info, args, StandIns.service(new Service(), null));
+
+      if (!value.equals(args[2])) {
+        fail(name + " returned " + args[2] + " for " + value, null);
+      }
+    }
+
+    private void checkConverter(Random random) {
+      Class<?> component = pick(converted, random);
+
+      if (component == null) {
+        return;
+      }
+
+      IConverter<Object, Object> converter = Converters.find(String.class, component);
+
+      if (converter == null) {
+        fail("no converter from String to " + component.getName() + " after it was registered", null);
+        return;
+      }
+
+      Object value = converter.convert("race");
+
+      if (!component.isInstance(value)) {
+        fail("the converter to " + component.getName() + " returned " + value, null);
+      }
+    }
+
+    private static long invocations(String id) {
+      MethodBinding binding = MethodRegistry.getBinding(id);
+
+      return (binding == null || binding.getMetrics() == null) ? 0 : binding.getMetrics().getInvocations();
+    }
+
+    private void checkCounted(Method m, String id, long before) {
+      MethodBinding binding = MethodRegistry.getBinding(id);
+
+      if (binding.getMethod() != m) {
+        fail(id + " called " + binding.getMethod() + ", not " + m, null);
+      }
+
+      if (binding.getMetrics() != null && binding.getMetrics().getInvocations() <= before) {
+        fail("the call to " + m + " wasn't counted against binding " + id, null);
+      }
+    }
+
+    /**
+     * Half the time one of the last few injected, so readers meet on methods
+     * which are still being bound.
+     */
+    private static <T> T pick(List<T> list, Random random) {
+      int size = list.size();
+
+      if (size == 0) {
+        return null;
+      }
+
+      return list.get(random.nextBoolean() ? size - 1 - random.nextInt(Math.min(size, RECENT)) : random.nextInt(size));
+    }
+
+    private void fail(String message, Throwable t) {
+      StringBuilder sb = new StringBuilder(Thread.currentThread().getName()).append(": ").append(message);
+
+      if (t != null) {
+        StringWriter trace = new StringWriter();
+        t.printStackTrace(new PrintWriter(trace));
+        sb.append('\n').append(trace);
+      }
+
+      failures.add(sb.toString());
+    }
+  }
+
+  /**
+   * Converts any string to a new instance of a generated class.
+   */
+  private static class InstanceConverter<T> implements IConverter<String, T> {
+
+    private final Class<T> component;
+
+    private InstanceConverter(Class<T> component) {
+      this.component = component;
+    }
+
+    public T convert(String value) {
+      try {
+        return component.newInstance();
+
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.ucmtwine.benchmarks.scaling;
+
+import intradoc.common.ScriptInfo;
+import intradoc.data.DataBinder;
+import intradoc.server.Service;
+
+import java.util.concurrent.TimeUnit;
+
+import net.balusc.util.ObjectConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ucmtwine.benchmarks.BenchmarkComponent;
+import org.ucmtwine.benchmarks.StandIns;
+import org.ucmtwine.proxy.FilterProxy;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.ServiceProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+/**
+ * Calls through the Twine proxies from many threads at once, as a server
+ * with a few hundred request threads does. Each thread has its own service
+ * and binder, as each request does, while the registry, converters, metrics
+ * and Idoc script proxy are shared. Run with {@link ScalingHarness} to sweep
+ * the thread count.
+ * 
+ * <p>
+ * <code>registryLookup</code> and <code>converterLookup</code> call just the
+ * MethodRegistry and ObjectConverter tables, so contention in either shows up
+ * on its own.
+ * </p>
+ * 
+ * @author tim
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmarks {
+
+  /**
+   * Registered once, shared by every thread.
+   */
+  @State(Scope.Benchmark)
+  public static class Shared {
+
+    private String echoId;
+
+    private String validateId;
+
+    private int echoIndex;
+
+    private ScriptProxy scriptProxy;
+
+    @Setup
+    public void setUp() throws Exception {
+      echoId = MethodRegistry.addMethod(BenchmarkComponent.class.getMethod("echo", Long.class, String.class,
+          DataBinder.class));
+      validateId = MethodRegistry.addMethod(BenchmarkComponent.class.getMethod("validate", DataBinder.class));
+      echoIndex = Integer.parseInt(echoId);
+
+      scriptProxy = new ScriptProxy(BenchmarkComponent.class);
+    }
+  }
+
+  /**
+   * One request thread's service, filter context and script arguments.
+   */
+  @State(Scope.Thread)
+  public static class Request {
+
+    private ServiceProxy serviceProxy;
+
+    private FilterProxy filterProxy;
+
+    private Service filterContext;
+
+    private Service scriptContext;
+
+    private ScriptInfo function;
+
+    private final Object[] functionArgs = { Long.valueOf(40), Long.valueOf(2), null };
+
+    @Setup
+    public void setUp(Shared shared) throws Exception {
+      serviceProxy = StandIns.service(new ServiceProxy(), shared.echoId);
+      StandIns.putDocument(serviceProxy.getBinder());
+
+      filterProxy = new FilterProxy();
+      filterContext = StandIns.service(new Service(), null);
+      filterContext.setCachedObject("filterParameter", shared.validateId);
+      StandIns.putDocument(filterContext.getBinder());
+
+      scriptContext = StandIns.service(new Service(), null);
+      function = StandIns.function(shared.scriptProxy, "twineAdd");
+    }
+  }
+
+  @Benchmark
+  public void service(Request request) throws Exception {
+    request.serviceProxy.delegateWithParameters();
+  }
+
+  @Benchmark
+  public int filter(Request request) throws Exception {
+    return request.filterProxy.doFilter(null, request.filterContext.getBinder(), request.filterContext);
+  }
+
+  @Benchmark
+  public Object function(Shared shared, Request request) throws Exception {
+    shared.scriptProxy.evaluateFunction(request.function, request.functionArgs, request.scriptContext);
+    return request.functionArgs[2];
+  }
+
+  @Benchmark
+  public MethodBinding registryLookup(Shared shared) {
+    return MethodRegistry.getBinding(shared.echoIndex);
+  }
+
+  @Benchmark
+  public Long converterLookup() {
+    return ObjectConverter.convert("1234", Long.class);
+  }
+}
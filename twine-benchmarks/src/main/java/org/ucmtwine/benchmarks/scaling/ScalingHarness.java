@@ -0,0 +1,264 @@
+package org.ucmtwine.benchmarks.scaling;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ScalingBenchmarks} at each thread count, then prints, for each
+ * benchmark, the throughput and p99 latency against the thread count, and
+ * flags where it stops scaling or the threads wait on each other.
+ * 
+ * <pre>
+ * java -cp benchmarks.jar org.ucmtwine.benchmarks.scaling.ScalingHarness \
+ *   [--threads 1,2,4,8,16,32,64,128,256] [--include service|filter] [--csv scaling.csv]
+ * </pre>
+ * 
+ * <p>
+ * A benchmark is flagged <code>contended</code> when more than
+ * {@value #WAITING_LIMIT}% of the thread samples were waiting on a lock, and
+ * <code>poor scaling</code> when its throughput is less than half of linear
+ * scaling from one thread, up to the number of processors. The sites the
+ * threads waited at are printed under the table.
+ * </p>
+ * 
+ * @author tim
+ */
+public final class ScalingHarness {
+
+  public static final double WAITING_LIMIT = 5;
+
+  public static final double EFFICIENCY_LIMIT = 0.5;
+
+  private static final int BAR_WIDTH = 40;
+
+  private ScalingHarness() {
+    // Utility class, hide the constructor.
+  }
+
+  public static void main(String[] args) throws Exception {
+    int[] threadCounts = { 1, 2, 4, 8, 16, 32, 64, 128, 256 };
+    String include = ".*";
+    String csv = null;
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+
+      if (arg.equals("--threads")) {
+        threadCounts = parseList(args[++i]);
+      } else if (arg.equals("--include")) {
+        include = args[++i];
+      } else if (arg.equals("--csv")) {
+        csv = args[++i];
+      } else {
+        System.err.println("Unknown option " + arg);
+        System.err.println("Options: --threads n,.. --include regex --csv file");
+        System.exit(1);
+      }
+    }
+
+    // benchmark name, then a point for each thread count
+    Map<String, List<Point>> series = new LinkedHashMap<String, List<Point>>();
+
+    for (int threads : threadCounts) {
+      Options options = new OptionsBuilder().include(ScalingBenchmarks.class.getName() + "\\.(" + include + ")$")
+          .threads(threads).addProfiler(ContentionProfiler.class).shouldFailOnError(true).build();
+
+      Collection<RunResult> results = new Runner(options).run();
+
+      for (RunResult result : results) {
+        String name = result.getParams().getBenchmark();
+        name = name.substring(name.lastIndexOf('.') + 1);
+
+        List<Point> points = series.get(name);
+
+        if (points == null) {
+          points = new ArrayList<Point>();
+          series.put(name, points);
+        }
+
+        Point point = find(points, threads);
+        point.add(result);
+      }
+    }
+
+    int processors = Runtime.getRuntime().availableProcessors();
+
+    System.out.println();
+    System.out.println("# " + processors + " processors, throughput in ops/us and p99 in us");
+
+    for (Map.Entry<String, List<Point>> entry : series.entrySet()) {
+      report(entry.getKey(), entry.getValue(), processors);
+    }
+
+    if (csv != null) {
+      writeCsv(csv, series);
+    }
+  }
+
+  private static void report(String name, List<Point> points, int processors) {
+    double base = points.get(0).throughput / points.get(0).threads;
+    double max = 0;
+
+    for (Point point : points) {
+      max = Math.max(max, point.throughput);
+    }
+
+    System.out.println();
+    System.out.println(name);
+    System.out.println(String.format("  %7s %12s %10s %8s %8s  %-" + BAR_WIDTH + "s  %s", "threads", "ops/us",
+        "p99 us", "scaling", "waiting", "throughput", ""));
+
+    for (Point point : points) {
+      double linear = base * Math.min(point.threads, processors);
+      double efficiency = (linear > 0) ? point.throughput / linear : 0;
+      int bar = (max > 0) ? (int) Math.round(BAR_WIDTH * point.throughput / max) : 0;
+
+      List<String> flags = new ArrayList<String>();
+
+      if (point.waitingPct > WAITING_LIMIT) {
+        flags.add("contended");
+      }
+
+      if (efficiency < EFFICIENCY_LIMIT) {
+        flags.add("poor scaling");
+      }
+
+      System.out.println(String.format("  %7d %12.2f %10.2f %7.0f%% %7.1f%%  %-" + BAR_WIDTH + "s  %s",
+          point.threads, point.throughput, point.p99, efficiency * 100, point.waitingPct, repeat('#', bar),
+          join(flags)));
+    }
+
+    for (Point point : points) {
+      if (point.waitingPct > WAITING_LIMIT && point.sites != null) {
+        System.out.println("  waiting at " + point.threads + " threads:");
+        System.out.print(point.sites);
+      }
+    }
+  }
+
+  private static void writeCsv(String file, Map<String, List<Point>> series) throws IOException {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+
+    try {
+      out.println("benchmark,threads,ops_per_us,p99_us,waiting_pct,blocked_per_s");
+
+      for (Map.Entry<String, List<Point>> entry : series.entrySet()) {
+        for (Point point : entry.getValue()) {
+          out.println(entry.getKey() + "," + point.threads + "," + point.throughput + "," + point.p99 + ","
+              + point.waitingPct + "," + point.blocked);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static Point find(List<Point> points, int threads) {
+    for (Point point : points) {
+      if (point.threads == threads) {
+        return point;
+      }
+    }
+
+    Point point = new Point(threads);
+    points.add(point);
+
+    return point;
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+      sb.append(c);
+    }
+
+    return sb.toString();
+  }
+
+  private static String join(List<String> items) {
+    StringBuilder sb = new StringBuilder();
+
+    for (String item : items) {
+      sb.append((sb.length() > 0) ? ", " : "").append(item);
+    }
+
+    return sb.toString();
+  }
+
+  private static int[] parseList(String list) {
+    String[] items = list.split(",");
+    int[] values = new int[items.length];
+
+    for (int i = 0; i < items.length; i++) {
+      values[i] = Integer.parseInt(items[i].trim());
+    }
+
+    return values;
+  }
+
+  /**
+   * One benchmark at one thread count, from its throughput and sample time
+   * runs.
+   */
+  private static class Point {
+
+    private final int threads;
+
+    private double throughput;
+
+    private double p99;
+
+    private double waitingPct;
+
+    private double blocked;
+
+    private String sites;
+
+    private Point(int threads) {
+      this.threads = threads;
+    }
+
+    private void add(RunResult result) {
+      Result<?> primary = result.getPrimaryResult();
+
+      if (result.getParams().getMode() == Mode.Throughput) {
+        throughput = primary.getScore();
+      } else {
+        p99 = primary.getStatistics().getPercentile(99);
+      }
+
+      Map<String, Result> secondary = result.getSecondaryResults();
+
+      // the higher of the two runs
+      waitingPct = Math.max(waitingPct, score(secondary, ContentionProfiler.WAITING_PCT));
+      blocked = Math.max(blocked, score(secondary, ContentionProfiler.BLOCKED));
+
+      Result<?> text = secondary.get(ContentionProfiler.SITES);
+
+      if (text != null && sites == null) {
+        sites = text.extendedInfo();
+      }
+    }
+
+    private static double score(Map<String, Result> results, String label) {
+      Result<?> result = results.get(label);
+
+      return (result == null) ? 0 : result.getScore();
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.ucmtwine.BootstrapPhase")
+@Label("Twine Bootstrap Phase")
+@Description("A phase of loading the classes listed in the twine.properties files")
+@Category("Twine")
+@StackTrace(false)
+class BootstrapPhaseEvent extends Event {
+
+  @Label("Phase")
+  @Description("read, resolve, converters, scan or register, or marshaller or definitions within scan")
+  String phase;
+
+  @Label("Count")
+  @Description("The number of files, classes, parameters or script methods handled")
+  int count;
+}
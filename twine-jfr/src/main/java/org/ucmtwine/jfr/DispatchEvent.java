@@ -0,0 +1,33 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by the events for calls of Twine methods.
+ * 
+ * @author tim
+ */
+@Category("Twine")
+@StackTrace(false)
+abstract class DispatchEvent extends Event {
+
+  @Label("Method ID")
+  @Description("The Twine method registry ID")
+  int methodId;
+
+  @Label("Method")
+  @Description("The class and method name")
+  String methodName;
+
+  @Label("Argument Count")
+  @Description("The number of parameters taken from the binder or script, not counting injected ones")
+  int argumentCount;
+
+  @Label("Failed")
+  @Description("Whether the call threw")
+  boolean failed;
+}
@@ -0,0 +1,11 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.ucmtwine.Filter")
+@Label("Twine Filter")
+@Description("A Twine filter method called by FilterProxy")
+class FilterEvent extends DispatchEvent {
+}
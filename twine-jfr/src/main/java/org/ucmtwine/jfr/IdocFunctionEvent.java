@@ -0,0 +1,11 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.ucmtwine.IdocFunction")
+@Label("Twine Idoc Function")
+@Description("A Twine Idoc script function, including cache lookups")
+class IdocFunctionEvent extends DispatchEvent {
+}
@@ -0,0 +1,11 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.ucmtwine.IdocVariable")
+@Label("Twine Idoc Variable")
+@Description("A Twine Idoc script variable, including cache lookups")
+class IdocVariableEvent extends DispatchEvent {
+}
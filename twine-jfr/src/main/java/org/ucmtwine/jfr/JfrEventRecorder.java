@@ -0,0 +1,140 @@
+package org.ucmtwine.jfr;
+
+import java.lang.reflect.Method;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.proxy.MethodBinding;
+
+/**
+ * Emits a JDK Flight Recorder event for each Twine dispatch and bootstrap
+ * phase.
+ * 
+ * <p>
+ * Twine creates one when it starts, if this module is on the class path. It
+ * installs itself with {@link DispatchEvents} and listens for recordings,
+ * making itself active only while one is running, so Twine pays nothing for it
+ * the rest of the time. Events which are switched off in the recording's
+ * settings are skipped without being timed.
+ * </p>
+ * 
+ * @author tim
+ */
+public class JfrEventRecorder implements IEventRecorder, FlightRecorderListener {
+
+  static {
+    // once per class loader
+    FlightRecorder.register(ServiceActionEvent.class);
+    FlightRecorder.register(FilterEvent.class);
+    FlightRecorder.register(IdocFunctionEvent.class);
+    FlightRecorder.register(IdocVariableEvent.class);
+    FlightRecorder.register(ParameterBindingEvent.class);
+    FlightRecorder.register(BootstrapPhaseEvent.class);
+  }
+
+  public JfrEventRecorder() {
+    DispatchEvents.install(this);
+    FlightRecorder.addListener(this);
+
+    DispatchEvents.setRecording(isRecording());
+  }
+
+  @Override
+  public Object begin(int kind) {
+    if (kind == DispatchEvents.BOOTSTRAP) {
+      BootstrapPhaseEvent event = new BootstrapPhaseEvent();
+
+      if (!event.isEnabled()) {
+        return null;
+      }
+
+      event.begin();
+      return event;
+    }
+
+    DispatchEvent event = newDispatchEvent(kind);
+
+    if (event == null || !event.isEnabled()) {
+      return null;
+    }
+
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endDispatch(Object event, MethodBinding binding, boolean failed) {
+    DispatchEvent e = (DispatchEvent) event;
+    e.end();
+
+    if (e.shouldCommit()) {
+      Method method = binding.getMethod();
+
+      e.methodId = binding.getId();
+      e.methodName = method.getDeclaringClass().getName() + "." + method.getName();
+      e.argumentCount = binding.getMarshaller().getParameterCount(false);
+      e.failed = failed;
+      e.commit();
+    }
+  }
+
+  @Override
+  public void endPhase(Object event, String phase, int count) {
+    BootstrapPhaseEvent e = (BootstrapPhaseEvent) event;
+    e.end();
+
+    if (e.shouldCommit()) {
+      e.phase = phase;
+      e.count = count;
+      e.commit();
+    }
+  }
+
+  @Override
+  public void recordingStateChanged(Recording recording) {
+    DispatchEvents.setRecording(isRecording());
+  }
+
+  private static DispatchEvent newDispatchEvent(int kind) {
+    switch (kind) {
+    case DispatchEvents.SERVICE:
+      return new ServiceActionEvent();
+    case DispatchEvents.FILTER:
+      return new FilterEvent();
+    case DispatchEvents.FUNCTION:
+      return new IdocFunctionEvent();
+    case DispatchEvents.VARIABLE:
+      return new IdocVariableEvent();
+    case DispatchEvents.BINDING:
+      return new ParameterBindingEvent();
+    case DispatchEvents.ADAPTED_BINDING:
+      ParameterBindingEvent adapted = new ParameterBindingEvent();
+      adapted.includesCall = true;
+      return adapted;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Is any recording running? Doesn't start the recorder if it isn't already.
+   */
+  private static boolean isRecording() {
+    if (!FlightRecorder.isInitialized()) {
+      return false;
+    }
+
+    for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+      if (recording.getState() == RecordingState.RUNNING) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
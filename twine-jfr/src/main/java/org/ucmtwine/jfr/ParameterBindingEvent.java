@@ -0,0 +1,15 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.ucmtwine.ParameterBinding")
+@Label("Twine Parameter Binding")
+@Description("Reading and converting the parameters of a Twine method")
+class ParameterBindingEvent extends DispatchEvent {
+
+  @Label("Includes Call")
+  @Description("Whether the method call is included, as a generated adapter binds as it calls")
+  boolean includesCall;
+}
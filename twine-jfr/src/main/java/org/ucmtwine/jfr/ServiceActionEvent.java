@@ -0,0 +1,11 @@
+package org.ucmtwine.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.ucmtwine.ServiceAction")
+@Label("Twine Service Action")
+@Description("A Twine service method called by ServiceProxy")
+class ServiceActionEvent extends DispatchEvent {
+}
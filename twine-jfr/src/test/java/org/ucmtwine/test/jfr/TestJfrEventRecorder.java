@@ -0,0 +1,107 @@
+package org.ucmtwine.test.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ucmtwine.events.DispatchEvents;
+import org.ucmtwine.events.IEventRecorder;
+import org.ucmtwine.jfr.JfrEventRecorder;
+import org.ucmtwine.proxy.MethodBinding;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+public class TestJfrEventRecorder {
+
+  public static class RecordedPackage {
+    public void recorded(String a, Long b) {
+    }
+  }
+
+  private File file;
+
+  @After
+  public void tearDown() {
+    DispatchEvents.install(null);
+
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testRecorder_ShouldOnlyBeActiveWhileRecording() {
+    new JfrEventRecorder();
+    assertNull(DispatchEvents.getRecorder());
+
+    Recording recording = new Recording();
+    recording.start();
+
+    assertNotNull(DispatchEvents.getRecorder());
+
+    recording.stop();
+    recording.close();
+
+    assertNull(DispatchEvents.getRecorder());
+  }
+
+  @Test
+  public void testRecorder_ShouldEmitDispatchAndPhaseEvents() throws Exception {
+    MethodBinding binding = MethodRegistry.getBinding(MethodRegistry.register(RecordedPackage.class.getMethod(
+        "recorded", String.class, Long.class)));
+
+    Recording recording = new Recording();
+    recording.enable("org.ucmtwine.ServiceAction");
+    recording.enable("org.ucmtwine.BootstrapPhase");
+    recording.disable("org.ucmtwine.Filter");
+    recording.start();
+
+    new JfrEventRecorder();
+    IEventRecorder events = DispatchEvents.getRecorder();
+
+    events.endDispatch(events.begin(DispatchEvents.SERVICE), binding, true);
+    events.endPhase(events.begin(DispatchEvents.BOOTSTRAP), "scan", 3);
+
+    // switched off in the recording
+    assertNull(events.begin(DispatchEvents.FILTER));
+
+    recording.stop();
+
+    file = File.createTempFile("twine", ".jfr");
+    recording.dump(file.toPath());
+    recording.close();
+
+    List<RecordedEvent> recorded = RecordingFile.readAllEvents(file.toPath());
+    boolean foundService = false;
+    boolean foundPhase = false;
+
+    for (RecordedEvent event : recorded) {
+      String name = event.getEventType().getName();
+
+      if (name.equals("org.ucmtwine.ServiceAction")) {
+        foundService = true;
+        assertEquals(binding.getId(), event.getInt("methodId"));
+        assertEquals(RecordedPackage.class.getName() + ".recorded", event.getString("methodName"));
+        assertEquals(2, event.getInt("argumentCount"));
+        assertTrue(event.getBoolean("failed"));
+
+      } else if (name.equals("org.ucmtwine.BootstrapPhase")) {
+        foundPhase = true;
+        assertEquals("scan", event.getString("phase"));
+        assertEquals(3, event.getInt("count"));
+      }
+    }
+
+    assertTrue(foundService);
+    assertTrue(foundPhase);
+  }
+}
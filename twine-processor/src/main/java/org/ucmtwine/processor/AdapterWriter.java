@@ -0,0 +1,579 @@
+package org.ucmtwine.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.JavaFileObject;
+
+/**
+ * Writes the source of the binding adapter of one annotated method: a class in
+ * the method's package which implements
+ * <code>org.ucmtwine.proxy.adapter.IMethodAdapter</code>, converts each
+ * parameter to its declared type and calls the method directly.
+ * 
+ * <p>
+ * The generated source only uses Java 5 language features, so it compiles
+ * with the component.
+ * </p>
+ * 
+ * @author tim
+ */
+class AdapterWriter {
+
+  static final String ADAPTER_SUFFIX = "$$TwineAdapter";
+
+  private static final String ADAPTER = "org.ucmtwine.proxy.adapter.IMethodAdapter";
+  private static final String SUPPORT = "org.ucmtwine.proxy.adapter.AdapterSupport";
+  private static final String MARSHALLER = "org.ucmtwine.parameter.ParameterMarshaller";
+  private static final String PARAMETER = "org.ucmtwine.parameter.IParameter";
+  private static final String BOXES = "org.ucmtwine.parameter.Boxes";
+  private static final String SERVICE = "intradoc.server.Service";
+  private static final String TRACE = "org.ucmtwine.trace.Trace";
+  private static final String BINDER = "org.ucmtwine.annotation.Binder";
+  private static final String EXECUTION_CONTEXT = "intradoc.common.ExecutionContext";
+  private static final String WORKSPACE = "intradoc.data.Workspace";
+  private static final String DATA_BINDER = "intradoc.data.DataBinder";
+  private static final String SERVICE_FANOUT = "org.ucmtwine.async.ServiceFanout";
+  private static final String INVOCATION_EXCEPTION = "java.lang.reflect.InvocationTargetException";
+
+  /**
+   * The getter on the service for each injected type, as in InjectedParameter.
+   * Any other ExecutionContext is the service itself.
+   */
+  private static final Map<String, String> INJECTED = new HashMap<String, String>();
+
+  static {
+    INJECTED.put("intradoc.shared.UserData", "service.getUserData()");
+    INJECTED.put("intradoc.server.PageMerger", "service.getPageMerger()");
+    INJECTED.put("intradoc.data.DataBinder", "service.getBinder()");
+    INJECTED.put("intradoc.server.HttpImplementor", "service.getHttpImplementor()");
+    INJECTED.put("intradoc.server.ServiceRequestImplementor", "service.getRequestImplementor()");
+    INJECTED.put("intradoc.data.Workspace", "service.getWorkspace()");
+    INJECTED.put("org.ucmtwine.async.ServiceFanout", "new org.ucmtwine.async.ServiceFanout(service)");
+  }
+
+  /**
+   * The binder value types which are parsed by the adapter, and the
+   * AdapterSupport method which parses them.
+   */
+  private static final Map<String, String> PARSED = new HashMap<String, String>();
+
+  static {
+    PARSED.put("java.lang.String", "parseString");
+    PARSED.put("java.lang.Integer", "parseInteger");
+    PARSED.put("int", "parseInteger");
+    PARSED.put("java.lang.Long", "parseLong");
+    PARSED.put("long", "parseLong");
+    PARSED.put("java.lang.Float", "parseFloat");
+    PARSED.put("float", "parseFloat");
+    PARSED.put("java.lang.Double", "parseDouble");
+    PARSED.put("double", "parseDouble");
+    PARSED.put("java.lang.Boolean", "parseBoolean");
+    PARSED.put("boolean", "parseBoolean");
+  }
+
+  private final ProcessingEnvironment processingEnv;
+
+  AdapterWriter(ProcessingEnvironment processingEnv) {
+    this.processingEnv = processingEnv;
+  }
+
+  /**
+   * Can a class in the method's package call it directly? The method and every
+   * type in its signature must be visible from the package.
+   * 
+   * @param type
+   *          The class declaring the method
+   * @param method
+   * @return
+   */
+  boolean canAdapt(TypeElement type, ExecutableElement method) {
+    Set<Modifier> modifiers = method.getModifiers();
+
+    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)) {
+      return false;
+    }
+
+    if (type.getKind() != ElementKind.CLASS && type.getKind() != ElementKind.ENUM) {
+      return false;
+    }
+
+    if (!isVisible(type) || !isVisible(method.getReturnType())) {
+      return false;
+    }
+
+    for (VariableElement parameter : method.getParameters()) {
+      if (!isVisible(parameter.asType())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean isVisible(TypeMirror type) {
+    TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+    if (erased.getKind() == TypeKind.ARRAY) {
+      return isVisible(((ArrayType) erased).getComponentType());
+    }
+
+    if (erased.getKind() == TypeKind.DECLARED) {
+      return isVisible((TypeElement) ((DeclaredType) erased).asElement());
+    }
+
+    // primitives and void
+    return true;
+  }
+
+  private static boolean isVisible(TypeElement type) {
+    Element element = type;
+
+    while (element instanceof TypeElement) {
+      TypeElement t = (TypeElement) element;
+
+      if (t.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+
+      if (t.getNestingKind() != NestingKind.TOP_LEVEL && t.getNestingKind() != NestingKind.MEMBER) {
+        return false;
+      }
+
+      element = t.getEnclosingElement();
+    }
+
+    return true;
+  }
+
+  /**
+   * The binary name of the adapter of a method.
+   * 
+   * @param className
+   *          The binary name of the declaring class
+   * @param number
+   *          The method's number in the index
+   * @return
+   */
+  static String adapterName(String className, int number) {
+    return className + ADAPTER_SUFFIX + number;
+  }
+
+  /**
+   * Write the adapter source.
+   * 
+   * @param type
+   *          The class declaring the method
+   * @param method
+   * @param adapterName
+   *          The binary name of the adapter
+   * @throws IOException
+   */
+  void write(TypeElement type, ExecutableElement method, String adapterName) throws IOException {
+    JavaFileObject file = processingEnv.getFiler().createSourceFile(adapterName, type);
+    Writer out = file.openWriter();
+
+    try {
+      out.write(generate(type, method, adapterName));
+    } finally {
+      out.close();
+    }
+  }
+
+  String generate(TypeElement type, ExecutableElement method, String adapterName) {
+    PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+    String simpleName = pkg.isUnnamed() ? adapterName : adapterName.substring(pkg.getQualifiedName().length() + 1);
+
+    boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+    List<? extends VariableElement> parameters = method.getParameters();
+    int count = parameters.size();
+
+    String targetType = sourceName(type.asType());
+    TypeMirror returnType = method.getReturnType();
+
+    StringBuilder src = new StringBuilder();
+
+    if (!pkg.isUnnamed()) {
+      src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+    }
+
+    src.append("/**\n");
+    src.append(" * Binding adapter for ").append(targetType).append('.').append(method.getSimpleName())
+        .append("(), generated by ").append(AnnotationIndexProcessor.class.getName()).append(".\n");
+    src.append(" */\n");
+    src.append("@SuppressWarnings(\"all\")\n");
+    src.append("public final class ").append(simpleName).append(" implements ").append(ADAPTER).append(" {\n\n");
+
+    src.append("  private final ").append(MARSHALLER).append(" marshaller;\n");
+
+    for (int i = 0; i < count; i++) {
+      src.append("  private final ").append(PARAMETER).append(" p").append(i).append(";\n");
+    }
+
+    // constructor
+    src.append("\n  public ").append(simpleName).append("(").append(MARSHALLER).append(" marshaller) {\n");
+    src.append("    this.marshaller = marshaller;\n");
+
+    if (count > 0) {
+      src.append("    java.util.List<").append(PARAMETER).append("> parameters = marshaller.getParameters();\n");
+    }
+
+    for (int i = 0; i < count; i++) {
+      src.append("    this.p").append(i).append(" = parameters.get(").append(i).append(");\n");
+    }
+
+    src.append("  }\n");
+
+    // Each parameter is read and converted in place, so every adapter has its
+    // own call sites, and the parameter objects are only called for the types
+    // the adapter can't convert itself.
+    String[] values = new String[count];
+    String[] binderValues = new String[count];
+    String[] argumentValues = new String[count];
+    String[] filterValues = new String[count];
+    StringBuilder fallbacks = new StringBuilder();
+    int argument = 0;
+
+    for (int i = 0; i < count; i++) {
+      VariableElement parameter = parameters.get(i);
+      TypeMirror parameterType = parameter.asType();
+      String injected = injectedValue(parameterType);
+
+      values[i] = convert(parameterType, i, "values[" + i + "]");
+      filterValues[i] = convert(parameterType, i, filterValue(parameterType, i, fallbacks));
+
+      if (injected != null) {
+        binderValues[i] = convert(parameterType, i, injected);
+        argumentValues[i] = binderValues[i];
+        continue;
+      }
+
+      binderValues[i] = convert(parameterType, i, binderValue(parameter, i, fallbacks));
+      argumentValues[i] = argumentValue(parameterType, i, argument++, fallbacks);
+    }
+
+    appendEntry(src, "invoke(Object target, Object[] values)", isStatic, targetType, values);
+    appendEntry(src, "invokeService(Object target, " + SERVICE + " service)", isStatic, targetType, binderValues);
+    appendEntry(src, "invokeScript(Object target, Object[] arguments, " + SERVICE + " service)", isStatic,
+        targetType, argumentValues);
+    appendEntry(src, "invokeFilter(Object target, " + WORKSPACE + " ws, " + DATA_BINDER + " binder, "
+        + EXECUTION_CONTEXT + " ctx)", isStatic, targetType, filterValues);
+
+    src.append(fallbacks);
+
+    // the direct call
+    src.append("\n  private static Object call(");
+
+    StringBuilder args = new StringBuilder();
+
+    if (!isStatic) {
+      src.append(targetType).append(" target");
+    }
+
+    for (int i = 0; i < count; i++) {
+      if (i > 0 || !isStatic) {
+        src.append(", ");
+      }
+      if (i > 0) {
+        args.append(", ");
+      }
+      src.append(sourceName(parameters.get(i).asType())).append(" a").append(i);
+      args.append('a').append(i);
+    }
+
+    src.append(") throws ").append(INVOCATION_EXCEPTION).append(" {\n");
+    src.append("    try {\n");
+
+    String call = (isStatic ? targetType : "target") + "." + method.getSimpleName() + "(" + args + ")";
+
+    if (returnType.getKind() == TypeKind.VOID) {
+      src.append("      ").append(call).append(";\n");
+      src.append("      return null;\n");
+
+    } else if (returnType.getKind().isPrimitive()) {
+      src.append("      return ").append(SUPPORT).append(".box(").append(call).append(");\n");
+
+    } else {
+      src.append("      return ").append(call).append(";\n");
+    }
+
+    src.append("    } catch (Throwable e) {\n");
+    src.append("      throw new ").append(INVOCATION_EXCEPTION).append("(e);\n");
+    src.append("    }\n");
+    src.append("  }\n");
+    src.append("}\n");
+
+    return src.toString();
+  }
+
+  private static void appendEntry(StringBuilder src, String signature, boolean isStatic, String targetType,
+      String[] values) {
+    src.append("\n  public Object ").append(signature).append(" throws ").append(INVOCATION_EXCEPTION)
+        .append(" {\n");
+    src.append("    return call(");
+
+    if (!isStatic) {
+      src.append("(").append(targetType).append(") target");
+    }
+
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0 || !isStatic) {
+        src.append(",");
+      }
+      src.append("\n        ").append(values[i]);
+    }
+
+    src.append(");\n");
+    src.append("  }\n");
+  }
+
+  /**
+   * The service getter for an injected type, as in InjectedParameter, or null.
+   */
+  private String injectedValue(TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+
+    String injected = INJECTED.get(sourceName(type));
+
+    if (injected != null) {
+      return injected;
+    }
+
+    TypeElement context = processingEnv.getElementUtils().getTypeElement(EXECUTION_CONTEXT);
+
+    if (context != null && processingEnv.getTypeUtils().isAssignable(type, context.asType())) {
+      return "service";
+    }
+
+    return null;
+  }
+
+  /**
+   * The expression injecting a parameter from the filter arguments, as in
+   * ParameterMarshaller.getValueArray(ws, binder, ctx). Parameters of any other
+   * type are null.
+   */
+  private String filterValue(TypeMirror type, int index, StringBuilder fallbacks) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return "null";
+    }
+
+    String name = sourceName(type);
+
+    if (name.equals(WORKSPACE)) {
+      return "ws";
+    }
+
+    if (name.equals(DATA_BINDER)) {
+      return "binder";
+    }
+
+    TypeElement context = processingEnv.getElementUtils().getTypeElement(EXECUTION_CONTEXT);
+
+    if (context != null && processingEnv.getTypeUtils().isAssignable(context.asType(), type)) {
+      return "ctx";
+    }
+
+    if (!name.equals(SERVICE_FANOUT)) {
+      return "null";
+    }
+
+    fallbacks.append("\n  private Object fanout").append(index).append("(").append(WORKSPACE).append(" ws, ")
+        .append(DATA_BINDER).append(" binder, ").append(EXECUTION_CONTEXT).append(" ctx) {\n");
+    fallbacks.append("    try {\n");
+    fallbacks.append("      return new ").append(SERVICE_FANOUT)
+        .append("(ws, binder, (ctx == null) ? null : (intradoc.shared.UserData) ctx.getCachedObject(\"UserData\"));\n");
+    fallbacks.append("    } catch (ClassCastException e) {\n");
+    fallbacks.append("      ").append(TRACE).append(".failed(").append(TRACE)
+        .append(".BINDER_VALUE, marshaller.getMethodId(), ").append(index + 1).append(", e);\n");
+    fallbacks.append("      return null;\n");
+    fallbacks.append("    }\n");
+    fallbacks.append("  }\n");
+
+    return "fanout" + index + "(ws, binder, ctx)";
+  }
+
+  /**
+   * The expression reading a parameter from the service's binder. A named
+   * binder parameter of a simple type is parsed in place, any other parameter
+   * is read by a method the adapter gets for it.
+   */
+  private String binderValue(VariableElement parameter, int index, StringBuilder fallbacks) {
+    String parse = PARSED.get(processingEnv.getTypeUtils().erasure(parameter.asType()).toString());
+    AnnotationMirror binder = getBinder(parameter);
+
+    if (parse != null && binder != null) {
+      String name = literal((String) getValue(binder, "name"));
+
+      if (!name.equals("\"\"")) {
+        return SUPPORT + "." + parse + "(service.getBinder().getLocal(" + name + "), " + name + ", "
+            + getValue(binder, "required") + ")";
+      }
+    }
+
+    fallbacks.append("\n  private Object binder").append(index).append("(").append(SERVICE)
+        .append(" service) {\n");
+    fallbacks.append("    try {\n");
+    fallbacks.append("      return p").append(index).append(".getBinderValue(service);\n");
+    fallbacks.append("    } catch (IllegalAccessException e) {\n");
+    fallbacks.append("      ").append(TRACE).append(".failed(").append(TRACE)
+        .append(".BINDER_VALUE, marshaller.getMethodId(), ").append(index + 1).append(", e);\n");
+    fallbacks.append("      return null;\n");
+    fallbacks.append("    }\n");
+    fallbacks.append("  }\n");
+
+    return "binder" + index + "(service)";
+  }
+
+  /**
+   * The expression reading a parameter from the script arguments, converted to
+   * the parameter's type. Numbers and booleans take the same shortcuts as
+   * ParameterMarshaller.getArgumentValue(), anything else is read by a method
+   * the adapter gets for it.
+   */
+  private String argumentValue(TypeMirror type, int index, int argument, StringBuilder fallbacks) {
+    String a = "arguments[" + argument + "]";
+    String fallback = "argument" + index + "(" + a + ", service)";
+
+    fallbacks.append("\n  private Object argument").append(index).append("(Object argument, ").append(SERVICE)
+        .append(" service) {\n");
+    fallbacks.append("    try {\n");
+    fallbacks.append("      return p").append(index).append(".getArgumentValue(argument, service);\n");
+    fallbacks.append("    } catch (ClassCastException e) {\n");
+    fallbacks.append("      ").append(TRACE).append(".failed(").append(TRACE)
+        .append(".ARGUMENT, marshaller.getMethodId(), ").append(index + 1).append(", e);\n");
+    fallbacks.append("      return null;\n");
+    fallbacks.append("    }\n");
+    fallbacks.append("  }\n");
+
+    String name = processingEnv.getTypeUtils().erasure(type).toString();
+    boolean primitive = type.getKind().isPrimitive();
+
+    if (name.equals("boolean") || name.equals("java.lang.Boolean")) {
+      String isTrue = "((Long) " + a + ").longValue() == 1L";
+
+      if (primitive) {
+        return a + " instanceof Boolean ? ((Boolean) " + a + ").booleanValue() : " + a + " instanceof Long ? "
+            + isTrue + " : " + convert(type, index, fallback);
+      }
+
+      return convert(type, index, "(" + a + " instanceof Boolean ? " + a + " : " + a + " instanceof Long ? "
+          + SUPPORT + ".box(" + isTrue + ") : " + fallback + ")");
+    }
+
+    String unbox;
+
+    if (name.equals("long") || name.equals("java.lang.Long")) {
+      unbox = "longValue()";
+    } else if (name.equals("int") || name.equals("java.lang.Integer")) {
+      unbox = "intValue()";
+    } else if (name.equals("double") || name.equals("java.lang.Double")) {
+      unbox = "doubleValue()";
+    } else {
+      return convert(type, index, fallback);
+    }
+
+    String number = "((Number) " + a + ")." + unbox;
+
+    if (primitive) {
+      return a + " instanceof Number ? " + number + " : " + convert(type, index, fallback);
+    }
+
+    return convert(type, index, "(" + a + " instanceof Number ? " + BOXES + ".valueOf(" + number + ") : "
+        + fallback + ")");
+  }
+
+  private static AnnotationMirror getBinder(VariableElement parameter) {
+    for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(BINDER)) {
+        return mirror;
+      }
+    }
+
+    return null;
+  }
+
+  private Object getValue(AnnotationMirror mirror, String name) {
+    Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils()
+        .getElementValuesWithDefaults(mirror);
+
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * A string as a Java literal.
+   */
+  private static String literal(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ' || c > '~') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+
+    return sb.append('"').toString();
+  }
+
+  /**
+   * The expression converting a value to a parameter's type.
+   */
+  private String convert(TypeMirror type, int index, String value) {
+    TypeKind kind = type.getKind();
+
+    if (kind.isPrimitive()) {
+      String name = type.toString();
+      String method = "to" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+      return SUPPORT + "." + method + "(" + value + ", p" + index + ")";
+    }
+
+    String name = sourceName(type);
+
+    if (name.equals("java.lang.Object")) {
+      return value;
+    }
+
+    return "(" + name + ") " + value;
+  }
+
+  /**
+   * The erased type as it is written in source.
+   */
+  private String sourceName(TypeMirror type) {
+    return processingEnv.getTypeUtils().erasure(type).toString();
+  }
+}
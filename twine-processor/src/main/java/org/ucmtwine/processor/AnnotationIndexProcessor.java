@@ -0,0 +1,363 @@
+package org.ucmtwine.processor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes an index of the Twine annotated methods of each compiled class, so
+ * Twine can find them at startup without scanning the class.
+ * 
+ * <p>
+ * Each class with a <code>@ServiceMethod</code>, <code>@Filter</code>,
+ * <code>@IdocFunction</code> or <code>@IdocVariable</code> method, declared or
+ * inherited, gets a properties file at
+ * <code>META-INF/ucm-twine/index/&lt;binary class name&gt;.properties</code>
+ * with one numbered group of keys per method:
+ * </p>
+ * 
+ * <pre>
+ * version=1
+ * methods=1
+ * 0.name=exampleFilter
+ * 0.annotations=org.ucmtwine.annotation.Filter
+ * 0.types=java.lang.Long,intradoc.shared.UserData
+ * 0.public=true
+ * 0.declared=true
+ * 0.Filter.event=validateStandard
+ * 0.Filter.loadOrder=10
+ * 0.param.0.name=dID
+ * 0.param.0.Binder.name=dID
+ * 0.param.0.Binder.required=true
+ * </pre>
+ * 
+ * <p>
+ * Types are in Class.getName() form. Annotation values include the defaults;
+ * arrays are joined with commas and enums are written as the constant name.
+ * </p>
+ * 
+ * <p>
+ * Each declared method which a class in its package can call also gets a
+ * generated binding adapter, <code>&lt;class&gt;$$TwineAdapter&lt;N&gt;</code>,
+ * recorded as <code>N.adapter</code>. Twine calls the method through it
+ * instead of reflection. Set the <code>twine.adapters</code> option to false
+ * to leave them out.
+ * </p>
+ * 
+ * @author tim
+ */
+@SupportedAnnotationTypes({ AnnotationIndexProcessor.SERVICE_METHOD, AnnotationIndexProcessor.FILTER,
+    AnnotationIndexProcessor.IDOC_FUNCTION, AnnotationIndexProcessor.IDOC_VARIABLE })
+public class AnnotationIndexProcessor extends AbstractProcessor {
+
+  public static final String INDEX_PATH = "META-INF/ucm-twine/index/";
+
+  public static final String INDEX_VERSION = "1";
+
+  /**
+   * Processor option which turns off adapter generation when set to false,
+   * e.g. <code>-Atwine.adapters=false</code>.
+   */
+  public static final String ADAPTERS_OPTION = "twine.adapters";
+
+  static final String SERVICE_METHOD = "org.ucmtwine.annotation.ServiceMethod";
+  static final String FILTER = "org.ucmtwine.annotation.Filter";
+  static final String IDOC_FUNCTION = "org.ucmtwine.annotation.IdocFunction";
+  static final String IDOC_VARIABLE = "org.ucmtwine.annotation.IdocVariable";
+
+  private static final String BINDER = "org.ucmtwine.annotation.Binder";
+
+  private static final Set<String> METHOD_ANNOTATIONS = new HashSet<String>(Arrays.asList(SERVICE_METHOD, FILTER,
+      IDOC_FUNCTION, IDOC_VARIABLE));
+
+  /**
+   * Classes already written, as a class can have several annotated methods.
+   */
+  private final Set<String> written = new HashSet<String>();
+
+  private AdapterWriter adapterWriter;
+
+  /**
+   * Whether to generate adapters, from the ADAPTERS_OPTION option.
+   */
+  private boolean adapters;
+
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    adapterWriter = new AdapterWriter(processingEnv);
+    adapters = !"false".equals(processingEnv.getOptions().get(ADAPTERS_OPTION));
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() == ElementKind.METHOD) {
+          TypeElement type = (TypeElement) element.getEnclosingElement();
+          String className = binaryName(type);
+
+          if (written.add(className)) {
+            writeIndex(type, className);
+          }
+        }
+      }
+    }
+
+    // other processors may want these annotations too
+    return false;
+  }
+
+  private void writeIndex(TypeElement type, String className) {
+    Properties index = new Properties();
+    int count = 0;
+
+    for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+      if (member.getKind() != ElementKind.METHOD) {
+        continue;
+      }
+
+      ExecutableElement method = (ExecutableElement) member;
+      List<AnnotationMirror> mirrors = getTwineAnnotations(method);
+
+      boolean declared = method.getEnclosingElement().equals(type);
+      boolean isPublic = method.getModifiers().contains(Modifier.PUBLIC);
+
+      // neither getMethods() nor getDeclaredMethods() would find it
+      if (mirrors.isEmpty() || (!declared && !isPublic)) {
+        continue;
+      }
+
+      String prefix = count + ".";
+
+      index.setProperty(prefix + "name", method.getSimpleName().toString());
+      index.setProperty(prefix + "public", String.valueOf(isPublic));
+      index.setProperty(prefix + "declared", String.valueOf(declared));
+
+      List<String> annotationNames = new ArrayList<String>();
+
+      for (AnnotationMirror mirror : mirrors) {
+        annotationNames.add(annotationName(mirror));
+        putValues(index, prefix + simpleName(mirror) + ".", mirror);
+      }
+
+      index.setProperty(prefix + "annotations", join(annotationNames));
+
+      List<String> typeNames = new ArrayList<String>();
+      List<? extends VariableElement> parameters = method.getParameters();
+
+      for (int i = 0; i < parameters.size(); i++) {
+        VariableElement parameter = parameters.get(i);
+        String paramPrefix = prefix + "param." + i + ".";
+
+        typeNames.add(className(parameter.asType()));
+        index.setProperty(paramPrefix + "name", parameter.getSimpleName().toString());
+
+        for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+          if (annotationName(mirror).equals(BINDER)) {
+            putValues(index, paramPrefix + "Binder.", mirror);
+          }
+        }
+      }
+
+      index.setProperty(prefix + "types", join(typeNames));
+
+      if (adapters && declared && adapterWriter.canAdapt(type, method)) {
+        writeAdapter(index, prefix, type, method, AdapterWriter.adapterName(className, count));
+      }
+
+      count++;
+    }
+
+    if (count == 0) {
+      return;
+    }
+
+    index.setProperty("version", INDEX_VERSION);
+    index.setProperty("methods", String.valueOf(count));
+
+    OutputStream out = null;
+
+    try {
+      FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+          INDEX_PATH + className + ".properties", type);
+
+      out = file.openOutputStream();
+      index.store(out, "Twine annotation index, generated by " + getClass().getName());
+
+    } catch (IOException e) {
+      // the class will be scanned at startup instead
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+          "Unable to write the Twine annotation index for " + className + ": " + e.getMessage(), type);
+
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ignore) {
+
+        }
+      }
+    }
+  }
+
+  private void writeAdapter(Properties index, String prefix, TypeElement type, ExecutableElement method,
+      String adapterName) {
+    try {
+      adapterWriter.write(type, method, adapterName);
+      index.setProperty(prefix + "adapter", adapterName);
+
+    } catch (IOException e) {
+      // the method will be called through reflection instead
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+          "Unable to write the Twine adapter " + adapterName + ": " + e.getMessage(), method);
+    }
+  }
+
+  private static List<AnnotationMirror> getTwineAnnotations(ExecutableElement method) {
+    List<AnnotationMirror> mirrors = new ArrayList<AnnotationMirror>();
+
+    for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+      if (METHOD_ANNOTATIONS.contains(annotationName(mirror))) {
+        mirrors.add(mirror);
+      }
+    }
+
+    return mirrors;
+  }
+
+  private void putValues(Properties index, String prefix, AnnotationMirror mirror) {
+    Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils()
+        .getElementValuesWithDefaults(mirror);
+
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      index.setProperty(prefix + entry.getKey().getSimpleName(), valueString(entry.getValue().getValue()));
+    }
+  }
+
+  private static String valueString(Object value) {
+    if (value instanceof List<?>) {
+      List<String> items = new ArrayList<String>();
+
+      for (Object item : (List<?>) value) {
+        items.add(valueString(((AnnotationValue) item).getValue()));
+      }
+
+      return join(items);
+    }
+
+    if (value instanceof VariableElement) {
+      // enum constant
+      return ((VariableElement) value).getSimpleName().toString();
+    }
+
+    if (value instanceof TypeMirror) {
+      return value.toString();
+    }
+
+    return String.valueOf(value);
+  }
+
+  private static String annotationName(AnnotationMirror mirror) {
+    return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+  }
+
+  private static String simpleName(AnnotationMirror mirror) {
+    return mirror.getAnnotationType().asElement().getSimpleName().toString();
+  }
+
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  /**
+   * The name Class.forName() takes for a parameter type.
+   */
+  private String className(TypeMirror type) {
+    TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+    switch (erased.getKind()) {
+    case ARRAY:
+      return "[" + descriptor(((ArrayType) erased).getComponentType());
+
+    case DECLARED:
+      return binaryName((TypeElement) ((DeclaredType) erased).asElement());
+
+    default:
+      // primitives
+      return erased.toString();
+    }
+  }
+
+  private String descriptor(TypeMirror type) {
+    TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+
+    switch (erased.getKind()) {
+    case BOOLEAN:
+      return "Z";
+    case BYTE:
+      return "B";
+    case CHAR:
+      return "C";
+    case SHORT:
+      return "S";
+    case INT:
+      return "I";
+    case LONG:
+      return "J";
+    case FLOAT:
+      return "F";
+    case DOUBLE:
+      return "D";
+    case ARRAY:
+      return "[" + descriptor(((ArrayType) erased).getComponentType());
+    default:
+      return "L" + binaryName((TypeElement) ((DeclaredType) erased).asElement()) + ";";
+    }
+  }
+
+  private static String join(List<String> items) {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < items.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(items.get(i));
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,367 @@
+package org.ucmtwine.test.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.processor.AnnotationIndexProcessor;
+
+public class TestAnnotationIndexProcessor {
+
+  /**
+   * Stand-ins for the Twine annotations, so the processor is tested without
+   * the library.
+   */
+  private static final String[][] ANNOTATIONS = {
+      { "org.ucmtwine.annotation.Filter",
+          "package org.ucmtwine.annotation; import java.lang.annotation.*; @Retention(RetentionPolicy.RUNTIME) "
+              + "public @interface Filter { String event(); int loadOrder() default 100; }" },
+      { "org.ucmtwine.annotation.ServiceMethod",
+          "package org.ucmtwine.annotation; import java.lang.annotation.*; @Retention(RetentionPolicy.RUNTIME) "
+              + "public @interface ServiceMethod { String name(); }" },
+      { "org.ucmtwine.annotation.IdocFunction",
+          "package org.ucmtwine.annotation; import java.lang.annotation.*; @Retention(RetentionPolicy.RUNTIME) "
+              + "public @interface IdocFunction { String name() default \"\"; boolean cacheable() default false; }" },
+      { "org.ucmtwine.annotation.IdocVariable",
+          "package org.ucmtwine.annotation; import java.lang.annotation.*; @Retention(RetentionPolicy.RUNTIME) "
+              + "public @interface IdocVariable { String name() default \"\"; }" },
+      { "org.ucmtwine.annotation.Binder",
+          "package org.ucmtwine.annotation; import java.lang.annotation.*; @Retention(RetentionPolicy.RUNTIME) "
+              + "public @interface Binder { String name(); boolean required() default true; "
+              + "String[] columns() default {}; }" } };
+
+  /**
+   * Stand-ins for the library types the generated adapters use, so the
+   * adapters are compiled too.
+   */
+  private static final String[][] ADAPTER_TYPES = {
+      { "intradoc.common.ExecutionContext",
+          "package intradoc.common; public interface ExecutionContext { Object getCachedObject(String k); }" },
+      { "intradoc.data.Workspace", "package intradoc.data; public interface Workspace {}" },
+      { "intradoc.shared.UserData", "package intradoc.shared; public class UserData {}" },
+      { "org.ucmtwine.async.ServiceFanout",
+          "package org.ucmtwine.async; public class ServiceFanout { public ServiceFanout(intradoc.server.Service s) {} "
+              + "public ServiceFanout(intradoc.data.Workspace w, intradoc.data.DataBinder b, "
+              + "intradoc.shared.UserData u) {} }" },
+      { "intradoc.data.DataBinder",
+          "package intradoc.data; public class DataBinder { public String getLocal(String k) { return null; } }" },
+      { "intradoc.server.Service",
+          "package intradoc.server; public class Service implements intradoc.common.ExecutionContext { "
+              + "public intradoc.data.DataBinder getBinder() { return null; } "
+              + "public Object getCachedObject(String k) { return null; } }" },
+      { "org.ucmtwine.parameter.IParameter",
+          "package org.ucmtwine.parameter; public interface IParameter { "
+              + "Object getBinderValue(intradoc.server.Service s) throws IllegalAccessException; "
+              + "Object getArgumentValue(Object o, intradoc.server.Service s) throws ClassCastException; }" },
+      { "org.ucmtwine.parameter.ParameterMarshaller",
+          "package org.ucmtwine.parameter; public class ParameterMarshaller { "
+              + "public java.util.List<IParameter> getParameters() { return null; } "
+              + "public int getMethodId() { return -1; } }" },
+      { "org.ucmtwine.parameter.Boxes",
+          "package org.ucmtwine.parameter; public final class Boxes { "
+              + "public static Long valueOf(long v) { return v; } }" },
+      { "org.ucmtwine.trace.Trace",
+          "package org.ucmtwine.trace; public final class Trace { public static final int ARGUMENT = 5; "
+              + "public static final int BINDER_VALUE = 6; "
+              + "public static void failed(int p, int m, long d, Throwable e) {} }" },
+      { "org.ucmtwine.proxy.adapter.IMethodAdapter",
+          "package org.ucmtwine.proxy.adapter; import java.lang.reflect.InvocationTargetException; "
+              + "public interface IMethodAdapter { "
+              + "Object invoke(Object t, Object[] v) throws InvocationTargetException; "
+              + "Object invokeService(Object t, intradoc.server.Service s) throws InvocationTargetException; "
+              + "Object invokeScript(Object t, Object[] a, intradoc.server.Service s) "
+              + "throws InvocationTargetException; "
+              + "Object invokeFilter(Object t, intradoc.data.Workspace w, intradoc.data.DataBinder b, "
+              + "intradoc.common.ExecutionContext c) throws InvocationTargetException; }" },
+      { "org.ucmtwine.proxy.adapter.AdapterSupport",
+          "package org.ucmtwine.proxy.adapter; import org.ucmtwine.parameter.IParameter; "
+              + "public final class AdapterSupport { "
+              + "public static String parseString(String v, String n, boolean r) { return v; } "
+              + "public static Long parseLong(String v, String n, boolean r) { return null; } "
+              + "public static boolean toBoolean(Object v, IParameter p) { return false; } "
+              + "public static int toInt(Object v, IParameter p) { return 0; } "
+              + "public static long toLong(Object v, IParameter p) { return 0; } "
+              + "public static Object box(boolean v) { return v; } }" } };
+
+  private static final String PACKAGE_SOURCE = "package example; import org.ucmtwine.annotation.*; "
+      + "public class ExamplePackage extends BasePackage { "
+      + "  @Filter(event = \"validateStandard\", loadOrder = 10) "
+      + "  public void exampleFilter(@Binder(name = \"dID\") Long dID, int[] counts, "
+      + "      intradoc.data.DataBinder binder, @Binder(name = \"dDocName\", required = false) String docName, "
+      + "      long total) {} "
+      + "  @IdocFunction(cacheable = true) "
+      + "  private String exampleFunction(@Binder(name = \"rs\", columns = { \"a\", \"b\" }) java.util.List<String> rs) "
+      + "  { return null; } "
+      + "  public void notAnnotated() {} "
+      + "  public static class Inner { @IdocVariable public boolean flag() { return true; } } "
+      + "}";
+
+  private static final String BASE_SOURCE = "package example; import org.ucmtwine.annotation.*; "
+      + "public class BasePackage { @ServiceMethod(name = \"BASE_SERVICE\") public void baseService("
+      + "org.ucmtwine.async.ServiceFanout fanout) {} }";
+
+  private File output;
+
+  @Before
+  public void setUp() throws IOException {
+    output = File.createTempFile("twine-processor", "");
+    output.delete();
+    output.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    delete(output);
+  }
+
+  @Test
+  public void testProcessor_ShouldIndexDeclaredAndInheritedMethods() throws Exception {
+    compile();
+
+    Properties index = readIndex("example.ExamplePackage");
+
+    assertEquals(AnnotationIndexProcessor.INDEX_VERSION, index.getProperty("version"));
+    assertEquals("3", index.getProperty("methods"));
+
+    int filter = find(index, "exampleFilter");
+    assertEquals("org.ucmtwine.annotation.Filter", index.getProperty(filter + ".annotations"));
+    assertEquals("java.lang.Long,[I,intradoc.data.DataBinder,java.lang.String,long", index.getProperty(filter
+        + ".types"));
+    assertEquals("validateStandard", index.getProperty(filter + ".Filter.event"));
+    assertEquals("10", index.getProperty(filter + ".Filter.loadOrder"));
+    assertEquals("dID", index.getProperty(filter + ".param.0.name"));
+    assertEquals("dID", index.getProperty(filter + ".param.0.Binder.name"));
+    assertEquals("true", index.getProperty(filter + ".param.0.Binder.required"));
+    assertNull(index.getProperty(filter + ".param.1.Binder.name"));
+
+    int function = find(index, "exampleFunction");
+    assertEquals("false", index.getProperty(function + ".public"));
+    assertEquals("true", index.getProperty(function + ".declared"));
+    assertEquals("java.util.List", index.getProperty(function + ".types"));
+    assertEquals("true", index.getProperty(function + ".IdocFunction.cacheable"));
+    assertEquals("", index.getProperty(function + ".IdocFunction.name"));
+    assertEquals("a,b", index.getProperty(function + ".param.0.Binder.columns"));
+
+    int service = find(index, "baseService");
+    assertEquals("true", index.getProperty(service + ".public"));
+    assertEquals("false", index.getProperty(service + ".declared"));
+    assertEquals("BASE_SERVICE", index.getProperty(service + ".ServiceMethod.name"));
+  }
+
+  @Test
+  public void testProcessor_ShouldIndexNestedClassesByBinaryName() throws Exception {
+    compile();
+
+    Properties index = readIndex("example.ExamplePackage$Inner");
+
+    assertEquals("1", index.getProperty("methods"));
+    assertEquals("flag", index.getProperty("0.name"));
+  }
+
+  @Test
+  public void testProcessor_ShouldOnlyIndexClassesWithAnnotatedMethods() throws Exception {
+    compile();
+
+    assertTrue(new File(output, AnnotationIndexProcessor.INDEX_PATH + "example.BasePackage.properties").exists());
+    assertFalse(new File(output, AnnotationIndexProcessor.INDEX_PATH + "org.ucmtwine.annotation.Filter.properties")
+        .exists());
+  }
+
+  @Test
+  public void testProcessor_ShouldGenerateAdaptersForCallableDeclaredMethods() throws Exception {
+    compile();
+
+    Properties index = readIndex("example.ExamplePackage");
+
+    int filter = find(index, "exampleFilter");
+    String adapter = "example.ExamplePackage$$TwineAdapter" + filter;
+    assertEquals(adapter, index.getProperty(filter + ".adapter"));
+
+    String source = readSource(adapter);
+    assertTrue(source.contains("implements org.ucmtwine.proxy.adapter.IMethodAdapter"));
+    assertTrue(source.contains("public ExamplePackage$$TwineAdapter" + filter
+        + "(org.ucmtwine.parameter.ParameterMarshaller marshaller)"));
+    assertTrue(source.contains("target.exampleFilter(a0, a1, a2, a3, a4);"));
+
+    // named binder values are parsed in place, the rest go through their own
+    // parameter
+    assertTrue(source.contains("(java.lang.Long) org.ucmtwine.proxy.adapter.AdapterSupport.parseLong("
+        + "service.getBinder().getLocal(\"dID\"), \"dID\", true)"));
+    assertTrue(source.contains("(java.lang.String) org.ucmtwine.proxy.adapter.AdapterSupport.parseString("
+        + "service.getBinder().getLocal(\"dDocName\"), \"dDocName\", false)"));
+    assertTrue(source.contains("(int[]) binder1(service)"));
+    assertTrue(source.contains("return p1.getBinderValue(service);"));
+    assertTrue(source.contains("org.ucmtwine.proxy.adapter.AdapterSupport.toLong(binder4(service), p4)"));
+
+    // injected values skip the script arguments
+    assertTrue(source.contains("(intradoc.data.DataBinder) service.getBinder()"));
+    assertTrue(source.contains("(int[]) argument1(arguments[1], service)"));
+    assertTrue(source.contains("(java.lang.String) argument3(arguments[2], service)"));
+    assertTrue(source.contains("arguments[3] instanceof Number ? ((Number) arguments[3]).longValue() : "
+        + "org.ucmtwine.proxy.adapter.AdapterSupport.toLong(argument4(arguments[3], service), p4)"));
+    assertTrue(source.contains("return p4.getArgumentValue(argument, service);"));
+
+    // filters only get the injected values
+    assertTrue(source.contains("invokeFilter(Object target, intradoc.data.Workspace ws, "
+        + "intradoc.data.DataBinder binder, intradoc.common.ExecutionContext ctx)"));
+    assertTrue(source.contains("(intradoc.data.DataBinder) binder"));
+    assertTrue(source.contains("(java.lang.Long) null"));
+    assertTrue(source.contains("org.ucmtwine.proxy.adapter.AdapterSupport.toLong(null, p4)"));
+
+    // private methods can't be called from the adapter, inherited ones have
+    // their adapter in the base class's index
+    assertNull(index.getProperty(find(index, "exampleFunction") + ".adapter"));
+    assertNull(index.getProperty(find(index, "baseService") + ".adapter"));
+    assertEquals("example.BasePackage$$TwineAdapter0", readIndex("example.BasePackage").getProperty("0.adapter"));
+  }
+
+  @Test
+  public void testProcessor_ShouldInjectServiceFanoutsIntoFilters() throws Exception {
+    compile();
+
+    String source = readSource("example.BasePackage$$TwineAdapter0");
+
+    assertTrue(source.contains("(org.ucmtwine.async.ServiceFanout) fanout0(ws, binder, ctx)"));
+    assertTrue(source.contains("return new org.ucmtwine.async.ServiceFanout(ws, binder, (ctx == null) ? null : "
+        + "(intradoc.shared.UserData) ctx.getCachedObject(\"UserData\"));"));
+  }
+
+  @Test
+  public void testProcessor_ShouldBoxPrimitiveReturnValues() throws Exception {
+    compile();
+
+    String source = readSource("example.ExamplePackage$Inner$$TwineAdapter0");
+
+    assertTrue(source.contains("public final class ExamplePackage$Inner$$TwineAdapter0"));
+    assertTrue(source.contains("return org.ucmtwine.proxy.adapter.AdapterSupport.box(target.flag());"));
+    assertTrue(source.contains("call((example.ExamplePackage.Inner) target)"));
+  }
+
+  @Test
+  public void testProcessor_ShouldNotGenerateAdaptersWhenTurnedOff() throws Exception {
+    compile("-A" + AnnotationIndexProcessor.ADAPTERS_OPTION + "=false");
+
+    Properties index = readIndex("example.ExamplePackage");
+
+    assertNull(index.getProperty(find(index, "exampleFilter") + ".adapter"));
+    assertFalse(new File(output, "example/ExamplePackage$$TwineAdapter0.java").exists());
+  }
+
+  private void compile(String... extraOptions) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+
+    for (String[] annotation : ANNOTATIONS) {
+      sources.add(new Source(annotation[0], annotation[1]));
+    }
+
+    for (String[] type : ADAPTER_TYPES) {
+      sources.add(new Source(type[0], type[1]));
+    }
+
+    sources.add(new Source("example.ExamplePackage", PACKAGE_SOURCE));
+    sources.add(new Source("example.BasePackage", BASE_SOURCE));
+
+    // a full compile, so the generated adapters are checked as well
+    List<String> options = new ArrayList<String>(Arrays.asList("-d", output.getPath(), "-s", output.getPath()));
+    options.addAll(Arrays.asList(extraOptions));
+
+    JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, sources);
+    task.setProcessors(Arrays.asList(new AnnotationIndexProcessor()));
+
+    assertTrue(task.call());
+  }
+
+  private Properties readIndex(String className) throws IOException {
+    Properties index = new Properties();
+    InputStream is = new FileInputStream(new File(output, AnnotationIndexProcessor.INDEX_PATH + className
+        + ".properties"));
+
+    try {
+      index.load(is);
+    } finally {
+      is.close();
+    }
+
+    return index;
+  }
+
+  private String readSource(String adapterName) throws IOException {
+    File file = new File(output, adapterName.replace('.', '/') + ".java");
+    StringBuilder sb = new StringBuilder();
+    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+
+    try {
+      char[] buffer = new char[4096];
+      int read;
+
+      while ((read = reader.read(buffer)) != -1) {
+        sb.append(buffer, 0, read);
+      }
+    } finally {
+      reader.close();
+    }
+
+    return sb.toString();
+  }
+
+  private static int find(Properties index, String methodName) {
+    int count = Integer.parseInt(index.getProperty("methods"));
+
+    for (int i = 0; i < count; i++) {
+      if (methodName.equals(index.getProperty(i + ".name"))) {
+        return i;
+      }
+    }
+
+    throw new AssertionError("Method " + methodName + " is not in the index");
+  }
+
+  private static void delete(File f) {
+    File[] children = f.listFiles();
+
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+
+    f.delete();
+  }
+
+  private static class Source extends SimpleJavaFileObject {
+    private final String code;
+
+    Source(String className, String code) {
+      super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+      this.code = code;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return code;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.ucmtwine.testkit;
+
+import intradoc.common.ExecutionContext;
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.Workspace;
+import intradoc.shared.FilterImplementor;
+
+import org.ucmtwine.proxy.FilterProxy;
+
+/**
+ * The filters of registered components for one event, in load order.
+ * 
+ * @author tim
+ */
+public class FilterChain {
+
+  private final String event;
+
+  private final String[] methodIDs;
+
+  private final Workspace ws;
+
+  private final FilterProxy proxy = new FilterProxy();
+
+  FilterChain(String event, String[] methodIDs, Workspace ws) {
+    this.event = event;
+    this.methodIDs = methodIDs;
+    this.ws = ws;
+  }
+
+  public String getEvent() {
+    return event;
+  }
+
+  /**
+   * The number of filters for the event.
+   * 
+   * @return
+   */
+  public int size() {
+    return methodIDs.length;
+  }
+
+  /**
+   * Run the filters in turn, as PluginFilters does, until one returns
+   * something other than CONTINUE.
+   * 
+   * @param binder
+   * @param ctx
+   *          The request, e.g. a {@link TestService}
+   * @return CONTINUE, or what the filter which stopped the chain returned
+   * @throws DataException
+   * @throws ServiceException
+   */
+  public int run(DataBinder binder, ExecutionContext ctx) throws DataException, ServiceException {
+    // the filter proxy reads the method ID from the context
+    Object previous = ctx.getCachedObject("filterParameter");
+
+    try {
+      for (String methodID : methodIDs) {
+        ctx.setCachedObject("filterParameter", methodID);
+        int result = proxy.doFilter(ws, binder, ctx);
+
+        if (result != FilterImplementor.CONTINUE) {
+          return result;
+        }
+      }
+
+      return FilterImplementor.CONTINUE;
+
+    } finally {
+      // a null can't be cached, so a context without one keeps the last ID
+      if (previous != null) {
+        ctx.setCachedObject("filterParameter", previous);
+      }
+    }
+  }
+
+  /**
+   * Run the filters with the request's binder.
+   * 
+   * @param service
+   * @return
+   * @throws DataException
+   * @throws ServiceException
+   */
+  public int run(TestService service) throws DataException, ServiceException {
+    return run(service.getBinder(), service);
+  }
+}
@@ -0,0 +1,90 @@
+package org.ucmtwine.testkit;
+
+import intradoc.common.ExecutionContext;
+import intradoc.common.ScriptInfo;
+import intradoc.common.ServiceException;
+
+import org.ucmtwine.proxy.ScriptProxy;
+
+/**
+ * One Idoc function or variable of a registered component, looked up once so
+ * it can be called many times.
+ * 
+ * @author tim
+ */
+public class ScriptCall {
+
+  private final ScriptProxy proxy;
+
+  private final ScriptInfo info;
+
+  private final boolean function;
+
+  ScriptCall(ScriptProxy proxy, ScriptInfo info, boolean function) {
+    this.proxy = proxy;
+    this.info = info;
+    this.function = function;
+  }
+
+  /**
+   * Call a function, as the page merger does.
+   * 
+   * @param ctx
+   *          The request, e.g. a {@link TestService}
+   * @param args
+   *          The function's arguments, as Idoc script would pass them, i.e.
+   *          Long, Double or String
+   * @return What the function returned, as it is returned to Idoc script
+   * @throws ServiceException
+   */
+  public Object call(ExecutionContext ctx, Object... args) throws ServiceException {
+    if (!function) {
+      throw new IllegalStateException(info.m_key + " is an Idoc variable");
+    }
+
+    // the return value goes after the arguments
+    Object[] scriptArgs = new Object[args.length + 1];
+    System.arraycopy(args, 0, scriptArgs, 0, args.length);
+
+    proxy.evaluateFunction(info, scriptArgs, ctx);
+
+    return scriptArgs[args.length];
+  }
+
+  /**
+   * Evaluate a variable, as <code>&lt;$name$&gt;</code> does.
+   * 
+   * @param ctx
+   * @return
+   * @throws ServiceException
+   */
+  public String value(ExecutionContext ctx) throws ServiceException {
+    return evaluate(ctx, false, new boolean[1]);
+  }
+
+  /**
+   * Evaluate a variable as a condition, as <code>&lt;$if name$&gt;</code>
+   * does.
+   * 
+   * @param ctx
+   * @return
+   * @throws ServiceException
+   */
+  public boolean isTrue(ExecutionContext ctx) throws ServiceException {
+    boolean[] returnBool = new boolean[1];
+    evaluate(ctx, true, returnBool);
+
+    return returnBool[0];
+  }
+
+  private String evaluate(ExecutionContext ctx, boolean conditional, boolean[] returnBool) throws ServiceException {
+    if (function) {
+      throw new IllegalStateException(info.m_key + " is an Idoc function");
+    }
+
+    String[] returnString = new String[1];
+    proxy.evaluateValue(info, returnBool, returnString, ctx, conditional);
+
+    return returnString[0];
+  }
+}
@@ -0,0 +1,62 @@
+package org.ucmtwine.testkit;
+
+import intradoc.data.DataBinder;
+import intradoc.data.DataResultSet;
+
+import java.util.Arrays;
+
+/**
+ * Builds binders and result sets for requests and query results.
+ * 
+ * @author tim
+ */
+public final class TestData {
+
+  private TestData() {
+    // Utility class, hide the constructor.
+  }
+
+  /**
+   * A binder with some local values.
+   * 
+   * @param namesAndValues
+   *          Name, value, name, value...
+   * @return
+   */
+  public static DataBinder binder(String... namesAndValues) {
+    if (namesAndValues.length % 2 != 0) {
+      throw new IllegalArgumentException("Local values must be given as name, value pairs");
+    }
+
+    DataBinder binder = new DataBinder();
+
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      binder.putLocal(namesAndValues[i], namesAndValues[i + 1]);
+    }
+
+    return binder;
+  }
+
+  /**
+   * A result set with some rows.
+   * 
+   * @param fields
+   * @param rows
+   *          The values of each row, in field order
+   * @return
+   */
+  public static DataResultSet resultSet(String[] fields, String[]... rows) {
+    DataResultSet rs = new DataResultSet(fields);
+
+    for (String[] row : rows) {
+      if (row.length != fields.length) {
+        throw new IllegalArgumentException("Row " + Arrays.asList(row) + " doesn't match the fields "
+            + Arrays.asList(fields));
+      }
+
+      rs.addRowWithList(Arrays.asList(row));
+    }
+
+    return rs;
+  }
+}
@@ -0,0 +1,48 @@
+package org.ucmtwine.testkit;
+
+import intradoc.data.DataBinder;
+import intradoc.server.PageMerger;
+
+import java.io.IOException;
+
+/**
+ * A page merger which replaces each <code>&lt;$name$&gt;</code> with the
+ * binder's local value, or an empty string. Nothing else is evaluated, which
+ * is enough for methods which build a message or a URL from the binder.
+ * 
+ * @author tim
+ */
+public class TestPageMerger extends PageMerger {
+
+  private final DataBinder binder;
+
+  public TestPageMerger(DataBinder binder) {
+    this.binder = binder;
+  }
+
+  @Override
+  public String evaluateScript(String script) throws IOException {
+    if (script == null || script.indexOf("<$") < 0) {
+      return script;
+    }
+
+    StringBuilder sb = new StringBuilder(script.length());
+    int from = 0;
+    int start;
+
+    while ((start = script.indexOf("<$", from)) >= 0) {
+      int end = script.indexOf("$>", start + 2);
+
+      if (end < 0) {
+        throw new IOException("Unterminated <$ at " + start + " in " + script);
+      }
+
+      String value = binder.getLocal(script.substring(start + 2, end).trim());
+
+      sb.append(script, from, start).append((value == null) ? "" : value);
+      from = end + 2;
+    }
+
+    return sb.append(script, from, script.length()).toString();
+  }
+}
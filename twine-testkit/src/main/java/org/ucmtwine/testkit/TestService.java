@@ -0,0 +1,88 @@
+package org.ucmtwine.testkit;
+
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.Workspace;
+import intradoc.server.Action;
+import intradoc.shared.UserData;
+
+import org.ucmtwine.proxy.ServiceProxy;
+
+/**
+ * A request to one Twine service method, set up as the server sets up a
+ * service before it runs its actions: a binder, user data, a workspace, a
+ * page merger and the action whose parameter is the method ID.
+ * 
+ * <p>
+ * A TestService can be run any number of times. Its binder keeps what earlier
+ * runs put in it until {@link #reset()} is called. It is also an
+ * ExecutionContext, so it can be passed to filters and Idoc script.
+ * </p>
+ * 
+ * @author tim
+ */
+public class TestService extends ServiceProxy {
+
+  /**
+   * @param methodID
+   *          The MethodRegistry ID of the service method, or null for a
+   *          request which is only used as a context
+   * @param ws
+   *          The workspace, may be null
+   */
+  public TestService(String methodID, Workspace ws) {
+    m_workspace = ws;
+    m_userData = new UserData();
+    m_userData.m_name = "sysadmin";
+
+    Action action = new Action();
+    action.m_params.add(methodID);
+    m_currentAction = action;
+
+    setCachedObject("UserData", m_userData);
+    reset();
+  }
+
+  /**
+   * Start again with an empty binder.
+   * 
+   * @return this
+   */
+  public TestService reset() {
+    m_binder = new DataBinder();
+    m_pageMerger = new TestPageMerger(m_binder);
+
+    return this;
+  }
+
+  /**
+   * Put a local value in the binder.
+   * 
+   * @param name
+   * @param value
+   * @return this
+   */
+  public TestService putLocal(String name, String value) {
+    m_binder.putLocal(name, value);
+    return this;
+  }
+
+  public String getLocal(String name) {
+    return m_binder.getLocal(name);
+  }
+
+  /**
+   * Run the service method, as the server runs its action.
+   * 
+   * @return this
+   * @throws DataException
+   *           If a parameter could not be bound
+   * @throws ServiceException
+   *           If the method threw
+   */
+  public TestService run() throws DataException, ServiceException {
+    delegateWithParameters();
+    return this;
+  }
+}
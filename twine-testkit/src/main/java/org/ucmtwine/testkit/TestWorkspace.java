@@ -0,0 +1,147 @@
+package org.ucmtwine.testkit;
+
+import intradoc.data.DataException;
+import intradoc.data.DataResultSet;
+import intradoc.data.ResultSet;
+import intradoc.data.Workspace;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A workspace which answers queries from result sets given in advance, and
+ * counts how often each query runs. Queries are matched by name, and their
+ * parameters are ignored.
+ * 
+ * <p>
+ * <code>createResultSet()</code> returns a copy of the query's result set,
+ * so each caller has its own cursor, and throws a DataException for a query
+ * it doesn't know. <code>execute()</code> returns the query's update count,
+ * 0 unless one was set. The other Workspace methods throw an
+ * UnsupportedOperationException.
+ * </p>
+ * 
+ * @author tim
+ */
+public class TestWorkspace implements InvocationHandler {
+
+  private final ConcurrentMap<String, ResultSet> resultSets = new ConcurrentHashMap<String, ResultSet>();
+
+  private final ConcurrentMap<String, Long> updateCounts = new ConcurrentHashMap<String, Long>();
+
+  private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+
+  private final Workspace workspace = (Workspace) Proxy.newProxyInstance(Workspace.class.getClassLoader(),
+      new Class<?>[] { Workspace.class }, this);
+
+  /**
+   * The Workspace to pass to services and filters.
+   * 
+   * @return
+   */
+  public Workspace getWorkspace() {
+    return workspace;
+  }
+
+  /**
+   * Set the result set a query returns.
+   * 
+   * @param query
+   * @param rs
+   * @return this
+   */
+  public TestWorkspace putResultSet(String query, ResultSet rs) {
+    resultSets.put(query, rs);
+    return this;
+  }
+
+  /**
+   * Set the number of rows an update query reports.
+   * 
+   * @param query
+   * @param count
+   * @return this
+   */
+  public TestWorkspace putUpdateCount(String query, long count) {
+    updateCounts.put(query, Long.valueOf(count));
+    return this;
+  }
+
+  /**
+   * How many times a query has been run.
+   * 
+   * @param query
+   * @return
+   */
+  public long getCallCount(String query) {
+    AtomicLong count = calls.get(query);
+
+    return (count == null) ? 0 : count.get();
+  }
+
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String name = method.getName();
+
+    if (method.getDeclaringClass() == Object.class) {
+      if (name.equals("equals")) {
+        return Boolean.valueOf(proxy == args[0]);
+      }
+
+      if (name.equals("hashCode")) {
+        return Integer.valueOf(System.identityHashCode(proxy));
+      }
+
+      return "TestWorkspace" + resultSets.keySet();
+    }
+
+    if (name.equals("createResultSet")) {
+      return createResultSet((String) args[0]);
+    }
+
+    if (name.equals("execute")) {
+      Long count = updateCounts.get(count((String) args[0]));
+
+      return Long.valueOf((count == null) ? 0 : count.longValue());
+    }
+
+    if (name.equals("releaseConnection")) {
+      return null;
+    }
+
+    throw new UnsupportedOperationException("TestWorkspace does not implement Workspace." + name + "()");
+  }
+
+  private ResultSet createResultSet(String query) throws DataException {
+    ResultSet rs = resultSets.get(count(query));
+
+    if (rs == null) {
+      throw new DataException("Unknown query " + query);
+    }
+
+    DataResultSet copy = new DataResultSet();
+    copy.copy(rs);
+
+    return copy;
+  }
+
+  private String count(String query) {
+    AtomicLong count = calls.get(query);
+
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = calls.putIfAbsent(query, newCount);
+
+      if (count == null) {
+        count = newCount;
+      }
+    }
+
+    count.incrementAndGet();
+
+    return query;
+  }
+}
@@ -0,0 +1,261 @@
+package org.ucmtwine.testkit;
+
+import intradoc.common.AppObjectRepository;
+import intradoc.common.ScriptContext;
+import intradoc.common.ScriptInfo;
+import intradoc.common.ServiceException;
+import intradoc.data.DataException;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.index.AnnotatedMethods;
+import org.ucmtwine.proxy.ScriptProxy;
+import org.ucmtwine.proxy.injector.MethodRegistry;
+
+/**
+ * Runs Twine components in process, without a content server. Components are
+ * registered with the kit instead of ServiceManager, PluginFilters and the
+ * default ScriptContext, then their services, filters and Idoc script are
+ * called through the same proxies the server calls:
+ * 
+ * <pre>
+ * TwineTestKit kit = new TwineTestKit().register(MyComponent.class);
+ * 
+ * kit.getWorkspace().putResultSet(&quot;QdocInfo&quot;, TestData.resultSet(fields, row));
+ * 
+ * TestService service = kit.service(&quot;MY_SERVICE&quot;).putLocal(&quot;dID&quot;, &quot;1&quot;).run();
+ * int result = kit.filters(&quot;validateStandard&quot;).run(service);
+ * Object sum = kit.function(&quot;add&quot;).call(service, 1L, 2L);
+ * </pre>
+ * 
+ * <p>
+ * Registration should finish before the kit is used. After that a kit, its
+ * filter chains and script calls can be shared by any number of threads,
+ * each with its own TestService. A TestService can be run repeatedly, so a
+ * loop can make millions of calls without allocating much beyond what the
+ * method does.
+ * </p>
+ * 
+ * @author tim
+ */
+public class TwineTestKit {
+
+  private final TestWorkspace workspace = new TestWorkspace();
+
+  private final ScriptContext scriptContext = new ScriptContext();
+
+  /**
+   * Method IDs by service name.
+   */
+  private final ConcurrentMap<String, String> services = new ConcurrentHashMap<String, String>();
+
+  /**
+   * Filters by event, in load order.
+   */
+  private final ConcurrentMap<String, List<RegisteredFilter>> filters = new ConcurrentHashMap<String, List<RegisteredFilter>>();
+
+  private final ConcurrentMap<String, ScriptCall> functions = new ConcurrentHashMap<String, ScriptCall>();
+
+  private final ConcurrentMap<String, ScriptCall> variables = new ConcurrentHashMap<String, ScriptCall>();
+
+  /**
+   * Register the service, filter and Idoc script methods of some components.
+   * 
+   * @param components
+   * @return this
+   * @throws DataException
+   *           If a filter doesn't return int or void
+   * @throws ServiceException
+   *           If the Idoc script methods can't be loaded
+   * @throws IllegalArgumentException
+   *           If a parameter can't be marshalled
+   */
+  public TwineTestKit register(Class<?>... components) throws DataException, ServiceException {
+    for (Class<?> component : components) {
+      for (Method method : AnnotatedMethods.getPublicMethods(component, ServiceMethod.class)) {
+        services.put(method.getAnnotation(ServiceMethod.class).name(), MethodRegistry.addMethod(method));
+      }
+
+      for (Method method : AnnotatedMethods.getPublicMethods(component, Filter.class)) {
+        registerFilter(method, method.getAnnotation(Filter.class));
+      }
+
+      if (!AnnotatedMethods.getPublicMethods(component, IdocFunction.class, IdocVariable.class).isEmpty()) {
+        registerScript(new ScriptProxy(component));
+      }
+    }
+
+    return this;
+  }
+
+  private synchronized void registerFilter(Method method, Filter annotation) throws DataException {
+    if (method.getReturnType() != int.class && method.getReturnType() != void.class) {
+      throw new DataException("Method [" + method.getName()
+          + "] must have a return type of int or void to be a filter.");
+    }
+
+    List<RegisteredFilter> current = filters.get(annotation.event());
+    List<RegisteredFilter> updated = new ArrayList<RegisteredFilter>();
+
+    if (current != null) {
+      updated.addAll(current);
+    }
+
+    updated.add(new RegisteredFilter(annotation.loadOrder(), MethodRegistry.addMethod(method)));
+
+    // stable, so filters with the same load order run in registration order
+    Collections.sort(updated, new Comparator<RegisteredFilter>() {
+      public int compare(RegisteredFilter a, RegisteredFilter b) {
+        return (a.order < b.order) ? -1 : ((a.order == b.order) ? 0 : 1);
+      }
+    });
+
+    filters.put(annotation.event(), updated);
+  }
+
+  private void registerScript(ScriptProxy proxy) throws ServiceException {
+    proxy.load(scriptContext);
+    scriptContext.registerExtension(proxy);
+
+    putScriptCalls(functions, proxy, proxy.getFunctionTable(), proxy.getFunctionDefinitionTable(), true);
+    putScriptCalls(variables, proxy, proxy.getVariableTable(), proxy.getVariableDefinitionTable(), false);
+  }
+
+  private static void putScriptCalls(ConcurrentMap<String, ScriptCall> calls, ScriptProxy proxy, String[] table,
+      int[][] definitions, boolean function) {
+    for (int i = 0; i < table.length; i++) {
+      ScriptInfo info = new ScriptInfo();
+      info.m_key = table[i];
+      info.m_entry = definitions[i];
+
+      calls.put(table[i], new ScriptCall(proxy, info, function));
+    }
+  }
+
+  /**
+   * A new request to a registered service.
+   * 
+   * @param name
+   *          The service name, e.g. MY_SERVICE
+   * @return
+   * @throws IllegalArgumentException
+   *           If no component has the service
+   */
+  public TestService service(String name) {
+    String methodID = services.get(name);
+
+    if (methodID == null) {
+      throw new IllegalArgumentException("No service " + name + " has been registered");
+    }
+
+    return new TestService(methodID, workspace.getWorkspace());
+  }
+
+  /**
+   * A new request which doesn't run a service, to call filters or Idoc script
+   * with.
+   * 
+   * @return
+   */
+  public TestService request() {
+    return new TestService(null, workspace.getWorkspace());
+  }
+
+  /**
+   * The filters for an event, which is empty if no component has one.
+   * 
+   * @param event
+   * @return
+   */
+  public FilterChain filters(String event) {
+    List<RegisteredFilter> registered = filters.get(event);
+    String[] methodIDs = new String[(registered == null) ? 0 : registered.size()];
+
+    for (int i = 0; i < methodIDs.length; i++) {
+      methodIDs[i] = registered.get(i).methodID;
+    }
+
+    return new FilterChain(event, methodIDs, workspace.getWorkspace());
+  }
+
+  /**
+   * A registered Idoc function.
+   * 
+   * @param name
+   * @return
+   * @throws IllegalArgumentException
+   *           If no component has the function
+   */
+  public ScriptCall function(String name) {
+    return getScriptCall(functions, name, "function");
+  }
+
+  /**
+   * A registered Idoc variable.
+   * 
+   * @param name
+   * @return
+   * @throws IllegalArgumentException
+   *           If no component has the variable
+   */
+  public ScriptCall variable(String name) {
+    return getScriptCall(variables, name, "variable");
+  }
+
+  private static ScriptCall getScriptCall(ConcurrentMap<String, ScriptCall> calls, String name, String kind) {
+    ScriptCall call = calls.get(name);
+
+    if (call == null) {
+      throw new IllegalArgumentException("No Idoc " + kind + " " + name + " has been registered");
+    }
+
+    return call;
+  }
+
+  /**
+   * The workspace every request gets.
+   * 
+   * @return
+   */
+  public TestWorkspace getWorkspace() {
+    return workspace;
+  }
+
+  /**
+   * The script context the Idoc script methods are registered with.
+   * 
+   * @return
+   */
+  public ScriptContext getScriptContext() {
+    return scriptContext;
+  }
+
+  /**
+   * Make the kit's script context the server's default one, for code which
+   * registers Idoc script itself, such as the Bootstrapper.
+   */
+  public void installScriptContext() {
+    AppObjectRepository.putObject("DefaultScriptContext", scriptContext);
+  }
+
+  private static class RegisteredFilter {
+    private final int order;
+
+    private final String methodID;
+
+    private RegisteredFilter(int order, String methodID) {
+      this.order = order;
+      this.methodID = methodID;
+    }
+  }
+}
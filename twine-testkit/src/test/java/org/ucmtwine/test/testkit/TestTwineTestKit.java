@@ -0,0 +1,179 @@
+package org.ucmtwine.test.testkit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import intradoc.common.ServiceException;
+import intradoc.data.DataBinder;
+import intradoc.data.DataException;
+import intradoc.data.ResultSet;
+import intradoc.data.Workspace;
+import intradoc.server.PageMerger;
+import intradoc.shared.FilterImplementor;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ucmtwine.annotation.Binder;
+import org.ucmtwine.annotation.Filter;
+import org.ucmtwine.annotation.IdocFunction;
+import org.ucmtwine.annotation.IdocVariable;
+import org.ucmtwine.annotation.ServiceMethod;
+import org.ucmtwine.testkit.TestData;
+import org.ucmtwine.testkit.TestService;
+import org.ucmtwine.testkit.TwineTestKit;
+
+public class TestTwineTestKit {
+
+  public static class KitComponent {
+    @ServiceMethod(name = "TESTKIT_GET_TITLE")
+    public void getTitle(@Binder(name = "dID") Long dID, Workspace ws, DataBinder binder) throws DataException {
+      ResultSet rs = ws.createResultSet("QdocInfo", binder);
+
+      if (rs.first()) {
+        binder.putLocal("dDocTitle", rs.getStringValueByName("dDocTitle") + " (" + dID + ")");
+      }
+    }
+
+    @ServiceMethod(name = "TESTKIT_GREET")
+    public void greet(PageMerger merger, DataBinder binder) throws IOException {
+      binder.putLocal("greeting", merger.evaluateScript("Hello <$name$>, from <$nowhere$>twine"));
+    }
+
+    @Filter(event = "testkitEvent", loadOrder = 20)
+    public int second(DataBinder binder) {
+      binder.putLocal("order", binder.getLocal("order") + ",second");
+      return FilterImplementor.CONTINUE;
+    }
+
+    @Filter(event = "testkitEvent", loadOrder = 10)
+    public int first(DataBinder binder) {
+      binder.putLocal("order", "first");
+      return (binder.getLocal("abort") != null) ? FilterImplementor.ABORT : FilterImplementor.CONTINUE;
+    }
+
+    @IdocFunction
+    public long testkitAdd(long a, long b) {
+      return a + b;
+    }
+
+    @IdocVariable
+    public String testkitName() {
+      return "twine";
+    }
+
+    @IdocVariable
+    public boolean testkitEnabled() {
+      return true;
+    }
+  }
+
+  private TwineTestKit kit;
+
+  @Before
+  public void setUp() throws Exception {
+    kit = new TwineTestKit().register(KitComponent.class);
+  }
+
+  @Test
+  public void testService_ShouldBindParametersAndQueryTheWorkspace() throws Exception {
+    kit.getWorkspace().putResultSet("QdocInfo",
+        TestData.resultSet(new String[] { "dID", "dDocTitle" }, new String[] { "7", "Report" }));
+
+    TestService service = kit.service("TESTKIT_GET_TITLE").putLocal("dID", "7").run();
+
+    assertEquals("Report (7)", service.getLocal("dDocTitle"));
+    assertEquals(1, kit.getWorkspace().getCallCount("QdocInfo"));
+
+    service.run();
+    assertEquals(2, kit.getWorkspace().getCallCount("QdocInfo"));
+  }
+
+  @Test
+  public void testService_ShouldFailForAnUnknownQuery() throws Exception {
+    try {
+      kit.service("TESTKIT_GET_TITLE").putLocal("dID", "7").run();
+      fail("Expected the unknown query to fail the service");
+
+    } catch (ServiceException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testService_ShouldMergeBinderValuesIntoScript() throws Exception {
+    TestService service = kit.service("TESTKIT_GREET").putLocal("name", "Tim").run();
+
+    assertEquals("Hello Tim, from twine", service.getLocal("greeting"));
+  }
+
+  @Test
+  public void testReset_ShouldEmptyTheBinder() throws Exception {
+    TestService service = kit.service("TESTKIT_GREET").putLocal("name", "Tim");
+
+    assertEquals(null, service.reset().getLocal("name"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testService_ShouldRejectAnUnknownService() {
+    kit.service("TESTKIT_MISSING");
+  }
+
+  @Test
+  public void testFilters_ShouldRunInLoadOrder() throws Exception {
+    TestService request = kit.request();
+
+    assertEquals(2, kit.filters("testkitEvent").size());
+    assertEquals(FilterImplementor.CONTINUE, kit.filters("testkitEvent").run(request));
+    assertEquals("first,second", request.getLocal("order"));
+  }
+
+  @Test
+  public void testFilters_ShouldStopWhenAFilterAborts() throws Exception {
+    TestService request = kit.request().putLocal("abort", "1");
+
+    assertEquals(FilterImplementor.ABORT, kit.filters("testkitEvent").run(request));
+    assertEquals("first", request.getLocal("order"));
+  }
+
+  @Test
+  public void testFilters_ShouldBeEmptyForAnEventWithoutFilters() throws Exception {
+    assertEquals(0, kit.filters("testkitNothing").size());
+    assertEquals(FilterImplementor.CONTINUE, kit.filters("testkitNothing").run(kit.request()));
+  }
+
+  @Test
+  public void testFunction_ShouldReturnTheResult() throws Exception {
+    assertEquals(Long.valueOf(42), kit.function("testkitAdd").call(kit.request(), 40L, 2L));
+  }
+
+  @Test
+  public void testVariable_ShouldEvaluate() throws Exception {
+    assertEquals("twine", kit.variable("testkitName").value(kit.request()));
+    assertTrue(kit.variable("testkitEnabled").isTrue(kit.request()));
+  }
+
+  @Test
+  public void testVariable_ShouldNotBeCalledAsAFunction() throws Exception {
+    try {
+      kit.variable("testkitName").call(kit.request());
+      fail("Expected a variable not to be callable");
+
+    } catch (IllegalStateException e) {
+      assertFalse(e.getMessage().length() == 0);
+    }
+  }
+
+  @Test
+  public void testWorkspace_ShouldReturnACopyForEachQuery() throws Exception {
+    kit.getWorkspace().putResultSet("Qrows", TestData.resultSet(new String[] { "a" }, new String[] { "1" }));
+    Workspace ws = kit.getWorkspace().getWorkspace();
+
+    ResultSet first = ws.createResultSet("Qrows", null);
+    first.next();
+
+    assertTrue(ws.createResultSet("Qrows", null).isRowPresent());
+  }
+}